@@ -163,4 +163,24 @@ public class RuleSetManagerTest {
         this.ruleSetManager.unregisterRuleSet(ruleSet);
         Assert.assertEquals("RuleSet not unregistered", 0, this.ruleSetManager.getRegisteredRuleSets().size());
     }
+
+    /**
+     * Rulesets registered by descriptor are parsed on first access.
+     */
+    @Test
+    public void testRegisterRuleSetDescriptor() {
+        final RuleSetDescriptor descriptor = RuleSetDescriptor.forFile("java", "category/java/bestpractices.xml");
+        this.ruleSetManager.registerRuleSetDescriptor(descriptor);
+        this.ruleSetManager.registerDefaultRuleSetDescriptor(descriptor);
+        Assert.assertEquals("Descriptor not registered!", 1,
+                this.ruleSetManager.getRegisteredRuleSetDescriptors().size());
+        Assert.assertEquals("bestpractices", descriptor.getName());
+
+        Assert.assertEquals("RuleSet not registered!", 1, this.ruleSetManager.getRegisteredRuleSets().size());
+        final RuleSet ruleSet = this.ruleSetManager.getRegisteredRuleSets().iterator().next();
+        Assert.assertEquals("Best Practices", ruleSet.getName());
+        Assert.assertFalse("RuleSet has not been parsed", ruleSet.getRules().isEmpty());
+        Assert.assertSame("Default RuleSet should be the same instance", ruleSet,
+                this.ruleSetManager.getDefaultRuleSets().iterator().next());
+    }
 }
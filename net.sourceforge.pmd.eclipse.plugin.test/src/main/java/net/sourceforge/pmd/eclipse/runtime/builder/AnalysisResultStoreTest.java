@@ -0,0 +1,199 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.AnalysisResultStore.StoredViolation;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.xpath.XPathRule;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+public class AnalysisResultStoreTest {
+    private IProject testProject;
+    private IFile file;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createProject("AnalysisResultStoreTest");
+        file = testProject.getFile("Test.txt");
+        file.create(new ByteArrayInputStream("test".getBytes(StandardCharsets.UTF_8)), true, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    @Test
+    public void violationsAreJoinedWithTheirMarkers() throws Exception {
+        AnalysisResultStore store = AnalysisResultStore.getInstance();
+        IMarker marker1 = file.createMarker(PMDRuntimeConstants.PMD_MARKER_3);
+        IMarker marker2 = file.createMarker(PMDRuntimeConstants.PMD_MARKER_3);
+        store.update(file, Arrays.asList(marker1, marker2), Arrays.asList(
+                StoredViolation.of(violation("RuleA", 2, 5)), StoredViolation.of(violation("RuleB", 3, 7))));
+
+        StoredViolation stored = store.violationOf(marker1);
+        Assert.assertNotNull(stored);
+        Assert.assertEquals("RuleA", stored.getRuleName());
+        Assert.assertEquals("Violation of RuleA", stored.getDescription());
+        Assert.assertEquals(2, stored.getBeginLine());
+        Assert.assertEquals(5, stored.getBeginColumn());
+        Assert.assertEquals("org.example", stored.getPackageName());
+        Assert.assertEquals("Test", stored.getClassName());
+        Assert.assertEquals("x", stored.getVariableName());
+        Assert.assertNull(stored.getMethodName());
+        Assert.assertEquals("RuleB", store.violationOf(marker2).getRuleName());
+
+        IMarker unknown = file.createMarker(PMDRuntimeConstants.PMD_MARKER_3);
+        Assert.assertNull(store.violationOf(unknown));
+
+        store.retainMarkers(testProject, Collections.singleton(marker2.getId()));
+        Assert.assertNull(store.violationOf(marker1));
+        Assert.assertNotNull(store.violationOf(marker2));
+
+        store.update(file, Collections.<IMarker>emptyList(), Collections.<StoredViolation>emptyList());
+        Assert.assertNull(store.violationOf(marker2));
+    }
+
+    @Test
+    public void savedViolationsAreLoadedAgain() throws Exception {
+        AnalysisResultStore store = AnalysisResultStore.getInstance();
+        IMarker marker = file.createMarker(PMDRuntimeConstants.PMD_MARKER_3);
+        store.update(file, Collections.singletonList(marker),
+                Collections.singletonList(StoredViolation.of(violation("RuleA", 2, 5))));
+
+        store.unload(testProject);
+        Assert.assertTrue(storeFile().isFile());
+
+        StoredViolation stored = store.violationOf(marker);
+        Assert.assertNotNull(stored);
+        Assert.assertEquals("RuleA", stored.getRuleName());
+        Assert.assertEquals(2, stored.getBeginLine());
+        Assert.assertEquals(5, stored.getBeginColumn());
+        Assert.assertEquals("org.example", stored.getPackageName());
+        Assert.assertNull(stored.getMethodName());
+    }
+
+    @Test
+    public void corruptStoreIsIgnored() throws Exception {
+        AnalysisResultStore store = AnalysisResultStore.getInstance();
+        IMarker marker = file.createMarker(PMDRuntimeConstants.PMD_MARKER_3);
+        store.unload(testProject);
+        storeFile().getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(storeFile()))) {
+            out.writeInt(1); // format version
+            out.writeInt(0); // no strings
+            out.writeInt(1); // one file
+            out.writeUTF("Test.txt");
+            out.writeInt(1); // one violation
+            out.writeLong(marker.getId());
+            out.writeLong(marker.getCreationTime());
+            out.writeInt(42); // the rule name is not in the string table
+            for (int i = 0; i < 9; i++) {
+                out.writeInt(-1);
+            }
+        }
+
+        Assert.assertNull(store.violationOf(marker));
+
+        store.update(file, Collections.singletonList(marker),
+                Collections.singletonList(StoredViolation.of(violation("RuleA", 2, 5))));
+        Assert.assertEquals("RuleA", store.violationOf(marker).getRuleName());
+    }
+
+    @Test
+    public void storeOfDeletedProjectIsRemoved() throws Exception {
+        AnalysisResultStore store = AnalysisResultStore.getInstance();
+        IMarker marker = file.createMarker(PMDRuntimeConstants.PMD_MARKER_3);
+        store.update(file, Collections.singletonList(marker),
+                Collections.singletonList(StoredViolation.of(violation("RuleA", 2, 5))));
+        store.save();
+        Assert.assertTrue(storeFile().isFile());
+
+        testProject.delete(true, true, null);
+
+        Assert.assertFalse(storeFile().exists());
+    }
+
+    private File storeFile() {
+        return PMDPlugin.getDefault().getStateLocation().append("results")
+                .append(testProject.getName() + ".results").toFile();
+    }
+
+    private static RuleViolation violation(String ruleName, final int line, final int column) {
+        final Rule rule = new XPathRule(XPathVersion.DEFAULT, "");
+        rule.setName(ruleName);
+        return new RuleViolation() {
+            @Override
+            public Rule getRule() {
+                return rule;
+            }
+
+            @Override
+            public String getDescription() {
+                return "Violation of " + rule.getName();
+            }
+
+            @Override
+            public FileLocation getLocation() {
+                return FileLocation.caret(FileId.fromPathLikeString("Test.txt"), line, column);
+            }
+
+            @Override
+            public int getBeginLine() {
+                return line;
+            }
+
+            @Override
+            public int getBeginColumn() {
+                return column;
+            }
+
+            @Override
+            public int getEndLine() {
+                return line;
+            }
+
+            @Override
+            public int getEndColumn() {
+                return column;
+            }
+
+            @Override
+            public Map<String, String> getAdditionalInfo() {
+                Map<String, String> info = new HashMap<>();
+                info.put(PACKAGE_NAME, "org.example");
+                info.put(CLASS_NAME, "Test");
+                info.put(VARIABLE_NAME, "x");
+                return info;
+            }
+        };
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+
+public class MarkerTableTest {
+    private IProject testProject;
+    private IFile file;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createProject("MarkerTableTest");
+        IFolder folder = testProject.getFolder("src");
+        folder.create(true, true, null);
+        file = folder.getFile("Test.txt");
+        file.create(new ByteArrayInputStream("test".getBytes(StandardCharsets.UTF_8)), true, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    private IMarker createMarker(String type, String ruleName, int priority) throws Exception {
+        IMarker marker = file.createMarker(type);
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, ruleName);
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRIORITY, priority);
+        marker.setAttribute(IMarker.LINE_NUMBER, 1);
+        return marker;
+    }
+
+    @Test
+    public void containsOnlyRuleMarkers() throws Exception {
+        IMarker marker = createMarker(PMDRuntimeConstants.PMD_MARKER_4, "RuleA", 4);
+        createMarker(PMDRuntimeConstants.PMD_DFA_MARKER, "RuleB", 1);
+
+        MarkerTable table = MarkerTable.of(testProject, IResource.DEPTH_INFINITE);
+        Assert.assertEquals(1, table.size());
+        Assert.assertEquals(marker, table.getMarker(0));
+        Assert.assertEquals(file, table.getResource(0));
+        Assert.assertArrayEquals(new IMarker[] { marker }, table.getMarkers());
+        Assert.assertTrue(MarkerTable.of(file.getParent(), IResource.DEPTH_ZERO).isEmpty());
+    }
+
+    @Test
+    public void attributesAreReadIntoColumns() throws Exception {
+        IMarker marker = createMarker(PMDRuntimeConstants.PMD_MARKER_4, "RuleA", 4);
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_LINE2, 3);
+        marker.setAttribute(IMarker.MESSAGE, "message");
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_PACKAGE, "org.example");
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_CLASS, "Test");
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_METHODNAME, "run");
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_VARIABLE, "x");
+
+        MarkerTable table = MarkerTable.of(testProject, IResource.DEPTH_INFINITE);
+        Assert.assertEquals(1, table.size());
+        Assert.assertEquals("RuleA", table.getRuleName(0));
+        Assert.assertEquals(4, table.getPriority(0));
+        Assert.assertEquals(1, table.getLine(0));
+        Assert.assertEquals(3, table.getEndLine(0));
+        Assert.assertEquals("message", table.getMessage(0));
+        Assert.assertEquals("org.example", table.getPackageName(0));
+        Assert.assertEquals("Test", table.getClassName(0));
+        Assert.assertEquals("run", table.getMethodName(0));
+        Assert.assertEquals("x", table.getVariableName(0));
+    }
+
+    @Test
+    public void missingAttributesHaveDefaults() throws Exception {
+        file.createMarker(PMDRuntimeConstants.PMD_MARKER_2);
+
+        MarkerTable table = MarkerTable.of(testProject, IResource.DEPTH_INFINITE);
+        Assert.assertEquals(1, table.size());
+        Assert.assertEquals("", table.getRuleName(0));
+        Assert.assertEquals(0, table.getPriority(0));
+        Assert.assertEquals(0, table.getLine(0));
+        Assert.assertEquals(0, table.getEndLine(0));
+        Assert.assertNull(table.getMessage(0));
+        Assert.assertNull(table.getPackageName(0));
+        Assert.assertNull(table.getClassName(0));
+        Assert.assertNull(table.getMethodName(0));
+        Assert.assertNull(table.getVariableName(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rowIsChecked() throws Exception {
+        MarkerTable.of(testProject, IResource.DEPTH_INFINITE).getRuleName(0);
+    }
+}
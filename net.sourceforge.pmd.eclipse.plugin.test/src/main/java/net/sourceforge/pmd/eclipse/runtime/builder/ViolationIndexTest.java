@@ -0,0 +1,165 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex.FileSummary;
+
+public class ViolationIndexTest {
+    private IProject testProject;
+    private IFile file;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createProject("ViolationIndexTest");
+        IFolder folder = testProject.getFolder("src");
+        folder.create(true, true, null);
+        file = folder.getFile("Test.txt");
+        file.create(new ByteArrayInputStream("test".getBytes(StandardCharsets.UTF_8)), true, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    @Test
+    public void fileSummaryCountsTheViolations() throws Exception {
+        ViolationIndex index = ViolationIndex.getInstance();
+        Assert.assertNull(index.summaryOf(file));
+        createMarkers();
+
+        FileSummary summary = index.summaryOf(file);
+        Assert.assertNotNull(summary);
+        Assert.assertEquals(3, summary.getViolationCount());
+        Assert.assertEquals(2, summary.getViolationCount(3));
+        Assert.assertEquals(2, summary.getRuleCount());
+        Assert.assertEquals(1, summary.getHighestPriority());
+    }
+
+    @Test
+    public void countsAreRolledUp() throws Exception {
+        ViolationIndex index = ViolationIndex.getInstance();
+        Assert.assertFalse(index.hasViolations(testProject));
+        createMarkers();
+
+        Assert.assertEquals(3, index.violationCountOf(file.getParent()));
+        Assert.assertEquals(3, index.violationCountOf(testProject));
+        Assert.assertArrayEquals(new int[] { 1, 0, 2, 0, 0 }, index.priorityCountsOf(testProject));
+        Assert.assertEquals(1, index.highestPriorityOf(testProject));
+    }
+
+    @Test
+    public void priorityMaskIsRolledUp() throws Exception {
+        ViolationIndex index = ViolationIndex.getInstance();
+        createMarkers();
+
+        Assert.assertEquals(0b101, index.priorityMaskOf(file.getParent()));
+        Assert.assertEquals(3, index.highestPriorityOf(testProject, 0b11110));
+        Assert.assertEquals(0, index.highestPriorityOf(testProject, 0b11010));
+    }
+
+    @Test
+    public void summariesAreListedPerContainer() throws Exception {
+        ViolationIndex index = ViolationIndex.getInstance();
+        createMarkers();
+        FileSummary summary = index.summaryOf(file);
+
+        Assert.assertEquals(Arrays.asList(summary), index.summariesIn(testProject));
+        Assert.assertEquals(Arrays.asList(summary), index.summariesIn(file.getParent()));
+        Assert.assertEquals(Arrays.asList(summary), index.summariesOfMembers(file.getParent()));
+        Assert.assertTrue(index.summariesOfMembers(testProject).isEmpty());
+    }
+
+    @Test
+    public void summariesOfOtherProjectsAreNotIncluded() throws Exception {
+        ViolationIndex index = ViolationIndex.getInstance();
+        createMarkers();
+        IProject otherProject = EclipseUtils.createProject("ViolationIndexTestOther");
+        try {
+            IFile otherFile = otherProject.getFile("Other.txt");
+            otherFile.create(new ByteArrayInputStream("test".getBytes(StandardCharsets.UTF_8)), true, null);
+            IMarker marker = otherFile.createMarker(PMDRuntimeConstants.PMD_MARKER_2);
+            marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, "RuleC");
+            marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRIORITY, 2);
+            index.refresh(Collections.singleton(otherFile));
+
+            Assert.assertEquals(Arrays.asList(index.summaryOf(file)), index.summariesIn(testProject));
+            Assert.assertEquals(Arrays.asList(index.summaryOf(otherFile)), index.summariesIn(otherProject));
+            Assert.assertTrue(index.summariesIn(testProject.getParent()).contains(index.summaryOf(otherFile)));
+        } finally {
+            otherProject.delete(true, true, null);
+        }
+    }
+
+    @Test
+    public void countsAreUpdatedWhenMarkersAreDeleted() throws Exception {
+        ViolationIndex index = ViolationIndex.getInstance();
+        IMarker marker1 = createMarkers();
+
+        marker1.delete();
+        index.refresh(Collections.singleton(file));
+        Assert.assertEquals(3, index.highestPriorityOf(testProject));
+        Assert.assertEquals(2, index.violationCountOf(testProject));
+
+        MarkerUtil.deleteAllMarkersIn(testProject);
+        Assert.assertNull(index.summaryOf(file));
+        Assert.assertFalse(index.hasViolations(file.getParent()));
+        Assert.assertFalse(index.hasViolations(testProject));
+        Assert.assertEquals(0, index.highestPriorityOf(testProject));
+        Assert.assertTrue(index.summariesIn(testProject).isEmpty());
+        Assert.assertTrue(index.summariesOfMembers(file.getParent()).isEmpty());
+    }
+
+    /**
+     * Creates one violation of RuleA with priority 1 and two of RuleB with priority 3.
+     *
+     * @return the marker of RuleA
+     */
+    private IMarker createMarkers() throws Exception {
+        IMarker marker1 = createMarker(PMDRuntimeConstants.PMD_MARKER_1, "RuleA", 1);
+        createMarker(PMDRuntimeConstants.PMD_MARKER_3, "RuleB", 3);
+        createMarker(PMDRuntimeConstants.PMD_MARKER_3, "RuleB", 3);
+        ViolationIndex.getInstance().refresh(Collections.singleton(file));
+        return marker1;
+    }
+
+    private IMarker createMarker(String type, String ruleName, int priority) throws Exception {
+        IMarker marker = file.createMarker(type);
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, ruleName);
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRIORITY, priority);
+        marker.setAttribute(IMarker.LINE_NUMBER, 1);
+        return marker;
+    }
+
+    @Test
+    public void removedWhenProjectIsDeleted() throws Exception {
+        ViolationIndex index = ViolationIndex.getInstance();
+        createMarker(PMDRuntimeConstants.PMD_MARKER_2, "RuleA", 2);
+        index.refresh(Collections.singleton(file));
+        Assert.assertTrue(index.hasViolations(testProject));
+
+        testProject.delete(true, true, null);
+        Assert.assertFalse(index.hasViolations(testProject));
+        Assert.assertFalse(index.markedFiles().contains(file));
+    }
+}
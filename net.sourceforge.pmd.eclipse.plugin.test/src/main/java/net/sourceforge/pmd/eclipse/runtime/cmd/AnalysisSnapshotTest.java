@@ -0,0 +1,90 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.cmd.AnalysisSnapshot.ProjectSnapshot;
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RulePriority;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+
+public class AnalysisSnapshotTest {
+    private IProject testProject;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createJavaProject("AnalysisSnapshotTest");
+        IProjectProperties properties = PMDPlugin.getDefault().loadProjectProperties(testProject);
+        properties.setPmdEnabled(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testProject != null && testProject.exists()) {
+            EclipseUtils.removePMDNature(testProject);
+            testProject.refreshLocal(IResource.DEPTH_INFINITE, null);
+            testProject.delete(true, true, null);
+        }
+    }
+
+    @Test
+    public void projectsAreCaptured() {
+        AnalysisSnapshot snapshot = AnalysisSnapshot.create(Collections.singleton(testProject));
+
+        ProjectSnapshot projectSnapshot = snapshot.forProject(testProject);
+        Assert.assertNotNull(projectSnapshot);
+        Assert.assertTrue(projectSnapshot.isPmdEnabled());
+        Assert.assertSame(snapshot, projectSnapshot.getAnalysisSnapshot());
+        Assert.assertTrue(projectSnapshot.getFileExtensions().contains("java"));
+
+        IProject other = ResourcesPlugin.getWorkspace().getRoot().getProject("AnalysisSnapshotTestOther");
+        Assert.assertNull(snapshot.forProject(other));
+    }
+
+    @Test
+    public void rulesAreCopied() throws Exception {
+        AnalysisSnapshot snapshot = AnalysisSnapshot.create(Collections.singleton(testProject));
+        List<RuleSet> ruleSets = snapshot.forProject(testProject).getRuleSets();
+        Assert.assertFalse(ruleSets.isEmpty());
+
+        List<RuleSet> configured = PMDPlugin.getDefault().loadProjectProperties(testProject).getProjectRuleSetList();
+        Rule configuredRule = configured.get(0).getRules().iterator().next();
+        Rule snapshotRule = null;
+        for (RuleSet ruleSet : ruleSets) {
+            if (snapshotRule == null) {
+                snapshotRule = ruleSet.getRuleByName(configuredRule.getName());
+            }
+        }
+        Assert.assertNotNull(snapshotRule);
+        Assert.assertNotSame(configuredRule, snapshotRule);
+
+        RulePriority priority = snapshotRule.getPriority();
+        configuredRule.setPriority(priority == RulePriority.LOW ? RulePriority.HIGH : RulePriority.LOW);
+        try {
+            Assert.assertEquals(priority, snapshotRule.getPriority());
+        } finally {
+            configuredRule.setPriority(priority);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void ruleSetsAreUnmodifiable() {
+        AnalysisSnapshot snapshot = AnalysisSnapshot.create(Collections.singleton(testProject));
+        snapshot.forProject(testProject).getRuleSets().clear();
+    }
+}
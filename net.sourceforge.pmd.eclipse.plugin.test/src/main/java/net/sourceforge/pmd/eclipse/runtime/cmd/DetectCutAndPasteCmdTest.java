@@ -4,7 +4,12 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -18,6 +23,7 @@ import org.junit.Test;
 
 import net.sourceforge.pmd.cpd.SimpleRenderer;
 import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
 
 /**
@@ -109,6 +115,69 @@ public class DetectCutAndPasteCmdTest {
         Assert.assertFalse(reportFile.exists());
     }
 
+    private File cpdIndexFile() {
+        return PMDPlugin.getDefault().getStateLocation().append("cpd")
+                .append(this.testProject.getName() + "-java.index").toFile();
+    }
+
+    private String detectCutAndPaste(boolean incremental) throws CoreException, IOException {
+        final DetectCutAndPasteCmd cmd = new DetectCutAndPasteCmd();
+        cmd.setProject(this.testProject);
+        cmd.setCPDRenderer(new SimpleRenderer());
+        cmd.setReportName(PMDRuntimeConstants.SIMPLE_CPDREPORT_NAME);
+        cmd.setCreateReport(true);
+        cmd.setLanguage("java");
+        cmd.setMinTileSize(10);
+        cmd.setIncremental(incremental);
+        cmd.performExecute();
+        cmd.join();
+
+        final IFile reportFile = this.testProject.getFolder(PMDRuntimeConstants.REPORT_FOLDER)
+                .getFile(PMDRuntimeConstants.SIMPLE_CPDREPORT_NAME);
+        try (InputStream in = reportFile.getContents()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        } finally {
+            reportFile.delete(true, false, null);
+        }
+    }
+
+    /**
+     * The incremental mode finds the same duplicates with an empty index, which is built
+     * after the analysis, and with the filled index.
+     */
+    @Test
+    public void testDetectCutAndPasteCmdIncremental() throws Exception {
+        final String method = "    public int sum(int[] values) {\n"
+                + "        int sum = 0;\n"
+                + "        for (int i = 0; i < values.length; i++) {\n"
+                + "            sum += values[i];\n"
+                + "        }\n"
+                + "        return sum;\n"
+                + "    }\n";
+        EclipseUtils.createTestSourceFile(this.testProject, "src/First.java",
+                "public class First {\n" + method + "}\n");
+        EclipseUtils.createTestSourceFile(this.testProject, "src/Second.java",
+                "public class Second {\n" + method + "}\n");
+        final File indexFile = cpdIndexFile();
+        if (indexFile.exists()) {
+            Assert.assertTrue(indexFile.delete());
+        }
+
+        final String expected = detectCutAndPaste(false);
+        Assert.assertTrue(expected, expected.contains("First.java"));
+        Assert.assertTrue(expected, expected.contains("Second.java"));
+        Assert.assertFalse(indexFile.exists());
+
+        try {
+            Assert.assertEquals(expected, detectCutAndPaste(true));
+            Assert.assertTrue("The index has not been built", indexFile.isFile());
+
+            Assert.assertEquals(expected, detectCutAndPaste(true));
+        } finally {
+            Assert.assertTrue(indexFile.delete());
+        }
+    }
+
     /**
      * Test robustness #1
      */
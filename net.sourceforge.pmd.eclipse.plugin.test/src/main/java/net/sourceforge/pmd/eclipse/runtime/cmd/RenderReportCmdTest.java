@@ -14,6 +14,7 @@ import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -26,6 +27,7 @@ import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.util.internal.IOUtil;
 import net.sourceforge.pmd.renderers.HTMLRenderer;
 import net.sourceforge.pmd.renderers.TextRenderer;
+import net.sourceforge.pmd.reporting.Report;
 
 /**
  * Test the report rendering
@@ -145,6 +147,71 @@ public class RenderReportCmdTest {
         }
     }
 
+    /**
+     * A failing format doesn't keep the other formats from being written.
+     */
+    @Test
+    public void testRenderReportCmdFailingFormat() throws Exception {
+        final ReviewCodeCmd reviewCmd = new ReviewCodeCmd();
+        reviewCmd.addResource(this.testProject);
+        reviewCmd.performExecute();
+        reviewCmd.join();
+
+        final RenderReportsCmd cmd = new RenderReportsCmd();
+        cmd.setProject(this.testProject);
+        cmd.registerRenderer(new TextRenderer(), PMDRuntimeConstants.TXT_REPORT_NAME);
+        cmd.registerRenderer(new TextRenderer() {
+            @Override
+            public void renderFileReport(Report report) {
+                throw new IllegalStateException("broken renderer");
+            }
+        }, "broken.txt");
+        try {
+            cmd.execute();
+            Assert.fail("The failing format has not been reported");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("broken renderer", e.getCause().getMessage());
+        }
+
+        final IFolder reportFolder = this.testProject.getFolder(PMDRuntimeConstants.REPORT_FOLDER);
+        Assert.assertTrue(reportFolder.getFile(PMDRuntimeConstants.TXT_REPORT_NAME).exists());
+        Assert.assertFalse(reportFolder.getFile("broken.txt").exists());
+
+        this.testProject.deleteMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_INFINITE);
+        reportFolder.delete(true, false, null);
+    }
+
+    /**
+     * After a cancel, no report is written.
+     */
+    @Test
+    public void testRenderReportCmdCanceled() throws Exception {
+        final ReviewCodeCmd reviewCmd = new ReviewCodeCmd();
+        reviewCmd.addResource(this.testProject);
+        reviewCmd.performExecute();
+        reviewCmd.join();
+
+        // the workspace operations would fail with the canceled monitor
+        final IFolder reportFolder = this.testProject.getFolder(PMDRuntimeConstants.REPORT_FOLDER);
+        if (!reportFolder.exists()) {
+            reportFolder.create(true, true, null);
+        }
+        final NullProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled(true);
+        final RenderReportsCmd cmd = new RenderReportsCmd();
+        cmd.setProject(this.testProject);
+        cmd.setMonitor(monitor);
+        cmd.registerRenderer(new TextRenderer(), PMDRuntimeConstants.TXT_REPORT_NAME);
+        cmd.registerRenderer(new HTMLRenderer(), PMDRuntimeConstants.HTML_REPORT_NAME);
+        cmd.execute();
+
+        Assert.assertFalse(reportFolder.getFile(PMDRuntimeConstants.TXT_REPORT_NAME).exists());
+        Assert.assertFalse(reportFolder.getFile(PMDRuntimeConstants.HTML_REPORT_NAME).exists());
+
+        this.testProject.deleteMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_INFINITE);
+        reportFolder.delete(true, false, null);
+    }
+
     private static int countMatches(String s, String pattern) {
         int count = 0;
         int index = s.indexOf(pattern);
@@ -114,6 +114,52 @@ public class ReviewCmdTest {
         }
     }
 
+    /**
+     * The batched, multi-threaded mode finds the same violations as the single file mode.
+     */
+    @Test
+    public void testReviewCmdThreads() throws CoreException {
+        final ReviewCodeCmd single = new ReviewCodeCmd();
+        single.addResource(this.testProject);
+        single.performExecute();
+        single.join();
+
+        final ReviewCodeCmd batched = new ReviewCodeCmd();
+        batched.addResource(this.testProject);
+        batched.setThreads(2);
+        batched.performExecute();
+        batched.join();
+
+        final IFile sourceFile = this.testProject.getFile("/src/Test.java");
+        Assert.assertEquals(0, batched.getErrorCount());
+        Assert.assertEquals(single.getFileCount(), batched.getFileCount());
+        Assert.assertFalse(batched.getMarkers().get(sourceFile).isEmpty());
+        Assert.assertEquals(single.getMarkers().get(sourceFile).size(), batched.getMarkers().get(sourceFile).size());
+    }
+
+    /**
+     * Files, that could not be analyzed, are counted as errors only, in both modes.
+     */
+    @Test
+    public void testReviewCmdThreadsFailedFile() throws Exception {
+        EclipseUtils.createTestSourceFile(this.testProject, "/src/Broken.java", "class Broken {");
+
+        final ReviewCodeCmd single = new ReviewCodeCmd();
+        single.addResource(this.testProject);
+        single.performExecute();
+        single.join();
+
+        final ReviewCodeCmd batched = new ReviewCodeCmd();
+        batched.addResource(this.testProject);
+        batched.setThreads(2);
+        batched.performExecute();
+        batched.join();
+
+        Assert.assertEquals(1, single.getErrorCount());
+        Assert.assertEquals(1, batched.getErrorCount());
+        Assert.assertEquals(single.getFileCount(), batched.getFileCount());
+    }
+
     private IFile createMissingOverrideTestCase(IProject project) throws Exception {
         EclipseUtils.createTestSourceFile(project, "/src/MyInterface.java", "public interface MyInterface { void run(); }");
         IFile sourceFile = EclipseUtils.createTestSourceFile(project, "/src/Foo.java",
@@ -142,7 +188,7 @@ public class ReviewCmdTest {
                 .isProjectBuildPathEnabled();
 
         try {
-            PMDPlugin.getDefault().getPreferencesManager().loadPreferences().setProjectBuildPathEnabled(true);
+            setProjectBuildPathEnabled(true);
             IFile sourceFile = createMissingOverrideTestCase(testProject);
 
             ReviewCodeCmd cmd = new ReviewCodeCmd();
@@ -154,7 +200,7 @@ public class ReviewCmdTest {
             Assert.assertFalse("Type Resolution didn't work", markers.get(sourceFile).isEmpty());
 
             // without type resolution, there is no violation
-            PMDPlugin.getDefault().getPreferencesManager().loadPreferences().setProjectBuildPathEnabled(false);
+            setProjectBuildPathEnabled(false);
             cmd = new ReviewCodeCmd();
             cmd.addResource(testProject);
             cmd.performExecute();
@@ -164,7 +210,7 @@ public class ReviewCmdTest {
             Assert.assertTrue(markers.get(sourceFile).isEmpty());
 
         } finally {
-            PMDPlugin.getDefault().getPreferencesManager().loadPreferences().setProjectBuildPathEnabled(oldSetting);
+            setProjectBuildPathEnabled(oldSetting);
         }
     }
 
@@ -199,7 +245,7 @@ public class ReviewCmdTest {
             RuleSet projectRuleSet = RuleSetUtil.newSingle(missingOVerrideRule);
             properties.setProjectRuleSet(projectRuleSet);
 
-            PMDPlugin.getDefault().getPreferencesManager().loadPreferences().setProjectBuildPathEnabled(true);
+            setProjectBuildPathEnabled(true);
             IFile sourceFile = createMissingOverrideTestCase(newProject);
 
             ReviewCodeCmd cmd = new ReviewCodeCmd();
@@ -211,7 +257,7 @@ public class ReviewCmdTest {
             Assert.assertFalse("Type Resolution didn't work", markers.get(sourceFile).isEmpty());
 
             // without type resolution, there is no violation
-            PMDPlugin.getDefault().getPreferencesManager().loadPreferences().setProjectBuildPathEnabled(false);
+            setProjectBuildPathEnabled(false);
             cmd = new ReviewCodeCmd();
             cmd.addResource(newProject);
             cmd.performExecute();
@@ -221,7 +267,7 @@ public class ReviewCmdTest {
             Assert.assertTrue(markers.get(sourceFile).isEmpty());
 
         } finally {
-            PMDPlugin.getDefault().getPreferencesManager().loadPreferences().setProjectBuildPathEnabled(oldSetting);
+            setProjectBuildPathEnabled(oldSetting);
 
             newProject.delete(true, true, null);
         }
@@ -286,7 +332,7 @@ public class ReviewCmdTest {
             EclipseUtils.createTestSourceFile(testProject, "/src/Test.js", "function(arg) { notDeclaredVariable = 1; }");
             testProject.refreshLocal(IResource.DEPTH_INFINITE, null);
 
-            PMDPlugin.getDefault().loadPreferences().setDetermineFiletypesAutomatically(false);
+            setDetermineFiletypesAutomatically(false);
 
             IProjectProperties projectProperties = PMDPlugin.getDefault().getPropertiesManager().loadProjectProperties(testProject);
             RuleSet projectRuleSet = projectProperties.getProjectRuleSet();
@@ -304,7 +350,19 @@ public class ReviewCmdTest {
             Assert.assertEquals(2, cmd.getFileCount()); // both files analyzed, although unnecessary, since only
             // the one java rule is active and no javascript rules
         } finally {
-            PMDPlugin.getDefault().loadPreferences().setDetermineFiletypesAutomatically(IPreferences.DETERMINE_FILETYPES_AUTOMATICALLY_DEFAULT);
+            setDetermineFiletypesAutomatically(IPreferences.DETERMINE_FILETYPES_AUTOMATICALLY_DEFAULT);
         }
     }
+
+    private static void setProjectBuildPathEnabled(boolean enabled) {
+        IPreferences preferences = PMDPlugin.getDefault().loadPreferencesForUpdate();
+        preferences.setProjectBuildPathEnabled(enabled);
+        preferences.sync();
+    }
+
+    private static void setDetermineFiletypesAutomatically(boolean enabled) {
+        IPreferences preferences = PMDPlugin.getDefault().loadPreferencesForUpdate();
+        preferences.setDetermineFiletypesAutomatically(enabled);
+        preferences.sync();
+    }
 }
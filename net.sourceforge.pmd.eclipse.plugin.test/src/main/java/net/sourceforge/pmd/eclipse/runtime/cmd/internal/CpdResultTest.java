@@ -0,0 +1,30 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CpdResultTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void readsOnlyTheRequestedLines() throws IOException {
+        File file = tempFolder.newFile("Sample.java");
+        Files.write(file.toPath(), "line 1\r\nline 2\nline 3\nline 4\n".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals("line 2\nline 3", CpdResult.readLines(file, StandardCharsets.UTF_8, 2, 3));
+        Assert.assertEquals("line 1", CpdResult.readLines(file, StandardCharsets.UTF_8, 1, 1));
+        Assert.assertEquals("line 4", CpdResult.readLines(file, StandardCharsets.UTF_8, 4, 10));
+    }
+}
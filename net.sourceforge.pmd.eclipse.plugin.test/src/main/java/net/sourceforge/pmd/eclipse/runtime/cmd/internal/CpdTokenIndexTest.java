@@ -0,0 +1,245 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.cpd.CpdCapableLanguage;
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+
+public class CpdTokenIndexTest {
+    private static final String SOURCE = "public class Foo {\n    int bar(int a) {\n        return a + 1;\n    }\n}\n";
+
+    private IProject testProject;
+    private CpdCapableLanguage language;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createProject("CpdTokenIndexTest");
+        language = (CpdCapableLanguage) LanguageRegistry.CPD.getLanguageById("java");
+        deleteIndexFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        deleteIndexFile();
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    private File indexFile() {
+        return PMDPlugin.getDefault().getStateLocation().append("cpd")
+                .append(testProject.getName() + "-" + language.getId() + ".index").toFile();
+    }
+
+    private void deleteIndexFile() {
+        File indexFile = indexFile();
+        if (indexFile.exists()) {
+            Assert.assertTrue(indexFile.delete());
+        }
+    }
+
+    private CpdTokenIndex load() {
+        return CpdTokenIndex.load(testProject, language, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void fileIsTokenizedOnlyOnce() throws Exception {
+        IFile file = EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE);
+        CpdTokenIndex index = load();
+        Assert.assertNull(index.getTokens(file));
+
+        Assert.assertTrue(index.update(file));
+        int[] tokens = index.getTokens(file);
+        Assert.assertNotNull(tokens);
+        Assert.assertTrue(tokens.length > 0);
+
+        Assert.assertFalse(index.update(file));
+        Assert.assertSame(tokens, index.getTokens(file));
+    }
+
+    @Test
+    public void changedStampWithSameContentIsNotTokenizedAgain() throws Exception {
+        IFile file = EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE);
+        CpdTokenIndex index = load();
+        index.update(file);
+        int[] tokens = index.getTokens(file);
+
+        long stamp = file.getModificationStamp();
+        file.setContents(new ByteArrayInputStream(SOURCE.getBytes(StandardCharsets.UTF_8)), true, false, null);
+        Assert.assertNotEquals(stamp, file.getModificationStamp());
+
+        Assert.assertFalse(index.update(file));
+        Assert.assertSame(tokens, index.getTokens(file));
+    }
+
+    @Test
+    public void changedContentIsTokenizedAgain() throws Exception {
+        IFile file = EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE);
+        CpdTokenIndex index = load();
+        index.update(file);
+        int[] tokens = index.getTokens(file);
+
+        EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE.replace("a + 1", "a * 2 + 1"));
+
+        Assert.assertTrue(index.update(file));
+        Assert.assertFalse(Arrays.equals(tokens, index.getTokens(file)));
+    }
+
+    @Test
+    public void changedFileHasNoTokensUntilUpdated() throws Exception {
+        IFile file = EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE);
+        CpdTokenIndex index = load();
+        index.update(file);
+
+        EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE.replace("a + 1", "a * 2 + 1"));
+        Assert.assertNull(index.getTokens(file));
+        Assert.assertFalse(index.isEmpty());
+
+        index.update(file);
+        Assert.assertNotNull(index.getTokens(file));
+    }
+
+    @Test
+    public void indexIsSavedAndLoaded() throws Exception {
+        IFile file = EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE);
+        CpdTokenIndex index = load();
+        index.update(file);
+        index.save();
+        Assert.assertTrue(indexFile().isFile());
+
+        CpdTokenIndex loaded = load();
+        Assert.assertArrayEquals(index.getTokens(file), loaded.getTokens(file));
+        // the modification stamp has been stored, too
+        Assert.assertFalse(loaded.update(file));
+    }
+
+    @Test
+    public void indexOfOtherFormatVersionIsIgnored() throws Exception {
+        IFile file = EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE);
+        CpdTokenIndex index = load();
+        index.update(file);
+        index.save();
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(indexFile()))) {
+            out.writeInt(Integer.MAX_VALUE);
+        }
+
+        CpdTokenIndex loaded = load();
+        Assert.assertNull(loaded.getTokens(file));
+        Assert.assertTrue(loaded.update(file));
+    }
+
+    @Test
+    public void indexOfOtherCharsetIsIgnored() throws Exception {
+        IFile file = EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE);
+        CpdTokenIndex index = load();
+        index.update(file);
+        index.save();
+
+        CpdTokenIndex loaded = CpdTokenIndex.load(testProject, language, StandardCharsets.ISO_8859_1);
+        Assert.assertNull(loaded.getTokens(file));
+    }
+
+    @Test
+    public void sharedIndexIsReused() {
+        CpdTokenIndex shared = CpdTokenIndex.get(testProject, language, StandardCharsets.UTF_8);
+
+        Assert.assertSame(shared, CpdTokenIndex.get(testProject, language, StandardCharsets.UTF_8));
+        Assert.assertNotSame(shared, load());
+    }
+
+    @Test
+    public void retainAllDropsOtherFiles() throws Exception {
+        IFile kept = EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE);
+        IFile dropped = EclipseUtils.createTestSourceFile(testProject, "Bar.java", SOURCE.replace("Foo", "Bar"));
+        CpdTokenIndex index = load();
+        index.update(kept);
+        index.update(dropped);
+
+        index.retainAll(Collections.singletonList(kept));
+
+        Assert.assertNotNull(index.getTokens(kept));
+        Assert.assertNull(index.getTokens(dropped));
+    }
+
+    @Test
+    public void removedFileIsNotSaved() throws Exception {
+        IFile file = EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE);
+        CpdTokenIndex index = load();
+        index.update(file);
+        index.save();
+
+        index.remove(file);
+        index.save();
+
+        Assert.assertNull(load().getTokens(file));
+    }
+
+    @Test
+    public void candidatesAreSelectedFromTheIndex() throws Exception {
+        IFile first = EclipseUtils.createTestSourceFile(testProject, "Foo.java", SOURCE);
+        IFile second = EclipseUtils.createTestSourceFile(testProject, "Bar.java", SOURCE.replace("Foo", "Bar"));
+        IFile other = EclipseUtils.createTestSourceFile(testProject, "Baz.java", "class Baz { }\n");
+        CpdTokenIndex index = load();
+        index.update(first);
+        index.update(second);
+        index.update(other);
+
+        Assert.assertEquals(Arrays.asList(first, second), CpdTokenIndex.selectCandidates(
+                Collections.singletonMap(testProject, index), Arrays.asList(first, second, other), 10));
+    }
+
+    @Test
+    public void selectsStreamsWithSharedWindows() {
+        int[] first = { 1, 2, 3, 4, 5, 6 };
+        int[] second = { 9, 3, 4, 5, 8 };
+        int[] third = { 1, 2, 7, 4, 5, 9 };
+
+        BitSet selected = CpdTokenIndex.findDuplicatedWindows(Arrays.asList(first, second, third), 3);
+
+        Assert.assertTrue(selected.get(0));
+        Assert.assertTrue(selected.get(1));
+        Assert.assertFalse(selected.get(2));
+    }
+
+    @Test
+    public void selectsDuplicatesWithinOneStream() {
+        int[] repeated = { 1, 2, 3, 0, 1, 2, 3 };
+        int[] unique = { 4, 5, 6, 7 };
+
+        BitSet selected = CpdTokenIndex.findDuplicatedWindows(Arrays.asList(repeated, unique), 3);
+
+        Assert.assertEquals(1, selected.cardinality());
+        Assert.assertTrue(selected.get(0));
+    }
+
+    @Test
+    public void alwaysSelectsMissingStreams() {
+        int[] unique = { 4, 5, 6, 7 };
+
+        BitSet selected = CpdTokenIndex.findDuplicatedWindows(Arrays.asList(null, unique), 3);
+
+        Assert.assertTrue(selected.get(0));
+        Assert.assertFalse(selected.get(1));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.cpd.CpdCapableLanguage;
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.runtime.cmd.internal.DuplicationIndex.DuplicatedLines;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+
+public class DuplicationIndexTest {
+    private static final String SUM = "    int sum(int[] values) {\n"
+            + "        int sum = 0;\n"
+            + "        for (int i = 0; i < values.length; i++) {\n"
+            + "            sum += values[i];\n"
+            + "        }\n"
+            + "        return sum;\n"
+            + "    }\n";
+    private static final String MAX = "    int max(int[] values) {\n"
+            + "        int max = Integer.MIN_VALUE;\n"
+            + "        for (int value : values) {\n"
+            + "            max = Math.max(max, value);\n"
+            + "        }\n"
+            + "        return max;\n"
+            + "    }\n";
+
+    private IProject testProject;
+    private CpdTokenIndex tokens;
+    private DuplicationIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createProject("DuplicationIndexTest");
+        CpdCapableLanguage language = (CpdCapableLanguage) LanguageRegistry.CPD.getLanguageById("java");
+        tokens = CpdTokenIndex.load(testProject, language, StandardCharsets.UTF_8);
+        index = new DuplicationIndex(tokens, 10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.dispose();
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    private IFile addFile(String name, String content) throws Exception {
+        IFile file = EclipseUtils.createTestSourceFile(testProject, name, content);
+        tokens.update(file);
+        index.add(file);
+        return file;
+    }
+
+    @Test
+    public void duplicatedWindowsAreMergedIntoOneRange() throws Exception {
+        IFile first = addFile("First.java", "class First {\n" + SUM + "}");
+        addFile("Second.java", "class Second {\n\n\n" + SUM + "}");
+
+        List<DuplicatedLines> duplicates = index.update(first);
+
+        Assert.assertEquals(1, duplicates.size());
+        // from the brace after the class name to the end of the file
+        Assert.assertEquals(1, duplicates.get(0).getBeginLine());
+        Assert.assertEquals(9, duplicates.get(0).getEndLine());
+        Assert.assertTrue(duplicates.get(0).getTokenCount() > 10);
+    }
+
+    @Test
+    public void separatedDuplicatesAreSeparateRanges() throws Exception {
+        IFile first = addFile("First.java", "class First {\n" + SUM + "    int unique;\n"
+                + "    String text = \"first\";\n" + MAX + "}");
+        addFile("Second.java", "class Second {\n" + SUM + MAX + "}");
+
+        List<DuplicatedLines> duplicates = index.update(first);
+
+        Assert.assertEquals(2, duplicates.size());
+        Assert.assertTrue(duplicates.get(0).getEndLine() < duplicates.get(1).getBeginLine());
+        Assert.assertEquals(11, duplicates.get(1).getBeginLine());
+        Assert.assertEquals(18, duplicates.get(1).getEndLine());
+    }
+
+    @Test
+    public void duplicatesDisappearWithTheOtherFile() throws Exception {
+        IFile first = addFile("First.java", "class First {\n" + SUM + "}");
+        IFile second = addFile("Second.java", "class Second {\n" + SUM + "}");
+        Assert.assertFalse(index.update(first).isEmpty());
+
+        index.remove(second);
+
+        Assert.assertTrue(index.update(first).isEmpty());
+    }
+
+    @Test
+    public void changedFileIsCountedOnce() throws Exception {
+        IFile first = addFile("First.java", "class First {\n" + SUM + "}");
+        IFile second = addFile("Second.java", "class Second {\n" + SUM + "}");
+
+        EclipseUtils.createTestSourceFile(testProject, "Second.java", "class Second {\n" + MAX + "}");
+        Assert.assertTrue(index.update(second).isEmpty());
+        Assert.assertTrue(index.update(first).isEmpty());
+    }
+
+    @Test
+    public void disposedIndexIsInvalid() {
+        index.dispose();
+
+        Assert.assertFalse(index.isValid());
+    }
+}
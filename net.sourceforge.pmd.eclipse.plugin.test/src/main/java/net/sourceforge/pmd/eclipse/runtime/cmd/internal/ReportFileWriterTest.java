@@ -0,0 +1,95 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+
+public class ReportFileWriterTest {
+    private IProject testProject;
+    private Path tempFile;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createProject("ReportFileWriterTest");
+        tempFile = Files.createTempFile("pmd-report-test", ".tmp");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(tempFile);
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    private boolean isBlank(final String content) throws IOException {
+        ReportFileWriter.render(tempFile, writer -> writer.write(content));
+        return ReportFileWriter.isBlank(tempFile);
+    }
+
+    private static String contentOf(IFile file) throws Exception {
+        try (InputStream in = file.getContents()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void blankReportsAreDetected() throws Exception {
+        Assert.assertTrue(isBlank(""));
+        Assert.assertTrue(isBlank(" \n\t\r\n "));
+        Assert.assertFalse(isBlank("<pmd/>"));
+        // the other character is behind the first buffer
+        char[] spaces = new char[20_000];
+        Arrays.fill(spaces, ' ');
+        Assert.assertFalse(isBlank(new String(spaces) + "x"));
+    }
+
+    @Test
+    public void reportIsCreatedAndOverwritten() throws Exception {
+        IFile file = testProject.getFile("report.txt");
+
+        ReportFileWriter.write(file, writer -> writer.write("first"), null);
+        Assert.assertTrue(file.exists());
+        Assert.assertEquals("first", contentOf(file));
+
+        ReportFileWriter.write(file, writer -> writer.write("second"), null);
+        Assert.assertEquals("second", contentOf(file));
+    }
+
+    @Test
+    public void reportIsWrittenWithUtf8() throws Exception {
+        IFile file = testProject.getFile("report.txt");
+
+        ReportFileWriter.write(file, writer -> writer.write("R\u00e9sum\u00e9 \u20ac"), null);
+
+        Assert.assertEquals(StandardCharsets.UTF_8.name(), file.getCharset());
+        Assert.assertEquals("R\u00e9sum\u00e9 \u20ac", contentOf(file));
+    }
+
+    @Test
+    public void emptyReportIsWritten() throws Exception {
+        IFile file = testProject.getFile("report.txt");
+
+        ReportFileWriter.write(file, writer -> { }, null);
+
+        Assert.assertTrue(file.exists());
+        Assert.assertEquals("", contentOf(file));
+    }
+}
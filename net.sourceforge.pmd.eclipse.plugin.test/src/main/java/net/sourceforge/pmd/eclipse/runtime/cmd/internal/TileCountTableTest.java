@@ -0,0 +1,76 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TileCountTableTest {
+
+    @Test
+    public void countsOccurrences() {
+        TileCountTable table = new TileCountTable(16, 1024);
+        Assert.assertTrue(table.increment(42L));
+        Assert.assertTrue(table.increment(42L));
+        Assert.assertTrue(table.increment(0L));
+
+        Assert.assertEquals(2, table.get(42L));
+        Assert.assertEquals(1, table.get(0L));
+        Assert.assertEquals(0, table.get(7L));
+        Assert.assertEquals(2, table.size());
+
+        table.decrement(42L);
+        Assert.assertEquals(1, table.get(42L));
+        table.decrement(42L);
+        Assert.assertEquals(0, table.get(42L));
+        Assert.assertEquals(1, table.size());
+    }
+
+    @Test
+    public void growsAndKeepsKeysAfterRemovals() {
+        TileCountTable table = new TileCountTable(16, 1 << 16);
+        for (long key = 0; key < 10_000; key++) {
+            Assert.assertTrue(table.increment(key * 31));
+        }
+        for (long key = 0; key < 10_000; key += 2) {
+            table.decrement(key * 31);
+        }
+
+        Assert.assertEquals(5_000, table.size());
+        for (long key = 0; key < 10_000; key++) {
+            Assert.assertEquals(key % 2 == 0 ? 0 : 1, table.get(key * 31));
+        }
+    }
+
+    @Test
+    public void failsWhenFull() {
+        TileCountTable table = new TileCountTable(16, 16);
+        for (long key = 0; key < 12; key++) {
+            Assert.assertTrue(table.increment(key));
+        }
+        Assert.assertFalse(table.increment(100L));
+        Assert.assertTrue(table.increment(3L));
+        Assert.assertEquals(2, table.get(3L));
+    }
+
+    @Test
+    public void sharedBudgetBoundsAllTables() {
+        TileCountTable.SlotBudget budget = new TileCountTable.SlotBudget(32);
+        TileCountTable first = new TileCountTable(16, budget);
+        TileCountTable second = new TileCountTable(16, budget);
+        Assert.assertEquals(32, budget.getUsedSlots());
+
+        for (long key = 0; key < 12; key++) {
+            Assert.assertTrue(first.increment(key));
+        }
+        Assert.assertFalse(first.increment(100L));
+
+        second.release();
+        Assert.assertEquals(16, budget.getUsedSlots());
+        Assert.assertFalse(second.increment(1L));
+        Assert.assertTrue(first.increment(100L));
+        Assert.assertEquals(32, budget.getUsedSlots());
+    }
+}
@@ -31,6 +31,8 @@ public class ChangeGlobalRuleSetExternallyTest {
         File ruleSetRealFile = ruleSetFile.toFile();
         ResourceUtil.copyResource(this, "test-ruleset.xml", ruleSetRealFile);
 
+        // external changes are detected periodically, don't wait for the next check
+        preferencesManager.checkForExternalChanges();
         RuleSet ruleSet2 = preferencesManager.getRuleSet();
         Assert.assertEquals(1, ruleSet2.size());
     }
@@ -31,6 +31,8 @@ public class PreferencesChangedExternallyTest {
             File prefsFileReal = prefsFile.toFile();
             ResourceUtil.copyResource(this, "pmd.prefs", prefsFileReal);
     
+            // external changes are detected periodically, don't wait for the next check
+            preferencesManager.checkForExternalChanges();
             IPreferences preferences2 = preferencesManager.loadPreferences();
             Assert.assertFalse(preferences2.isActive("AbstractClassWithoutAbstractMethod"));
             Assert.assertTrue(preferences2.isActive("DoNotCallSystemExit"));
@@ -4,6 +4,8 @@
 
 package net.sourceforge.pmd.eclipse.runtime.preferences.impl;
 
+import java.util.HashSet;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -23,7 +25,7 @@ public class PreferencesManagerImplTest {
         String ruleName = "LocalVariableCouldBeFinal";
 
         IPreferencesManager manager = PMDPlugin.getDefault().getPreferencesManager();
-        IPreferences preferences = manager.loadPreferences();
+        IPreferences preferences = manager.loadPreferencesForUpdate();
         preferences.isActive(ruleName, false);
         manager.storePreferences(preferences);
         Assert.assertFalse(preferences.getActiveRuleNames().contains(ruleName));
@@ -31,4 +33,57 @@ public class PreferencesManagerImplTest {
         preferences = manager.reloadPreferences();
         Assert.assertFalse(preferences.getActiveRuleNames().contains(ruleName));
     }
+
+    /**
+     * An empty value would be dropped by the preference store, the default active rules must not
+     * be used instead.
+     */
+    @Test
+    public void storeAndLoadNoActiveRules() {
+        IPreferencesManager manager = PMDPlugin.getDefault().getPreferencesManager();
+        IPreferences original = manager.loadPreferences();
+        Assert.assertFalse(original.getActiveRuleNames().isEmpty());
+        try {
+            IPreferences preferences = manager.loadPreferencesForUpdate();
+            preferences.setActiveRuleNames(new HashSet<>());
+            preferences.sync();
+
+            Assert.assertTrue(manager.reloadPreferences().getActiveRuleNames().isEmpty());
+        } finally {
+            manager.storePreferences(original);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void loadedPreferencesAreUnmodifiable() {
+        PMDPlugin.getDefault().getPreferencesManager().loadPreferences().setMinTileSize(42);
+    }
+
+    @Test
+    public void concurrentUpdatesAreMerged() {
+        IPreferencesManager manager = PMDPlugin.getDefault().getPreferencesManager();
+        IPreferences original = manager.loadPreferences();
+        int minTileSize = original.getMinTileSize();
+        int cpdThreadCount = original.getCpdThreadCount();
+        try {
+            IPreferences first = manager.loadPreferencesForUpdate();
+            IPreferences second = manager.loadPreferencesForUpdate();
+            first.setMinTileSize(minTileSize + 1);
+            second.setCpdThreadCount(cpdThreadCount + 1);
+            first.sync();
+            second.sync();
+
+            IPreferences preferences = manager.loadPreferences();
+            Assert.assertEquals(minTileSize + 1, preferences.getMinTileSize());
+            Assert.assertEquals(cpdThreadCount + 1, preferences.getCpdThreadCount());
+            preferences = manager.reloadPreferences();
+            Assert.assertEquals(minTileSize + 1, preferences.getMinTileSize());
+            Assert.assertEquals(cpdThreadCount + 1, preferences.getCpdThreadCount());
+
+            // the snapshot, that has been handed out before, didn't change
+            Assert.assertEquals(minTileSize, original.getMinTileSize());
+        } finally {
+            manager.storePreferences(original);
+        }
+    }
 }
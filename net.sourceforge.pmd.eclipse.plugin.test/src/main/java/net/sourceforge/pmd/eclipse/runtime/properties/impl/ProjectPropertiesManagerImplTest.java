@@ -45,6 +45,35 @@ public class ProjectPropertiesManagerImplTest {
         }
     }
 
+    @Test
+    public void testToStringSameAsJaxb() throws Exception {
+        ProjectPropertiesTO projectProperties = createProjectProperties();
+        Assert.assertEquals(manager.convertProjectPropertiesToStringWithJaxb(projectProperties),
+                manager.convertProjectPropertiesToString(projectProperties));
+
+        projectProperties.setWorkingSetName(null);
+        projectProperties.setRuleSetFile("<a & b>");
+        projectProperties.setExcludePatterns(new String[0]);
+        projectProperties.setIncludePatterns(null);
+        Assert.assertEquals(manager.convertProjectPropertiesToStringWithJaxb(projectProperties),
+                manager.convertProjectPropertiesToString(projectProperties));
+    }
+
+    @Test
+    public void testFromStringIgnoresUnknownElements() throws Exception {
+        String input = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<pmd><unknown><nested/></unknown><workingSet>ws</workingSet>"
+                + "<rules><rule><name>a</name><other/><ruleset>b</ruleset></rule></rules></pmd>";
+        ProjectPropertiesTO projectProperties = manager.convertProjectPropertiesFromString(input);
+        Assert.assertEquals("ws", projectProperties.getWorkingSetName());
+        Assert.assertEquals(1, projectProperties.getRules().length);
+        Assert.assertEquals("a", projectProperties.getRules()[0].getName());
+        Assert.assertEquals("b", projectProperties.getRules()[0].getRuleSetName());
+        // default values
+        Assert.assertTrue(projectProperties.isViolationsAsErrors());
+        Assert.assertTrue(projectProperties.isFullBuildEnabled());
+    }
+
     private ProjectPropertiesTO createProjectProperties() {
         ProjectPropertiesTO projectProperties = new ProjectPropertiesTO();
         projectProperties.setExcludePatterns(new String[] { ".project" });
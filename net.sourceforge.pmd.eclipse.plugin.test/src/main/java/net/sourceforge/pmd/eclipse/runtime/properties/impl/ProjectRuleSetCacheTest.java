@@ -0,0 +1,107 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.properties.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleSetLoader;
+
+public class ProjectRuleSetCacheTest {
+    private Path folder;
+    private final RuleSetLoader loader = new RuleSetLoader();
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("pmd-ruleset-cache");
+        ProjectRuleSetCache.getInstance().clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ProjectRuleSetCache.getInstance().clear();
+        FileUtils.deleteDirectory(folder.toFile());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = folder.resolve(name).toFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String ruleSet(String rules) {
+        return "<?xml version=\"1.0\"?>\n"
+                + "<ruleset name=\"test\" xmlns=\"http://pmd.sourceforge.net/ruleset/2.0.0\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                + " xsi:schemaLocation=\"http://pmd.sourceforge.net/ruleset/2.0.0"
+                + " https://pmd.sourceforge.io/ruleset_2_0_0.xsd\">\n"
+                + "  <description>test</description>\n" + rules + "</ruleset>\n";
+    }
+
+    private static String xpathRule(String message) {
+        return "  <rule name=\"MyRule\" language=\"java\" message=\"" + message + "\""
+                + " class=\"net.sourceforge.pmd.lang.rule.xpath.XPathRule\">\n"
+                + "    <priority>3</priority>\n"
+                + "    <properties><property name=\"xpath\"><value>//ClassDeclaration</value></property></properties>\n"
+                + "  </rule>\n";
+    }
+
+    private Rule load(File file) {
+        RuleSet ruleSet = ProjectRuleSetCache.getInstance().load(loader, file);
+        Assert.assertEquals(file.getPath(), ruleSet.getFileName());
+        Assert.assertEquals(1, ruleSet.size());
+        return ruleSet.getRules().iterator().next();
+    }
+
+    @Test
+    public void sameContentIsCopied() throws Exception {
+        File first = write("first.xml", ruleSet(xpathRule("message")));
+        File second = write("second.xml", ruleSet(xpathRule("message")));
+
+        Rule rule1 = load(first);
+        Rule rule2 = load(second);
+        Rule rule3 = load(first);
+
+        Assert.assertNotSame(rule1, rule2);
+        Assert.assertNotSame(rule1, rule3);
+        Assert.assertEquals("MyRule", rule2.getName());
+        Assert.assertEquals("message", rule2.getMessage());
+
+        // the copies are independent
+        rule1.setMessage("changed");
+        Assert.assertEquals("message", load(first).getMessage());
+    }
+
+    @Test
+    public void changedContentIsParsedAgain() throws Exception {
+        File file = write("ruleset.xml", ruleSet(xpathRule("first")));
+        Assert.assertEquals("first", load(file).getMessage());
+
+        write("ruleset.xml", ruleSet(xpathRule("second")));
+        Assert.assertEquals("second", load(file).getMessage());
+    }
+
+    @Test
+    public void changedReferencedFileIsParsedAgain() throws Exception {
+        File referenced = write("referenced.xml", ruleSet(xpathRule("first")));
+        String reference = referenced.getAbsolutePath().replace('\\', '/') + "/MyRule";
+        File file = write("ruleset.xml", ruleSet("  <rule ref=\"" + reference + "\"/>\n"));
+        Assert.assertEquals("first", load(file).getMessage());
+
+        write("referenced.xml", ruleSet(xpathRule("second")));
+        Assert.assertEquals("second", load(file).getMessage());
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LinesOfCodeCounterTest {
+    private static final String SOURCE = "package foo;\n"
+            + "\n"
+            + "/** Javadoc with {@link Bar}. */\n"
+            + "public class Foo {\n"
+            + "    // a comment\n"
+            + "    private String s = \"// not a comment\";\n"
+            + "\n"
+            + "    /*\n"
+            + "     * block comment\n"
+            + "     */\n"
+            + "    public void bar() /* inline */ {\n"
+            + "        int i = 1 / 2; /* trailing\n"
+            + "        comment */\n"
+            + "    }\n"
+            + "}\n";
+
+    @Test
+    public void countFromBytes() throws Exception {
+        Assert.assertEquals(3, LinesOfCodeCounter.count(
+                new ByteArrayInputStream(SOURCE.getBytes(StandardCharsets.UTF_8)), true));
+        Assert.assertEquals(5, LinesOfCodeCounter.count(
+                new ByteArrayInputStream(SOURCE.getBytes(StandardCharsets.UTF_8)), false));
+    }
+
+    @Test
+    public void countFromCharacters() throws Exception {
+        Assert.assertEquals(3, LinesOfCodeCounter.count(new StringReader(SOURCE), true));
+        Assert.assertEquals(3, FileRecord.linesOfCodeIn(SOURCE, true));
+    }
+
+    @Test
+    public void noBody() throws Exception {
+        Assert.assertEquals(0, LinesOfCodeCounter.count(new StringReader("package foo;\n"), true));
+    }
+}
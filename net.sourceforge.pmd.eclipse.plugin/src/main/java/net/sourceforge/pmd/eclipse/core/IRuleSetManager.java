@@ -51,4 +51,25 @@ public interface IRuleSetManager {
      * @return the plugin default ruleset set
      */
     Collection<RuleSet> getDefaultRuleSets();
+
+    /**
+     * Register an additional rule set by its descriptor. The rule set is only parsed
+     * when the registered rule sets are requested for the first time.
+     * @param descriptor the descriptor of the ruleset to register
+     */
+    void registerRuleSetDescriptor(RuleSetDescriptor descriptor);
+
+    /**
+     * Register a rule set for the default set by its descriptor. The rule set is only parsed
+     * when the default rule sets are requested for the first time.
+     * @param descriptor the descriptor of the ruleset to register
+     */
+    void registerDefaultRuleSetDescriptor(RuleSetDescriptor descriptor);
+
+    /**
+     * Gets the descriptors of the lazily registered rule sets.
+     * Calling this method doesn't trigger parsing of any rule set.
+     * @return the registered descriptors; this can be empty but never null
+     */
+    Collection<RuleSetDescriptor> getRegisteredRuleSetDescriptors();
 }
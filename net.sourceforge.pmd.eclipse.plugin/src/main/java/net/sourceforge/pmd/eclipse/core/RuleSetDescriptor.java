@@ -0,0 +1,79 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.core;
+
+import java.util.Objects;
+
+/**
+ * A lightweight description of a ruleset that can be registered without parsing it.
+ * The ruleset itself is loaded by the {@link IRuleSetManager} only when it is actually needed.
+ */
+public final class RuleSetDescriptor {
+    private final String name;
+    private final String languageId;
+    private final String fileName;
+
+    /**
+     * Constructor.
+     * @param name the name of the ruleset
+     * @param languageId the id of the language the ruleset belongs to
+     * @param fileName the resource path of the ruleset file, e.g. "category/java/bestpractices.xml"
+     */
+    public RuleSetDescriptor(String name, String languageId, String fileName) {
+        if (fileName == null) {
+            throw new IllegalArgumentException("fileName cannot be null");
+        }
+        this.name = name;
+        this.languageId = languageId;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Creates a descriptor for the given ruleset file. The name is derived from the file name.
+     * @param languageId the id of the language the ruleset belongs to
+     * @param fileName the resource path of the ruleset file
+     * @return the descriptor
+     */
+    public static RuleSetDescriptor forFile(String languageId, String fileName) {
+        String baseName = fileName.substring(fileName.lastIndexOf('/') + 1);
+        if (baseName.endsWith(".xml")) {
+            baseName = baseName.substring(0, baseName.length() - ".xml".length());
+        }
+        return new RuleSetDescriptor(baseName, languageId, fileName);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLanguageId() {
+        return languageId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return fileName.equals(((RuleSetDescriptor) obj).fileName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileName);
+    }
+
+    @Override
+    public String toString() {
+        return "RuleSetDescriptor[" + languageId + ":" + fileName + "]";
+    }
+}
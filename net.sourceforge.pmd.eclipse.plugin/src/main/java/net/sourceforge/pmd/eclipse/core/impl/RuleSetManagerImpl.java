@@ -6,24 +6,49 @@ package net.sourceforge.pmd.eclipse.core.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.eclipse.core.IRuleSetManager;
+import net.sourceforge.pmd.eclipse.core.RuleSetDescriptor;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.eclipse.ui.actions.internal.InternalRuleSetUtil;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleReference;
 import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleSetLoadException;
+import net.sourceforge.pmd.lang.rule.RuleSetLoader;
 
 /**
- *
+ * Rulesets can be registered either directly or by a {@link RuleSetDescriptor}. Rulesets,
+ * that are registered by descriptor, are parsed the first time the registered or default
+ * rulesets are requested.
  *
  * @author Philippe Herlin
  *
  */
 public class RuleSetManagerImpl implements IRuleSetManager {
-    
+    private static final Logger LOG = LoggerFactory.getLogger(RuleSetManagerImpl.class);
+
     private final List<RuleSet> ruleSets = new ArrayList<>();
     private final List<RuleSet> defaultRuleSets = new ArrayList<>();
 
+    private final Set<RuleSetDescriptor> ruleSetDescriptors = new LinkedHashSet<>();
+    private final Set<RuleSetDescriptor> pendingRuleSets = new LinkedHashSet<>();
+    private final Set<RuleSetDescriptor> pendingDefaultRuleSets = new LinkedHashSet<>();
+    private final List<Runnable> pendingActions = new ArrayList<>();
+    private boolean resolving;
+
     @Override
     public Collection<RuleSet> getRegisteredRuleSets() {
+        resolvePending();
         return ruleSets;
     }
 
@@ -44,6 +69,7 @@ public class RuleSetManagerImpl implements IRuleSetManager {
 
     @Override
     public Collection<RuleSet> getDefaultRuleSets() {
+        resolvePending();
         return defaultRuleSets;
     }
 
@@ -63,7 +89,106 @@ public class RuleSetManagerImpl implements IRuleSetManager {
         defaultRuleSets.remove(ruleSet);
     }
 
-    private void checkForNull(RuleSet ruleSet) {
+    @Override
+    public synchronized void registerRuleSetDescriptor(RuleSetDescriptor descriptor) {
+        checkForNull(descriptor);
+
+        ruleSetDescriptors.add(descriptor);
+        pendingRuleSets.add(descriptor);
+    }
+
+    @Override
+    public synchronized void registerDefaultRuleSetDescriptor(RuleSetDescriptor descriptor) {
+        checkForNull(descriptor);
+
+        ruleSetDescriptors.add(descriptor);
+        pendingDefaultRuleSets.add(descriptor);
+    }
+
+    @Override
+    public synchronized Collection<RuleSetDescriptor> getRegisteredRuleSetDescriptors() {
+        return new ArrayList<>(ruleSetDescriptors);
+    }
+
+    /**
+     * Schedules an action, that needs the parsed rulesets, e.g. processing the rulesets extension point.
+     * The action is executed once, right after the pending descriptors have been parsed, that is the
+     * first time the registered or default rulesets are requested.
+     *
+     * @param action the action to execute
+     */
+    public synchronized void runWhenResolved(Runnable action) {
+        pendingActions.add(action);
+    }
+
+    /**
+     * Parses all the rulesets, that have been registered by descriptor, but not loaded yet.
+     */
+    private synchronized void resolvePending() {
+        if (resolving || pendingRuleSets.isEmpty() && pendingDefaultRuleSets.isEmpty() && pendingActions.isEmpty()) {
+            return;
+        }
+
+        resolving = true;
+        try {
+            long start = System.currentTimeMillis();
+            RuleSetLoader loader = InternalRuleSetUtil.getDefaultRuleSetLoader();
+            Map<RuleSetDescriptor, RuleSet> loaded = new HashMap<>();
+            for (RuleSetDescriptor descriptor : pendingRuleSets) {
+                RuleSet ruleSet = load(loader, descriptor, loaded);
+                if (ruleSet != null) {
+                    registerRuleSet(ruleSet);
+                }
+            }
+            for (RuleSetDescriptor descriptor : pendingDefaultRuleSets) {
+                RuleSet ruleSet = load(loader, descriptor, loaded);
+                if (ruleSet != null) {
+                    registerDefaultRuleSet(ruleSet);
+                }
+            }
+            pendingRuleSets.clear();
+            pendingDefaultRuleSets.clear();
+            LOG.debug("Loaded {} registered rulesets in {} ms", loaded.size(), System.currentTimeMillis() - start);
+
+            List<Runnable> actions = new ArrayList<>(pendingActions);
+            pendingActions.clear();
+            for (Runnable action : actions) {
+                action.run();
+            }
+        } finally {
+            resolving = false;
+        }
+    }
+
+    private RuleSet load(RuleSetLoader loader, RuleSetDescriptor descriptor, Map<RuleSetDescriptor, RuleSet> loaded) {
+        RuleSet ruleSet = loaded.get(descriptor);
+        if (ruleSet == null) {
+            try {
+                ruleSet = removeDeprecatedRuleReferences(loader.loadFromResource(descriptor.getFileName()));
+                loaded.put(descriptor, ruleSet);
+            } catch (RuleSetLoadException e) {
+                LOG.warn("Problem loading registered ruleset {}", descriptor.getFileName(), e);
+            }
+        }
+        return ruleSet;
+    }
+
+    private RuleSet removeDeprecatedRuleReferences(RuleSet ruleSet) {
+        List<Rule> rules = new ArrayList<>(ruleSet.getRules());
+        Iterator<Rule> it = rules.iterator();
+        while (it.hasNext()) {
+            Rule rule = it.next();
+            if (rule.isDeprecated() && rule instanceof RuleReference) {
+                LOG.debug("Removed deprecated rule reference {} from ruleset {}", rule.getName(), ruleSet.getName());
+                it.remove();
+            }
+        }
+        RuleSet result = RuleSetUtil.clearRules(ruleSet);
+        result = RuleSetUtil.addRules(result, rules);
+        return result;
+    }
+
+    private void checkForNull(Object ruleSet) {
         if (ruleSet == null) {
             throw new IllegalArgumentException("ruleSet cannot be null"); // TODO NLS
         }
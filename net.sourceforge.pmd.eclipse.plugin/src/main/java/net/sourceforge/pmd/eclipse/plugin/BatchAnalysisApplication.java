@@ -0,0 +1,300 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceDescription;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.cmd.MarkerInfo2;
+import net.sourceforge.pmd.eclipse.runtime.cmd.RenderReportsCmd;
+import net.sourceforge.pmd.eclipse.runtime.cmd.ReviewCodeCmd;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.renderers.RendererFactory;
+
+/**
+ * A headless application, that runs the PMD analysis of the plugin over the projects of a workspace
+ * and writes the reports, e.g. in a continuous integration build. It uses the same configuration as
+ * the IDE: the PMD properties of the projects, the rulesets of the plugin, the working sets and the
+ * derived files policy.
+ *
+ * <pre>
+ * eclipse -nosplash -application net.sourceforge.pmd.eclipse.plugin.batchAnalysis -data &lt;workspace&gt;
+ *     [-import &lt;dir&gt;]... [-projects &lt;name,...&gt;] [-formats &lt;format,...&gt;] [-threads &lt;n&gt;]
+ *     [-noFailOnViolation]
+ * </pre>
+ *
+ * <p>Without <code>-projects</code> all projects of the workspace, that have PMD enabled, are analyzed.
+ * The reports are written into the report folder of each project. Like the PMD command line, the
+ * exit code is 0 if no violations have been found, 4 if violations have been found and 1 if an
+ * error occurred.
+ */
+public class BatchAnalysisApplication implements IApplication {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchAnalysisApplication.class);
+
+    public static final Integer EXIT_ERROR = 1;
+    public static final Integer EXIT_VIOLATIONS = 4;
+
+    private static final String REPORT_NAME = "pmd-report";
+
+    private static final String USAGE = "Usage: -application net.sourceforge.pmd.eclipse.plugin.batchAnalysis"
+            + " -data <workspace> [-import <dir>]... [-projects <name,...>] [-formats <format,...>]"
+            + " [-threads <n>] [-noFailOnViolation]";
+
+    private final IProgressMonitor monitor = new NullProgressMonitor();
+
+    private final List<File> importDirs = new ArrayList<>();
+    private final List<String> projectNames = new ArrayList<>();
+    private final List<String> formats = new ArrayList<>(Arrays.asList("xml"));
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean failOnViolation = true;
+
+    @Override
+    public Object start(IApplicationContext context) {
+        String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+        try {
+            parseArguments(args == null ? new String[0] : args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_ERROR;
+        }
+
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        try {
+            return run(workspace);
+        } catch (CoreException | PropertiesException | RuntimeException e) {
+            LOG.error("The batch analysis failed", e);
+            System.err.println("The batch analysis failed: " + e);
+            return EXIT_ERROR;
+        } finally {
+            try {
+                workspace.save(true, monitor);
+            } catch (CoreException e) {
+                LOG.warn("Could not save the workspace", e);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        monitor.setCanceled(true);
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("-noFailOnViolation".equals(arg)) {
+                failOnViolation = false;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            if ("-import".equals(arg)) {
+                importDirs.add(new File(value));
+            } else if ("-projects".equals(arg)) {
+                projectNames.addAll(Arrays.asList(value.split(",")));
+            } else if ("-formats".equals(arg)) {
+                formats.clear();
+                formats.addAll(Arrays.asList(value.split(",")));
+            } else if ("-threads".equals(arg)) {
+                try {
+                    threads = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid thread count " + value);
+                }
+                if (threads < 0) {
+                    throw new IllegalArgumentException("Invalid thread count " + value);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+        for (String format : formats) {
+            // fails for unknown formats, before anything is analyzed
+            RendererFactory.createRenderer(format, new Properties());
+        }
+    }
+
+    private Integer run(IWorkspace workspace) throws CoreException, PropertiesException {
+        long start = System.currentTimeMillis();
+
+        // the projects are analyzed exactly once, by this application and not by the builder.
+        // The workspace might be used by the IDE, too, so its setting is restored afterwards.
+        IWorkspaceDescription description = workspace.getDescription();
+        boolean autoBuilding = description.isAutoBuilding();
+        description.setAutoBuilding(false);
+        workspace.setDescription(description);
+        try {
+            return analyze(workspace, start);
+        } finally {
+            description = workspace.getDescription();
+            description.setAutoBuilding(autoBuilding);
+            workspace.setDescription(description);
+        }
+    }
+
+    private Integer analyze(IWorkspace workspace, long start) throws CoreException, PropertiesException {
+        for (File dir : importDirs) {
+            importProjects(workspace, dir);
+        }
+        List<IProject> projects = selectProjects(workspace);
+        long workspaceDuration = System.currentTimeMillis() - start;
+
+        long reviewStart = System.currentTimeMillis();
+        ReviewCodeCmd review = new ReviewCodeCmd();
+        review.setMonitor(monitor);
+        // every file is analyzed, regardless of the full build setting
+        review.setUserInitiated(true);
+        review.setRunAlways(true);
+        review.setThreads(threads);
+        // misconfigured rules fail the run, there is nobody to ask
+        review.setInteractive(false);
+        for (IProject project : projects) {
+            review.addResource(project);
+        }
+        if (!projects.isEmpty()) {
+            review.execute();
+        }
+        long reviewDuration = System.currentTimeMillis() - reviewStart;
+
+        long reportStart = System.currentTimeMillis();
+        for (IProject project : projects) {
+            RenderReportsCmd render = new RenderReportsCmd();
+            render.setMonitor(monitor);
+            render.setProject(project);
+            for (String format : formats) {
+                Renderer renderer = RendererFactory.createRenderer(format, new Properties());
+                render.registerRenderer(renderer, REPORT_NAME + "." + renderer.defaultFileExtension());
+            }
+            render.execute();
+        }
+        long reportDuration = System.currentTimeMillis() - reportStart;
+
+        int violationCount = 0;
+        for (Set<MarkerInfo2> markers : review.getMarkers().values()) {
+            violationCount += markers.size();
+        }
+        long total = System.currentTimeMillis() - start;
+        printSummary(projects.size(), review, violationCount, workspaceDuration, reviewDuration, reportDuration,
+                total);
+
+        if (monitor.isCanceled() || review.getErrorCount() > 0 || review.getMisconfiguredRuleCount() > 0) {
+            return EXIT_ERROR;
+        }
+        return violationCount > 0 && failOnViolation ? EXIT_VIOLATIONS : EXIT_OK;
+    }
+
+    /**
+     * Imports the project in the directory or, if the directory isn't a project, the projects
+     * in its sub directories. Projects, that are already in the workspace, are kept.
+     */
+    private void importProjects(IWorkspace workspace, File dir) throws CoreException {
+        if (new File(dir, IProjectDescription.DESCRIPTION_FILE_NAME).isFile()) {
+            importProject(workspace, dir);
+            return;
+        }
+        File[] children = dir.listFiles();
+        if (children == null) {
+            throw new IllegalArgumentException("Not a directory: " + dir);
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (new File(child, IProjectDescription.DESCRIPTION_FILE_NAME).isFile()) {
+                importProject(workspace, child);
+            }
+        }
+    }
+
+    private void importProject(IWorkspace workspace, File dir) throws CoreException {
+        IPath location = Path.fromOSString(dir.getAbsolutePath());
+        IProjectDescription description = workspace
+                .loadProjectDescription(location.append(IProjectDescription.DESCRIPTION_FILE_NAME));
+        IProject project = workspace.getRoot().getProject(description.getName());
+        if (project.exists()) {
+            return;
+        }
+        if (location.equals(workspace.getRoot().getLocation().append(description.getName()))) {
+            // the default location must not be set explicitly
+            description.setLocation(null);
+        } else {
+            description.setLocation(location);
+        }
+        LOG.info("Importing project {} from {}", description.getName(), dir);
+        project.create(description, monitor);
+    }
+
+    /**
+     * Opens and refreshes the selected projects. Without explicit project names, the projects
+     * with PMD disabled are left out.
+     */
+    private List<IProject> selectProjects(IWorkspace workspace) throws CoreException, PropertiesException {
+        Set<IProject> candidates = new LinkedHashSet<>();
+        if (projectNames.isEmpty()) {
+            candidates.addAll(Arrays.asList(workspace.getRoot().getProjects()));
+        } else {
+            for (String name : projectNames) {
+                IProject project = workspace.getRoot().getProject(name.trim());
+                if (!project.exists()) {
+                    throw new IllegalArgumentException("Unknown project " + name);
+                }
+                candidates.add(project);
+            }
+        }
+
+        List<IProject> projects = new ArrayList<>();
+        for (IProject project : candidates) {
+            if (!project.isOpen()) {
+                project.open(monitor);
+            }
+            // the files may have been changed outside of the workspace, e.g. by a checkout
+            project.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+            if (!projectNames.isEmpty() || PMDPlugin.getDefault().loadProjectProperties(project).isPmdEnabled()) {
+                projects.add(project);
+            }
+        }
+        return projects;
+    }
+
+    private static void printSummary(int projectCount, ReviewCodeCmd review, int violationCount,
+            long workspaceDuration, long reviewDuration, long reportDuration, long total) {
+        int fileCount = review.getFileCount();
+        System.out.printf(Locale.ROOT, "PMD batch analysis of %d projects%n", projectCount);
+        System.out.printf(Locale.ROOT, "  workspace %8d ms%n", workspaceDuration);
+        System.out.printf(Locale.ROOT, "  analysis  %8d ms (PMD %d ms)%n", reviewDuration, review.getPmdDuration());
+        System.out.printf(Locale.ROOT, "  reports   %8d ms%n", reportDuration);
+        System.out.printf(Locale.ROOT, "  total     %8d ms%n", total);
+        System.out.printf(Locale.ROOT, "%d files, %d violations, %d errors, %.1f files/s%n", fileCount,
+                violationCount, review.getErrorCount(),
+                reviewDuration > 0 ? fileCount * 1000.0 / reviewDuration : 0.0);
+        System.out.printf(Locale.ROOT, "The reports have been written into the folder \"%s\" of the projects%n",
+                PMDRuntimeConstants.REPORT_FOLDER);
+    }
+}
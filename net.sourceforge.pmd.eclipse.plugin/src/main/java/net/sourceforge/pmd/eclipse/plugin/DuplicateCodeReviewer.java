@@ -0,0 +1,333 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.plugin;
+
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.cpd.CpdCapableLanguage;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.cmd.CPDVisitor;
+import net.sourceforge.pmd.eclipse.runtime.cmd.internal.CpdTokenIndex;
+import net.sourceforge.pmd.eclipse.runtime.cmd.internal.DuplicationIndex;
+import net.sourceforge.pmd.eclipse.runtime.cmd.internal.DuplicationIndex.DuplicatedLines;
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+
+/**
+ * Checks the saved files for duplicated code. A resident {@link DuplicationIndex} is kept per
+ * project and language. It is built the first time a file of the project is saved and afterwards
+ * updated with the added, changed and removed files. Only the saved file is tokenized and only its
+ * duplication markers are updated. The token indexes are shared with the CPD command.
+ *
+ * <p>The checks run in a background job, one file after the other.
+ */
+public class DuplicateCodeReviewer implements IResourceChangeListener {
+    private static final Logger LOG = LoggerFactory.getLogger(DuplicateCodeReviewer.class);
+
+    /** The resource change events, the reviewer is interested in. */
+    public static final int EVENT_MASK = IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLOSE
+            | IResourceChangeEvent.PRE_DELETE;
+
+    private static final String[] MARKER_ATTRIBUTES = { IMarker.MESSAGE, IMarker.SEVERITY, IMarker.LINE_NUMBER,
+        PMDRuntimeConstants.KEY_MARKERATT_LINE2, };
+
+    private final List<CpdCapableLanguage> languages = new ArrayList<>();
+    private final Map<String, ProjectIndex> indexes = new HashMap<>();
+
+    private final Object lock = new Object();
+    /** The files to check. The value is <code>true</code>, if the file has been removed. */
+    private final Map<IFile, Boolean> pending = new LinkedHashMap<>();
+    private final List<IProject> closedProjects = new ArrayList<>();
+    private final Job job = new CheckJob();
+
+    /**
+     * The index of a project for one language and the visitor, that selects its files.
+     */
+    private static final class ProjectIndex {
+        private final IProject project;
+        private final CPDVisitor filter;
+        private final DuplicationIndex index;
+
+        ProjectIndex(IProject project, CPDVisitor filter, DuplicationIndex index) {
+            this.project = project;
+            this.filter = filter;
+            this.index = index;
+        }
+    }
+
+    public DuplicateCodeReviewer() {
+        for (Language language : LanguageRegistry.CPD.getLanguages()) {
+            languages.add((CpdCapableLanguage) language);
+        }
+        job.setSystem(true);
+        job.setPriority(Job.DECORATE);
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        if (event.getType() == IResourceChangeEvent.PRE_CLOSE || event.getType() == IResourceChangeEvent.PRE_DELETE) {
+            if (event.getResource() instanceof IProject) {
+                synchronized (lock) {
+                    closedProjects.add((IProject) event.getResource());
+                }
+                job.schedule();
+            }
+            return;
+        }
+
+        final Map<IFile, Boolean> changes = new LinkedHashMap<>();
+        try {
+            event.getDelta().accept(new IResourceDeltaVisitor() {
+                @Override
+                public boolean visit(IResourceDelta delta) {
+                    if (delta.getResource() instanceof IFile) {
+                        IFile file = (IFile) delta.getResource();
+                        if (delta.getKind() == IResourceDelta.REMOVED) {
+                            changes.put(file, Boolean.TRUE);
+                        } else if (delta.getKind() == IResourceDelta.ADDED
+                                || (delta.getFlags() & IResourceDelta.CONTENT) != 0) {
+                            changes.put(file, Boolean.FALSE);
+                        }
+                        return false;
+                    }
+                    return true;
+                }
+            });
+        } catch (CoreException e) {
+            LOG.warn("Could not process the resource changes", e);
+        }
+
+        if (!changes.isEmpty()) {
+            synchronized (lock) {
+                pending.putAll(changes);
+            }
+            job.schedule(200);
+        }
+    }
+
+    /**
+     * Stops the checks, saves the token indexes and removes the duplication markers.
+     */
+    public void dispose() {
+        job.cancel();
+        synchronized (lock) {
+            pending.clear();
+        }
+        synchronized (indexes) {
+            for (ProjectIndex projectIndex : indexes.values()) {
+                projectIndex.index.getTokenIndex().save();
+                projectIndex.index.dispose();
+            }
+            indexes.clear();
+        }
+        try {
+            ResourcesPlugin.getWorkspace().getRoot().deleteMarkers(PMDRuntimeConstants.PMD_DUPLICATION_MARKER, false,
+                    IResource.DEPTH_INFINITE);
+        } catch (CoreException e) {
+            LOG.warn("Could not delete the duplication markers", e);
+        }
+    }
+
+    private static String getString(String key) {
+        return PMDPlugin.getDefault().getStringTable().getString(key);
+    }
+
+    private CpdCapableLanguage languageOf(IFile file) {
+        String extension = file.getFileExtension();
+        if (extension == null) {
+            return null;
+        }
+        for (CpdCapableLanguage language : languages) {
+            if (language.hasExtension(extension)) {
+                return language;
+            }
+        }
+        return null;
+    }
+
+    private void check(IFile file, boolean removed, IProgressMonitor monitor) throws CoreException {
+        CpdCapableLanguage language = languageOf(file);
+        if (language == null) {
+            return;
+        }
+
+        synchronized (indexes) {
+            String key = file.getProject().getName() + ":" + language.getId();
+            ProjectIndex projectIndex = indexes.get(key);
+            if (removed) {
+                if (projectIndex != null) {
+                    projectIndex.index.remove(file);
+                }
+                return;
+            }
+            if (!file.isAccessible()) {
+                return;
+            }
+
+            int minTileSize = PMDPlugin.getDefault().loadPreferences().getMinTileSize();
+            if (projectIndex == null || projectIndex.index.getMinTileSize() != minTileSize) {
+                if (projectIndex != null) {
+                    projectIndex.index.dispose();
+                    indexes.remove(key);
+                }
+                projectIndex = build(file.getProject(), language, minTileSize, monitor);
+                if (projectIndex == null) {
+                    return;
+                }
+                indexes.put(key, projectIndex);
+            }
+            if (!projectIndex.filter.accepts(file) || !projectIndex.index.isValid()) {
+                return;
+            }
+            updateMarkers(file, projectIndex.index.update(file));
+        }
+    }
+
+    private ProjectIndex build(IProject project, CpdCapableLanguage language, int minTileSize,
+            IProgressMonitor monitor) throws CoreException {
+        final CPDVisitor visitor = new CPDVisitor();
+        try {
+            final IProjectProperties properties = PMDPlugin.getDefault().loadProjectProperties(project);
+            if (!properties.isPmdEnabled()) {
+                return null;
+            }
+            visitor.setWorkingSet(properties.getProjectWorkingSet());
+            visitor.setIncludeDerivedFiles(properties.isIncludeDerivedFiles());
+        } catch (PropertiesException e) {
+            LOG.warn("Could not load the properties of project {}", project.getName(), e);
+            return null;
+        }
+        visitor.setLanguage(language);
+        visitor.setFiles(new ArrayList<>());
+        visitor.setResources(new ArrayList<>());
+        project.accept(visitor);
+
+        LOG.debug("Building the duplication index of {} for {}", project.getName(), language.getId());
+        CpdTokenIndex tokens = CpdTokenIndex.get(project, language, Charset.defaultCharset());
+        for (IFile file : visitor.getResources()) {
+            if (monitor.isCanceled()) {
+                return null;
+            }
+            tokens.update(file);
+        }
+        tokens.retainAll(visitor.getResources());
+        tokens.save();
+
+        DuplicationIndex index = new DuplicationIndex(tokens, minTileSize);
+        for (IFile file : visitor.getResources()) {
+            index.add(file);
+        }
+        return new ProjectIndex(project, visitor, index);
+    }
+
+    private static void updateMarkers(final IFile file, final List<DuplicatedLines> duplicates)
+            throws CoreException {
+        final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        workspace.run(new IWorkspaceRunnable() {
+            @Override
+            public void run(IProgressMonitor monitor) throws CoreException {
+                file.deleteMarkers(PMDRuntimeConstants.PMD_DUPLICATION_MARKER, false, IResource.DEPTH_ZERO);
+                for (DuplicatedLines duplicate : duplicates) {
+                    IMarker marker = file.createMarker(PMDRuntimeConstants.PMD_DUPLICATION_MARKER);
+                    marker.setAttributes(MARKER_ATTRIBUTES, new Object[] {
+                        MessageFormat.format(getString(StringKeys.VIEW_CPD_MARKER_DUPLICATED_CODE),
+                                duplicate.getTokenCount()),
+                        IMarker.SEVERITY_WARNING, duplicate.getBeginLine(), duplicate.getEndLine(), });
+                }
+            }
+        }, workspace.getRuleFactory().markerRule(file), IWorkspace.AVOID_UPDATE, null);
+    }
+
+    private void forgetClosedProjects() {
+        List<IProject> projects;
+        synchronized (lock) {
+            projects = new ArrayList<>(closedProjects);
+            closedProjects.clear();
+        }
+        if (projects.isEmpty()) {
+            return;
+        }
+        synchronized (indexes) {
+            Iterator<ProjectIndex> iterator = indexes.values().iterator();
+            while (iterator.hasNext()) {
+                ProjectIndex projectIndex = iterator.next();
+                if (projects.contains(projectIndex.project)) {
+                    projectIndex.index.getTokenIndex().save();
+                    projectIndex.index.dispose();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private Map.Entry<IFile, Boolean> next() {
+        synchronized (lock) {
+            Iterator<Map.Entry<IFile, Boolean>> iterator = pending.entrySet().iterator();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            Map.Entry<IFile, Boolean> entry = new AbstractMap.SimpleImmutableEntry<>(iterator.next());
+            iterator.remove();
+            return entry;
+        }
+    }
+
+    /**
+     * Checks the pending files, until there are none left.
+     */
+    private class CheckJob extends Job {
+        CheckJob() {
+            super(getString(StringKeys.VIEW_CPD_JOB_CHECK_DUPLICATED_CODE));
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            forgetClosedProjects();
+            Map.Entry<IFile, Boolean> change = next();
+            while (change != null) {
+                if (monitor.isCanceled()) {
+                    return Status.CANCEL_STATUS;
+                }
+                try {
+                    check(change.getKey(), change.getValue(), monitor);
+                } catch (CoreException e) {
+                    LOG.warn("Could not check {} for duplicated code", change.getKey(), e);
+                }
+                change = next();
+            }
+            return Status.OK_STATUS;
+        }
+    }
+}
@@ -4,16 +4,16 @@
 
 package net.sourceforge.pmd.eclipse.plugin;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
 
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
@@ -46,9 +46,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.eclipse.core.IRuleSetManager;
+import net.sourceforge.pmd.eclipse.core.RuleSetDescriptor;
 import net.sourceforge.pmd.eclipse.core.ext.RuleSetsExtensionProcessor;
 import net.sourceforge.pmd.eclipse.core.impl.RuleSetManagerImpl;
 import net.sourceforge.pmd.eclipse.logging.internal.LogbackConfiguration;
+import net.sourceforge.pmd.eclipse.runtime.builder.AnalysisResultStore;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferencesFactory;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferencesManager;
@@ -62,19 +65,15 @@ import net.sourceforge.pmd.eclipse.runtime.writer.IAstWriter;
 import net.sourceforge.pmd.eclipse.runtime.writer.IRuleSetWriter;
 import net.sourceforge.pmd.eclipse.runtime.writer.impl.WriterFactoryImpl;
 import net.sourceforge.pmd.eclipse.ui.RuleLabelDecorator;
-import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
-import net.sourceforge.pmd.eclipse.ui.actions.internal.InternalRuleSetUtil;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 import net.sourceforge.pmd.eclipse.ui.nls.StringTable;
 import net.sourceforge.pmd.eclipse.ui.priority.PriorityDescriptorCache;
 import net.sourceforge.pmd.eclipse.ui.views.PriorityFilter;
 import net.sourceforge.pmd.eclipse.util.ResourceManager;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.java.JavaLanguageModule;
-import net.sourceforge.pmd.lang.rule.Rule;
-import net.sourceforge.pmd.lang.rule.RuleReference;
-import net.sourceforge.pmd.lang.rule.RuleSet;
-import net.sourceforge.pmd.lang.rule.RuleSetLoadException;
 import net.sourceforge.pmd.lang.rule.RuleSetLoader;
 
 /**
@@ -95,6 +94,7 @@ public class PMDPlugin extends AbstractUIPlugin {
     public static String version = "unknown";
 
     private FileChangeReviewer changeReviewer;
+    private DuplicateCodeReviewer duplicateCodeReviewer;
 
     private Map<RGB, Color> coloursByRgb = new HashMap<>();
 
@@ -103,7 +103,7 @@ public class PMDPlugin extends AbstractUIPlugin {
     private IPreferencesFactory preferencesFactory = new PreferencesFactoryImpl();
     private IPropertiesFactory propertiesFactory = new PropertiesFactoryImpl();
 
-    private final IRuleSetManager ruleSetManager = new RuleSetManagerImpl();
+    private final RuleSetManagerImpl ruleSetManager = new RuleSetManagerImpl();
 
     private final LogbackConfiguration logbackConfiguration = new LogbackConfiguration();
 
@@ -193,6 +193,7 @@ public class PMDPlugin extends AbstractUIPlugin {
         logbackConfiguration.applyLogPreferences(prefs.getLogFileName(), prefs.getLogLevelName());
         registerAdditionalRuleSets();
         fileChangeListenerEnabled(prefs.isCheckAfterSaveEnabled());
+        duplicateCodeReviewerEnabled(prefs.isCpdCheckAfterSaveEnabled());
 
         // if a project is deleted, remove the cached project properties
         ResourcesPlugin.getWorkspace().addResourceChangeListener(new IResourceChangeListener() {
@@ -204,6 +205,11 @@ public class PMDPlugin extends AbstractUIPlugin {
             }
         });
 
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(ViolationIndex.getInstance(),
+                ViolationIndex.EVENT_MASK);
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(AnalysisResultStore.getInstance(),
+                AnalysisResultStore.EVENT_MASK);
+
         // the initialization can only take place, after the plugin has been started.
         // otherwise the preferences are not available yet.
         PriorityFilter.getInstance().initialize();
@@ -247,6 +253,27 @@ public class PMDPlugin extends AbstractUIPlugin {
         }
     }
     
+    /**
+     * Enables or disables the check of the saved files for duplicated code.
+     * When it is disabled, the duplication markers are removed.
+     *
+     * @param flag <code>true</code> to enable the check
+     */
+    public void duplicateCodeReviewerEnabled(boolean flag) {
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+
+        if (flag) {
+            if (duplicateCodeReviewer == null) {
+                duplicateCodeReviewer = new DuplicateCodeReviewer();
+                workspace.addResourceChangeListener(duplicateCodeReviewer, DuplicateCodeReviewer.EVENT_MASK);
+            }
+        } else if (duplicateCodeReviewer != null) {
+            workspace.removeResourceChangeListener(duplicateCodeReviewer);
+            duplicateCodeReviewer.dispose();
+            duplicateCodeReviewer = null;
+        }
+    }
+
     /** 
      * Get a view from the view id. 
      * @param id id of the view 
@@ -300,6 +327,11 @@ public class PMDPlugin extends AbstractUIPlugin {
     @Override
     public void stop(BundleContext context) throws Exception {
         fileChangeListenerEnabled(false);
+        duplicateCodeReviewerEnabled(false);
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(ViolationIndex.getInstance());
+        ViolationIndex.getInstance().clear();
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(AnalysisResultStore.getInstance());
+        AnalysisResultStore.getInstance().dispose();
 
         disposeResources();
         ResourceManager.dispose();
@@ -420,6 +452,13 @@ public class PMDPlugin extends AbstractUIPlugin {
         return getPreferencesManager().loadPreferences();
     }
 
+    /**
+     * Load a modifiable copy of the PMD plugin preferences
+     */
+    public IPreferences loadPreferencesForUpdate() {
+        return getPreferencesManager().loadPreferencesForUpdate();
+    }
+
     /**
      * @return the plugin preferences manager
      */
@@ -502,141 +541,98 @@ public class PMDPlugin extends AbstractUIPlugin {
     }
 
     /**
-     * Registering the standard rulesets.
+     * Registering the standard rulesets. Only the descriptors are registered here, the
+     * rulesets are parsed when they are needed for the first time.
      *
      */
     private void registerStandardRuleSets() {
-        RuleSetLoader loader = InternalRuleSetUtil.getDefaultRuleSetLoader();
-
-        try {
-            final IRuleSetManager manager = getRuleSetManager();
-            for (RuleSet ruleset : loader.getStandardRuleSets()) {
-                RuleSet modifiedRuleSet = removeDeprecatedRuleReferences(ruleset);
-                manager.registerRuleSet(modifiedRuleSet);
-                manager.registerDefaultRuleSet(modifiedRuleSet);
-                
-            }
-        } catch (RuleSetLoadException e) {
-            log(IStatus.WARNING, "Problem getting all registered PMD RuleSets", e);
-        }
-    }
-
-    private RuleSet removeDeprecatedRuleReferences(RuleSet ruleSet) {
-        List<Rule> rules = new ArrayList<>(ruleSet.getRules());
-        Iterator<Rule> it = rules.iterator();
-        while (it.hasNext()) {
-            Rule rule = it.next();
-            if (rule.isDeprecated() && rule instanceof RuleReference) {
-                LOG.debug("Removed deprecated rule reference {} from ruleset {}", rule.getName(), ruleSet.getName());
-                it.remove();
+        long start = System.currentTimeMillis();
+        final IRuleSetManager manager = getRuleSetManager();
+        for (Language language : LanguageRegistry.PMD.getLanguages()) {
+            String categoriesProperties = "category/" + language.getId() + "/categories.properties";
+            try (InputStream in = RuleSetLoader.class.getClassLoader().getResourceAsStream(categoriesProperties)) {
+                if (in == null) {
+                    LOG.debug("The language {} provides no {}", language.getId(), categoriesProperties);
+                    continue;
+                }
+                Properties props = new Properties();
+                props.load(in);
+                String ruleSetFileNames = props.getProperty("rulesets.filenames");
+                if (ruleSetFileNames == null) {
+                    continue;
+                }
+                for (String fileName : ruleSetFileNames.split(",")) {
+                    if (StringUtils.isNotBlank(fileName)) {
+                        RuleSetDescriptor descriptor = RuleSetDescriptor.forFile(language.getId(), fileName.trim());
+                        manager.registerRuleSetDescriptor(descriptor);
+                        manager.registerDefaultRuleSetDescriptor(descriptor);
+                    }
+                }
+            } catch (IOException e) {
+                log(IStatus.WARNING, "Problem getting all registered PMD RuleSets", e);
             }
         }
-        RuleSet result = RuleSetUtil.clearRules(ruleSet);
-        result = RuleSetUtil.addRules(result, rules);
-        return result;
+        LOG.debug("Registered {} ruleset descriptors in {} ms", manager.getRegisteredRuleSetDescriptors().size(),
+                System.currentTimeMillis() - start);
     }
 
     /**
      * Register additional rulesets that may be provided by a fragment. Find extension points implementation and call
-     * them
+     * them, once the registered rulesets are parsed.
      *
      */
     private void registerAdditionalRuleSets() {
-        try {
-            final RuleSetsExtensionProcessor processor = new RuleSetsExtensionProcessor(getRuleSetManager());
-            processor.process();
-        } catch (CoreException e) {
-            log(IStatus.ERROR, "Error when processing RuleSets extensions", e);
-        }
+        // the extensions get the parsed rulesets, so they are processed only when
+        // the rulesets are needed for the first time
+        ruleSetManager.runWhenResolved(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final RuleSetsExtensionProcessor processor = new RuleSetsExtensionProcessor(ruleSetManager);
+                    processor.process();
+                } catch (CoreException e) {
+                    log(IStatus.ERROR, "Error when processing RuleSets extensions", e);
+                }
+            }
+        });
     }
 
     public RuleLabelDecorator ruleLabelDecorator() {
+        if (!PlatformUI.isWorkbenchRunning()) {
+            // e.g. in the headless batch analysis
+            return null;
+        }
         IDecoratorManager mgr = PlatformUI.getWorkbench().getDecoratorManager();
         return (RuleLabelDecorator) mgr.getBaseLabelProvider(RuleLabelDecorator.ID);
     }
 
+    /**
+     * Updates the decorations of the given files and their parents. The updates are
+     * coalesced by the decorator.
+     *
+     * @param changedFiles the files, whose violations might have changed
+     */
     public void changedFiles(Collection<IFile> changedFiles) {
-
         RuleLabelDecorator rld = ruleLabelDecorator();
         if (rld == null) {
             return;
         }
 
-        Collection<IResource> withParents = new HashSet<>(changedFiles.size() * 2);
-        withParents.addAll(changedFiles);
-        for (IFile file : changedFiles) {
-            IResource parent = file.getParent();
-            while (parent != null) {
-                withParents.add(parent);
-                parent = parent.getParent();
-            }
-        }
-
-        rld.changed(withParents);
-    }
-
-    private void addFilesTo(IResource resource, Collection<IResource> allKids) {
-
-        if (resource instanceof IFile) {
-            allKids.add(resource);
-            return;
-        }
-
-        if (resource instanceof IFolder) {
-            IFolder folder = (IFolder) resource;
-            IResource[] kids = null;
-            try {
-                kids = folder.members();
-            } catch (CoreException e) {
-                e.printStackTrace();
-            }
-            addKids(allKids, kids);
-
-            allKids.add(folder);
-            return;
-        }
-
-        if (resource instanceof IProject) {
-            IProject project = (IProject) resource;
-            IResource[] kids = null;
-            try {
-                kids = project.members();
-            } catch (CoreException e) {
-                e.printStackTrace();
-            }
-            addKids(allKids, kids);
-            allKids.add(project);
-        }
-    }
-
-    private void addKids(Collection<IResource> allKids, IResource[] kids) {
-
-        if (kids == null) {
-            return;
-        }
-
-        for (IResource irc : kids) {
-            if (irc instanceof IFile) {
-                allKids.add(irc);
-                continue;
-            }
-            if (irc instanceof IFolder) {
-                addFilesTo(irc, allKids);
-            }
-        }
+        rld.changed(changedFiles);
     }
 
+    /**
+     * Updates the decorations of the given resource, its members and its parents
+     * after the markers have been removed.
+     *
+     * @param resource the resource
+     */
     public void removedMarkersIn(IResource resource) {
-
         RuleLabelDecorator decorator = ruleLabelDecorator();
         if (decorator == null) {
             return;
         }
 
-        Collection<IResource> changes = new ArrayList<>();
-
-        addFilesTo(resource, changes);
-
-        decorator.changed(changes);
+        decorator.changedMembersOf(resource);
     }
 }
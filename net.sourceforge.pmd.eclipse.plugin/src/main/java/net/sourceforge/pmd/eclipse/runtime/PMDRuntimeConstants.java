@@ -25,6 +25,8 @@ public final class PMDRuntimeConstants {
 
     public static final String PMD_DFA_MARKER = PMDPlugin.PLUGIN_ID + ".pmdDFAMarker";
     public static final String PMD_TASKMARKER = PMDPlugin.PLUGIN_ID + ".pmdTaskMarker";
+    /** Marks duplicated code, that has been found on save. This is not a sub type of {@link #PMD_MARKER}. */
+    public static final String PMD_DUPLICATION_MARKER = PMDPlugin.PLUGIN_ID + ".pmdDuplicationMarker";
     public static final String[] RULE_MARKER_TYPES = new String[] { PMD_MARKER_1, PMD_MARKER_2,
         PMD_MARKER_3, PMD_MARKER_4, PMD_MARKER_5 };
     public static final String[] ALL_MARKER_TYPES = new String[] { PMD_MARKER, PMD_DFA_MARKER, PMD_TASKMARKER,
@@ -37,6 +39,10 @@ public final class PMDRuntimeConstants {
     public static final String KEY_MARKERATT_LINE2 = "line2";
     public static final String KEY_MARKERATT_VARIABLE = "variable";
     public static final String KEY_MARKERATT_METHODNAME = "method";
+    /** The package of the violation, as reported by PMD. Recorded so that reports need no Java model lookup. */
+    public static final String KEY_MARKERATT_PACKAGE = "package";
+    /** The class of the violation, as reported by PMD. Recorded so that reports need no Java model lookup. */
+    public static final String KEY_MARKERATT_CLASS = "class";
     /**
      * The message from the rule violation. This is additionally here, since IMarker.MESSAGE will
      * contain both rule name + message.
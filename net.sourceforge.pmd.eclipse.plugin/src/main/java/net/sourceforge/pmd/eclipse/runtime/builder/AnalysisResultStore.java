@@ -0,0 +1,597 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * Keeps the original data of the rule violations, that have been turned into markers. The
+ * markers only store a part of it (e.g. no columns), the store keeps all of it, so that reports
+ * are complete. The violations are stored per project in the state location, the strings
+ * are written only once per project file.
+ *
+ * <p>A stored violation belongs to a marker, identified by its id and creation time. Markers can be
+ * deleted without a new analysis (e.g. "Clear violations"), so the store is always used together with
+ * the current markers: only violations, whose marker still exists, are valid.
+ *
+ * <p>Changes are saved in the background, a few seconds after the last change, and when the plugin
+ * is stopped. The results of a project are unloaded, when it is closed, and removed, when it is
+ * deleted or renamed.
+ *
+ * <p>The store is thread-safe.
+ */
+public final class AnalysisResultStore implements IResourceChangeListener {
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisResultStore.class);
+
+    /** The resource change events, the store is interested in. */
+    public static final int EVENT_MASK = IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLOSE;
+
+    private static final String STORE_FOLDER = "results";
+    private static final String STORE_FILE_EXTENSION = ".results";
+    private static final int FORMAT_VERSION = 1;
+    private static final long SAVE_DELAY = 5000;
+
+    private static final AnalysisResultStore INSTANCE = new AnalysisResultStore();
+
+    private final Map<String, ProjectResults> projects = new HashMap<>();
+
+    /**
+     * Held while the store files are written or deleted, so that an older state of a project is never
+     * written after a newer one. The store itself is only locked to take a copy of the changed results,
+     * the files are written without blocking the analysis.
+     */
+    private final Object fileLock = new Object();
+
+    private final Job saveJob = new Job("Saving PMD analysis results") {
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            save();
+            return Status.OK_STATUS;
+        }
+    };
+
+    private AnalysisResultStore() {
+        // singleton
+        saveJob.setSystem(true);
+    }
+
+    public static AnalysisResultStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The data of a rule violation. Instances are immutable.
+     */
+    public static final class StoredViolation {
+        private final long markerCreationTime;
+        private final String ruleName;
+        private final String description;
+        private final int beginLine;
+        private final int beginColumn;
+        private final int endLine;
+        private final int endColumn;
+        private final String packageName;
+        private final String className;
+        private final String methodName;
+        private final String variableName;
+
+        StoredViolation(long markerCreationTime, String ruleName, String description, int beginLine,
+                int beginColumn, int endLine, int endColumn, String packageName, String className, String methodName,
+                String variableName) {
+            this.markerCreationTime = markerCreationTime;
+            this.ruleName = ruleName;
+            this.description = description;
+            this.beginLine = beginLine;
+            this.beginColumn = beginColumn;
+            this.endLine = endLine;
+            this.endColumn = endColumn;
+            this.packageName = packageName;
+            this.className = className;
+            this.methodName = methodName;
+            this.variableName = variableName;
+        }
+
+        /**
+         * Copies the data of the violation. The creation time of the marker is added, when the
+         * violation is stored.
+         */
+        public static StoredViolation of(RuleViolation violation) {
+            Map<String, String> additionalInfo = violation.getAdditionalInfo();
+            return new StoredViolation(0, violation.getRule().getName(), violation.getDescription(),
+                    violation.getBeginLine(), violation.getBeginColumn(), violation.getEndLine(),
+                    violation.getEndColumn(), additionalInfo.get(RuleViolation.PACKAGE_NAME),
+                    additionalInfo.get(RuleViolation.CLASS_NAME), additionalInfo.get(RuleViolation.METHOD_NAME),
+                    additionalInfo.get(RuleViolation.VARIABLE_NAME));
+        }
+
+        StoredViolation withMarkerCreationTime(long creationTime) {
+            return new StoredViolation(creationTime, ruleName, description, beginLine, beginColumn, endLine,
+                    endColumn, packageName, className, methodName, variableName);
+        }
+
+        long getMarkerCreationTime() {
+            return markerCreationTime;
+        }
+
+        public String getRuleName() {
+            return ruleName;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public int getBeginLine() {
+            return beginLine;
+        }
+
+        public int getBeginColumn() {
+            return beginColumn;
+        }
+
+        public int getEndLine() {
+            return endLine;
+        }
+
+        public int getEndColumn() {
+            return endColumn;
+        }
+
+        /**
+         * @return the package name, <code>null</code> if unknown
+         */
+        public String getPackageName() {
+            return packageName;
+        }
+
+        /**
+         * @return the class name, <code>null</code> if unknown
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return the method name, <code>null</code> if unknown
+         */
+        public String getMethodName() {
+            return methodName;
+        }
+
+        /**
+         * @return the variable name, <code>null</code> if unknown
+         */
+        public String getVariableName() {
+            return variableName;
+        }
+    }
+
+    /**
+     * The stored violations of one project.
+     */
+    static final class ProjectResults {
+        /** The marker ids of every file, by project relative path. */
+        final Map<String, long[]> markersByFile = new HashMap<>();
+        final Map<Long, StoredViolation> violationsByMarker = new HashMap<>();
+        boolean dirty;
+
+        void put(String path, long[] markerIds, StoredViolation[] violations) {
+            remove(path);
+            if (markerIds.length > 0) {
+                markersByFile.put(path, markerIds);
+                for (int i = 0; i < markerIds.length; i++) {
+                    violationsByMarker.put(markerIds[i], violations[i]);
+                }
+            }
+            dirty = true;
+        }
+
+        void remove(String path) {
+            long[] oldIds = markersByFile.remove(path);
+            if (oldIds != null) {
+                for (long id : oldIds) {
+                    violationsByMarker.remove(id);
+                }
+                dirty = true;
+            }
+        }
+
+        void write(DataOutput out) throws IOException {
+            StringTable strings = new StringTable();
+            for (StoredViolation violation : violationsByMarker.values()) {
+                strings.add(violation.ruleName);
+                strings.add(violation.description);
+                strings.add(violation.packageName);
+                strings.add(violation.className);
+                strings.add(violation.methodName);
+                strings.add(violation.variableName);
+            }
+            strings.write(out);
+
+            out.writeInt(markersByFile.size());
+            for (Map.Entry<String, long[]> entry : markersByFile.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (long id : entry.getValue()) {
+                    StoredViolation violation = violationsByMarker.get(id);
+                    out.writeLong(id);
+                    out.writeLong(violation.markerCreationTime);
+                    out.writeInt(strings.indexOf(violation.ruleName));
+                    out.writeInt(strings.indexOf(violation.description));
+                    out.writeInt(violation.beginLine);
+                    out.writeInt(violation.beginColumn);
+                    out.writeInt(violation.endLine);
+                    out.writeInt(violation.endColumn);
+                    out.writeInt(strings.indexOf(violation.packageName));
+                    out.writeInt(strings.indexOf(violation.className));
+                    out.writeInt(strings.indexOf(violation.methodName));
+                    out.writeInt(strings.indexOf(violation.variableName));
+                }
+            }
+        }
+
+        void read(DataInput in) throws IOException {
+            String[] strings = StringTable.read(in);
+            int fileCount = in.readInt();
+            for (int f = 0; f < fileCount; f++) {
+                String path = in.readUTF();
+                long[] ids = new long[in.readInt()];
+                StoredViolation[] violations = new StoredViolation[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = in.readLong();
+                    violations[i] = new StoredViolation(in.readLong(), stringAt(strings, in.readInt()),
+                            stringAt(strings, in.readInt()), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                            stringAt(strings, in.readInt()), stringAt(strings, in.readInt()),
+                            stringAt(strings, in.readInt()), stringAt(strings, in.readInt()));
+                }
+                put(path, ids, violations);
+            }
+            dirty = false;
+        }
+
+        private static String stringAt(String[] strings, int index) throws IOException {
+            if (index >= strings.length) {
+                throw new IOException("Invalid string index " + index);
+            }
+            return index < 0 ? null : strings[index];
+        }
+    }
+
+    /**
+     * The distinct strings of a project, written once. Index -1 stands for <code>null</code>.
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        void add(String string) {
+            if (string != null && !indexes.containsKey(string)) {
+                indexes.put(string, strings.size());
+                strings.add(string);
+            }
+        }
+
+        int indexOf(String string) {
+            return string == null ? -1 : indexes.get(string);
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                // not writeUTF, a message might be longer than 64k
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        static String[] read(DataInput in) throws IOException {
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return strings;
+        }
+    }
+
+    /**
+     * Replaces the stored violations of the file. Called after the markers of the file have been
+     * created anew.
+     *
+     * @param file the file
+     * @param markers the created markers
+     * @param violations the violation of each marker
+     */
+    public synchronized void update(IFile file, List<IMarker> markers, List<StoredViolation> violations) {
+        long[] ids = new long[markers.size()];
+        StoredViolation[] stored = new StoredViolation[markers.size()];
+        int count = 0;
+        for (int i = 0; i < markers.size(); i++) {
+            try {
+                stored[count] = violations.get(i).withMarkerCreationTime(markers.get(i).getCreationTime());
+                ids[count] = markers.get(i).getId();
+                count++;
+            } catch (CoreException e) {
+                // the marker has been deleted in the meantime
+                continue;
+            }
+        }
+        String path = file.getProjectRelativePath().toPortableString();
+        resultsOf(file.getProject()).put(path, Arrays.copyOf(ids, count), Arrays.copyOf(stored, count));
+        saveJob.schedule(SAVE_DELAY);
+    }
+
+    /**
+     * @param marker a rule violation marker
+     * @return the stored violation of the marker, <code>null</code> if the marker is not known,
+     *     e.g. because it has been created by an older version
+     */
+    public synchronized StoredViolation violationOf(IMarker marker) {
+        if (marker.getResource().getProject() == null) {
+            return null;
+        }
+        StoredViolation violation = resultsOf(marker.getResource().getProject()).violationsByMarker
+                .get(marker.getId());
+        try {
+            // marker ids might be reused, e.g. after a crash, the creation time tells them apart
+            if (violation != null && violation.markerCreationTime == marker.getCreationTime()) {
+                return violation;
+            }
+        } catch (CoreException e) {
+            // the marker has been deleted in the meantime
+        }
+        return null;
+    }
+
+    /**
+     * Drops the stored violations of the project, whose markers don't exist anymore.
+     *
+     * @param project the project
+     * @param markerIds the ids of all the current rule violation markers of the project
+     */
+    public synchronized void retainMarkers(IProject project, Set<Long> markerIds) {
+        ProjectResults results = resultsOf(project);
+        Iterator<Map.Entry<String, long[]>> files = results.markersByFile.entrySet().iterator();
+        while (files.hasNext()) {
+            Map.Entry<String, long[]> file = files.next();
+            long[] ids = file.getValue();
+            int count = 0;
+            for (long id : ids) {
+                if (markerIds.contains(id)) {
+                    ids[count++] = id;
+                } else {
+                    results.violationsByMarker.remove(id);
+                }
+            }
+            if (count < ids.length) {
+                results.dirty = true;
+                if (count == 0) {
+                    files.remove();
+                } else {
+                    file.setValue(Arrays.copyOf(ids, count));
+                }
+            }
+        }
+        if (results.dirty) {
+            saveJob.schedule(SAVE_DELAY);
+        }
+    }
+
+    /**
+     * Writes the changed projects into the state location.
+     */
+    public void save() {
+        synchronized (fileLock) {
+            Map<String, byte[]> contents = new HashMap<>();
+            synchronized (this) {
+                for (Map.Entry<String, ProjectResults> entry : projects.entrySet()) {
+                    byte[] content = contentOf(entry.getKey(), entry.getValue());
+                    if (content != null) {
+                        contents.put(entry.getKey(), content);
+                    }
+                }
+            }
+            for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+                if (!write(entry.getKey(), entry.getValue())) {
+                    synchronized (this) {
+                        ProjectResults results = projects.get(entry.getKey());
+                        if (results != null) {
+                            results.dirty = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Serializes the results, if they have been changed, and marks them as saved.
+     *
+     * @return the content of the store file, <code>null</code> if there is nothing to save
+     */
+    private static byte[] contentOf(String projectName, ProjectResults results) {
+        if (!results.dirty) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            results.write(out);
+        } catch (IOException e) {
+            LOG.warn("Could not save the analysis results of {}", projectName, e);
+            return null;
+        }
+        results.dirty = false;
+        return bytes.toByteArray();
+    }
+
+    private static boolean write(String projectName, byte[] content) {
+        File storeFile = storeFileOf(projectName);
+        File tempFile = new File(storeFile.getPath() + ".tmp");
+        try {
+            Files.write(tempFile.toPath(), content);
+            Files.move(tempFile.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not save the analysis results {}", storeFile, e);
+            return false;
+        }
+    }
+
+    /**
+     * Saves the results of the project and drops them from memory. They are loaded again,
+     * when they are needed.
+     *
+     * @param project the project
+     */
+    public void unload(IProject project) {
+        synchronized (fileLock) {
+            byte[] content = null;
+            synchronized (this) {
+                ProjectResults results = projects.remove(project.getName());
+                if (results != null) {
+                    content = contentOf(project.getName(), results);
+                }
+            }
+            if (content != null) {
+                write(project.getName(), content);
+            }
+        }
+    }
+
+    /**
+     * Removes the stored results of the project, e.g. because it has been deleted.
+     *
+     * @param project the project
+     */
+    public void remove(IProject project) {
+        synchronized (fileLock) {
+            synchronized (this) {
+                projects.remove(project.getName());
+            }
+            File storeFile = storeFileOf(project.getName());
+            if (storeFile.exists() && !storeFile.delete()) {
+                LOG.warn("Could not delete the analysis results {}", storeFile);
+            }
+        }
+    }
+
+    /**
+     * Saves the changes and removes the stored results of the projects, that don't exist anymore.
+     * Called when the plugin is stopped.
+     */
+    public void dispose() {
+        saveJob.cancel();
+        synchronized (fileLock) {
+            save();
+            synchronized (this) {
+                projects.clear();
+            }
+            File[] storeFiles = storeFolder().listFiles();
+            if (storeFiles == null) {
+                return;
+            }
+            for (File storeFile : storeFiles) {
+                String name = storeFile.getName();
+                if (name.endsWith(STORE_FILE_EXTENSION)) {
+                    String projectName = name.substring(0, name.length() - STORE_FILE_EXTENSION.length());
+                    if (!ResourcesPlugin.getWorkspace().getRoot().getProject(projectName).exists()
+                            && !storeFile.delete()) {
+                        LOG.warn("Could not delete the analysis results {}", storeFile);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        if (event.getType() == IResourceChangeEvent.PRE_CLOSE) {
+            unload((IProject) event.getResource());
+            return;
+        }
+        if (event.getDelta() == null) {
+            return;
+        }
+        // a renamed project is removed under its old name, the next analysis stores its results again
+        for (IResourceDelta projectDelta : event.getDelta().getAffectedChildren(IResourceDelta.REMOVED)) {
+            if (projectDelta.getResource() instanceof IProject) {
+                remove((IProject) projectDelta.getResource());
+            }
+        }
+    }
+
+    private ProjectResults resultsOf(IProject project) {
+        ProjectResults results = projects.get(project.getName());
+        if (results == null) {
+            results = new ProjectResults();
+            File storeFile = storeFileOf(project.getName());
+            if (storeFile.isFile()) {
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(storeFile)))) {
+                    if (in.readInt() == FORMAT_VERSION) {
+                        results.read(in);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("Could not load the analysis results {}", storeFile, e);
+                    results = new ProjectResults();
+                }
+            }
+            projects.put(project.getName(), results);
+        }
+        return results;
+    }
+
+    private static File storeFileOf(String projectName) {
+        return new File(storeFolder(), projectName + STORE_FILE_EXTENSION);
+    }
+
+    private static File storeFolder() {
+        File folder = PMDPlugin.getDefault().getStateLocation().append(STORE_FOLDER).toFile();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            LOG.warn("Could not create the analysis results folder {}", folder);
+        }
+        return folder;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+
+/**
+ * The rule violation markers of a resource together with their most used attributes, stored in columns.
+ * The markers are found with a single query for the {@link PMDRuntimeConstants#PMD_MARKER} super type,
+ * and the attributes of every marker are read with a single call. Row {@code i} describes the
+ * marker {@code getMarker(i)}.
+ *
+ * <p>A table is a snapshot. Markers, that are deleted while the table is built, are left out.
+ */
+public final class MarkerTable {
+
+    private static final Set<String> RULE_MARKER_TYPES = new HashSet<>(
+            Arrays.asList(PMDRuntimeConstants.RULE_MARKER_TYPES));
+
+    private static final String[] ATTRIBUTES = { PMDRuntimeConstants.KEY_MARKERATT_RULENAME,
+        PMDRuntimeConstants.KEY_MARKERATT_PRIORITY, IMarker.LINE_NUMBER, PMDRuntimeConstants.KEY_MARKERATT_LINE2,
+        IMarker.MESSAGE, PMDRuntimeConstants.KEY_MARKERATT_PACKAGE, PMDRuntimeConstants.KEY_MARKERATT_CLASS,
+        PMDRuntimeConstants.KEY_MARKERATT_METHODNAME, PMDRuntimeConstants.KEY_MARKERATT_VARIABLE, };
+
+    private final IMarker[] markers;
+    private final String[] ruleNames;
+    private final int[] priorities;
+    private final int[] lines;
+    private final int[] endLines;
+    private final String[] messages;
+    private final String[] packageNames;
+    private final String[] classNames;
+    private final String[] methodNames;
+    private final String[] variableNames;
+    private int size;
+
+    private MarkerTable(int capacity) {
+        markers = new IMarker[capacity];
+        ruleNames = new String[capacity];
+        priorities = new int[capacity];
+        lines = new int[capacity];
+        endLines = new int[capacity];
+        messages = new String[capacity];
+        packageNames = new String[capacity];
+        classNames = new String[capacity];
+        methodNames = new String[capacity];
+        variableNames = new String[capacity];
+    }
+
+    /**
+     * Queries the rule violation markers (all priorities) of the resource.
+     *
+     * @param resource the resource
+     * @param depth the depth, e.g. {@link IResource#DEPTH_INFINITE}
+     * @return the table, empty if the resource is not accessible
+     */
+    public static MarkerTable of(IResource resource, int depth) throws CoreException {
+        if (!resource.isAccessible()) {
+            return new MarkerTable(0);
+        }
+        return of(resource.findMarkers(PMDRuntimeConstants.PMD_MARKER, true, depth));
+    }
+
+    /**
+     * Builds the table from the given markers. Markers, that are not rule violation markers, are skipped.
+     *
+     * @param candidates the markers
+     * @return the table
+     */
+    public static MarkerTable of(IMarker[] candidates) {
+        MarkerTable table = new MarkerTable(candidates.length);
+        for (IMarker marker : candidates) {
+            try {
+                if (!isRuleMarkerType(marker.getType())) {
+                    // dataflow and task markers have the same super type
+                    continue;
+                }
+                Object[] values = marker.getAttributes(ATTRIBUTES);
+                int row = table.size++;
+                table.markers[row] = marker;
+                table.ruleNames[row] = values[0] instanceof String ? (String) values[0] : "";
+                table.priorities[row] = values[1] instanceof Integer ? (Integer) values[1] : 0;
+                table.lines[row] = values[2] instanceof Integer ? (Integer) values[2] : 0;
+                table.endLines[row] = values[3] instanceof Integer ? (Integer) values[3] : 0;
+                table.messages[row] = values[4] instanceof String ? (String) values[4] : null;
+                table.packageNames[row] = values[5] instanceof String ? (String) values[5] : null;
+                table.classNames[row] = values[6] instanceof String ? (String) values[6] : null;
+                table.methodNames[row] = values[7] instanceof String ? (String) values[7] : null;
+                table.variableNames[row] = values[8] instanceof String ? (String) values[8] : null;
+            } catch (CoreException e) {
+                // the marker has been deleted in the meantime
+                continue;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return <code>true</code> if the type is one of the rule violation marker types
+     * @see PMDRuntimeConstants#RULE_MARKER_TYPES
+     */
+    public static boolean isRuleMarkerType(String markerType) {
+        return RULE_MARKER_TYPES.contains(markerType);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public IMarker getMarker(int row) {
+        return markers[checkRow(row)];
+    }
+
+    public IResource getResource(int row) {
+        return markers[checkRow(row)].getResource();
+    }
+
+    /**
+     * @return the rule name, an empty string if it is missing
+     */
+    public String getRuleName(int row) {
+        return ruleNames[checkRow(row)];
+    }
+
+    /**
+     * @return the priority, 0 if it is missing
+     */
+    public int getPriority(int row) {
+        return priorities[checkRow(row)];
+    }
+
+    /**
+     * @return the line, 0 if it is missing
+     */
+    public int getLine(int row) {
+        return lines[checkRow(row)];
+    }
+
+    /**
+     * @return the end line, 0 if it is missing
+     */
+    public int getEndLine(int row) {
+        return endLines[checkRow(row)];
+    }
+
+    /**
+     * @return the message, <code>null</code> if it is missing
+     */
+    public String getMessage(int row) {
+        return messages[checkRow(row)];
+    }
+
+    /**
+     * @return the package name, <code>null</code> if it is missing (e.g. the marker has been
+     *     created by an older version)
+     */
+    public String getPackageName(int row) {
+        return packageNames[checkRow(row)];
+    }
+
+    /**
+     * @return the class name, <code>null</code> if it is missing
+     */
+    public String getClassName(int row) {
+        return classNames[checkRow(row)];
+    }
+
+    /**
+     * @return the method name, <code>null</code> if it is missing
+     */
+    public String getMethodName(int row) {
+        return methodNames[checkRow(row)];
+    }
+
+    /**
+     * @return the variable name, <code>null</code> if it is missing
+     */
+    public String getVariableName(int row) {
+        return variableNames[checkRow(row)];
+    }
+
+    /**
+     * @return a copy of the markers
+     */
+    public IMarker[] getMarkers() {
+        return Arrays.copyOf(markers, size);
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return row;
+    }
+}
@@ -5,7 +5,9 @@
 package net.sourceforge.pmd.eclipse.runtime.builder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -19,16 +21,14 @@ import org.eclipse.core.resources.IMarkerDelta;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
-import org.eclipse.core.resources.IResourceVisitor;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.runtime.CoreException;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex.FileSummary;
 import net.sourceforge.pmd.eclipse.ui.PMDUiConstants;
 import net.sourceforge.pmd.eclipse.ui.model.AbstractPMDRecord;
-import net.sourceforge.pmd.eclipse.ui.model.FileRecord;
-import net.sourceforge.pmd.eclipse.ui.model.MarkerRecord;
 import net.sourceforge.pmd.eclipse.ui.model.RootRecord;
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.RuleSet;
@@ -47,45 +47,7 @@ public final class MarkerUtil {
     }
 
     public static boolean hasAnyRuleMarkers(IResource resource) throws CoreException {
-
-        final boolean[] foundOne = new boolean[] { false };
-
-        IResourceVisitor ruleMarkerFinder = new IResourceVisitor() {
-            @Override
-            public boolean visit(IResource resource) {
-
-                if (foundOne[0]) {
-                    return false;
-                }
-
-                if (resource instanceof IFile) {
-
-                    for (String markerType : PMDRuntimeConstants.RULE_MARKER_TYPES) {
-                        IMarker[] ruleMarkers = null;
-                        try {
-                            ruleMarkers = resource.findMarkers(markerType, true, IResource.DEPTH_INFINITE);
-                        } catch (CoreException ignored) {
-                            // what do to?
-                        }
-                        if (ruleMarkers != null && ruleMarkers.length > 0) {
-                            foundOne[0] = true;
-                            return false;
-                        }
-                    }
-                }
-
-                return true;
-            }
-        };
-
-        try {
-            resource.accept(ruleMarkerFinder);
-        } catch (CoreException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-
-        return foundOne[0];
+        return ViolationIndex.getInstance().hasViolations(resource);
     }
 
     private static IProject projectFor(IResource resource) {
@@ -172,9 +134,8 @@ public final class MarkerUtil {
     public static List<IMarkerDelta> markerDeltasIn(IResourceChangeEvent event) {
 
         List<IMarkerDelta> deltas = new ArrayList<>();
-        for (String markerType : PMDRuntimeConstants.RULE_MARKER_TYPES) {
-            IMarkerDelta[] deltaArray = event.findMarkerDeltas(markerType, true);
-            for (IMarkerDelta delta : deltaArray) {
+        for (IMarkerDelta delta : event.findMarkerDeltas(PMDRuntimeConstants.PMD_MARKER, true)) {
+            if (MarkerTable.isRuleMarkerType(delta.getType())) {
                 deltas.add(delta);
             }
         }
@@ -234,6 +195,7 @@ public final class MarkerUtil {
         for (String markerType : markerTypes) {
             resource.deleteMarkers(markerType, true, IResource.DEPTH_INFINITE);
         }
+        ViolationIndex.getInstance().refresh(Collections.singleton(resource));
         PMDPlugin.getDefault().removedMarkersIn(resource);
     }
 
@@ -259,13 +221,24 @@ public final class MarkerUtil {
         return markerList.toArray(markerArray);
     }
 
+    /**
+     * Finds the rule violation markers of all priorities with a single query.
+     *
+     * @see MarkerTable
+     */
+    public static IMarker[] findRuleMarkers(IResource resource) throws CoreException {
+        return MarkerTable.of(resource, IResource.DEPTH_INFINITE).getMarkers();
+    }
+
     public static Set<Integer> priorityRangeOf(IResource resource, String[] markerTypes, int sizeLimit)
             throws CoreException {
 
         Set<Integer> priorityLevels = new HashSet<>(sizeLimit);
+        Set<String> types = new HashSet<>(Arrays.asList(markerTypes));
 
-        for (String markerType : markerTypes) {
-            for (IMarker marker : resource.findMarkers(markerType, true, IResource.DEPTH_INFINITE)) {
+        // a single query for the super type instead of one per marker type
+        for (IMarker marker : resource.findMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_INFINITE)) {
+            if (types.contains(marker.getType())) {
                 priorityLevels.add(rulePriorityFor(marker));
                 if (priorityLevels.size() == sizeLimit) {
                     return priorityLevels;
@@ -292,14 +265,6 @@ public final class MarkerUtil {
         }
     }
 
-    private static Rule ruleFrom(IMarker marker) {
-        String ruleName = marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, "");
-        if (StringUtils.isBlank(ruleName)) {
-            return null; // printValues(marker);
-        }
-        return rulesByName.get(ruleName);
-    }
-
     public static Set<IFile> allMarkedFiles(RootRecord root) {
 
         gatherRuleNames();
@@ -307,18 +272,11 @@ public final class MarkerUtil {
         Set<IFile> files = new HashSet<>();
 
         for (AbstractPMDRecord projectRecord : root.getChildren()) {
-            for (AbstractPMDRecord packageRecord : projectRecord.getChildren()) {
-                for (AbstractPMDRecord fileRecord : packageRecord.getChildren()) {
-                    ((FileRecord) fileRecord).updateChildren();
-                    for (AbstractPMDRecord mRecord : fileRecord.getChildren()) {
-                        MarkerRecord markerRecord = (MarkerRecord) mRecord;
-                        for (IMarker marker : markerRecord.findMarkers()) {
-                            Rule rule = ruleFrom(marker);
-                            if (rule == null) {
-                                continue;
-                            }
-                            files.add((IFile) fileRecord.getResource());
-                        }
+            for (FileSummary summary : ViolationIndex.getInstance().summariesIn(projectRecord.getResource())) {
+                for (int i = 0; i < summary.getRuleCount(); i++) {
+                    if (rulesByName.containsKey(summary.getRuleName(i))) {
+                        files.add(summary.getFile());
+                        break;
                     }
                 }
             }
@@ -0,0 +1,647 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.lang.rule.RulePriority;
+
+/**
+ * An in-memory index of the PMD violations in the workspace. It keeps a summary per file
+ * and rollup counts per container (folder, project and workspace root), per rule and per
+ * priority, so that views and decorators don't need to query the marker manager.
+ *
+ * <p>The index is built lazily with one scan of the workspace, the first time it is queried.
+ * Afterwards it is updated from the marker deltas of the resource change events. Producers
+ * of markers can call {@link #refresh(Collection)} to update the index immediately, before
+ * the resource change event is delivered.
+ *
+ * <p>Besides the counts, a bit mask of the priorities, that occur in a resource, is kept
+ * for each file and container. Bit {@code p - 1} is set, if there is at least one violation
+ * with priority {@code p}. This allows to determine the highest priority, taking a filter into
+ * account, with a single lookup.
+ *
+ * <p>The index is thread-safe. All the methods return copies or immutable objects.
+ */
+public final class ViolationIndex implements IResourceChangeListener {
+    private static final Logger LOG = LoggerFactory.getLogger(ViolationIndex.class);
+
+    /** Count of rule priorities. The priority {@code p} is stored at index {@code p - 1}. */
+    public static final int PRIORITY_COUNT = RulePriority.LOW.getPriority();
+
+    /** The resource change events, the index is interested in. */
+    public static final int EVENT_MASK = IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLOSE
+            | IResourceChangeEvent.PRE_DELETE;
+
+    private static final ViolationIndex INSTANCE = new ViolationIndex();
+
+    private final Map<IFile, FileSummary> files = new HashMap<>();
+    private final Map<IResource, int[]> containerCounts = new HashMap<>();
+    private final Map<IResource, Integer> containerMasks = new HashMap<>();
+    private final Map<IContainer, Set<IFile>> filesByParent = new HashMap<>();
+    private final Map<IProject, Set<IFile>> filesByProject = new HashMap<>();
+    private final Map<String, int[]> ruleCounts = new HashMap<>();
+    private final int[] priorityCounts = new int[PRIORITY_COUNT];
+    private boolean initialized;
+
+    private ViolationIndex() {
+        // singleton
+    }
+
+    public static ViolationIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Summary of the violations of one file. Instances are immutable.
+     */
+    public static final class FileSummary {
+        private final IFile file;
+        private final String[] ruleNames;
+        private final int[] ruleViolationCounts;
+        private final int[] rulePriorities;
+        private final int[] priorityCounts;
+        private final int priorityMask;
+        private final int violationCount;
+
+        private FileSummary(IFile file, String[] ruleNames, int[] ruleViolationCounts, int[] rulePriorities,
+                int[] priorityCounts) {
+            this.file = file;
+            this.ruleNames = ruleNames;
+            this.ruleViolationCounts = ruleViolationCounts;
+            this.rulePriorities = rulePriorities;
+            this.priorityCounts = priorityCounts;
+            this.priorityMask = maskOf(priorityCounts);
+            int count = 0;
+            for (int c : priorityCounts) {
+                count += c;
+            }
+            this.violationCount = count;
+        }
+
+        public IFile getFile() {
+            return file;
+        }
+
+        public int getViolationCount() {
+            return violationCount;
+        }
+
+        /**
+         * @param priority the rule priority, 1 (high) to 5 (low)
+         * @return the number of violations with the given priority
+         */
+        public int getViolationCount(int priority) {
+            return isValidPriority(priority) ? priorityCounts[priority - 1] : 0;
+        }
+
+        /**
+         * @return the highest priority (the lowest number) of the violations or 0 if there are none
+         */
+        public int getHighestPriority() {
+            return highestPriorityIn(priorityCounts);
+        }
+
+        /**
+         * @return the number of distinct rules, that are violated in this file
+         */
+        public int getRuleCount() {
+            return ruleNames.length;
+        }
+
+        public String getRuleName(int index) {
+            return ruleNames[index];
+        }
+
+        public int getRuleViolationCount(int index) {
+            return ruleViolationCounts[index];
+        }
+
+        public int getRulePriority(int index) {
+            return rulePriorities[index];
+        }
+    }
+
+    /**
+     * Summary of the violations in the given file.
+     *
+     * @param file the file
+     * @return the summary or <code>null</code>, if the file has no violations
+     */
+    public synchronized FileSummary summaryOf(IFile file) {
+        ensureInitialized();
+        return files.get(file);
+    }
+
+    /**
+     * Summaries of all the files with violations in the given resource.
+     *
+     * @param resource a file, folder, project or the workspace root
+     * @return the summaries
+     */
+    public synchronized List<FileSummary> summariesIn(IResource resource) {
+        ensureInitialized();
+        List<FileSummary> result = new ArrayList<>();
+        if (resource instanceof IFile) {
+            FileSummary summary = files.get(resource);
+            if (summary != null) {
+                result.add(summary);
+            }
+        } else if (containerCounts.containsKey(resource)) {
+            for (IFile file : filesIn(resource)) {
+                result.add(files.get(file));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Summaries of the files with violations, that are direct members of the given container.
+     * In contrast to {@link #summariesIn(IResource)}, files in sub folders are not included.
+     *
+     * @param container a folder or project
+     * @return the summaries
+     */
+    public synchronized List<FileSummary> summariesOfMembers(IContainer container) {
+        ensureInitialized();
+        Set<IFile> members = filesByParent.get(container);
+        if (members == null) {
+            return new ArrayList<>();
+        }
+        List<FileSummary> result = new ArrayList<>(members.size());
+        for (IFile file : members) {
+            result.add(files.get(file));
+        }
+        return result;
+    }
+
+    /**
+     * @return all the files, that have violations
+     */
+    public synchronized Set<IFile> markedFiles() {
+        ensureInitialized();
+        return new HashSet<>(files.keySet());
+    }
+
+    /**
+     * Violation counts per priority in the given resource. The count for priority
+     * {@code p} is at index {@code p - 1}.
+     *
+     * @param resource a file, folder, project or the workspace root
+     * @return a new array with {@link #PRIORITY_COUNT} elements
+     */
+    public synchronized int[] priorityCountsOf(IResource resource) {
+        ensureInitialized();
+        int[] counts = countsOf(resource);
+        return counts == null ? new int[PRIORITY_COUNT] : counts.clone();
+    }
+
+    /**
+     * @param resource a file, folder, project or the workspace root
+     * @return the number of violations in the given resource
+     */
+    public synchronized int violationCountOf(IResource resource) {
+        ensureInitialized();
+        int[] counts = countsOf(resource);
+        int total = 0;
+        if (counts != null) {
+            for (int count : counts) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @param resource a file, folder, project or the workspace root
+     * @return <code>true</code> if there is at least one violation in the given resource
+     */
+    public synchronized boolean hasViolations(IResource resource) {
+        ensureInitialized();
+        return countsOf(resource) != null;
+    }
+
+    /**
+     * @param resource a file, folder, project or the workspace root
+     * @return the highest priority (the lowest number) of the violations in the resource or 0 if there are none
+     */
+    public synchronized int highestPriorityOf(IResource resource) {
+        ensureInitialized();
+        int[] counts = countsOf(resource);
+        return counts == null ? 0 : highestPriorityIn(counts);
+    }
+
+    /**
+     * Determines the highest priority of the violations in the resource, considering only
+     * the given priorities.
+     *
+     * @param resource a file, folder, project or the workspace root
+     * @param enabledPriorityMask the priorities to consider, bit {@code p - 1} stands for priority {@code p}
+     * @return the highest enabled priority (the lowest number) or 0 if there are no such violations
+     */
+    public synchronized int highestPriorityOf(IResource resource, int enabledPriorityMask) {
+        ensureInitialized();
+        int mask = priorityMaskOf0(resource) & enabledPriorityMask;
+        return mask == 0 ? 0 : Integer.numberOfTrailingZeros(mask) + 1;
+    }
+
+    /**
+     * @param resource a file, folder, project or the workspace root
+     * @return the priorities of the violations in the resource, bit {@code p - 1} stands for priority {@code p}
+     */
+    public synchronized int priorityMaskOf(IResource resource) {
+        ensureInitialized();
+        return priorityMaskOf0(resource);
+    }
+
+    /**
+     * @param ruleName the name of a rule
+     * @return the number of violations of the given rule in the workspace
+     */
+    public synchronized int violationCountOfRule(String ruleName) {
+        ensureInitialized();
+        int[] counts = ruleCounts.get(ruleName);
+        int total = 0;
+        if (counts != null) {
+            for (int count : counts) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @param priority the rule priority, 1 (high) to 5 (low)
+     * @return the number of violations with the given priority in the workspace
+     */
+    public synchronized int violationCountOfPriority(int priority) {
+        ensureInitialized();
+        return isValidPriority(priority) ? priorityCounts[priority - 1] : 0;
+    }
+
+    /**
+     * Updates the index for the given resources by reading their markers. For folders and projects
+     * all the contained files are updated.
+     *
+     * @param resources the resources, whose markers have changed
+     */
+    public synchronized void refresh(Collection<? extends IResource> resources) {
+        if (!initialized) {
+            // will be read completely on first use
+            return;
+        }
+        Set<IFile> toUpdate = new HashSet<>();
+        for (IResource resource : resources) {
+            collectFilesToUpdate(resource, toUpdate);
+        }
+        for (IFile file : toUpdate) {
+            update(file, readSummary(file));
+        }
+    }
+
+    /**
+     * Forgets everything. The index is rebuilt on the next query.
+     */
+    public synchronized void clear() {
+        files.clear();
+        containerCounts.clear();
+        containerMasks.clear();
+        filesByParent.clear();
+        filesByProject.clear();
+        ruleCounts.clear();
+        Arrays.fill(priorityCounts, 0);
+        initialized = false;
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        synchronized (this) {
+            if (!initialized) {
+                return;
+            }
+
+            if (event.getType() == IResourceChangeEvent.PRE_CLOSE
+                    || event.getType() == IResourceChangeEvent.PRE_DELETE) {
+                if (event.getResource() instanceof IProject) {
+                    removeAllIn(event.getResource());
+                }
+                return;
+            }
+
+            Set<IFile> changedFiles = new HashSet<>();
+            for (IMarkerDelta delta : MarkerUtil.markerDeltasIn(event)) {
+                if (delta.getResource() instanceof IFile) {
+                    changedFiles.add((IFile) delta.getResource());
+                }
+            }
+            IResourceDelta resourceDelta = event.getDelta();
+            if (resourceDelta != null) {
+                for (IResourceDelta projectDelta : resourceDelta.getAffectedChildren()) {
+                    // markers of a project, that has been opened, are not reported as marker deltas
+                    if ((projectDelta.getFlags() & IResourceDelta.OPEN) != 0
+                            && projectDelta.getResource().isAccessible()) {
+                        collectFilesToUpdate(projectDelta.getResource(), changedFiles);
+                    }
+                }
+            }
+            for (IFile file : changedFiles) {
+                update(file, readSummary(file));
+            }
+        }
+    }
+
+    private void ensureInitialized() {
+        if (initialized) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+        MarkerTable table;
+        try {
+            table = MarkerTable.of(root, IResource.DEPTH_INFINITE);
+        } catch (CoreException e) {
+            LOG.warn("Error while reading markers", e);
+            table = MarkerTable.of(MarkerUtil.EMPTY_MARKERS);
+        }
+        Map<IFile, List<Integer>> rowsByFile = new LinkedHashMap<>();
+        for (int row = 0; row < table.size(); row++) {
+            if (table.getResource(row) instanceof IFile) {
+                IFile file = (IFile) table.getResource(row);
+                List<Integer> rows = rowsByFile.get(file);
+                if (rows == null) {
+                    rows = new ArrayList<>();
+                    rowsByFile.put(file, rows);
+                }
+                rows.add(row);
+            }
+        }
+        for (Map.Entry<IFile, List<Integer>> entry : rowsByFile.entrySet()) {
+            update(entry.getKey(), summarize(entry.getKey(), table, entry.getValue()));
+        }
+        initialized = true;
+        LOG.debug("Built violation index for {} files in {} ms", files.size(), System.currentTimeMillis() - start);
+    }
+
+    private void collectFilesToUpdate(IResource resource, Set<IFile> toUpdate) {
+        if (resource instanceof IFile) {
+            toUpdate.add((IFile) resource);
+            return;
+        }
+        toUpdate.addAll(filesIn(resource));
+        if (resource.isAccessible()) {
+            try {
+                for (IMarker marker : resource.findMarkers(PMDRuntimeConstants.PMD_MARKER, true,
+                        IResource.DEPTH_INFINITE)) {
+                    if (marker.getResource() instanceof IFile) {
+                        toUpdate.add((IFile) marker.getResource());
+                    }
+                }
+            } catch (CoreException e) {
+                LOG.warn("Error while reading markers of {}", resource, e);
+            }
+        }
+    }
+
+    private void removeAllIn(IResource resource) {
+        for (IFile file : filesIn(resource)) {
+            update(file, null);
+        }
+    }
+
+    /**
+     * The indexed files in the given container. Only the files of the container's project are
+     * looked at, so that the cost doesn't grow with the number of projects.
+     *
+     * @return a new list
+     */
+    private List<IFile> filesIn(IResource container) {
+        if (container.getType() == IResource.ROOT) {
+            return new ArrayList<>(files.keySet());
+        }
+        Set<IFile> projectFiles = filesByProject.get(container.getProject());
+        if (projectFiles == null) {
+            return new ArrayList<>();
+        }
+        if (container.getType() == IResource.PROJECT) {
+            return new ArrayList<>(projectFiles);
+        }
+        IPath path = container.getFullPath();
+        List<IFile> result = new ArrayList<>();
+        for (IFile file : projectFiles) {
+            if (path.isPrefixOf(file.getFullPath())) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    private static FileSummary readSummary(IFile file) {
+        if (!file.isAccessible()) {
+            return null;
+        }
+        MarkerTable table;
+        try {
+            table = MarkerTable.of(file, IResource.DEPTH_ZERO);
+        } catch (CoreException e) {
+            LOG.warn("Error while reading markers of {}", file, e);
+            return null;
+        }
+        List<Integer> rows = new ArrayList<>(table.size());
+        for (int row = 0; row < table.size(); row++) {
+            rows.add(row);
+        }
+        return summarize(file, table, rows);
+    }
+
+    private static FileSummary summarize(IFile file, MarkerTable table, List<Integer> rows) {
+        if (rows.isEmpty()) {
+            return null;
+        }
+        int[] priorityCounts = new int[PRIORITY_COUNT];
+        Map<String, int[]> byRule = new LinkedHashMap<>();
+        for (int row : rows) {
+            String ruleName = table.getRuleName(row);
+            int priority = table.getPriority(row);
+            if (!isValidPriority(priority)) {
+                continue;
+            }
+            priorityCounts[priority - 1]++;
+            int[] countAndPriority = byRule.get(ruleName);
+            if (countAndPriority == null) {
+                byRule.put(ruleName, new int[] { 1, priority });
+            } else {
+                countAndPriority[0]++;
+            }
+        }
+        if (byRule.isEmpty()) {
+            return null;
+        }
+
+        String[] ruleNames = new String[byRule.size()];
+        int[] ruleViolationCounts = new int[byRule.size()];
+        int[] rulePriorities = new int[byRule.size()];
+        int i = 0;
+        for (Map.Entry<String, int[]> entry : byRule.entrySet()) {
+            ruleNames[i] = entry.getKey();
+            ruleViolationCounts[i] = entry.getValue()[0];
+            rulePriorities[i] = entry.getValue()[1];
+            i++;
+        }
+        return new FileSummary(file, ruleNames, ruleViolationCounts, rulePriorities, priorityCounts);
+    }
+
+    private void update(IFile file, FileSummary newSummary) {
+        FileSummary oldSummary = newSummary == null ? files.remove(file) : files.put(file, newSummary);
+        if (oldSummary != null) {
+            apply(oldSummary, -1);
+        }
+        if (newSummary != null) {
+            apply(newSummary, 1);
+        }
+
+        IContainer parent = file.getParent();
+        if (oldSummary == null && newSummary != null) {
+            Set<IFile> members = filesByParent.get(parent);
+            if (members == null) {
+                members = new LinkedHashSet<>();
+                filesByParent.put(parent, members);
+            }
+            members.add(file);
+            addTo(filesByProject, file.getProject(), file);
+        } else if (oldSummary != null && newSummary == null) {
+            Set<IFile> members = filesByParent.get(parent);
+            if (members != null && members.remove(file) && members.isEmpty()) {
+                filesByParent.remove(parent);
+            }
+            removeFrom(filesByProject, file.getProject(), file);
+        }
+    }
+
+    private void apply(FileSummary summary, int sign) {
+        for (int p = 0; p < PRIORITY_COUNT; p++) {
+            priorityCounts[p] += sign * summary.priorityCounts[p];
+        }
+        for (int i = 0; i < summary.ruleNames.length; i++) {
+            addTo(ruleCounts, summary.ruleNames[i], summary.rulePriorities[i], sign * summary.ruleViolationCounts[i]);
+        }
+        IResource container = summary.file.getParent();
+        while (container != null) {
+            int[] counts = containerCounts.get(container);
+            if (counts == null) {
+                counts = new int[PRIORITY_COUNT];
+                containerCounts.put(container, counts);
+            }
+            boolean empty = true;
+            for (int p = 0; p < PRIORITY_COUNT; p++) {
+                counts[p] += sign * summary.priorityCounts[p];
+                empty &= counts[p] == 0;
+            }
+            if (empty) {
+                containerCounts.remove(container);
+                containerMasks.remove(container);
+            } else {
+                containerMasks.put(container, maskOf(counts));
+            }
+            container = container.getParent();
+        }
+    }
+
+    private static <K> void addTo(Map<K, Set<IFile>> filesByKey, K key, IFile file) {
+        Set<IFile> keyFiles = filesByKey.get(key);
+        if (keyFiles == null) {
+            keyFiles = new LinkedHashSet<>();
+            filesByKey.put(key, keyFiles);
+        }
+        keyFiles.add(file);
+    }
+
+    private static <K> void removeFrom(Map<K, Set<IFile>> filesByKey, K key, IFile file) {
+        Set<IFile> keyFiles = filesByKey.get(key);
+        if (keyFiles != null && keyFiles.remove(file) && keyFiles.isEmpty()) {
+            filesByKey.remove(key);
+        }
+    }
+
+    private static <K> void addTo(Map<K, int[]> countsByKey, K key, int priority, int delta) {
+        int[] counts = countsByKey.get(key);
+        if (counts == null) {
+            counts = new int[PRIORITY_COUNT];
+            countsByKey.put(key, counts);
+        }
+        counts[priority - 1] += delta;
+        for (int count : counts) {
+            if (count != 0) {
+                return;
+            }
+        }
+        countsByKey.remove(key);
+    }
+
+    private int[] countsOf(IResource resource) {
+        if (resource instanceof IFile) {
+            FileSummary summary = files.get(resource);
+            return summary == null ? null : summary.priorityCounts;
+        }
+        return containerCounts.get(resource);
+    }
+
+    private int priorityMaskOf0(IResource resource) {
+        if (resource instanceof IFile) {
+            FileSummary summary = files.get(resource);
+            return summary == null ? 0 : summary.priorityMask;
+        }
+        Integer mask = containerMasks.get(resource);
+        return mask == null ? 0 : mask;
+    }
+
+    private static int maskOf(int[] counts) {
+        int mask = 0;
+        for (int p = 0; p < counts.length; p++) {
+            if (counts[p] > 0) {
+                mask |= 1 << p;
+            }
+        }
+        return mask;
+    }
+
+    private static int highestPriorityIn(int[] counts) {
+        for (int p = 0; p < counts.length; p++) {
+            if (counts[p] > 0) {
+                return p + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isValidPriority(int priority) {
+        return priority >= 1 && priority <= PRIORITY_COUNT;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.ui.IWorkingSet;
+import org.eclipse.ui.ResourceWorkingSetFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.eclipse.ui.actions.internal.InternalRuleSetUtil;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+
+/**
+ * An immutable snapshot of the configuration, that is used for one PMD run: the relevant
+ * preferences and for each project the project properties, the filtered rulesets, the
+ * applicable file extensions, the working set filter and the auxclasspath.
+ *
+ * <p>The snapshot is created once at the start of a command. The visitors only read
+ * from it, so that they neither need to query the mutable global state nor do any I/O
+ * for each file. It can be shared between threads. The rules are copies of the configured
+ * rules, that are only used by this run.
+ */
+public final class AnalysisSnapshot {
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisSnapshot.class);
+
+    private final boolean determineFiletypesAutomatically;
+    private final boolean projectBuildPathEnabled;
+    private final boolean globalRuleManagement;
+    private final Set<String> activeRuleNames;
+    private final Collection<Pattern> activeExclusionPatterns;
+    private final Collection<Pattern> activeInclusionPatterns;
+    private final Map<IProject, ProjectSnapshot> projects = new HashMap<>();
+
+    private AnalysisSnapshot(IPreferences preferences) {
+        determineFiletypesAutomatically = preferences.isDetermineFiletypesAutomatically();
+        projectBuildPathEnabled = preferences.isProjectBuildPathEnabled();
+        globalRuleManagement = preferences.getGlobalRuleManagement();
+        activeRuleNames = Collections.unmodifiableSet(new HashSet<>(preferences.getActiveRuleNames()));
+        activeExclusionPatterns = Collections.unmodifiableCollection(
+                InternalRuleSetUtil.convertStringPatterns(preferences.activeExclusionPatterns()));
+        activeInclusionPatterns = Collections.unmodifiableCollection(
+                InternalRuleSetUtil.convertStringPatterns(preferences.activeInclusionPatterns()));
+    }
+
+    /**
+     * Captures the current preferences and the properties of the given projects. A project,
+     * whose properties can't be loaded, is left out and logged, the other projects are still
+     * part of the snapshot.
+     *
+     * @param projects the projects, that are analyzed
+     * @return the snapshot
+     */
+    public static AnalysisSnapshot create(Collection<IProject> projects) {
+        long start = System.currentTimeMillis();
+        AnalysisSnapshot snapshot = new AnalysisSnapshot(PMDPlugin.getDefault().loadPreferences());
+        for (IProject project : projects) {
+            if (!snapshot.projects.containsKey(project)) {
+                try {
+                    IProjectProperties properties = PMDPlugin.getDefault().loadProjectProperties(project);
+                    snapshot.projects.put(project, snapshot.new ProjectSnapshot(properties));
+                } catch (PropertiesException e) {
+                    LOG.error("Could not load the PMD properties of project {}, it is not analyzed",
+                            project.getName(), e);
+                }
+            }
+        }
+        LOG.debug("Created analysis snapshot for {} projects in {} ms", snapshot.projects.size(),
+                System.currentTimeMillis() - start);
+        return snapshot;
+    }
+
+    public boolean isDetermineFiletypesAutomatically() {
+        return determineFiletypesAutomatically;
+    }
+
+    public boolean isProjectBuildPathEnabled() {
+        return projectBuildPathEnabled;
+    }
+
+    /**
+     * @param project a project
+     * @return the snapshot of the given project or <code>null</code>, if the project is not part of this snapshot
+     *     or its properties could not be loaded
+     */
+    public ProjectSnapshot forProject(IProject project) {
+        return projects.get(project);
+    }
+
+    /**
+     * The part of the snapshot, that is specific for one project.
+     */
+    public final class ProjectSnapshot {
+        private final IProject project;
+        private final boolean pmdEnabled;
+        private final boolean fullBuildEnabled;
+        private final boolean includeDerivedFiles;
+        private final boolean violationsAsErrors;
+        private final IWorkingSet workingSet;
+        private final List<RuleSet> ruleSets;
+        private final int totalRuleCount;
+        private final Set<String> fileExtensions;
+        private final String classpath;
+        private final LanguageVersion javaVersion;
+
+        private ProjectSnapshot(IProjectProperties properties) throws PropertiesException {
+            project = properties.getProject();
+            pmdEnabled = properties.isPmdEnabled();
+            fullBuildEnabled = properties.isFullBuildEnabled();
+            includeDerivedFiles = properties.isIncludeDerivedFiles();
+            violationsAsErrors = properties.violationsAsErrors();
+            workingSet = properties.getProjectWorkingSet();
+            List<RuleSet> projectRuleSets = properties.getProjectRuleSetList();
+            totalRuleCount = InternalRuleSetUtil.countRules(projectRuleSets);
+            ruleSets = Collections.unmodifiableList(filteredRuleSets(properties, projectRuleSets));
+            fileExtensions = Collections.unmodifiableSet(determineFileExtensions(ruleSets));
+            classpath = projectBuildPathEnabled ? properties.getClasspath() : null;
+            javaVersion = PMDPlugin.javaVersionFor(project);
+        }
+
+        private List<RuleSet> filteredRuleSets(IProjectProperties properties, List<RuleSet> projectRuleSets) {
+            Collection<Pattern> buildPathExcludePatterns = InternalRuleSetUtil
+                    .convertStringPatterns(properties.getBuildPathExcludePatterns());
+            Collection<Pattern> buildPathIncludePatterns = InternalRuleSetUtil
+                    .convertStringPatterns(properties.getBuildPathIncludePatterns());
+            List<RuleSet> filteredRuleSets = new ArrayList<>();
+
+            for (RuleSet ruleSet : projectRuleSets) {
+                int rulesBefore = ruleSet.size();
+                RuleSet filteredRuleSet = deepCopyOf(ruleSet);
+                if (globalRuleManagement) {
+                    // TODO: active rules are not language aware... filter by rule name...
+                    List<Rule> rulesToKeep = new ArrayList<>();
+                    for (Rule rule : filteredRuleSet.getRules()) {
+                        if (activeRuleNames.contains(rule.getName())) {
+                            rulesToKeep.add(rule);
+                        }
+                    }
+                    filteredRuleSet = RuleSetUtil.retainOnly(filteredRuleSet, rulesToKeep);
+                    int rulesAfter = filteredRuleSet.size();
+
+                    if (rulesAfter < rulesBefore) {
+                        LOG.warn("Ruleset has been filtered as Global Rule Management is active. "
+                                + "{} of {} rules are active and are used. {} rules will be ignored.",
+                                rulesAfter, rulesBefore, rulesBefore - rulesAfter);
+                    }
+                }
+                filteredRuleSet = InternalRuleSetUtil.addExcludePatterns(filteredRuleSet,
+                        activeExclusionPatterns, buildPathExcludePatterns);
+                filteredRuleSet = InternalRuleSetUtil.addIncludePatterns(filteredRuleSet,
+                        activeInclusionPatterns, buildPathIncludePatterns);
+                filteredRuleSets.add(filteredRuleSet);
+            }
+            return filteredRuleSets;
+        }
+
+        /**
+         * Copies the ruleset together with its rules, so that changes of the rules in the preferences or
+         * the project properties don't affect the running analysis.
+         */
+        private RuleSet deepCopyOf(RuleSet ruleSet) {
+            List<Rule> rules = new ArrayList<>(ruleSet.size());
+            for (Rule rule : ruleSet.getRules()) {
+                rules.add(rule.deepCopy());
+            }
+            return RuleSet.create(ruleSet.getName(), ruleSet.getDescription(), ruleSet.getFileName(),
+                    ruleSet.getFileExclusions(), ruleSet.getFileInclusions(), rules);
+        }
+
+        private Set<String> determineFileExtensions(List<RuleSet> ruleSets) {
+            Set<Language> languages = new HashSet<>();
+            for (RuleSet ruleset : ruleSets) {
+                for (Rule rule : ruleset.getRules()) {
+                    languages.add(rule.getLanguage());
+                }
+            }
+            Set<String> extensions = new HashSet<>();
+            for (Language language : languages) {
+                for (String extension : language.getExtensions()) {
+                    extensions.add(extension.toLowerCase(Locale.ROOT));
+                }
+            }
+            LOG.debug("Determined applicable file extensions: {}", extensions);
+            return extensions;
+        }
+
+        public AnalysisSnapshot getAnalysisSnapshot() {
+            return AnalysisSnapshot.this;
+        }
+
+        public IProject getProject() {
+            return project;
+        }
+
+        public boolean isPmdEnabled() {
+            return pmdEnabled;
+        }
+
+        public boolean isFullBuildEnabled() {
+            return fullBuildEnabled;
+        }
+
+        public boolean isIncludeDerivedFiles() {
+            return includeDerivedFiles;
+        }
+
+        public boolean violationsAsErrors() {
+            return violationsAsErrors;
+        }
+
+        /**
+         * @return the rulesets of the project, filtered by the active rules and the exclude/include patterns
+         */
+        public List<RuleSet> getRuleSets() {
+            return ruleSets;
+        }
+
+        /**
+         * @return the count of rules before filtering
+         */
+        public int getTotalRuleCount() {
+            return totalRuleCount;
+        }
+
+        /**
+         * @return the lowercase file extensions of the languages of the rules
+         */
+        public Set<String> getFileExtensions() {
+            return fileExtensions;
+        }
+
+        /**
+         * @return the auxclasspath of the project or <code>null</code> if the project build path is not used
+         */
+        public String getClasspath() {
+            return classpath;
+        }
+
+        /**
+         * @return the java version of the project or <code>null</code> if it isn't a java project
+         */
+        public LanguageVersion getJavaVersion() {
+            return javaVersion;
+        }
+
+        /**
+         * Test if a file is in the PMD working set.
+         *
+         * @param file the file
+         * @return true if the file should be checked
+         */
+        public boolean isFileInWorkingSet(IFile file) {
+            if (workingSet == null) {
+                return true;
+            }
+            ResourceWorkingSetFilter filter = new ResourceWorkingSetFilter();
+            filter.setWorkingSet(workingSet);
+            return filter.select(null, null, file);
+        }
+    }
+}
@@ -11,7 +11,9 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -24,8 +26,6 @@ import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.ui.IWorkingSet;
-import org.eclipse.ui.ResourceWorkingSetFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,8 +33,8 @@ import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.PmdAnalysis;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
-import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
-import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.eclipse.runtime.builder.AnalysisResultStore.StoredViolation;
+import net.sourceforge.pmd.eclipse.runtime.cmd.AnalysisSnapshot.ProjectSnapshot;
 import net.sourceforge.pmd.eclipse.util.internal.IOUtil;
 import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersion;
@@ -56,16 +56,23 @@ import net.sourceforge.pmd.reporting.RuleViolation;
  */
 public class BaseVisitor {
     private static final Logger LOG = LoggerFactory.getLogger(BaseVisitor.class);
+
+    /** The count of files, that are analyzed together in batch mode. */
+    private static final int BATCH_SIZE = 100;
+
     private IProgressMonitor monitor;
     private Map<IFile, Set<MarkerInfo2>> accumulator;
     // private PMDEngine pmdEngine;
     private List<RuleSet> ruleSets;
-    private Set<String> fileExtensions;
     private int fileCount;
+    private int errorCount;
     private long pmdDuration;
-    private IProjectProperties projectProperties;
+    private ProjectSnapshot projectSnapshot;
 
     private PMDConfiguration configuration;
+    private int threads;
+    private PmdAnalysis batch;
+    private final Map<FileId, IFile> batchFiles = new HashMap<>();
 
     /**
      * The constructor is protected to avoid illegal instantiation.
@@ -78,6 +85,16 @@ public class BaseVisitor {
     protected PMDConfiguration configuration() {
         if (configuration == null) {
             configuration = new PMDConfiguration();
+            // the classpath doesn't change during the run, so it is only added once
+            if (projectSnapshot != null && projectSnapshot.getClasspath() != null) {
+                configuration.prependAuxClasspath(projectSnapshot.getClasspath());
+            }
+            // Avoid warnings about not providing cache for incremental analysis
+            configuration.setIgnoreIncrementalAnalysis(true);
+            // a single file is analyzed on the calling thread, because the ruleset
+            // is not recreated and shared between threads. In batch mode PMD copies
+            // the rules for each of its worker threads.
+            configuration.setThreads(threads);
         }
         return configuration;
     }
@@ -161,10 +178,6 @@ public class BaseVisitor {
         this.ruleSets = ruleSets;
     }
 
-    public void setFileExtensions(Set<String> fileExtensions) {
-        this.fileExtensions = fileExtensions;
-    }
-
     /**
      * @return the number of files that has been processed
      */
@@ -172,6 +185,25 @@ public class BaseVisitor {
         return fileCount;
     }
 
+    /**
+     * @return the number of files, that could not be analyzed
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Sets the number of threads, PMD may use. With 0 threads (the default) each file is
+     * analyzed on its own as soon as it is visited. Otherwise the files are collected and
+     * analyzed in batches by PMD's worker threads, see {@link #reviewBatch()}.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+        this.configuration = null;
+    }
+
     /**
      * @return actual PMD duration
      */
@@ -180,15 +212,17 @@ public class BaseVisitor {
     }
 
     /**
-     * Set the project properties (note that visitor is expected to be called one project at a time
+     * Set the configuration snapshot of the project, that is visited (note that visitor
+     * is expected to be called one project at a time). This also sets the rulesets.
      */
-    public void setProjectProperties(IProjectProperties projectProperties) {
-        this.projectProperties = projectProperties;
+    public void setProjectSnapshot(ProjectSnapshot projectSnapshot) {
+        this.projectSnapshot = projectSnapshot;
+        this.ruleSets = projectSnapshot.getRuleSets();
+        this.configuration = null;
     }
 
-    private boolean isIncluded(IFile file) throws PropertiesException {
-        return projectProperties.isIncludeDerivedFiles()
-                || !projectProperties.isIncludeDerivedFiles() && !file.isDerived();
+    private boolean isIncluded(IFile file) {
+        return projectSnapshot.isIncludeDerivedFiles() || !file.isDerived();
     }
 
     /**
@@ -207,7 +241,8 @@ public class BaseVisitor {
             return;
         }
 
-        if (PMDPlugin.getDefault().loadPreferences().isDetermineFiletypesAutomatically()) {
+        if (projectSnapshot.getAnalysisSnapshot().isDetermineFiletypesAutomatically()) {
+            Set<String> fileExtensions = projectSnapshot.getFileExtensions();
             if (fileExtensions != null) {
                 if (!fileExtensions.contains(file.getFileExtension().toLowerCase(Locale.ROOT))) {
                     LOG.debug("Skipping file {} based on file extension", file);
@@ -220,7 +255,7 @@ public class BaseVisitor {
 
         try {
             boolean included = isIncluded(file);
-            LOG.debug("Derived files included: " + projectProperties.isIncludeDerivedFiles());
+            LOG.debug("Derived files included: " + projectSnapshot.isIncludeDerivedFiles());
             LOG.debug("file " + file.getName() + " is derived: " + file.isDerived());
             LOG.debug("file checked: " + included);
 
@@ -231,34 +266,26 @@ public class BaseVisitor {
             // in case it is java, select the correct java version
             if (languageVersion != null
                     && JavaLanguageModule.getInstance().equals(languageVersion.getLanguage())) {
-                languageVersion = PMDPlugin.javaVersionFor(file.getProject());
+                languageVersion = projectSnapshot.getJavaVersion();
             }
             if (languageVersion != null) {
                 configuration().setDefaultLanguageVersion(languageVersion);
             }
             LOG.debug("discovered language: {}", languageVersion);
 
-            if (PMDPlugin.getDefault().loadPreferences().isProjectBuildPathEnabled()) {
-                configuration().prependAuxClasspath(projectProperties.getClasspath());
-            }
-
-            // Avoid warnings about not providing cache for incremental analysis
-            configuration().setIgnoreIncrementalAnalysis(true);
 
             final File sourceCodeFile = file.getRawLocation().toFile();
             final FileId fileId = FileId.fromPathLikeString(sourceCodeFile.getAbsolutePath());
-            if (included && isFileInWorkingSet(file)
+            if (included && projectSnapshot.isFileInWorkingSet(file)
                     && languageVersion != null) {
+                if (threads > 0) {
+                    addToBatch(file, fileId);
+                    return;
+                }
                 subTask("PMD checking: " + file.getProject() + ": " + file.getName());
 
                 long start = System.currentTimeMillis();
 
-                // need to disable multi threading, as the ruleset is
-                // not recreated and shared between threads...
-                // but as we anyway have only one file to process, it won't hurt
-                // here.
-                configuration().setThreads(0);
-
                 Report collectingReport = null;
 
                 try (Reader input = new InputStreamReader(file.getContents(), file.getCharset());
@@ -278,22 +305,11 @@ public class BaseVisitor {
 
                 LOG.debug("PMD found {} violations for file {}", collectingReport.getViolations().size(), file);
 
-                if (!collectingReport.getConfigurationErrors().isEmpty()) {
-                    StringBuilder message = new StringBuilder("There were configuration errors!\n");
-                    for (ConfigurationError error : collectingReport.getConfigurationErrors()) {
-                        message.append(error.rule().getName()).append(": ").append(error.issue()).append('\n');
-                    }
-                    LOG.warn(message.toString());
-                }
+                logConfigurationErrors(collectingReport);
                 if (!collectingReport.getProcessingErrors().isEmpty()) {
-                    StringBuilder message = new StringBuilder("There were processing errors!\n");
-                    for (ProcessingError error : collectingReport.getProcessingErrors()) {
-                        message.append(error.getFileId().getOriginalPath()).append(": ").append(error.getMsg()).append(' ')
-                        .append(error.getDetail())
-                        .append("\n");
-                    }
-                    PMDPlugin.getDefault().logWarn(message.toString());
-                    throw new RuntimeException(message.toString());
+                    String message = processingErrorsMessage(collectingReport.getProcessingErrors());
+                    PMDPlugin.getDefault().logWarn(message);
+                    throw new RuntimeException(message);
                 }
 
                 updateMarkers(file, collectingReport.getViolations());
@@ -307,36 +323,108 @@ public class BaseVisitor {
         } catch (CoreException e) {
             // TODO: complete message
             LOG.error("Core exception visiting " + file.getName(), e);
+            errorCount++;
         } catch (IOException e) {
             // TODO: complete message
             LOG.error("IO exception visiting " + file.getName(), e);
-        } catch (PropertiesException e) {
-            // TODO: complete message
-            LOG.error("Properties exception visiting {}", file.getName(), e);
+            errorCount++;
         } catch (IllegalArgumentException e) {
             LOG.error("Illegal argument: {}", e.toString(), e);
+            errorCount++;
         } catch (RuntimeException e) {
             LOG.error("Runtime exception visiting {}", file.getName(), e);
+            errorCount++;
         }
 
     }
 
+    private void addToBatch(IFile file, FileId fileId) throws CoreException, IOException {
+        if (batch == null) {
+            batch = PmdAnalysis.create(configuration());
+            batch.addRuleSets(getRuleSetList());
+        }
+        try (Reader input = new InputStreamReader(file.getContents(), file.getCharset())) {
+            batch.files().addSourceFile(fileId, IOUtil.toString(input));
+        }
+        batchFiles.put(fileId, file);
+        if (batchFiles.size() >= BATCH_SIZE) {
+            reviewBatch();
+        }
+    }
+
     /**
-     * Test if a file is in the PMD working set.
-     *
-     * @param file
-     * @return true if the file should be checked
+     * Analyzes the files, that have been collected in batch mode, and updates their markers.
+     * Must be called once after the resources have been visited, to analyze the last batch.
+     * Files with processing errors keep no markers, as in the single file mode.
      */
-    private boolean isFileInWorkingSet(final IFile file) throws PropertiesException {
-        boolean fileInWorkingSet = true;
-        IWorkingSet workingSet = projectProperties.getProjectWorkingSet();
-        if (workingSet != null) {
-            ResourceWorkingSetFilter filter = new ResourceWorkingSetFilter();
-            filter.setWorkingSet(workingSet);
-            fileInWorkingSet = filter.select(null, null, file);
+    public void reviewBatch() {
+        if (batch == null) {
+            return;
+        }
+        Map<FileId, IFile> files = new HashMap<>(batchFiles);
+        batchFiles.clear();
+
+        long start = System.currentTimeMillis();
+        Report report;
+        try (PmdAnalysis analysis = batch) {
+            batch = null;
+            if (isCanceled()) {
+                return;
+            }
+            subTask("PMD checking " + files.size() + " files of " + projectSnapshot.getProject().getName());
+            LOG.debug("PMD running on {} files", files.size());
+            report = analysis.performAnalysisAndCollectReport();
+        } catch (RuntimeException e) {
+            LOG.error("Runtime exception analyzing {} files", files.size(), e);
+            errorCount += files.size();
+            return;
+        }
+        pmdDuration += System.currentTimeMillis() - start;
+        LOG.debug("PMD found {} violations in {} files", report.getViolations().size(), files.size());
+
+        logConfigurationErrors(report);
+        Set<FileId> failedFiles = new HashSet<>();
+        if (!report.getProcessingErrors().isEmpty()) {
+            for (ProcessingError error : report.getProcessingErrors()) {
+                failedFiles.add(error.getFileId());
+            }
+            errorCount += failedFiles.size();
+            PMDPlugin.getDefault().logWarn(processingErrorsMessage(report.getProcessingErrors()));
+        }
+
+        Map<FileId, List<RuleViolation>> violationsByFile = new HashMap<>();
+        for (RuleViolation violation : report.getViolations()) {
+            violationsByFile.computeIfAbsent(violation.getFileId(), id -> new ArrayList<>()).add(violation);
+        }
+        for (Map.Entry<FileId, IFile> entry : files.entrySet()) {
+            if (!failedFiles.contains(entry.getKey())) {
+                List<RuleViolation> violations = violationsByFile.get(entry.getKey());
+                updateMarkers(entry.getValue(),
+                        violations == null ? Collections.<RuleViolation>emptyList() : violations);
+                fileCount++;
+            }
+            worked(1);
         }
+    }
 
-        return fileInWorkingSet;
+    private static void logConfigurationErrors(Report report) {
+        if (!report.getConfigurationErrors().isEmpty()) {
+            StringBuilder message = new StringBuilder("There were configuration errors!\n");
+            for (ConfigurationError error : report.getConfigurationErrors()) {
+                message.append(error.rule().getName()).append(": ").append(error.issue()).append('\n');
+            }
+            LOG.warn(message.toString());
+        }
+    }
+
+    private static String processingErrorsMessage(List<ProcessingError> errors) {
+        StringBuilder message = new StringBuilder("There were processing errors!\n");
+        for (ProcessingError error : errors) {
+            message.append(error.getFileId().getOriginalPath()).append(": ").append(error.getMsg()).append(' ')
+            .append(error.getDetail())
+            .append("\n");
+        }
+        return message.toString();
     }
 
     public static String markerTypeFor(RuleViolation violation) {
@@ -362,8 +450,7 @@ public class BaseVisitor {
         }
     }
 
-    private void updateMarkers(IFile file, List<RuleViolation> violations)
-            throws CoreException, PropertiesException {
+    private void updateMarkers(IFile file, List<RuleViolation> violations) {
 
         Map<IFile, Set<MarkerInfo2>> accumulator = getAccumulator();
         Set<MarkerInfo2> markerSet = new HashSet<>();
@@ -463,11 +550,17 @@ public class BaseVisitor {
         return reviews;
     }
 
-    private MarkerInfo2 getMarkerInfo(RuleViolation violation, String type) throws PropertiesException {
+    private static void addIfPresent(MarkerInfo2 info, String name, String value) {
+        if (StringUtils.isNotEmpty(value)) {
+            info.add(name, value);
+        }
+    }
+
+    private MarkerInfo2 getMarkerInfo(RuleViolation violation, String type) {
 
         Rule rule = violation.getRule();
 
-        MarkerInfo2 info = new MarkerInfo2(type, 7);
+        MarkerInfo2 info = new MarkerInfo2(type, 11);
 
         info.add(IMarker.MESSAGE, rule.getName() + ": " + violation.getDescription());
         info.add(PMDRuntimeConstants.KEY_MARKERATT_MESSAGE, violation.getDescription());
@@ -476,12 +569,23 @@ public class BaseVisitor {
         info.add(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, rule.getName());
         info.add(PMDRuntimeConstants.KEY_MARKERATT_PRIORITY, rule.getPriority().getPriority());
         info.add(IMarker.PRIORITY, IMarker.PRIORITY_NORMAL);
+        // recorded for the reports, so that they don't need to ask the java model
+        Map<String, String> additionalInfo = violation.getAdditionalInfo();
+        addIfPresent(info, PMDRuntimeConstants.KEY_MARKERATT_PACKAGE,
+                additionalInfo.get(RuleViolation.PACKAGE_NAME));
+        addIfPresent(info, PMDRuntimeConstants.KEY_MARKERATT_CLASS,
+                additionalInfo.get(RuleViolation.CLASS_NAME));
+        addIfPresent(info, PMDRuntimeConstants.KEY_MARKERATT_METHODNAME,
+                additionalInfo.get(RuleViolation.METHOD_NAME));
+        addIfPresent(info, PMDRuntimeConstants.KEY_MARKERATT_VARIABLE,
+                additionalInfo.get(RuleViolation.VARIABLE_NAME));
+        info.setViolation(StoredViolation.of(violation));
 
         switch (rule.getPriority()) {
         case HIGH:
         case MEDIUM_HIGH:
             info.add(IMarker.SEVERITY,
-                    projectProperties.violationsAsErrors() ? IMarker.SEVERITY_ERROR : IMarker.SEVERITY_WARNING);
+                    projectSnapshot.violationsAsErrors() ? IMarker.SEVERITY_ERROR : IMarker.SEVERITY_WARNING);
             break;
 
         case MEDIUM:
@@ -34,6 +34,7 @@ public class CPDVisitor implements IResourceVisitor {
     private ResourceWorkingSetFilter workingSetFilter;
     private CpdCapableLanguage language;
     private List<File> files;
+    private List<IFile> resources;
 
     /**
      * @param includeDerivedFiles
@@ -75,6 +76,21 @@ public class CPDVisitor implements IResourceVisitor {
         this.files = files;
     }
 
+    /**
+     * @return the list of the workspace files, <code>null</code> if they are not collected
+     */
+    public List<IFile> getResources() {
+        return this.resources;
+    }
+
+    /**
+     * @param resources
+     *            the list to collect the workspace files of the found files in, might be <code>null</code>
+     */
+    public void setResources(List<IFile> resources) {
+        this.resources = resources;
+    }
+
     /**
      * @see org.eclipse.core.resources.IResourceVisitor#visit(IResource) Add
      *      java files into the CPD object
@@ -85,24 +101,38 @@ public class CPDVisitor implements IResourceVisitor {
 
         if (resource instanceof IFile) {
             IFile file = (IFile) resource;
-            File ioFile = file.getLocation().toFile();
-            try {
-                if (StringUtils.isNotBlank(file.getFileExtension())
-                        && language.hasExtension(file.getFileExtension())
-                        && isFileInWorkingSet(file)
-                        && (includeDerivedFiles || !file.isDerived())) {
-                    LOG.debug("Add file " + resource.getName());
-                    files.add(ioFile);
-                    return false;
+            if (accepts(file)) {
+                LOG.debug("Add file " + resource.getName());
+                files.add(file.getLocation().toFile());
+                if (resources != null) {
+                    resources.add(file);
                 }
-            } catch (PropertiesException e) {
-                LOG.warn("ModelException when adding file " + resource.getName() + " to CPD. Continuing.", e);
+                return false;
             }
         }
 
         return true;
     }
 
+    /**
+     * Test if a file would be added by this visitor.
+     *
+     * @param file
+     * @return true if the file has the language, is in the working set and is
+     *         not excluded as derived file
+     */
+    public boolean accepts(IFile file) {
+        try {
+            return StringUtils.isNotBlank(file.getFileExtension())
+                    && language.hasExtension(file.getFileExtension())
+                    && isFileInWorkingSet(file)
+                    && (includeDerivedFiles || !file.isDerived());
+        } catch (PropertiesException e) {
+            LOG.warn("ModelException when adding file " + file.getName() + " to CPD. Continuing.", e);
+            return false;
+        }
+    }
+
     /**
      * Test if a file is in the PMD working set.
      *
@@ -4,25 +4,30 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IPropertyListener;
@@ -37,6 +42,8 @@ import net.sourceforge.pmd.cpd.CpdCapableLanguage;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
 import net.sourceforge.pmd.eclipse.runtime.cmd.internal.CpdResult;
+import net.sourceforge.pmd.eclipse.runtime.cmd.internal.CpdTokenIndex;
+import net.sourceforge.pmd.eclipse.runtime.cmd.internal.ReportFileWriter;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
 import net.sourceforge.pmd.lang.LanguageRegistry;
@@ -51,6 +58,9 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
 
     private CpdCapableLanguage language;
     private int minTileSize;
+    private boolean incremental;
+    private boolean workspaceWide;
+    private int threadCount;
     private CPDReportRenderer renderer;
     private String reportName;
     private boolean createReport;
@@ -85,7 +95,7 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
     @Override
     public void execute() {
         try {
-            List<File> files = findCandidateFiles();
+            List<IFile> files = findCandidateFiles();
 
             if (files.isEmpty()) {
                 logInfo("No files found for specified language.");
@@ -93,7 +103,22 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
                 logInfo("Found " + files.size() + " files for the specified language. Performing CPD.");
             }
             setStepCount(files.size());
-            beginTask("Finding suspect Cut And Paste", getStepCount() * 2);
+            beginTask("Finding suspect Cut And Paste", getStepCount() * (incremental ? 3 : 2));
+
+            final List<IFile> allFiles = files;
+            Map<IProject, CpdTokenIndex> indexes = null;
+            boolean coldIndex = false;
+            if (incremental && !isCanceled()) {
+                indexes = loadIndexes(files);
+                coldIndex = allEmpty(indexes);
+                if (coldIndex) {
+                    // there is nothing to filter with yet, the index is built after the analysis
+                    logInfo("The CPD token index is empty, all files are analyzed.");
+                } else {
+                    files = selectFilesWithDuplicates(files, indexes);
+                    logInfo(files.size() + " files might contain duplicates.");
+                }
+            }
 
             Consumer<CPDReport> renderer = null;
             if (createReport) {
@@ -107,6 +132,11 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
                     notifyListeners(cpdResult);
                 }
             }
+
+            if (coldIndex && !isCanceled()) {
+                subTask("Updating the CPD token index");
+                updateIndexes(allFiles, indexes);
+            }
         } catch (CoreException e) {
             LOG.debug("Core Exception: " + e.getMessage(), e);
             throw new RuntimeException(e);
@@ -127,6 +157,9 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
         setCPDRenderer(null);
         setLanguage("java");
         setMinTileSize(PMDPlugin.getDefault().loadPreferences().getMinTileSize());
+        setIncremental(PMDPlugin.getDefault().loadPreferences().isCpdIncremental());
+        setThreadCount(PMDPlugin.getDefault().loadPreferences().getCpdThreadCount());
+        setWorkspaceWide(false);
         setCreateReport(false);
         addPropertyListener(null);
         listeners = new ArrayList<>();
@@ -148,6 +181,32 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
         minTileSize = tilesize;
     }
 
+    /**
+     * @param incremental
+     *            reuse the tokens of the unchanged files from the last run
+     */
+    public void setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @param workspaceWide
+     *            search for duplicates across all the open projects. The report is
+     *            created in the project of this command.
+     */
+    public void setWorkspaceWide(final boolean workspaceWide) {
+        this.workspaceWide = workspaceWide;
+    }
+
+    /**
+     * @param threadCount
+     *            the number of threads used to tokenize the files, 0 uses one
+     *            thread per processor
+     */
+    public void setThreadCount(final int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     public void setCPDRenderer(CPDReportRenderer theRenderer) {
         this.renderer = theRenderer;
     }
@@ -186,22 +245,154 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
 
     /**
      * Finds all files in a project based on a language. Uses internally the
-     * CPDVisitor.
+     * CPDVisitor. In the workspace wide mode the files of all the open projects
+     * are searched.
      * 
      * @return List of files
      * @throws PropertiesException
      * @throws CoreException
      */
-    private List<File> findCandidateFiles() throws PropertiesException, CoreException {
-
-        final IProjectProperties properties = projectProperties();
-        final CPDVisitor visitor = new CPDVisitor();
-        visitor.setWorkingSet(properties.getProjectWorkingSet());
-        visitor.setIncludeDerivedFiles(properties.isIncludeDerivedFiles());
-        visitor.setLanguage(language);
-        visitor.setFiles(new ArrayList<>());
-        visitProjectResourcesWith(visitor);
-        return visitor.getFiles();
+    private List<IFile> findCandidateFiles() throws PropertiesException, CoreException {
+        final List<IFile> files = new ArrayList<>();
+        for (final IProject project : projectsToSearch()) {
+            final IProjectProperties properties = PMDPlugin.getDefault().loadProjectProperties(project);
+            final CPDVisitor visitor = new CPDVisitor();
+            visitor.setWorkingSet(properties.getProjectWorkingSet());
+            visitor.setIncludeDerivedFiles(properties.isIncludeDerivedFiles());
+            visitor.setLanguage(language);
+            visitor.setFiles(new ArrayList<>());
+            visitor.setResources(files);
+            project.accept(visitor);
+        }
+        return files;
+    }
+
+    private List<IProject> projectsToSearch() {
+        if (!workspaceWide) {
+            return Collections.singletonList(project());
+        }
+        final List<IProject> projects = new ArrayList<>();
+        for (final IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+            if (project.isAccessible()) {
+                projects.add(project);
+            }
+        }
+        return projects;
+    }
+
+    /**
+     * Loads the token indexes of the projects of the files.
+     */
+    private Map<IProject, CpdTokenIndex> loadIndexes(final List<IFile> files) {
+        final Map<IProject, CpdTokenIndex> indexes = new HashMap<>();
+        for (final IFile file : files) {
+            final IProject project = file.getProject();
+            if (!indexes.containsKey(project)) {
+                indexes.put(project, CpdTokenIndex.get(project, language, Charset.defaultCharset()));
+            }
+        }
+        return indexes;
+    }
+
+    private static boolean allEmpty(final Map<IProject, CpdTokenIndex> indexes) {
+        for (final CpdTokenIndex index : indexes.values()) {
+            if (!index.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Updates the token indexes of the projects and selects the files, that might contain
+     * duplicates. Only the files, that have changed since the last run, are tokenized.
+     * If the command is canceled, the files are not filtered.
+     *
+     * @param files
+     *            all the files to search
+     * @param indexes
+     *            the indexes per project
+     * @return the files, that need to be analyzed by CPD
+     */
+    private List<IFile> selectFilesWithDuplicates(final List<IFile> files,
+            final Map<IProject, CpdTokenIndex> indexes) {
+        subTask("Updating the CPD token index");
+        if (!updateIndexes(files, indexes)) {
+            return files;
+        }
+        return CpdTokenIndex.selectCandidates(indexes, files, minTileSize);
+    }
+
+    /**
+     * Brings the token indexes up to date and saves them. The entries of files, that are not
+     * part of the search anymore, are dropped. If the command is canceled meanwhile, the
+     * indexes are not saved.
+     *
+     * @return <code>true</code> if all the files have been processed
+     */
+    private boolean updateIndexes(final List<IFile> files, final Map<IProject, CpdTokenIndex> indexes) {
+        if (!tokenize(files, indexes)) {
+            return false;
+        }
+
+        final Map<IProject, List<IFile>> filesPerProject = new HashMap<>();
+        for (final IFile file : files) {
+            filesPerProject.computeIfAbsent(file.getProject(), p -> new ArrayList<>()).add(file);
+        }
+        for (final Map.Entry<IProject, CpdTokenIndex> entry : indexes.entrySet()) {
+            entry.getValue().retainAll(filesPerProject.get(entry.getKey()));
+            entry.getValue().save();
+        }
+        return true;
+    }
+
+    /**
+     * Brings the tokens of the files up to date on a pool of worker threads. A file, that
+     * can't be tokenized, is dropped from its index, so that it is always selected.
+     *
+     * @return <code>true</code> if all the files have been processed, <code>false</code>
+     *         if the command has been canceled
+     */
+    private boolean tokenize(final List<IFile> files, final Map<IProject, CpdTokenIndex> indexes) {
+        final int threads = Math.max(1, Math.min(files.size(),
+                threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors()));
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int tokenized = 0;
+        int done = 0;
+        try {
+            final CompletionService<Boolean> completion = new ExecutorCompletionService<>(executor);
+            for (final IFile file : files) {
+                completion.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        final CpdTokenIndex index = indexes.get(file.getProject());
+                        try {
+                            return index.update(file);
+                        } catch (RuntimeException e) {
+                            LOG.warn("Could not tokenize the file {} for CPD", file, e);
+                            index.remove(file);
+                            return false;
+                        }
+                    }
+                });
+            }
+            for (; done < files.size() && !isCanceled(); done++) {
+                try {
+                    if (completion.take().get()) {
+                        tokenized++;
+                    }
+                } catch (ExecutionException e) {
+                    LOG.warn("Could not tokenize a file for CPD", e.getCause());
+                }
+                worked(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.debug("Tokenized {} of {} files", tokenized, files.size());
+        return done == files.size();
     }
 
     /**
@@ -213,7 +404,7 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
      * @return the CPD itself for retrieving the matches.
      * @throws CoreException
      */
-    private CpdResult detectCutAndPaste(final List<File> files, final Consumer<CPDReport> renderer) {
+    private CpdResult detectCutAndPaste(final List<IFile> files, final Consumer<CPDReport> renderer) {
         LOG.debug("Searching for project files");
 
         final AtomicReference<CpdResult> reportResult = new AtomicReference<>();
@@ -225,9 +416,9 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
 
         try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
             subTask("Collecting files for CPD");
-            final Iterator<File> fileIterator = files.iterator();
+            final Iterator<IFile> fileIterator = files.iterator();
             while (fileIterator.hasNext() && !isCanceled()) {
-                final File file = fileIterator.next();
+                final File file = fileIterator.next().getLocation().toFile();
                 cpd.files().addFile(file.toPath());
                 worked(1);
             }
@@ -272,26 +463,8 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
             LOG.debug("Create the report file");
             final IFile reportFile = folder.getFile(reportName);
 
-            byte[] data = new byte[0];
-            try (ByteArrayOutputStream renderedReport = new ByteArrayOutputStream();
-                 Writer writer = new OutputStreamWriter(renderedReport, StandardCharsets.UTF_8);) {
-                renderer.render(cpdResult, writer);
-                writer.flush();
-                data = renderedReport.toByteArray();
-            } catch (IOException e) {
-                LOG.error("Error while renderering CPD Report", e);
-                throw new RuntimeException(e);
-            }
-
-            try (InputStream contentsStream = new ByteArrayInputStream(data)) {
-                if (reportFile.exists()) {
-                    LOG.debug("   Overwriting report file");
-                    reportFile.setContents(contentsStream, true, false, getMonitor());
-                    reportFile.setCharset(StandardCharsets.UTF_8.name(), getMonitor());
-                } else {
-                    LOG.debug("   Creating report file");
-                    reportFile.create(contentsStream, true, getMonitor());
-                }
+            try {
+                ReportFileWriter.write(reportFile, writer -> renderer.render(cpdResult, writer), getMonitor());
             } catch (IOException e) {
                 LOG.error("Error while writing CPD Report", e);
                 throw new RuntimeException(e);
@@ -11,6 +11,8 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.runtime.CoreException;
 
+import net.sourceforge.pmd.eclipse.runtime.builder.AnalysisResultStore.StoredViolation;
+
 /**
  * 
  * @author Brian Remedios
@@ -19,6 +21,7 @@ public class MarkerInfo2 {
 
     private final String type;
     private Map<String, Object> data;
+    private StoredViolation violation;
 
     public MarkerInfo2(String theType, int expectedSize) {
         type = theType;
@@ -33,10 +36,23 @@ public class MarkerInfo2 {
         add(name, Integer.valueOf(value));
     }
 
-    public void addAsMarkerTo(IFile file) throws CoreException {
+    /**
+     * @return the complete data of the rule violation, <code>null</code> if the marker is not
+     *     created for a rule violation
+     */
+    public StoredViolation getViolation() {
+        return violation;
+    }
+
+    public void setViolation(StoredViolation violation) {
+        this.violation = violation;
+    }
+
+    public IMarker addAsMarkerTo(IFile file) throws CoreException {
 
         IMarker marker = file.createMarker(type);
         marker.setAttributes(data.keySet().toArray(new String[0]), data.values().toArray());
+        return marker;
     }
 
     @Override
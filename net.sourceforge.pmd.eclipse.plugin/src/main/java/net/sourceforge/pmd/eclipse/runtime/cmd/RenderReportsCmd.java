@@ -4,21 +4,33 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
-import java.io.ByteArrayInputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IPackageDeclaration;
 import org.eclipse.jdt.core.IType;
@@ -29,7 +41,11 @@ import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
+import net.sourceforge.pmd.eclipse.runtime.builder.AnalysisResultStore;
+import net.sourceforge.pmd.eclipse.runtime.builder.AnalysisResultStore.StoredViolation;
+import net.sourceforge.pmd.eclipse.runtime.builder.MarkerTable;
+import net.sourceforge.pmd.eclipse.runtime.cmd.internal.ReportFileWriter;
+import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.RuleSet;
@@ -78,45 +94,114 @@ public class RenderReportsCmd extends AbstractProjectCommand {
     }
 
     /**
-     * 
-     * @param report
-     * @param folder
-     * @param reportName
-     * @param renderer
-     * @throws IOException
-     * @throws CoreException
+     * Renders the report in all registered formats concurrently. Every format is rendered into its
+     * own temporary file on a worker thread. The rendered reports are then copied into the report
+     * folder on the calling thread, in the order they are finished, so that no workspace operation
+     * runs on the worker threads.
+     *
+     * <p>A format, that fails, doesn't keep the other formats from being written. After a cancel,
+     * the reports written so far are kept and the renderers stop at their next write. The temporary
+     * files are deleted, when all the workers have stopped.
+     *
+     * @param report the report, it is not changed anymore while rendering
+     * @param folder the report folder
      */
-    private void render(Report report, IFolder folder, String reportName, Renderer renderer)
-            throws IOException, CoreException {
-
-        String reportString = null;
-
-        try (StringWriter writer = new StringWriter()) {
-            renderer.setWriter(writer);
-            renderer.start();
-            renderer.renderFileReport(report);
-            renderer.end();
-            renderer.flush();
+    private void renderAll(final Report report, IFolder folder) throws IOException, CoreException {
+        final int threads = Math.max(1, Math.min(renderers.size(), Runtime.getRuntime().availableProcessors()));
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final Map<String, Path> tempFiles = new HashMap<>();
+        final Map<Future<String>, String> reportNames = new HashMap<>();
+        Throwable failure = null;
+        beginTask(getString(StringKeys.MONITOR_RENDER_REPORTS), renderers.size());
+        try {
+            final CompletionService<String> completion = new ExecutorCompletionService<>(executor);
+            for (final Map.Entry<String, Renderer> entry : renderers.entrySet()) {
+                final String reportName = entry.getKey();
+                final Renderer renderer = entry.getValue();
+                final Path tempFile = Files.createTempFile("pmd-report", ".tmp");
+                tempFiles.put(reportName, tempFile);
+                Future<String> future = completion.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        LOG.debug("   Render the report {}", reportName);
+                        ReportFileWriter.render(tempFile, writer -> {
+                            renderer.setWriter(new CancelableWriter(writer));
+                            renderer.start();
+                            renderer.renderFileReport(report);
+                            renderer.end();
+                            renderer.flush();
+                        });
+                        return reportName;
+                    }
+                });
+                reportNames.put(future, reportName);
+            }
 
-            reportString = writer.toString();
+            final Set<String> pending = new HashSet<>(renderers.keySet());
+            while (!pending.isEmpty() && !isCanceled()) {
+                Future<String> rendered = completion.poll(100, TimeUnit.MILLISECONDS);
+                if (rendered == null) {
+                    continue;
+                }
+                String reportName = reportNames.get(rendered);
+                pending.remove(reportName);
+                try {
+                    rendered.get();
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof OperationCanceledException)) {
+                        LOG.error("Could not render the report {}", reportName, e.getCause());
+                        failure = failure == null ? e.getCause() : failure;
+                    }
+                    worked(1);
+                    continue;
+                }
+                subTask(getString(StringKeys.MONITOR_WRITE_REPORT) + " " + reportName);
+                Path tempFile = tempFiles.get(reportName);
+                if (ReportFileWriter.isBlank(tempFile)) {
+                    LOG.debug("Missing content for report: " + reportName);
+                } else {
+                    IFile reportFile = folder.getFile(reportName);
+                    ReportFileWriter.copy(tempFile, reportFile, getMonitor());
+                    reportFile.refreshLocal(IResource.DEPTH_INFINITE, getMonitor());
+                }
+                worked(1);
+            }
+            if (!pending.isEmpty()) {
+                LOG.debug("   Rendering cancelled, the reports {} are not written", pending);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+            for (Path tempFile : tempFiles.values()) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    LOG.debug("Could not delete the temporary report file {}", tempFile, e);
+                }
+            }
         }
 
-        if (StringUtils.isBlank(reportString)) {
-            LOG.debug("Missing content for report: " + reportName);
-            return;
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
         }
+    }
 
-        LOG.debug("   Creating the report file");
-        IFile reportFile = folder.getFile(reportName);
-        try (InputStream contentsStream = new ByteArrayInputStream(reportString.getBytes(StandardCharsets.UTF_8))) {
-            if (reportFile.exists()) {
-                reportFile.setContents(contentsStream, true, false, getMonitor());
-            } else {
-                reportFile.create(contentsStream, true, getMonitor());
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.warn("The report renderers didn't stop, their temporary files are deleted anyway");
             }
-            reportFile.setCharset(StandardCharsets.UTF_8.name(), getMonitor());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        reportFile.refreshLocal(IResource.DEPTH_INFINITE, getMonitor());
+    }
+
+    private static String getString(String key) {
+        return PMDPlugin.getDefault().getStringTable().getString(key);
     }
 
     @Override
@@ -133,12 +218,7 @@ public class RenderReportsCmd extends AbstractProjectCommand {
                 folder.create(true, true, getMonitor());
             }
 
-            for (Map.Entry<String, Renderer> entry : renderers.entrySet()) {
-                String reportName = entry.getKey();
-                Renderer renderer = entry.getValue();
-                LOG.debug("   Render the report");
-                render(report, folder, reportName, renderer);
-            }
+            renderAll(report, folder);
         } catch (CoreException | IOException e) {
             LOG.debug(e.toString(), e);
             throw new RuntimeException(e);
@@ -160,41 +240,90 @@ public class RenderReportsCmd extends AbstractProjectCommand {
         return super.isReadyToExecute() && !renderers.isEmpty();
     }
 
-    private static void classAndPackageFrom(IMarker marker, FakeRuleViolation violation) throws JavaModelException {
-        ICompilationUnit unit = JavaCore.createCompilationUnitFrom((IFile) marker.getResource());
+    /**
+     * Looks up the package and the first type of the file in the java model. Only used for markers,
+     * that have been created without the package and class attributes.
+     *
+     * @return the package name and the class name
+     */
+    private static String[] classAndPackageFrom(IFile file) throws JavaModelException {
+        ICompilationUnit unit = JavaCore.createCompilationUnitFrom(file);
 
         IPackageDeclaration[] packages = unit.getPackageDeclarations();
-        violation.setPackageName(packages.length > 0 ? packages[0].getElementName() : "(default)");
-
         IType[] types = unit.getAllTypes();
-        violation.setClassName(types.length > 0 ? types[0].getElementName() : marker.getResource().getName());
+        return new String[] { packages.length > 0 ? packages[0].getElementName() : "(default)",
+            types.length > 0 ? types[0].getElementName() : file.getName(), };
     }
 
     /**
-     * Create a Report object from the markers of a project.
+     * Create a Report object for a project. The violations are taken from the
+     * {@link AnalysisResultStore}, which keeps their complete data. Only the markers,
+     * that are not known to the store (e.g. created by an older version), are
+     * turned back into violations from their attributes.
      * 
      * @param project
      * @return
      */
     private Report createReport(IProject project) throws CoreException {
-        IMarker[] markers = MarkerUtil.findAllMarkers(project);
-        boolean isJavaProject = project.hasNature(JavaCore.NATURE_ID);
+        IMarker[] found = project.isAccessible()
+                ? project.findMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_INFINITE)
+                : new IMarker[0];
+
+        AnalysisResultStore store = AnalysisResultStore.getInstance();
+        final List<IResource> storedResources = new ArrayList<>();
+        final List<StoredViolation> storedViolations = new ArrayList<>();
+        List<IMarker> unknownMarkers = new ArrayList<>();
+        Set<Long> storedMarkerIds = new HashSet<>();
+        for (IMarker marker : found) {
+            StoredViolation violation = store.violationOf(marker);
+            if (violation != null) {
+                storedResources.add(marker.getResource());
+                storedViolations.add(violation);
+                storedMarkerIds.add(marker.getId());
+            } else {
+                unknownMarkers.add(marker);
+            }
+        }
+        store.retainMarkers(project, storedMarkerIds);
+        LOG.debug("   {} violations from the result store, {} from the markers", storedViolations.size(),
+                unknownMarkers.size());
+
+        // the attributes of the remaining markers are read with one call per marker
+        final MarkerTable markers = MarkerTable.of(unknownMarkers.toArray(new IMarker[0]));
+        final boolean isJavaProject = project.hasNature(JavaCore.NATURE_ID);
+        final Map<IResource, String[]> namesByFile = new HashMap<>();
 
         return BaseResultProducingCloseable.using(new Report.ReportBuilderListener(), reportBuilderListener -> {
             RuleSet ruleSet = PMDPlugin.getDefault().getPreferencesManager().getRuleSet();
 
-            for (IMarker marker : markers) {
-                String ruleName = marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, "");
-                Rule rule = ruleSet.getRuleByName(ruleName);
-
-                FakeRuleViolation ruleViolation = createViolation(marker, rule);
+            for (int i = 0; i < storedViolations.size(); i++) {
+                StoredViolation violation = storedViolations.get(i);
+                Rule rule = ruleSet.getRuleByName(violation.getRuleName());
+                reportBuilderListener.onRuleViolation(createViolation(violation, storedResources.get(i), rule));
+            }
 
-                if (isJavaProject && marker.getResource() instanceof IFile) {
-                    try {
-                        classAndPackageFrom(marker, ruleViolation);
-                    } catch (JavaModelException e) {
-                        throw new RuntimeException(e);
+            for (int row = 0; row < markers.size(); row++) {
+                Rule rule = ruleSet.getRuleByName(markers.getRuleName(row));
+
+                FakeRuleViolation ruleViolation = createViolation(markers, row, rule);
+
+                IResource resource = markers.getResource(row);
+                if (markers.getClassName(row) != null) {
+                    ruleViolation.setPackageName(markers.getPackageName(row) != null ? markers.getPackageName(row)
+                            : "(default)");
+                    ruleViolation.setClassName(markers.getClassName(row));
+                } else if (isJavaProject && resource instanceof IFile) {
+                    String[] names = namesByFile.get(resource);
+                    if (names == null) {
+                        try {
+                            names = classAndPackageFrom((IFile) resource);
+                        } catch (JavaModelException e) {
+                            throw new RuntimeException(e);
+                        }
+                        namesByFile.put(resource, names);
                     }
+                    ruleViolation.setPackageName(names[0]);
+                    ruleViolation.setClassName(names[1]);
                 }
 
                 reportBuilderListener.onRuleViolation(ruleViolation);
@@ -202,19 +331,71 @@ public class RenderReportsCmd extends AbstractProjectCommand {
         });
     }
 
-    private static FakeRuleViolation createViolation(IMarker marker, Rule rule) {
+    private static FakeRuleViolation createViolation(StoredViolation violation, IResource resource, Rule rule) {
+        FakeRuleViolation ruleViolation = new FakeRuleViolation(rule);
+        ruleViolation.setBeginLine(violation.getBeginLine());
+        ruleViolation.setBeginColumn(violation.getBeginColumn());
+        ruleViolation.setEndLine(violation.getEndLine());
+        ruleViolation.setEndColumn(violation.getEndColumn());
+        ruleViolation.setPackageName(violation.getPackageName() != null ? violation.getPackageName() : "(default)");
+        ruleViolation.setClassName(violation.getClassName() != null ? violation.getClassName() : resource.getName());
+        ruleViolation.setMethodName(violation.getMethodName());
+        ruleViolation.setVariableName(violation.getVariableName() != null ? violation.getVariableName() : "");
+        ruleViolation.setFileId(FileId.fromPathLikeString(resource.getProjectRelativePath().toString()));
+        ruleViolation.setDescription(violation.getDescription() != null ? violation.getDescription()
+                : rule.getMessage());
+        return ruleViolation;
+    }
+
+    private static FakeRuleViolation createViolation(MarkerTable markers, int row, Rule rule) {
 
         // @PMD:REVIEWED:AvoidInstantiatingObjectsInLoops: by Herlin on 01/05/05
         // 19:14
         FakeRuleViolation ruleViolation = new FakeRuleViolation(rule);
 
         // Fill in the rule violation object before adding it to the report
-        ruleViolation.setBeginLine(marker.getAttribute(IMarker.LINE_NUMBER, 0));
-        ruleViolation.setEndLine(marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_LINE2, 0));
-        ruleViolation.setVariableName(marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_LINE2, ""));
-        FileId fileId = FileId.fromPathLikeString(marker.getResource().getProjectRelativePath().toString());
+        ruleViolation.setBeginLine(markers.getLine(row));
+        ruleViolation.setEndLine(markers.getEndLine(row));
+        String variableName = markers.getVariableName(row);
+        ruleViolation.setVariableName(variableName != null ? variableName : "");
+        ruleViolation.setMethodName(markers.getMethodName(row));
+        FileId fileId = FileId.fromPathLikeString(markers.getResource(row).getProjectRelativePath().toString());
         ruleViolation.setFileId(fileId);
-        ruleViolation.setDescription(marker.getAttribute(IMarker.MESSAGE, rule.getMessage()));
+        String message = markers.getMessage(row);
+        ruleViolation.setDescription(message != null ? message : rule.getMessage());
         return ruleViolation;
     }
+
+    /**
+     * Stops the renderer at its next write, when the command has been canceled.
+     */
+    private final class CancelableWriter extends FilterWriter {
+        CancelableWriter(Writer out) {
+            super(out);
+        }
+
+        private void checkCanceled() {
+            if (isCanceled()) {
+                throw new OperationCanceledException();
+            }
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            checkCanceled();
+            super.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            checkCanceled();
+            super.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            checkCanceled();
+            super.write(str, off, len);
+        }
+    }
 }
@@ -6,7 +6,6 @@ package net.sourceforge.pmd.eclipse.runtime.cmd;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -17,6 +16,7 @@ import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
@@ -45,13 +45,13 @@ import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.AnalysisResultStore;
+import net.sourceforge.pmd.eclipse.runtime.builder.AnalysisResultStore.StoredViolation;
 import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
-import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
-import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
-import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
+import net.sourceforge.pmd.eclipse.runtime.cmd.AnalysisSnapshot.ProjectSnapshot;
 import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
 import net.sourceforge.pmd.eclipse.ui.actions.internal.InternalRuleSetUtil;
-import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.RuleSet;
 
@@ -80,7 +80,9 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
     private boolean openPmdViolationsOutlineView;
     private int ruleCount;
     private int fileCount;
+    private int errorCount;
     private long pmdDuration;
+    private int threads;
 
     /**
      * Whether to run the review command, even if PMD is disabled in the project settings.
@@ -88,7 +90,17 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
      */
     private boolean runAlways = false;
 
-    private IProjectProperties propertyCache = null;
+    /**
+     * Whether the user may be asked, e.g. about misconfigured rules. Headless runs must not open dialogs.
+     */
+    private boolean interactive = true;
+    private int misconfiguredRuleCount;
+
+    /**
+     * The configuration, that is used for the current run. It is captured once at
+     * the start of {@link #execute()}.
+     */
+    private AnalysisSnapshot snapshot;
 
     public ReviewCodeCmd() {
         super("ReviewCode", "Run PMD on a list of workbench resources");
@@ -143,7 +155,8 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
 
     /**
      * Checks whether there are any misconfigured rules. If there are, a confirmation
-     * dialog will ask the user, whether to continue or abort the PMD run.
+     * dialog will ask the user, whether to continue or abort the PMD run. If the command
+     * is not interactive, the rules are logged and the PMD run is aborted.
      *
      * @return <code>true</code> if PMD should be executed, <code>false</code> if it should be aborted.
      */
@@ -151,10 +164,17 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         RuleSet ruleSet = currentRules();
 
         boolean runPMD = true;
+        misconfiguredRuleCount = 0;
 
         if (!ruleSet.getRules().isEmpty()) {
             Map<Rule, String> faultsByRule = misconfiguredRulesIn();
-            if (!faultsByRule.isEmpty()) {
+            if (!faultsByRule.isEmpty() && !interactive) {
+                for (Map.Entry<Rule, String> entry : faultsByRule.entrySet()) {
+                    LOG.error("Misconfigured rule {}: {}", entry.getKey().getName(), entry.getValue());
+                }
+                misconfiguredRuleCount = faultsByRule.size();
+                runPMD = false;
+            } else if (!faultsByRule.isEmpty()) {
                 runPMD = MessageDialog.openConfirm(Display.getDefault().getActiveShell(), "Rule configuration problem",
                         "Continue anyways?");
             }
@@ -172,10 +192,13 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         LOG.debug("ReviewCode command starting.");
         try {
             fileCount = 0;
+            errorCount = 0;
             ruleCount = 0;
             pmdDuration = 0;
 
-            String projectList = determineProjectList();
+            Set<IProject> projects = determineProjects();
+            snapshot = AnalysisSnapshot.create(projects);
+            String projectList = determineProjectList(projects);
             int totalWork = determineTotalWork();
             LOG.info("Found {} resources in projects {}", totalWork, projectList);
             setStepCount(totalWork); // mostly for unit tests
@@ -245,6 +268,7 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         } catch (CoreException e) {
             throw new RuntimeException("Core exception when reviewing code", e);
         } finally {
+            snapshot = null;
             LOG.debug("ReviewCode command has ended.");
             setTerminated(true);
             done();
@@ -261,17 +285,14 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
             }
         }
 
+        ViolationIndex.getInstance().refresh(markedFiles());
         PMDPlugin.getDefault().changedFiles(markedFiles());
     }
 
     private int determineTotalWork() {
-        boolean useFileExtensions = PMDPlugin.getDefault().loadPreferences().isDetermineFiletypesAutomatically();
-        Map<IProject, Set<String>> fileExtensionsPerProject = new HashMap<>();
-        CountVisitor2 visitor = new CountVisitor2(useFileExtensions, fileExtensionsPerProject);
+        CountVisitor2 visitor = new CountVisitor2(snapshot);
 
         for (IResource resource : resources) {
-            determineFileExtensions(fileExtensionsPerProject, resource);
-
             try {
                 if (resource instanceof IProject && ((IProject) resource).hasNature(JavaCore.NATURE_ID)) {
                     for (IResource sourceFolder : getJavaProjectSourceFolders((IProject) resource)) {
@@ -286,7 +307,6 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         }
         if (resourceDelta != null) {
             IResource resource = resourceDelta.getResource();
-            determineFileExtensions(fileExtensionsPerProject, resource);
             try {
                 resource.accept(visitor);
             } catch (CoreException e) {
@@ -296,41 +316,20 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         return visitor.getCount();
     }
 
-    private void determineFileExtensions(Map<IProject, Set<String>> fileExtensionsPerProject, IResource resource) {
-        IProject project = resource.getProject();
-        if (project != null && !fileExtensionsPerProject.containsKey(project)) {
-            try {
-                List<RuleSet> rulesets = rulesetsFrom(resource);
-                Set<String> fileExtensions = determineFileExtensions(rulesets);
-                fileExtensionsPerProject.put(project, fileExtensions);
-            } catch (PropertiesException e) {
-                LOG.warn("Error while determining file extensions for project {}", project, e);
-                fileExtensionsPerProject.put(project, Collections.<String>emptySet());
-            }
-        }
-    }
-
     private static class CountVisitor2 implements IResourceVisitor {
-        private final boolean useFileExtensions;
-        private final Map<IProject, Set<String>> fileExtensionsPerProject;
+        private final AnalysisSnapshot snapshot;
         private int count;
 
-        CountVisitor2(boolean useFileExtensions, Map<IProject, Set<String>> fileExtensionsPerProject) {
-            this.useFileExtensions = useFileExtensions;
-            this.fileExtensionsPerProject = fileExtensionsPerProject;
-        }
-
-        CountVisitor2(boolean useFileExtensions, IProject project, Set<String> fileExtensions) {
-            this.useFileExtensions = useFileExtensions;
-            this.fileExtensionsPerProject = new HashMap<>();
-            this.fileExtensionsPerProject.put(project, fileExtensions);
+        CountVisitor2(AnalysisSnapshot snapshot) {
+            this.snapshot = snapshot;
         }
 
         @Override
         public boolean visit(IResource resource) throws CoreException {
             if (resource instanceof IFile) {
-                if (useFileExtensions) {
-                    Set<String> extensions = fileExtensionsPerProject.get(resource.getProject());
+                if (snapshot.isDetermineFiletypesAutomatically()) {
+                    ProjectSnapshot projectSnapshot = snapshot.forProject(resource.getProject());
+                    Set<String> extensions = projectSnapshot != null ? projectSnapshot.getFileExtensions() : null;
                     String extension = resource.getFileExtension();
                     if (extensions != null && extension != null
                             && extensions.contains(extension.toLowerCase(Locale.ROOT))) {
@@ -349,7 +348,7 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         }
     }
 
-    private String determineProjectList() {
+    private Set<IProject> determineProjects() {
         Set<IProject> projects = new HashSet<>();
         for (IResource resource : resources) {
             IProject project = resource.getProject();
@@ -363,6 +362,10 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                 projects.add(project);
             }
         }
+        return projects;
+    }
+
+    private String determineProjectList(Set<IProject> projects) {
         StringBuilder projectList = new StringBuilder(projects.size() * 20);
         projectList.append('[');
         for (IProject project : projects) {
@@ -382,6 +385,38 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         return fileCount;
     }
 
+    /**
+     * @return the number of files, that could not be analyzed
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return the number of misconfigured rules, because of which a non-interactive run has been aborted
+     */
+    public int getMisconfiguredRuleCount() {
+        return misconfiguredRuleCount;
+    }
+
+    /**
+     * @return the time spent in PMD itself in ms, without visiting the resources and applying the markers
+     */
+    public long getPmdDuration() {
+        return pmdDuration;
+    }
+
+    /**
+     * Sets the number of threads, PMD may use. By default (0) each file is analyzed on its own
+     * on the thread of the command, which is best for a few files. With more threads the files
+     * of a project are analyzed in batches, which is faster for full builds.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public void setResources(Collection<ISchedulingRule> resources) {
         resources.clear();
         resources.addAll(resources);
@@ -409,6 +444,15 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         this.runAlways = runAlways;
     }
 
+    /**
+     * @param interactive
+     *            whether the user may be asked. Otherwise problems are logged and
+     *            the command aborts instead of opening a dialog.
+     */
+    public void setInteractive(boolean interactive) {
+        this.interactive = interactive;
+    }
+
     /**
      * @param openPmdPerspective
      *            Tell whether the PMD perspective should be opened after processing.
@@ -446,6 +490,8 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         openPmdViolationsOverviewView = false;
         openPmdViolationsOutlineView = false;
         runAlways = false;
+        interactive = true;
+        threads = 0;
     }
 
     @Override
@@ -490,54 +536,44 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         }
     }
 
-    private IProjectProperties getProjectProperties(IProject project) throws PropertiesException {
-        if (propertyCache == null || !propertyCache.getProject().getName().equals(project.getName())) {
-            propertyCache = PMDPlugin.getDefault().loadProjectProperties(project);
-        }
-        return propertyCache;
-    }
-
-    private List<RuleSet> rulesetsFrom(IResource resource) throws PropertiesException {
-        IProject project = resource.getProject();
-        IProjectProperties properties = getProjectProperties(project);
-
-        return filteredRuleSets(properties); // properties.getProjectRuleSet();
-    }
-
     /**
      * Review a single resource. The given resource might be a directory, though.
      */
     private void processResource(IResource resource) {
         try {
 
-            final IProject project = resource.getProject();
-            final IProjectProperties properties = getProjectProperties(project);
-            if (!runAlways && !properties.isPmdEnabled()) {
+            final ProjectSnapshot projectSnapshot = snapshot.forProject(resource.getProject());
+            if (projectSnapshot == null) {
+                LOG.warn("Skipping resource {}, the properties of its project could not be loaded", resource);
+                return;
+            }
+            if (!runAlways && !projectSnapshot.isPmdEnabled()) {
                 return;
             }
 
-            List<RuleSet> ruleSets = rulesetsFrom(resource);
-            Set<String> fileExtensions = determineFileExtensions(ruleSets);
+            List<RuleSet> ruleSets = projectSnapshot.getRuleSets();
+            taskScope(InternalRuleSetUtil.countRules(ruleSets), projectSnapshot.getTotalRuleCount());
             // final PMDEngine pmdEngine = getPmdEngineForProject(project);
             int targetCount = 0;
             if (resource.exists()) {
-                targetCount = countResourceElement(resource, fileExtensions);
+                targetCount = countResourceElement(resource, projectSnapshot);
             }
             // Could add a property that lets us set the max number to analyze
-            if (properties.isFullBuildEnabled() || isUserInitiated() || targetCount <= MAXIMUM_RESOURCE_COUNT) {
+            if (projectSnapshot.isFullBuildEnabled() || isUserInitiated() || targetCount <= MAXIMUM_RESOURCE_COUNT) {
                 setStepCount(targetCount);
                 LOG.debug("Visiting resource {}: {}", resource.getName(), getStepCount());
                 if (resource.exists()) {
                     final ResourceVisitor visitor = new ResourceVisitor();
                     visitor.setMonitor(getMonitor());
-                    visitor.setRuleSetList(ruleSets);
-                    visitor.setFileExtensions(fileExtensions);
                     visitor.setAccumulator(markersByFile);
-                    visitor.setProjectProperties(properties);
+                    visitor.setProjectSnapshot(projectSnapshot);
+                    visitor.setThreads(threads);
                     resource.accept(visitor);
+                    visitor.reviewBatch();
 
                     ruleCount = InternalRuleSetUtil.countRules(ruleSets);
                     fileCount += visitor.getProcessedFilesCount();
+                    errorCount += visitor.getErrorCount();
                     pmdDuration += visitor.getActualPmdDuration();
                 } else {
                     LOG.debug("Skipping resource {} because it doesn't exist.", resource.getName());
@@ -549,28 +585,11 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                         resource.getName(), targetCount, MAXIMUM_RESOURCE_COUNT);
             }
 
-        } catch (PropertiesException | CoreException e) {
+        } catch (CoreException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private Set<String> determineFileExtensions(List<RuleSet> ruleSets) {
-        Set<Language> languages = new HashSet<>();
-        for (RuleSet ruleset : ruleSets) {
-            for (Rule rule : ruleset.getRules()) {
-                languages.add(rule.getLanguage());
-            }
-        }
-        Set<String> fileExtensions = new HashSet<>();
-        for (Language language : languages) {
-            for (String extension : language.getExtensions()) {
-                fileExtensions.add(extension.toLowerCase(Locale.ROOT));
-            }
-        }
-        LOG.debug("Determined applicable file extensions: {}", fileExtensions);
-        return fileExtensions;
-    }
-
     /**
      * Review an entire project
      */
@@ -631,55 +650,6 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                 + " rules");
     }
 
-    private List<RuleSet> filteredRuleSets(IProjectProperties properties) throws PropertiesException {
-        final List<RuleSet> projectRuleSets = properties.getProjectRuleSetList();
-        IPreferences preferences = PMDPlugin.getDefault().getPreferencesManager().loadPreferences();
-        Set<String> onlyActiveRuleNames = preferences.getActiveRuleNames();
-
-        List<RuleSet> filteredRuleSets = new ArrayList<>();
-
-        for (RuleSet ruleSet : projectRuleSets) {
-            int rulesBefore = ruleSet.size();
-            RuleSet filteredRuleSet = RuleSetUtil.newCopyOf(ruleSet);
-            if (preferences.getGlobalRuleManagement()) {
-                // TODO: active rules are not language aware... filter by rule name...
-                List<Rule> rulesToKeep = new ArrayList<>();
-                for (Rule rule : filteredRuleSet.getRules()) {
-                    if (onlyActiveRuleNames.contains(rule.getName())) {
-                        rulesToKeep.add(rule);
-                    }
-                }
-                filteredRuleSet = RuleSetUtil.retainOnly(filteredRuleSet, rulesToKeep);
-                int rulesAfter = filteredRuleSet.size();
-
-                if (rulesAfter < rulesBefore) {
-                    LOG.warn("Ruleset has been filtered as Global Rule Management is active. "
-                            + "{} of {} rules are active and are used. {} rules will be ignored.",
-                            rulesAfter, rulesBefore, rulesBefore - rulesAfter);
-                }
-            }
-            filteredRuleSet = InternalRuleSetUtil.addExcludePatterns(filteredRuleSet,
-                    InternalRuleSetUtil.convertStringPatterns(preferences.activeExclusionPatterns()),
-                    InternalRuleSetUtil.convertStringPatterns(properties.getBuildPathExcludePatterns()));
-            filteredRuleSet = InternalRuleSetUtil.addIncludePatterns(filteredRuleSet,
-                    InternalRuleSetUtil.convertStringPatterns(preferences.activeInclusionPatterns()),
-                    InternalRuleSetUtil.convertStringPatterns(properties.getBuildPathIncludePatterns()));
-            filteredRuleSets.add(filteredRuleSet);
-        }
-
-        taskScope(InternalRuleSetUtil.countRules(filteredRuleSets), InternalRuleSetUtil.countRules(projectRuleSets));
-        return filteredRuleSets;
-    }
-
-    private List<RuleSet> rulesetsFromResourceDelta() throws PropertiesException {
-
-        IResource resource = resourceDelta.getResource();
-        final IProject project = resource.getProject();
-        final IProjectProperties properties = getProjectProperties(project);
-
-        return filteredRuleSets(properties); // properties.getProjectRuleSet();
-    }
-
     /**
      * Review a resource delta.
      */
@@ -687,36 +657,41 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         try {
             IResource resource = resourceDelta.getResource();
             final IProject project = resource.getProject();
-            final IProjectProperties properties = getProjectProperties(project);
+            final ProjectSnapshot projectSnapshot = snapshot.forProject(project);
+            if (projectSnapshot == null) {
+                LOG.warn("Skipping the delta of {}, the properties of the project could not be loaded", project);
+                return;
+            }
             LOG.info("ReviewCodeCmd started on resource delta {} in {}", resource.getName(), project);
 
-            final List<RuleSet> ruleSets = rulesetsFromResourceDelta();
-            Set<String> fileExtensions = determineFileExtensions(ruleSets);
+            final List<RuleSet> ruleSets = projectSnapshot.getRuleSets();
+            taskScope(InternalRuleSetUtil.countRules(ruleSets), projectSnapshot.getTotalRuleCount());
 
             // PMDEngine pmdEngine = getPmdEngineForProject(project);
             int targetCount = countDeltaElement(resourceDelta);
             // Could add a property that lets us set the max number to analyze
-            if (properties.isFullBuildEnabled() || isUserInitiated() || targetCount <= MAXIMUM_RESOURCE_COUNT) {
+            if (projectSnapshot.isFullBuildEnabled() || isUserInitiated() || targetCount <= MAXIMUM_RESOURCE_COUNT) {
                 setStepCount(targetCount);
                 LOG.debug("Visiting delta of resource {}: {}", resource.getName(), getStepCount());
 
                 DeltaVisitor visitor = new DeltaVisitor();
                 visitor.setMonitor(getMonitor());
-                visitor.setRuleSetList(ruleSets);
-                visitor.setFileExtensions(fileExtensions);
                 visitor.setAccumulator(markersByFile);
-                visitor.setProjectProperties(properties);
+                visitor.setProjectSnapshot(projectSnapshot);
+                visitor.setThreads(threads);
                 resourceDelta.accept(visitor);
+                visitor.reviewBatch();
 
                 ruleCount = InternalRuleSetUtil.countRules(ruleSets);
                 fileCount += visitor.getProcessedFilesCount();
+                errorCount += visitor.getErrorCount();
                 pmdDuration += visitor.getActualPmdDuration();
             } else {
                 LOG.info("Skipping resourceDelta {} because of fullBuildEnabled flag and targetCount is {}. "
                         + "This is more than {}. If you want to execute PMD, please check \"Full build enabled\" "
                         + "in the project settings.", resource.getName(), targetCount, MAXIMUM_RESOURCE_COUNT);
             }
-        } catch (PropertiesException | CoreException e) {
+        } catch (CoreException e) {
             throw new RuntimeException(e);
         }
     }
@@ -733,6 +708,7 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
 
         beginTask("PMD Applying markers", markersByFile.size());
 
+        AnalysisResultStore resultStore = AnalysisResultStore.getInstance();
         try {
             for (IFile file : markersByFile.keySet()) {
                 if (isCanceled()) {
@@ -740,10 +716,18 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                 }
                 currentFile = file.getName();
                 Set<MarkerInfo2> markerInfoSet = markersByFile.get(file);
+                List<IMarker> markers = new ArrayList<>(markerInfoSet.size());
+                List<StoredViolation> violations = new ArrayList<>(markerInfoSet.size());
                 for (MarkerInfo2 markerInfo : markerInfoSet) {
-                    markerInfo.addAsMarkerTo(file);
+                    IMarker marker = markerInfo.addAsMarkerTo(file);
+                    if (markerInfo.getViolation() != null) {
+                        markers.add(marker);
+                        violations.add(markerInfo.getViolation());
+                    }
                     violationCount++;
                 }
+                // the complete violations are kept for the reports
+                resultStore.update(file, markers, violations);
 
                 worked(1);
             }
@@ -762,14 +746,13 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
      * Count the number of sub-resources of a resource.
      *
      * @param resource a project
-     * @param fileExtensions the file extensions that should match
+     * @param projectSnapshot the configuration of the project, that contains the file extensions that should match
      * @return the element count
      */
-    private int countResourceElement(IResource resource, Set<String> fileExtensions) {
-        boolean checkFileExtensions = PMDPlugin.getDefault().loadPreferences().isDetermineFiletypesAutomatically();
-
+    private int countResourceElement(IResource resource, ProjectSnapshot projectSnapshot) {
         if (resource instanceof IFile) {
-            if (checkFileExtensions && fileExtensions != null) {
+            Set<String> fileExtensions = projectSnapshot.getFileExtensions();
+            if (snapshot.isDetermineFiletypesAutomatically() && fileExtensions != null) {
                 String extension = resource.getFileExtension();
                 if (extension != null && fileExtensions.contains(extension.toLowerCase(Locale.ROOT))) {
                     return 1;
@@ -780,7 +763,7 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
             return 1;
         }
 
-        final CountVisitor2 visitor = new CountVisitor2(checkFileExtensions, resource.getProject(), fileExtensions);
+        final CountVisitor2 visitor = new CountVisitor2(snapshot);
 
         try {
             resource.accept(visitor);
@@ -8,19 +8,22 @@ package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
 import net.sourceforge.pmd.cpd.Mark;
 
 public class CpdMarkWithSourceCode {
+    private final CpdResult result;
     private final Mark mark;
-    private final CharSequence sourceCode;
 
     public CpdMarkWithSourceCode(CpdResult result, Mark mark) {
+        this.result = result;
         this.mark = mark;
-        sourceCode = result.getSourceCodeSlices().get(this.mark);
     }
 
     public Mark getMark() {
         return mark;
     }
 
+    /**
+     * @return the source code of the mark, read on demand
+     */
     public CharSequence getSourceCode() {
-        return sourceCode;
+        return result.getSourceCodeSlice(mark);
     }
 }
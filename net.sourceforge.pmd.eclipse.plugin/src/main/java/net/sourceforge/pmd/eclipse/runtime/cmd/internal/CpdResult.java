@@ -5,33 +5,115 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import net.sourceforge.pmd.cpd.CPDReport;
 import net.sourceforge.pmd.cpd.Mark;
 import net.sourceforge.pmd.cpd.Match;
+import net.sourceforge.pmd.lang.document.FileLocation;
 
+/**
+ * The matches of a CPD run. The source code of the marks is not kept in memory: it is read from
+ * the files, when it is needed, e.g. when a match is expanded in the view. The recently used
+ * slices are cached. If a file has been changed after the CPD run, the slice shows the current
+ * content of the lines.
+ */
 public class CpdResult {
-    private List<Match> matches = new ArrayList<>();
-    private Map<Mark, CharSequence> sourceCodeSlices = new HashMap<>();
+    private static final Logger LOG = LoggerFactory.getLogger(CpdResult.class);
+
+    private static final int MAX_CACHED_SLICES = 64;
+
+    private final List<Match> matches = new ArrayList<>();
+    private final Charset charset;
+    private final Map<Mark, CharSequence> recentSlices = new LinkedHashMap<Mark, CharSequence>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Mark, CharSequence> eldest) {
+            return size() > MAX_CACHED_SLICES;
+        }
+    };
 
     public CpdResult(CPDReport report) {
+        this(report, Charset.defaultCharset());
+    }
+
+    /**
+     * @param report the report
+     * @param charset the charset, that has been used to read the files for CPD
+     */
+    public CpdResult(CPDReport report, Charset charset) {
+        this.charset = charset;
         matches.addAll(report.getMatches());
-        for (Match match : matches) {
-            for (Mark mark : match.getMarkSet()) {
-                sourceCodeSlices.put(mark, report.getSourceCodeSlice(mark));
-            }
-        }
     }
 
     public List<Match> getMatches() {
         return matches;
     }
 
-    public Map<Mark, CharSequence> getSourceCodeSlices() {
-        return sourceCodeSlices;
+    /**
+     * Gets the source code of the lines of the mark.
+     *
+     * @param mark the mark
+     * @return the lines, separated by line feeds. Empty, if the file can't be read.
+     */
+    public CharSequence getSourceCodeSlice(Mark mark) {
+        synchronized (recentSlices) {
+            CharSequence slice = recentSlices.get(mark);
+            if (slice != null) {
+                return slice;
+            }
+        }
+
+        FileLocation location = mark.getLocation();
+        File file = new File(location.getFileId().getOriginalPath());
+        CharSequence slice;
+        try {
+            slice = readLines(file, charset, location.getStartLine(), location.getEndLine());
+        } catch (IOException e) {
+            LOG.warn("Could not read the source code of {}", file, e);
+            return "";
+        }
+        synchronized (recentSlices) {
+            recentSlices.put(mark, slice);
+        }
+        return slice;
+    }
+
+    /**
+     * Reads the given lines of the file. Only the lines up to the end line are read.
+     *
+     * @param file the file
+     * @param charset the charset of the file
+     * @param beginLine the first line, 1-based
+     * @param endLine the last line (inclusive)
+     * @return the lines, separated by line feeds
+     */
+    static String readLines(File file, Charset charset, int beginLine, int endLine) throws IOException {
+        StringBuilder slice = new StringBuilder();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), charset)) {
+            String line = reader.readLine();
+            for (int lineNumber = 1; line != null && lineNumber <= endLine; lineNumber++) {
+                if (lineNumber >= beginLine) {
+                    if (slice.length() > 0) {
+                        slice.append('\n');
+                    }
+                    slice.append(line);
+                }
+                line = reader.readLine();
+            }
+        }
+        return slice.toString();
     }
 }
@@ -0,0 +1,541 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.cpd.CpdCapableLanguage;
+import net.sourceforge.pmd.cpd.CpdLexer;
+import net.sourceforge.pmd.cpd.TokenEntry;
+import net.sourceforge.pmd.cpd.TokenFactory;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.lang.ast.LexException;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+
+/**
+ * A persistent index of the token streams of the files of a project, used to run CPD incrementally.
+ * For every file the content hash and the hash codes of its tokens are stored. A file is only
+ * tokenized again, if its content has changed since the last run.
+ *
+ * <p>The windows of <code>minTileSize</code> consecutive tokens are hashed with a rolling hash.
+ * Only files, that contain a window, which occurs more than once in the project, can be part
+ * of a duplication. All the other files are left out of the CPD analysis, which gives the same
+ * matches as an analysis of all the files.
+ *
+ * <p>The index is stored per project and language in the state location of the plugin. Within the
+ * plugin, one instance per index file is shared, see {@link #get(IProject, CpdCapableLanguage, Charset)}.
+ */
+public final class CpdTokenIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(CpdTokenIndex.class);
+
+    private static final String INDEX_FOLDER = "cpd";
+    private static final int FORMAT_VERSION = 1;
+    private static final long WINDOW_HASH_BASE = 1_000_003L;
+
+    /** The instances in use, per index file. */
+    private static final Map<File, WeakReference<CpdTokenIndex>> SHARED = new HashMap<>();
+
+    private final File indexFile;
+    private final CpdCapableLanguage language;
+    private final Charset charset;
+    private final Map<IPath, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    /**
+     * The tokens of one file. The tokens are <code>null</code>, if the file could not be tokenized.
+     */
+    private static final class Entry {
+        private final long modificationStamp;
+        private final byte[] contentHash;
+        private final int[] tokens;
+
+        Entry(long modificationStamp, byte[] contentHash, int[] tokens) {
+            this.modificationStamp = modificationStamp;
+            this.contentHash = contentHash;
+            this.tokens = tokens;
+        }
+    }
+
+    private CpdTokenIndex(File indexFile, CpdCapableLanguage language, Charset charset) {
+        this.indexFile = indexFile;
+        this.language = language;
+        this.charset = charset;
+    }
+
+    /**
+     * Gets the index of the project, that is shared by all the users in the plugin, e.g. the
+     * CPD command and the duplicated code reviewer. It is loaded from the state location, if it
+     * is not in use yet.
+     *
+     * @param project the project
+     * @param language the language of the indexed files
+     * @param charset the charset used to read the files
+     * @return the index
+     */
+    public static CpdTokenIndex get(IProject project, CpdCapableLanguage language, Charset charset) {
+        File indexFile = indexFileOf(project, language);
+        synchronized (SHARED) {
+            WeakReference<CpdTokenIndex> reference = SHARED.get(indexFile);
+            CpdTokenIndex index = reference == null ? null : reference.get();
+            if (index == null || !index.charset.equals(charset)) {
+                index = load(project, language, charset);
+                SHARED.put(indexFile, new WeakReference<>(index));
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Loads a new instance of the index of the project from the state location. If there is
+     * no index yet, an empty index is returned. Use {@link #get(IProject, CpdCapableLanguage, Charset)}
+     * to share the instance.
+     *
+     * @param project the project
+     * @param language the language of the indexed files
+     * @param charset the charset used to read the files
+     * @return the index
+     */
+    public static CpdTokenIndex load(IProject project, CpdCapableLanguage language, Charset charset) {
+        CpdTokenIndex index = new CpdTokenIndex(indexFileOf(project, language), language, charset);
+        index.read();
+        return index;
+    }
+
+    private static File indexFileOf(IProject project, CpdCapableLanguage language) {
+        File folder = PMDPlugin.getDefault().getStateLocation().append(INDEX_FOLDER).toFile();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            LOG.warn("Could not create the CPD index folder {}", folder);
+        }
+        return new File(folder, project.getName() + "-" + language.getId() + ".index");
+    }
+
+    /**
+     * Brings the tokens of the file up to date. The file is only read, if its modification stamp
+     * has changed, and only tokenized, if its content has changed. This method is thread-safe.
+     *
+     * @param file the file
+     * @return <code>true</code> if the file has been tokenized
+     */
+    public boolean update(IFile file) {
+        Entry entry = entries.get(file.getFullPath());
+        long modificationStamp = file.getModificationStamp();
+        if (entry != null && entry.modificationStamp == modificationStamp) {
+            return false;
+        }
+
+        File location = file.getLocation().toFile();
+        try {
+            byte[] content = Files.readAllBytes(location.toPath());
+            byte[] contentHash = MessageDigest.getInstance("SHA-1").digest(content);
+            if (entry != null && Arrays.equals(entry.contentHash, contentHash)) {
+                entries.put(file.getFullPath(), new Entry(modificationStamp, contentHash, entry.tokens));
+                dirty = true;
+                return false;
+            }
+            TokenCodes codes = tokenize(new String(content, charset), FileId.fromPath(location.toPath()));
+            int[] tokens = codes == null ? null : codes.toArray();
+            entries.put(file.getFullPath(), new Entry(modificationStamp, contentHash, tokens));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            LOG.warn("Could not index the file {} for CPD", file, e);
+            entries.remove(file.getFullPath());
+        }
+        dirty = true;
+        return true;
+    }
+
+    private TokenCodes tokenize(String content, FileId fileId) throws IOException {
+        CpdLexer lexer = language.createCpdLexer(language.newPropertyBundle());
+        TokenCodes codes = new TokenCodes(fileId);
+        try (TextDocument document = TextDocument.readOnlyString(content, fileId, language.getDefaultVersion())) {
+            lexer.tokenize(document, codes);
+            return codes;
+        } catch (LexException e) {
+            LOG.debug("Could not tokenize {}", fileId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Tokenizes the current content of the file again, to find the lines of its tokens.
+     * The lines are not stored in the index.
+     *
+     * @param file the file
+     * @return the begin line of every token or <code>null</code>, if the file could not be tokenized
+     */
+    public int[] readTokenLines(IFile file) {
+        File location = file.getLocation().toFile();
+        try {
+            byte[] content = Files.readAllBytes(location.toPath());
+            TokenCodes codes = tokenize(new String(content, charset), FileId.fromPath(location.toPath()));
+            return codes == null ? null : codes.linesToArray();
+        } catch (IOException e) {
+            LOG.warn("Could not tokenize the file {} for CPD", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Drops the entry of the file.
+     *
+     * @param file the file
+     */
+    public void remove(IFile file) {
+        if (entries.remove(file.getFullPath()) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Drops the entries of all files, that are not in the given collection (e.g. deleted files).
+     *
+     * @param files the files, that are still part of the analysis
+     */
+    public void retainAll(Collection<IFile> files) {
+        Set<IPath> paths = new HashSet<>();
+        for (IFile file : files) {
+            paths.add(file.getFullPath());
+        }
+        if (entries.keySet().retainAll(paths)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * @param file the file
+     * @return the hash codes of the tokens of the file, <code>null</code> if the file is not
+     *         indexed, has changed since it was indexed or could not be tokenized. The array
+     *         must not be modified.
+     */
+    public int[] getTokens(IFile file) {
+        Entry entry = entries.get(file.getFullPath());
+        if (entry == null || entry.modificationStamp != file.getModificationStamp()) {
+            return null;
+        }
+        return entry.tokens;
+    }
+
+    /**
+     * @param file the file
+     * @return the hash codes of the tokens, that are stored for the file, even if the file has
+     *         changed since it was indexed. <code>null</code> if the file is not indexed or could
+     *         not be tokenized. The array must not be modified.
+     */
+    public int[] getIndexedTokens(IFile file) {
+        Entry entry = entries.get(file.getFullPath());
+        return entry == null ? null : entry.tokens;
+    }
+
+    /**
+     * @return <code>true</code> if no file has been indexed yet
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Selects the files, that might contain duplicated code. These are the files, that contain
+     * a window of <code>minTileSize</code> tokens, that occurs more than once in the given files,
+     * and the files, that could not be tokenized. The files should have been updated in the index
+     * of their project before; files, that are not indexed or have changed since, are always
+     * selected. Since the windows of all the files are compared, duplicates
+     * between different projects are found, too.
+     *
+     * @param indexes the indexes per project
+     * @param files the files
+     * @param minTileSize the minimum tile size
+     * @return the candidate files, in the same order
+     */
+    public static List<IFile> selectCandidates(Map<IProject, CpdTokenIndex> indexes, List<IFile> files,
+            int minTileSize) {
+        List<int[]> tokens = new ArrayList<>(files.size());
+        for (IFile file : files) {
+            CpdTokenIndex index = indexes.get(file.getProject());
+            tokens.add(index == null ? null : index.getTokens(file));
+        }
+        BitSet candidates = findDuplicatedWindows(tokens, minTileSize);
+        List<IFile> selected = new ArrayList<>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            selected.add(files.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * Finds the token streams, that contain a window of <code>minTileSize</code> tokens,
+     * which occurs more than once in all the streams. Missing streams (<code>null</code>)
+     * are always selected.
+     *
+     * @param tokens the token streams
+     * @param minTileSize the minimum tile size
+     * @return the indexes of the selected streams
+     */
+    public static BitSet findDuplicatedWindows(List<int[]> tokens, int minTileSize) {
+        BitSet selected = new BitSet(tokens.size());
+        if (minTileSize <= 0) {
+            selected.set(0, tokens.size());
+            return selected;
+        }
+
+        int windowCount = 0;
+        for (int[] stream : tokens) {
+            if (stream != null && stream.length >= minTileSize) {
+                windowCount += stream.length - minTileSize + 1;
+            }
+        }
+
+        long[] all = new long[windowCount];
+        int next = 0;
+        for (int[] stream : tokens) {
+            next = windowHashes(stream, minTileSize, all, next);
+        }
+        Arrays.sort(all);
+        long[] duplicated = duplicatedValues(all);
+
+        long[] windows = new long[0];
+        for (int i = 0; i < tokens.size(); i++) {
+            int[] stream = tokens.get(i);
+            if (stream == null) {
+                selected.set(i);
+                continue;
+            }
+            if (stream.length < minTileSize) {
+                continue;
+            }
+            int count = stream.length - minTileSize + 1;
+            if (windows.length < count) {
+                windows = new long[count];
+            }
+            windowHashes(stream, minTileSize, windows, 0);
+            for (int w = 0; w < count; w++) {
+                if (Arrays.binarySearch(duplicated, windows[w]) >= 0) {
+                    selected.set(i);
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Computes the rolling hashes of all the windows of <code>minTileSize</code> tokens of the stream.
+     * Window {@code i} starts with token {@code i}.
+     *
+     * @param stream the token stream, might be <code>null</code>
+     * @param minTileSize the minimum tile size
+     * @return the hashes, empty if the stream is shorter than the tile size
+     */
+    public static long[] windowHashes(int[] stream, int minTileSize) {
+        if (stream == null || minTileSize <= 0 || stream.length < minTileSize) {
+            return new long[0];
+        }
+        long[] windows = new long[stream.length - minTileSize + 1];
+        windowHashes(stream, minTileSize, windows, 0);
+        return windows;
+    }
+
+    /**
+     * Computes the rolling hashes of all the windows of the stream.
+     *
+     * @return the next free position in the target
+     */
+    private static int windowHashes(int[] stream, int minTileSize, long[] target, int offset) {
+        if (stream == null || stream.length < minTileSize) {
+            return offset;
+        }
+        long highestPower = 1;
+        for (int i = 1; i < minTileSize; i++) {
+            highestPower *= WINDOW_HASH_BASE;
+        }
+        long hash = 0;
+        for (int i = 0; i < minTileSize; i++) {
+            hash = hash * WINDOW_HASH_BASE + stream[i];
+        }
+        int next = offset;
+        target[next++] = hash;
+        for (int i = minTileSize; i < stream.length; i++) {
+            hash = (hash - stream[i - minTileSize] * highestPower) * WINDOW_HASH_BASE + stream[i];
+            target[next++] = hash;
+        }
+        return next;
+    }
+
+    private static long[] duplicatedValues(long[] sorted) {
+        long[] duplicated = new long[sorted.length / 2];
+        int count = 0;
+        int i = 0;
+        while (i < sorted.length) {
+            int j = i + 1;
+            while (j < sorted.length && sorted[j] == sorted[i]) {
+                j++;
+            }
+            if (j - i > 1) {
+                duplicated[count++] = sorted[i];
+            }
+            i = j;
+        }
+        return Arrays.copyOf(duplicated, count);
+    }
+
+    /**
+     * Stores the index, if it has been changed. The index is written into a temporary file,
+     * which then replaces the index file.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        // reset before the entries are written, so that entries changed meanwhile are saved next time
+        dirty = false;
+
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(charset.name());
+            for (Map.Entry<IPath, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                out.writeBoolean(true);
+                out.writeUTF(mapEntry.getKey().toPortableString());
+                out.writeLong(entry.modificationStamp);
+                out.writeShort(entry.contentHash.length);
+                out.write(entry.contentHash);
+                if (entry.tokens == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(entry.tokens.length);
+                    for (int token : entry.tokens) {
+                        out.writeInt(token);
+                    }
+                }
+            }
+            out.writeBoolean(false);
+        } catch (IOException e) {
+            LOG.warn("Could not save the CPD index {}", tempFile, e);
+            dirty = true;
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not save the CPD index {}", indexFile, e);
+            dirty = true;
+        }
+    }
+
+    private void read() {
+        if (!indexFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != FORMAT_VERSION || !charset.name().equals(in.readUTF())) {
+                return;
+            }
+            while (in.readBoolean()) {
+                IPath path = Path.fromPortableString(in.readUTF());
+                long modificationStamp = in.readLong();
+                byte[] contentHash = new byte[in.readShort()];
+                in.readFully(contentHash);
+                int length = in.readInt();
+                int[] tokens = null;
+                if (length >= 0) {
+                    tokens = new int[length];
+                    for (int i = 0; i < length; i++) {
+                        tokens[i] = in.readInt();
+                    }
+                }
+                entries.put(path, new Entry(modificationStamp, contentHash, tokens));
+            }
+            LOG.debug("Loaded the CPD tokens of {} files", entries.size());
+        } catch (IOException e) {
+            LOG.warn("Could not load the CPD index {}", indexFile, e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Records only the hash codes of the token images and the begin lines of the tokens.
+     */
+    private static final class TokenCodes implements TokenFactory {
+        private final FileId fileId;
+        private int[] codes = new int[1024];
+        private int[] lines = new int[1024];
+        private int size;
+
+        TokenCodes(FileId fileId) {
+            this.fileId = fileId;
+        }
+
+        @Override
+        public void recordToken(String image, int startLine, int startCol, int endLine, int endCol) {
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, size * 2);
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            codes[size] = image.hashCode();
+            lines[size] = startLine;
+            size++;
+        }
+
+        @Override
+        public void setImage(TokenEntry entry, String newImage) {
+            // entries are not kept
+        }
+
+        @Override
+        public LexException makeLexException(int line, int column, String message, Throwable cause) {
+            return new LexException(line, column, fileId, message, cause);
+        }
+
+        @Override
+        public TokenEntry peekLastToken() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            // nothing to do
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(codes, size);
+        }
+
+        int[] linesToArray() {
+            return Arrays.copyOf(lines, size);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A resident index of the tiles (windows of <code>minTileSize</code> tokens) of the files of
+ * a project. It counts how often every tile occurs, so that the duplicated code of a single file
+ * can be found without running CPD for the whole project. The token streams are kept in the
+ * {@link CpdTokenIndex}, the tile counts in a {@link TileCountTable}.
+ *
+ * <p>The index is updated incrementally, when files are added, changed or removed. The tile tables
+ * of all the indexes share one budget of slots. If it is exhausted, the index, that needs more
+ * slots, is given up, see {@link #isValid()}. An index, that isn't used anymore, has to be
+ * disposed, so that its slots can be used by other indexes.
+ *
+ * <p>This class is not thread-safe.
+ */
+public final class DuplicationIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(DuplicationIndex.class);
+
+    /** 16M slots for all the indexes together, about 200 MB. */
+    private static final TileCountTable.SlotBudget TILE_SLOTS = new TileCountTable.SlotBudget(1 << 24);
+
+    private final CpdTokenIndex tokens;
+    private final int minTileSize;
+    private final TileCountTable tiles;
+    /** The tokens, whose tiles are counted. The token index is shared and might be newer. */
+    private final Map<IFile, int[]> countedTokens = new HashMap<>();
+    private boolean valid = true;
+
+    /**
+     * A range of duplicated lines.
+     */
+    public static final class DuplicatedLines {
+        private final int beginLine;
+        private final int endLine;
+        private final int tokenCount;
+
+        DuplicatedLines(int beginLine, int endLine, int tokenCount) {
+            this.beginLine = beginLine;
+            this.endLine = endLine;
+            this.tokenCount = tokenCount;
+        }
+
+        public int getBeginLine() {
+            return beginLine;
+        }
+
+        public int getEndLine() {
+            return endLine;
+        }
+
+        public int getTokenCount() {
+            return tokenCount;
+        }
+    }
+
+    /**
+     * @param tokens the token streams of the files
+     * @param minTileSize the minimum tile size
+     */
+    public DuplicationIndex(CpdTokenIndex tokens, int minTileSize) {
+        this.tokens = tokens;
+        this.minTileSize = minTileSize;
+        this.tiles = new TileCountTable(1 << 16, TILE_SLOTS);
+    }
+
+    public int getMinTileSize() {
+        return minTileSize;
+    }
+
+    public CpdTokenIndex getTokenIndex() {
+        return tokens;
+    }
+
+    /**
+     * @return <code>false</code>, if the tile table has overflowed and the index can't be used anymore
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Gives the memory of the tile table back. The index can't be used afterwards.
+     */
+    public void dispose() {
+        tiles.release();
+        countedTokens.clear();
+        valid = false;
+    }
+
+    /**
+     * Adds the tiles of a file, whose tokens have been updated in the token index already.
+     * Used to build the index.
+     *
+     * @param file the file
+     */
+    public void add(IFile file) {
+        int[] fileTokens = tokens.getIndexedTokens(file);
+        countedTokens.put(file, fileTokens);
+        addTiles(fileTokens);
+    }
+
+    /**
+     * Removes the file, e.g. after it has been deleted.
+     *
+     * @param file the file
+     */
+    public void remove(IFile file) {
+        removeTiles(countedTokens.remove(file));
+        tokens.remove(file);
+    }
+
+    /**
+     * Updates the tokens and tiles of the changed file and finds its duplicated code.
+     * A line range is duplicated, if all its tiles occur at least twice in the project
+     * (including the file itself).
+     *
+     * @param file the changed or added file
+     * @return the duplicated line ranges
+     */
+    public List<DuplicatedLines> update(IFile file) {
+        int[] oldTokens = countedTokens.get(file);
+        tokens.update(file);
+        // the tiles follow the stored tokens, even if the file has changed meanwhile
+        int[] newTokens = tokens.getIndexedTokens(file);
+        if (newTokens != oldTokens) {
+            removeTiles(oldTokens);
+            addTiles(newTokens);
+            countedTokens.put(file, newTokens);
+        }
+        if (!valid || newTokens == null) {
+            return Collections.emptyList();
+        }
+        return duplicatesIn(file, newTokens);
+    }
+
+    private List<DuplicatedLines> duplicatesIn(IFile file, int[] fileTokens) {
+        long[] windows = CpdTokenIndex.windowHashes(fileTokens, minTileSize);
+        int[] lines = null;
+        List<DuplicatedLines> duplicates = new ArrayList<>();
+        int w = 0;
+        while (w < windows.length) {
+            if (tiles.get(windows[w]) < 2) {
+                w++;
+                continue;
+            }
+            int first = w;
+            while (w < windows.length && tiles.get(windows[w]) >= 2) {
+                w++;
+            }
+            if (lines == null) {
+                lines = tokens.readTokenLines(file);
+                if (lines == null || lines.length != fileTokens.length) {
+                    // the file has been changed in the meantime, it is checked again after the next change
+                    return Collections.emptyList();
+                }
+            }
+            int lastToken = w - 1 + minTileSize - 1;
+            duplicates.add(new DuplicatedLines(lines[first], lines[lastToken], lastToken - first + 1));
+        }
+        return duplicates;
+    }
+
+    private void addTiles(int[] fileTokens) {
+        if (!valid) {
+            return;
+        }
+        for (long window : CpdTokenIndex.windowHashes(fileTokens, minTileSize)) {
+            if (!tiles.increment(window)) {
+                LOG.warn("The CPD tile index is full, duplicated code is not detected on save anymore");
+                valid = false;
+                return;
+            }
+        }
+    }
+
+    private void removeTiles(int[] fileTokens) {
+        if (!valid) {
+            return;
+        }
+        for (long window : CpdTokenIndex.windowHashes(fileTokens, minTileSize)) {
+            tiles.decrement(window);
+        }
+    }
+}
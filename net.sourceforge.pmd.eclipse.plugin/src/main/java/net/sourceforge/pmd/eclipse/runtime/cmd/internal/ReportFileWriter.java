@@ -0,0 +1,113 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Writes a report into a workspace file. The report is rendered into a temporary file, which
+ * is then streamed into the workspace file. So the memory use doesn't depend on the size of the
+ * report. The file is written with the charset UTF-8.
+ */
+public final class ReportFileWriter {
+
+    /**
+     * The content of a report.
+     */
+    public interface Content {
+        /**
+         * Renders the report. The writer is closed afterwards, the content may close it, too.
+         */
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    private ReportFileWriter() {
+        // utility
+    }
+
+    /**
+     * Renders the content into the file. The file is created or overwritten, even if the
+     * content is empty.
+     *
+     * @param file the report file
+     * @param content the report
+     * @param monitor the progress monitor, may be <code>null</code>
+     */
+    public static void write(IFile file, Content content, IProgressMonitor monitor)
+            throws IOException, CoreException {
+        Path tempFile = Files.createTempFile("pmd-report", ".tmp");
+        try {
+            render(tempFile, content);
+            copy(tempFile, file, monitor);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Renders the content into a file outside of the workspace. This doesn't need any
+     * workspace lock, so several reports can be rendered concurrently.
+     *
+     * @param tempFile the temporary file
+     * @param content the report
+     */
+    public static void render(Path tempFile, Content content) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            content.writeTo(writer);
+        }
+    }
+
+    /**
+     * Checks, whether a rendered report contains only whitespace, like
+     * <code>StringUtils.isBlank</code>. The report is read until the first other character.
+     *
+     * @param tempFile the rendered report, see {@link #render(Path, Content)}
+     * @return <code>true</code> if the report is empty or contains only whitespace
+     */
+    public static boolean isBlank(Path tempFile) throws IOException {
+        char[] buffer = new char[8192];
+        try (Reader reader = Files.newBufferedReader(tempFile, StandardCharsets.UTF_8)) {
+            int read = reader.read(buffer);
+            while (read >= 0) {
+                for (int i = 0; i < read; i++) {
+                    if (!Character.isWhitespace(buffer[i])) {
+                        return false;
+                    }
+                }
+                read = reader.read(buffer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Streams a rendered report into the workspace file. The file is created or overwritten.
+     *
+     * @param tempFile the rendered report, see {@link #render(Path, Content)}
+     * @param file the report file
+     * @param monitor the progress monitor, may be <code>null</code>
+     */
+    public static void copy(Path tempFile, IFile file, IProgressMonitor monitor) throws IOException, CoreException {
+        try (InputStream contents = new BufferedInputStream(Files.newInputStream(tempFile))) {
+            if (file.exists()) {
+                file.setContents(contents, true, false, monitor);
+            } else {
+                file.create(contents, true, monitor);
+            }
+        }
+        file.setCharset(StandardCharsets.UTF_8.name(), monitor);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd.internal;
+
+/**
+ * Counts the occurrences of the tile hashes. This is an open addressing hash table with linear
+ * probing, that stores the keys and the counts in primitive arrays. A slot is empty, if its count
+ * is 0. Removed entries are closed by shifting the following entries back, so that no tombstones
+ * are needed.
+ *
+ * <p>The slots are reserved from a {@link SlotBudget}, which can be shared by several tables to
+ * bound their memory together. If the budget is exhausted, the table doesn't grow anymore,
+ * {@link #increment(long)} fails and the caller has to give up the table.
+ *
+ * <p>This class is not thread-safe.
+ */
+public final class TileCountTable {
+    private static final int MIN_CAPACITY = 16;
+
+    private final SlotBudget budget;
+    private long[] keys;
+    private int[] counts;
+    private int mask;
+    private int size;
+    private boolean released;
+
+    /**
+     * A maximum number of slots, that is shared by tables. A slot takes 12 bytes.
+     * This class is thread-safe.
+     */
+    public static final class SlotBudget {
+        private final long maxSlots;
+        private long usedSlots;
+
+        /**
+         * @param maxSlots the maximum number of slots of all the tables together
+         */
+        public SlotBudget(long maxSlots) {
+            this.maxSlots = maxSlots;
+        }
+
+        synchronized boolean reserve(int slots) {
+            if (usedSlots + slots > maxSlots) {
+                return false;
+            }
+            usedSlots += slots;
+            return true;
+        }
+
+        synchronized void release(int slots) {
+            usedSlots -= slots;
+        }
+
+        /**
+         * @return the number of slots, that are reserved by the tables
+         */
+        public synchronized long getUsedSlots() {
+            return usedSlots;
+        }
+    }
+
+    /**
+     * Creates a table with its own budget.
+     *
+     * @param initialCapacity the initial number of slots, rounded up to a power of two
+     * @param maxCapacity the maximum number of slots, rounded up to a power of two
+     */
+    public TileCountTable(int initialCapacity, int maxCapacity) {
+        this(initialCapacity, new SlotBudget(powerOfTwo(maxCapacity)));
+    }
+
+    /**
+     * @param initialCapacity the initial number of slots, rounded up to a power of two
+     * @param budget the budget, the slots are reserved from
+     */
+    public TileCountTable(int initialCapacity, SlotBudget budget) {
+        this.budget = budget;
+        int capacity = powerOfTwo(initialCapacity);
+        while (capacity > MIN_CAPACITY && !budget.reserve(capacity)) {
+            capacity >>= 1;
+        }
+        if (capacity == MIN_CAPACITY && !budget.reserve(capacity)) {
+            // the budget is exhausted, nothing can be added
+            released = true;
+        }
+        keys = new long[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int powerOfTwo(int value) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < value && capacity < 1 << 30) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int slotOf(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @return the number of distinct keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of occurrences of the key, 0 if it is not in the table
+     */
+    public int get(long key) {
+        int slot = slotOf(key, mask);
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Adds an occurrence of the key.
+     *
+     * @return <code>false</code> if the table is full and the key could not be added
+     */
+    public boolean increment(long key) {
+        int slot = slotOf(key, mask);
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                counts[slot]++;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (released) {
+            return false;
+        }
+        if ((size + 1) * 4L > keys.length * 3L) {
+            if (!budget.reserve(keys.length)) {
+                return false;
+            }
+            grow();
+            return increment(key);
+        }
+        keys[slot] = key;
+        counts[slot] = 1;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes an occurrence of the key. The key is removed, when its last occurrence is removed.
+     */
+    public void decrement(long key) {
+        int slot = slotOf(key, mask);
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                if (--counts[slot] == 0) {
+                    size--;
+                    closeGap(slot);
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Gives the slots of the table back to its budget. Afterwards no keys can be added anymore.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            budget.release(keys.length);
+        }
+    }
+
+    private void closeGap(int slot) {
+        int free = slot;
+        int i = (slot + 1) & mask;
+        while (counts[i] != 0) {
+            int home = slotOf(keys[i], mask);
+            // the entry can be moved, if the free slot is between its home slot and its current slot
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                keys[free] = keys[i];
+                counts[free] = counts[i];
+                counts[i] = 0;
+                free = i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = slotOf(oldKeys[i], mask);
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
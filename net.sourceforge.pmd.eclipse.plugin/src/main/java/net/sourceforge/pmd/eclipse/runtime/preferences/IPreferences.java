@@ -30,6 +30,9 @@ public interface IPreferences {
     String REVIEW_ADDITIONAL_COMMENT_DEFAULT = "by {0} on {1}";
     boolean REVIEW_PMD_STYLE_ENABLED_DEFAULT = true;
     int MIN_TILE_SIZE_DEFAULT = 25;
+    boolean CPD_INCREMENTAL_DEFAULT = true;
+    int CPD_THREAD_COUNT_DEFAULT = 0;
+    boolean CPD_CHECK_AFTER_SAVE_DEFAULT = false;
     String LOG_FILENAME_DEFAULT = System.getProperty("user.home") + "/pmd-eclipse.log";
     String LOG_LEVEL_DEFAULT = "WARN";
 
@@ -185,6 +188,36 @@ public interface IPreferences {
      */
     void setMinTileSize(int minTileSize);
 
+    /**
+     * Should CPD reuse the tokens of the unchanged files from the last run?
+     */
+    boolean isCpdIncremental();
+
+    /**
+     * Set whether CPD reuses the tokens of the unchanged files from the last run
+     */
+    void setCpdIncremental(boolean incremental);
+
+    /**
+     * Get the number of threads used to tokenize the files for CPD. 0 means one thread per processor.
+     */
+    int getCpdThreadCount();
+
+    /**
+     * Set the number of threads used to tokenize the files for CPD
+     */
+    void setCpdThreadCount(int threadCount);
+
+    /**
+     * Should the saved files be checked for duplicated code?
+     */
+    boolean isCpdCheckAfterSaveEnabled();
+
+    /**
+     * Set whether the saved files are checked for duplicated code
+     */
+    void setCpdCheckAfterSaveEnabled(boolean enabled);
+
     /**
      * Get the log filename
      */
@@ -19,11 +19,32 @@ public interface IPreferencesManager {
     
     /**
      * Load preferences from the preferences store or return the one that
-     * was previously loaded.
+     * was previously loaded. The preferences are reloaded, when they
+     * have been changed. Changes done outside of this eclipse instance
+     * are only detected periodically, see {@link #checkForExternalChanges()}.
+     * The returned preferences are shared and can't be modified, use
+     * {@link #loadPreferencesForUpdate()} to change the preferences.
      * 
      * @return the preferences structure
      */
     IPreferences loadPreferences();
+
+    /**
+     * Returns a modifiable copy of the current preferences. Calling
+     * {@link IPreferences#sync()} on the copy stores the values, that have
+     * been changed in the copy, and leaves the other values as they are.
+     * 
+     * @return a modifiable copy of the preferences structure
+     */
+    IPreferences loadPreferencesForUpdate();
+
+    /**
+     * Checks immediately, whether the preferences or the rule set have been
+     * changed on disk outside of this eclipse instance and reloads them if needed.
+     * Usually this check is done periodically by {@link #loadPreferences()} and
+     * {@link #getRuleSet()}.
+     */
+    void checkForExternalChanges();
     
     /**
      * Reload preferences from the preferences store.
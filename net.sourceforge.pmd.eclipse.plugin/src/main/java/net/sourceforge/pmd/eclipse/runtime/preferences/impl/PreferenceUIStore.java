@@ -26,7 +26,7 @@ public final class PreferenceUIStore {
     }
 
     private void initialize() {
-        preferences = PMDPlugin.getDefault().loadPreferences();
+        preferences = PMDPlugin.getDefault().loadPreferencesForUpdate();
     }
 
     public void save() {
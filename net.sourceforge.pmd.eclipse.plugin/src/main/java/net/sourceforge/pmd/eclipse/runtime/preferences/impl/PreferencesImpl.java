@@ -4,9 +4,11 @@
 
 package net.sourceforge.pmd.eclipse.runtime.preferences.impl;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import net.sourceforge.pmd.eclipse.core.IRuleSetManager;
@@ -20,6 +22,10 @@ import net.sourceforge.pmd.lang.rule.RuleSet;
 
 /**
  * Implements the preferences information structure.
+ *
+ * <p>The preferences manager hands out unmodifiable snapshots, that are shared by all callers,
+ * and modifiable copies, that remember the snapshot they are based on. When a modifiable copy
+ * is synchronized, only the values changed in the copy are stored.
  * 
  * @author Herlin
  *
@@ -30,6 +36,8 @@ class PreferencesImpl implements IPreferences {
     private Map<String, Boolean> booleansById = new HashMap<>();
 
     private IPreferencesManager preferencesManager;
+    private final boolean modifiable;
+    private PreferencesImpl base;
     private boolean projectBuildPathEnabled;
     private boolean pmdPerspectiveEnabled;
     private boolean pmdViolationsOverviewEnabled;
@@ -40,10 +48,14 @@ class PreferencesImpl implements IPreferences {
     private String reviewAdditionalComment;
     private boolean reviewPmdStyleEnabled;
     private int minTileSize;
+    private boolean cpdIncremental;
+    private int cpdThreadCount;
+    private boolean cpdCheckAfterSaveEnabled;
     private String logFileName;
     private String logLevel;
     private boolean globalRuleManagement;
-    private Set<String> activeRuleNames = new HashSet<>();
+    /** <code>null</code> while the default active rules are used, but have not been requested yet. */
+    private volatile Set<String> activeRuleNames = new HashSet<>();
     private Set<String> activeRendererNames = new HashSet<>();
     private Set<String> activeExclusionPatterns = new HashSet<>();
     private Set<String> activeInclusionPatterns = new HashSet<>();
@@ -65,6 +77,158 @@ class PreferencesImpl implements IPreferences {
     PreferencesImpl(IPreferencesManager preferencesManager) {
         super();
         this.preferencesManager = preferencesManager;
+        this.modifiable = true;
+    }
+
+    private PreferencesImpl(PreferencesImpl other, boolean modifiable) {
+        this.preferencesManager = other.preferencesManager;
+        this.modifiable = modifiable;
+        copyFrom(other);
+    }
+
+    /**
+     * Returns a copy, that can't be modified.
+     */
+    PreferencesImpl unmodifiableCopy() {
+        return new PreferencesImpl(this, false);
+    }
+
+    /**
+     * Returns a modifiable copy of this unmodifiable snapshot.
+     */
+    PreferencesImpl modifiableCopy() {
+        PreferencesImpl copy = new PreferencesImpl(this, true);
+        copy.base = this;
+        return copy;
+    }
+
+    /**
+     * Applies the values, that have been changed in this copy, to the given stored preferences.
+     * If this copy is not based on a snapshot, all the values are taken from this copy.
+     *
+     * @param stored the currently stored preferences
+     * @return the merged preferences as unmodifiable snapshot
+     */
+    PreferencesImpl mergeInto(PreferencesImpl stored) {
+        if (base == null) {
+            return unmodifiableCopy();
+        }
+
+        PreferencesImpl merged = new PreferencesImpl(stored, true);
+        for (Map.Entry<String, Boolean> entry : booleansById.entrySet()) {
+            if (!entry.getValue().equals(base.booleansById.get(entry.getKey()))) {
+                merged.booleansById.put(entry.getKey(), entry.getValue());
+            }
+        }
+        merged.projectBuildPathEnabled = merge(projectBuildPathEnabled, base.projectBuildPathEnabled,
+                stored.projectBuildPathEnabled);
+        merged.pmdPerspectiveEnabled = merge(pmdPerspectiveEnabled, base.pmdPerspectiveEnabled,
+                stored.pmdPerspectiveEnabled);
+        merged.pmdViolationsOverviewEnabled = merge(pmdViolationsOverviewEnabled, base.pmdViolationsOverviewEnabled,
+                stored.pmdViolationsOverviewEnabled);
+        merged.pmdViolationsOutlineEnabled = merge(pmdViolationsOutlineEnabled, base.pmdViolationsOutlineEnabled,
+                stored.pmdViolationsOutlineEnabled);
+        merged.checkAfterSaveEnabled = merge(checkAfterSaveEnabled, base.checkAfterSaveEnabled,
+                stored.checkAfterSaveEnabled);
+        merged.useCustomPriorityNames = merge(useCustomPriorityNames, base.useCustomPriorityNames,
+                stored.useCustomPriorityNames);
+        merged.determineFiletypesAutomatically = merge(determineFiletypesAutomatically,
+                base.determineFiletypesAutomatically, stored.determineFiletypesAutomatically);
+        merged.reviewAdditionalComment = merge(reviewAdditionalComment, base.reviewAdditionalComment,
+                stored.reviewAdditionalComment);
+        merged.reviewPmdStyleEnabled = merge(reviewPmdStyleEnabled, base.reviewPmdStyleEnabled,
+                stored.reviewPmdStyleEnabled);
+        merged.minTileSize = merge(minTileSize, base.minTileSize, stored.minTileSize);
+        merged.cpdIncremental = merge(cpdIncremental, base.cpdIncremental, stored.cpdIncremental);
+        merged.cpdThreadCount = merge(cpdThreadCount, base.cpdThreadCount, stored.cpdThreadCount);
+        merged.cpdCheckAfterSaveEnabled = merge(cpdCheckAfterSaveEnabled, base.cpdCheckAfterSaveEnabled,
+                stored.cpdCheckAfterSaveEnabled);
+        merged.logFileName = merge(logFileName, base.logFileName, stored.logFileName);
+        merged.logLevel = merge(logLevel, base.logLevel, stored.logLevel);
+        merged.globalRuleManagement = merge(globalRuleManagement, base.globalRuleManagement,
+                stored.globalRuleManagement);
+        merged.activeRuleNames = merge(activeRuleNames, base.activeRuleNames, stored.activeRuleNames);
+        merged.activeRendererNames = merge(activeRendererNames, base.activeRendererNames, stored.activeRendererNames);
+        merged.activeExclusionPatterns = merge(activeExclusionPatterns, base.activeExclusionPatterns,
+                stored.activeExclusionPatterns);
+        merged.activeInclusionPatterns = merge(activeInclusionPatterns, base.activeInclusionPatterns,
+                stored.activeInclusionPatterns);
+        for (Map.Entry<RulePriority, PriorityDescriptor> entry : uiDescriptorsByPriority.entrySet()) {
+            if (!entry.getValue().equals(base.uiDescriptorsByPriority.get(entry.getKey()))) {
+                merged.uiDescriptorsByPriority.put(entry.getKey(), entry.getValue());
+            }
+        }
+        merged.tableFraction = merge(tableFraction, base.tableFraction, stored.tableFraction);
+        merged.hiddenColumnIds = merge(hiddenColumnIds, base.hiddenColumnIds, stored.hiddenColumnIds);
+        merged.sortDirectionUp = merge(sortDirectionUp, base.sortDirectionUp, stored.sortDirectionUp);
+        merged.groupingColumn = merge(groupingColumn, base.groupingColumn, stored.groupingColumn);
+        merged.selectedRuleNames = merge(selectedRuleNames, base.selectedRuleNames, stored.selectedRuleNames);
+        merged.selectedPropertyTab = merge(selectedPropertyTab, base.selectedPropertyTab, stored.selectedPropertyTab);
+        return merged.unmodifiableCopy();
+    }
+
+    /**
+     * Takes over the values of the given snapshot, after this copy has been stored.
+     * Unmodifiable snapshots are left as they are.
+     */
+    void rebase(PreferencesImpl snapshot) {
+        if (modifiable) {
+            copyFrom(snapshot);
+            base = snapshot;
+        }
+    }
+
+    private static <T> T merge(T value, T baseValue, T storedValue) {
+        return Objects.equals(value, baseValue) ? storedValue : value;
+    }
+
+    private void copyFrom(PreferencesImpl other) {
+        booleansById = new HashMap<>(other.booleansById);
+        projectBuildPathEnabled = other.projectBuildPathEnabled;
+        pmdPerspectiveEnabled = other.pmdPerspectiveEnabled;
+        pmdViolationsOverviewEnabled = other.pmdViolationsOverviewEnabled;
+        pmdViolationsOutlineEnabled = other.pmdViolationsOutlineEnabled;
+        checkAfterSaveEnabled = other.checkAfterSaveEnabled;
+        useCustomPriorityNames = other.useCustomPriorityNames;
+        determineFiletypesAutomatically = other.determineFiletypesAutomatically;
+        reviewAdditionalComment = other.reviewAdditionalComment;
+        reviewPmdStyleEnabled = other.reviewPmdStyleEnabled;
+        minTileSize = other.minTileSize;
+        cpdIncremental = other.cpdIncremental;
+        cpdThreadCount = other.cpdThreadCount;
+        cpdCheckAfterSaveEnabled = other.cpdCheckAfterSaveEnabled;
+        logFileName = other.logFileName;
+        logLevel = other.logLevel;
+        globalRuleManagement = other.globalRuleManagement;
+        activeRuleNames = copyOf(other.activeRuleNames);
+        activeRendererNames = copyOf(other.activeRendererNames);
+        activeExclusionPatterns = copyOf(other.activeExclusionPatterns);
+        activeInclusionPatterns = copyOf(other.activeInclusionPatterns);
+        uiDescriptorsByPriority = new HashMap<>(5);
+        for (Map.Entry<RulePriority, PriorityDescriptor> entry : other.uiDescriptorsByPriority.entrySet()) {
+            uiDescriptorsByPriority.put(entry.getKey(), entry.getValue().clone());
+        }
+        tableFraction = other.tableFraction;
+        hiddenColumnIds = copyOf(other.hiddenColumnIds);
+        sortDirectionUp = other.sortDirectionUp;
+        groupingColumn = other.groupingColumn;
+        selectedRuleNames = copyOf(other.selectedRuleNames);
+        selectedPropertyTab = other.selectedPropertyTab;
+    }
+
+    private Set<String> copyOf(Set<String> values) {
+        if (values == null) {
+            return null;
+        }
+        Set<String> copy = new HashSet<>(values);
+        return modifiable ? copy : Collections.unmodifiableSet(copy);
+    }
+
+    private void checkModifiable() {
+        if (!modifiable) {
+            throw new UnsupportedOperationException(
+                    "The preferences can't be modified, use IPreferencesManager.loadPreferencesForUpdate()");
+        }
     }
 
     @Override
@@ -78,6 +242,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void boolFor(String prefId, boolean newValue) {
+        checkModifiable();
         booleansById.put(prefId, newValue);
     }
 
@@ -88,6 +253,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setProjectBuildPathEnabled(boolean theProjectBuildPathEnabled) {
+        checkModifiable();
         this.projectBuildPathEnabled = theProjectBuildPathEnabled;
     }
 
@@ -103,16 +269,19 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void isCheckAfterSaveEnabled(boolean flag) {
+        checkModifiable();
         checkAfterSaveEnabled = flag;
     }
 
     @Override
     public void setPmdPerspectiveEnabled(boolean thePmdPerspectiveEnabled) {
+        checkModifiable();
         this.pmdPerspectiveEnabled = thePmdPerspectiveEnabled;
     }
 
     @Override
     public void setPmdViolationsOverviewEnabled(boolean thePmdViolationsOverviewEnabled) {
+        checkModifiable();
         this.pmdViolationsOverviewEnabled = thePmdViolationsOverviewEnabled;
     }
 
@@ -123,6 +292,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setDetermineFiletypesAutomatically(boolean newDetermineFiletypesAutomatically) {
+        checkModifiable();
         this.determineFiletypesAutomatically = newDetermineFiletypesAutomatically;
     }
 
@@ -133,6 +303,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setReviewAdditionalComment(String newReviewAdditionalComment) {
+        checkModifiable();
         this.reviewAdditionalComment = newReviewAdditionalComment;
     }
 
@@ -143,6 +314,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setReviewPmdStyleEnabled(boolean newReviewPmdStyleEnabled) {
+        checkModifiable();
         this.reviewPmdStyleEnabled = newReviewPmdStyleEnabled;
     }
 
@@ -153,9 +325,43 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setMinTileSize(int newMinTileSize) {
+        checkModifiable();
         this.minTileSize = newMinTileSize;
     }
 
+    @Override
+    public boolean isCpdIncremental() {
+        return cpdIncremental;
+    }
+
+    @Override
+    public void setCpdIncremental(boolean incremental) {
+        checkModifiable();
+        this.cpdIncremental = incremental;
+    }
+
+    @Override
+    public int getCpdThreadCount() {
+        return cpdThreadCount;
+    }
+
+    @Override
+    public void setCpdThreadCount(int threadCount) {
+        checkModifiable();
+        this.cpdThreadCount = threadCount;
+    }
+
+    @Override
+    public boolean isCpdCheckAfterSaveEnabled() {
+        return cpdCheckAfterSaveEnabled;
+    }
+
+    @Override
+    public void setCpdCheckAfterSaveEnabled(boolean enabled) {
+        checkModifiable();
+        this.cpdCheckAfterSaveEnabled = enabled;
+    }
+
     @Override
     public String getLogFileName() {
         return logFileName;
@@ -168,16 +374,19 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setLogFileName(String theLogFileName) {
+        checkModifiable();
         this.logFileName = theLogFileName;
     }
 
     @Override
     public void setLogLevel(String level) {
+        checkModifiable();
         logLevel = level;
     }
 
     @Override
     public void sync() {
+        checkModifiable();
         preferencesManager.storePreferences(this);
     }
 
@@ -188,12 +397,13 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setGlobalRuleManagement(boolean b) {
+        checkModifiable();
         globalRuleManagement = b;
     }
 
     @Override
     public boolean isActive(String ruleName) {
-        return activeRuleNames.contains(ruleName);
+        return getActiveRuleNames().contains(ruleName);
     }
 
     @Override
@@ -203,15 +413,52 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void isActive(String ruleName, boolean isActive) {
+        checkModifiable();
         if (isActive) {
-            activeRuleNames.add(ruleName);
+            getActiveRuleNames().add(ruleName);
         } else {
-            activeRuleNames.remove(ruleName);
+            getActiveRuleNames().remove(ruleName);
         }
     }
 
+    /**
+     * Returns the active rules. If no active rules have been stored, the default
+     * active rules are determined now, which requires all default rulesets to be parsed.
+     */
     @Override
     public Set<String> getActiveRuleNames() {
+        Set<String> names = activeRuleNames;
+        if (names == null) {
+            synchronized (this) {
+                names = activeRuleNames;
+                if (names == null) {
+                    Set<String> defaults = new HashSet<>();
+                    for (String name : getDefaultActiveRules().split(",")) {
+                        if (!name.isEmpty()) {
+                            defaults.add(name);
+                        }
+                    }
+                    names = copyOf(defaults);
+                    activeRuleNames = names;
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Uses the default active rules, they are determined, when the active rules are requested.
+     */
+    void useDefaultActiveRules() {
+        checkModifiable();
+        activeRuleNames = null;
+    }
+
+    /**
+     * @return the active rules, <code>null</code> if the default active rules are used
+     *     and have not been requested yet
+     */
+    Set<String> activeRuleNamesIfKnown() {
         return activeRuleNames;
     }
 
@@ -236,6 +483,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setActiveRuleNames(Set<String> ruleNames) {
+        checkModifiable();
         activeRuleNames = ruleNames;
     }
 
@@ -246,6 +494,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void activeExclusionPatterns(Set<String> patterns) {
+        checkModifiable();
         activeExclusionPatterns = patterns;
     }
 
@@ -256,11 +505,13 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void activeInclusionPatterns(Set<String> patterns) {
+        checkModifiable();
         activeInclusionPatterns = patterns;
     }
 
     @Override
     public void setPriorityDescriptor(RulePriority priority, PriorityDescriptor pd) {
+        checkModifiable();
         uiDescriptorsByPriority.put(priority, pd);
     }
 
@@ -276,6 +527,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void useCustomPriorityNames(boolean flag) {
+        checkModifiable();
         useCustomPriorityNames = flag;
     }
 
@@ -286,6 +538,7 @@ class PreferencesImpl implements IPreferences {
     
     @Override
     public void activeReportRenderers(Set<String> names) {
+        checkModifiable();
         activeRendererNames = names;
     }
 
@@ -301,6 +554,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setPmdViolationsOutlineEnabled(boolean pmdViolationsOutlineEnabled) {
+        checkModifiable();
         this.pmdViolationsOutlineEnabled = pmdViolationsOutlineEnabled;
     }
 
@@ -311,6 +565,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void tableFraction(int aFraction) {
+        checkModifiable();
         this.tableFraction = aFraction;
     }
 
@@ -321,6 +576,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setHiddenColumnIds(Set<String> names) {
+        checkModifiable();
         hiddenColumnIds = names;
     }
 
@@ -331,6 +587,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setSortDirectionUp(boolean isUp) {
+        checkModifiable();
         sortDirectionUp = isUp;
     }
 
@@ -341,6 +598,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setGroupingColumn(String columnName) {
+        checkModifiable();
         groupingColumn = columnName;
     }
 
@@ -351,6 +609,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setSelectedRuleNames(Set<String> ruleNames) {
+        checkModifiable();
         selectedRuleNames = ruleNames;
     }
 
@@ -361,6 +620,7 @@ class PreferencesImpl implements IPreferences {
 
     @Override
     public void setSelectedPropertyTab(int anIndex) {
+        checkModifiable();
         selectedPropertyTab = anIndex;
     }
 }
@@ -75,6 +75,9 @@ class PreferencesManagerImpl implements IPreferencesManager {
     private static final String REVIEW_PMD_STYLE_ENABLED = PMDPlugin.PLUGIN_ID + ".review_pmd_style_enabled";
     private static final String PMD_USE_CUSTOM_PRIORITY_NAMES = PMDPlugin.PLUGIN_ID + ".use_custom_priority_names";
     private static final String MIN_TILE_SIZE = PMDPlugin.PLUGIN_ID + ".min_tile_size";
+    private static final String CPD_INCREMENTAL = PMDPlugin.PLUGIN_ID + ".cpd_incremental";
+    private static final String CPD_THREAD_COUNT = PMDPlugin.PLUGIN_ID + ".cpd_thread_count";
+    private static final String CPD_CHECK_AFTER_SAVE = PMDPlugin.PLUGIN_ID + ".cpd_check_after_save";
     private static final String LOG_FILENAME = PMDPlugin.PLUGIN_ID + ".log_filename";
     private static final String LOG_LEVEL = PMDPlugin.PLUGIN_ID + ".log_level";
     private static final String GLOBAL_RULE_MANAGEMENT = PMDPlugin.PLUGIN_ID + ".globalRuleManagement";
@@ -97,6 +100,12 @@ class PreferencesManagerImpl implements IPreferencesManager {
 
     private static final String PREFERENCE_RULESET_FILE = "/ruleset.xml";
 
+    /**
+     * Interval in milliseconds, in which the preferences file and the ruleset file are checked
+     * for changes, that are done outside of this eclipse instance.
+     */
+    private static final long EXTERNAL_CHANGE_CHECK_INTERVAL = 5000L;
+
     private static final Map<RulePriority, PriorityDescriptor> DEFAULT_DESCRIPTORS_BY_PRIORITY = new HashMap<>(5);
     private static final Map<RulePriority, String> STORE_KEYS_BY_PRIORITY = new HashMap<>(5);
 
@@ -124,13 +133,35 @@ class PreferencesManagerImpl implements IPreferencesManager {
         STORE_KEYS_BY_PRIORITY.put(RulePriority.LOW, PMDPlugin.PLUGIN_ID + ".priority_descriptor_5");
     }
 
-    private IPreferences preferences;
+    private volatile IPreferences preferences;
+    private volatile boolean preferencesChanged;
     private long preferencesTimestamp;
+    private volatile long lastPreferencesCheck;
+    /**
+     * Set while this manager changes the preferences itself. The preference change events are
+     * delivered on the thread, that does the change, so changes of other threads are still noticed.
+     */
+    private final ThreadLocal<Boolean> ignorePreferenceChanges = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private PreferencesImpl loadingPreferences;
     private IPreferenceStore storePreferencesStore = PMDPlugin.getDefault().getPreferenceStore();
     private IPreferenceStore loadPreferencesStore;
 
-    private RuleSet ruleSet;
+    private volatile RuleSet ruleSet;
     private long ruleSetModificationTimestamp;
+    private volatile long lastRuleSetCheck;
+
+    PreferencesManagerImpl() {
+        IEclipsePreferences prefs = InstanceScope.INSTANCE.getNode(PMDPlugin.PLUGIN_ID);
+        prefs.addPreferenceChangeListener(new IEclipsePreferences.IPreferenceChangeListener() {
+            @Override
+            public void preferenceChange(IEclipsePreferences.PreferenceChangeEvent event) {
+                if (!ignorePreferenceChanges.get()) {
+                    LOG.debug("Preference {} changed - preferences will be reloaded", event.getKey());
+                    preferencesChanged = true;
+                }
+            }
+        });
+    }
 
     @Override
     public PriorityDescriptor defaultDescriptorFor(RulePriority priority) {
@@ -139,24 +170,60 @@ class PreferencesManagerImpl implements IPreferencesManager {
 
     @Override
     public IPreferences loadPreferences() {
-        if (preferences == null) {
-            reloadPreferences();
-        } else if (preferencesTimestamp != getPreferencesTimestamp()) {
+        IPreferences current = preferences;
+        if (current != null && !preferencesChanged && !isCheckDue(lastPreferencesCheck)) {
+            return current;
+        }
+
+        synchronized (this) {
+            if (preferences == null || preferencesChanged) {
+                reloadPreferences();
+            } else if (isCheckDue(lastPreferencesCheck)) {
+                checkPreferencesChangedOnDisk();
+            }
+            return preferences;
+        }
+    }
+
+    @Override
+    public IPreferences loadPreferencesForUpdate() {
+        return ((PreferencesImpl) loadPreferences()).modifiableCopy();
+    }
+
+    @Override
+    public synchronized void checkForExternalChanges() {
+        if (preferences != null) {
+            checkPreferencesChangedOnDisk();
+        }
+        if (ruleSet != null) {
+            checkRuleSetChangedOnDisk();
+        }
+    }
+
+    private static boolean isCheckDue(long lastCheck) {
+        return System.currentTimeMillis() - lastCheck >= EXTERNAL_CHANGE_CHECK_INTERVAL;
+    }
+
+    private void checkPreferencesChangedOnDisk() {
+        lastPreferencesCheck = System.currentTimeMillis();
+        if (preferencesTimestamp != getPreferencesTimestamp()) {
             LOG.info("Workspace Preferences for PMD Plugin changed on disk - reloading");
             if (loadPreferencesStore.needsSaving()) {
                 LOG.warn("Any preference changes done in this eclipse instance are lost!");
             }
 
             IEclipsePreferences prefs = InstanceScope.INSTANCE.getNode(PMDPlugin.getDefault().getBundle().getSymbolicName());
+            boolean ignoring = ignorePreferenceChanges.get();
+            ignorePreferenceChanges.set(Boolean.TRUE);
             try {
                 prefs.sync();
             } catch (BackingStoreException e) {
                 LOG.error("Error while reloading preferences for PMD", e);
+            } finally {
+                ignorePreferenceChanges.set(ignoring);
             }
             reloadPreferences();
         }
-
-        return preferences;
     }
 
     private long getPreferencesTimestamp() {
@@ -167,11 +234,25 @@ class PreferencesManagerImpl implements IPreferencesManager {
     }
 
     @Override
-    public IPreferences reloadPreferences() {
+    public synchronized IPreferences reloadPreferences() {
+        boolean ignoring = ignorePreferenceChanges.get();
+        ignorePreferenceChanges.set(Boolean.TRUE);
+        try {
+            preferences = createPreferences();
+            preferencesChanged = false;
+            preferencesTimestamp = getPreferencesTimestamp();
+            lastPreferencesCheck = System.currentTimeMillis();
+        } finally {
+            ignorePreferenceChanges.set(ignoring);
+        }
+        return preferences;
+    }
 
+    private PreferencesImpl createPreferences() {
         initLoadPreferencesStore();
         IPreferencesFactory factory = new PreferencesFactoryImpl();
-        preferences = factory.newPreferences(this);
+        PreferencesImpl newPreferences = (PreferencesImpl) factory.newPreferences(this);
+        loadingPreferences = newPreferences;
 
         loadProjectBuildPathEnabled();
         loadPmdPerspectiveEnabled();
@@ -183,6 +264,9 @@ class PreferencesManagerImpl implements IPreferencesManager {
         loadReviewAdditionalComment();
         loadReviewPmdStyleEnabled();
         loadMinTileSize();
+        loadCpdIncremental();
+        loadCpdThreadCount();
+        loadCpdCheckAfterSave();
         loadLogFileName();
         loadLogLevel();
         loadGlobalRuleManagement();
@@ -198,9 +282,8 @@ class PreferencesManagerImpl implements IPreferencesManager {
         loadSelectedRuleNames();
         loadSelectedPropertyTab();
 
-        preferencesTimestamp = getPreferencesTimestamp();
-
-        return preferences;
+        loadingPreferences = null;
+        return newPreferences.unmodifiableCopy();
     }
 
     /**
@@ -242,8 +325,22 @@ class PreferencesManagerImpl implements IPreferencesManager {
     }
 
     @Override
-    public void storePreferences(IPreferences thePreferences) {
-        preferences = thePreferences;
+    public synchronized void storePreferences(IPreferences thePreferences) {
+        PreferencesImpl changes = (PreferencesImpl) thePreferences;
+        PreferencesImpl stored = (PreferencesImpl) (preferences != null ? preferences : reloadPreferences());
+        boolean ignoring = ignorePreferenceChanges.get();
+        ignorePreferenceChanges.set(Boolean.TRUE);
+        try {
+            preferences = changes.mergeInto(stored);
+            storeAllPreferences();
+        } finally {
+            ignorePreferenceChanges.set(ignoring);
+        }
+        preferencesChanged = false;
+        changes.rebase((PreferencesImpl) preferences);
+    }
+
+    private void storeAllPreferences() {
 
         storeProjectBuildPathEnabled();
         storePmdPerspectiveEnabled();
@@ -255,6 +352,9 @@ class PreferencesManagerImpl implements IPreferencesManager {
         storeReviewAdditionalComment();
         storeReviewPmdStyleEnabled();
         storeMinTileSize();
+        storeCpdIncremental();
+        storeCpdThreadCount();
+        storeCpdCheckAfterSave();
         storeLogFileName();
         storeLogLevel();
         storeGlobalRuleManagement();
@@ -274,6 +374,7 @@ class PreferencesManagerImpl implements IPreferencesManager {
         try {
             prefs.flush();
             preferencesTimestamp = getPreferencesTimestamp();
+            lastPreferencesCheck = System.currentTimeMillis();
         } catch (BackingStoreException e) {
             LOG.error("Error while storing preferences for PMD", e);
         }
@@ -281,20 +382,35 @@ class PreferencesManagerImpl implements IPreferencesManager {
 
     @Override
     public RuleSet getRuleSet() {
-        if (ruleSet == null) {
-            LOG.debug("First time loading ruleset from state store");
-            ruleSet = getRuleSetFromStateLocation();
-        } else if (ruleSetModificationTimestamp != getRuleSetModificationTimestamp()) {
+        RuleSet current = ruleSet;
+        if (current != null && !isCheckDue(lastRuleSetCheck)) {
+            return current;
+        }
+
+        synchronized (this) {
+            if (ruleSet == null) {
+                LOG.debug("First time loading ruleset from state store");
+                ruleSet = getRuleSetFromStateLocation();
+                lastRuleSetCheck = System.currentTimeMillis();
+            } else if (isCheckDue(lastRuleSetCheck)) {
+                checkRuleSetChangedOnDisk();
+            }
+            return ruleSet;
+        }
+    }
+
+    private void checkRuleSetChangedOnDisk() {
+        lastRuleSetCheck = System.currentTimeMillis();
+        if (ruleSetModificationTimestamp != getRuleSetModificationTimestamp()) {
             LOG.info("RuleSet in state store changed on disk - reloading");
             RuleSet newRuleSet = getRuleSetFromStateLocation();
             updateConfiguredProjects(newRuleSet);
             ruleSet = newRuleSet;
         }
-        return ruleSet;
     }
 
     @Override
-    public void setRuleSet(RuleSet newRuleSet) {
+    public synchronized void setRuleSet(RuleSet newRuleSet) {
         updateConfiguredProjects(newRuleSet);
         ruleSet = newRuleSet;
         storeRuleSetInStateLocation(ruleSet);
@@ -302,88 +418,108 @@ class PreferencesManagerImpl implements IPreferencesManager {
 
     private void loadProjectBuildPathEnabled() {
         loadPreferencesStore.setDefault(PROJECT_BUILD_PATH_ENABLED, IPreferences.PROJECT_BUILD_PATH_ENABLED_DEFAULT);
-        preferences.setProjectBuildPathEnabled(loadPreferencesStore.getBoolean(PROJECT_BUILD_PATH_ENABLED));
+        loadingPreferences.setProjectBuildPathEnabled(loadPreferencesStore.getBoolean(PROJECT_BUILD_PATH_ENABLED));
     }
 
     private void loadPmdPerspectiveEnabled() {
         loadPreferencesStore.setDefault(PMD_PERSPECTIVE_ENABLED, IPreferences.PMD_PERSPECTIVE_ENABLED_DEFAULT);
-        preferences.setPmdPerspectiveEnabled(loadPreferencesStore.getBoolean(PMD_PERSPECTIVE_ENABLED));
+        loadingPreferences.setPmdPerspectiveEnabled(loadPreferencesStore.getBoolean(PMD_PERSPECTIVE_ENABLED));
     }
     
     private void loadPmdViolationsOverviewEnabled() {
         loadPreferencesStore.setDefault(PMD_VIOLATIONS_OVERVIEW_ENABLED, IPreferences.PMD_VIOLATIONS_OVERVIEW_ENABLED_DEFAULT);
-        preferences.setPmdViolationsOverviewEnabled(loadPreferencesStore.getBoolean(PMD_VIOLATIONS_OVERVIEW_ENABLED));
+        loadingPreferences.setPmdViolationsOverviewEnabled(loadPreferencesStore.getBoolean(PMD_VIOLATIONS_OVERVIEW_ENABLED));
     }
     
     private void loadPmdViolationsOutlineEnabled() {
         loadPreferencesStore.setDefault(PMD_VIOLATIONS_OUTLINE_ENABLED, IPreferences.PMD_VIOLATIONS_OUTLINE_ENABLED_DEFAULT);
-        preferences.setPmdViolationsOutlineEnabled(loadPreferencesStore.getBoolean(PMD_VIOLATIONS_OUTLINE_ENABLED));
+        loadingPreferences.setPmdViolationsOutlineEnabled(loadPreferencesStore.getBoolean(PMD_VIOLATIONS_OUTLINE_ENABLED));
     }
     
     private void loadCheckAfterSaveEnabled() {
         loadPreferencesStore.setDefault(PMD_CHECK_AFTER_SAVE_ENABLED, IPreferences.PMD_CHECK_AFTER_SAVE_DEFAULT);
-        preferences.isCheckAfterSaveEnabled(loadPreferencesStore.getBoolean(PMD_CHECK_AFTER_SAVE_ENABLED));
+        loadingPreferences.isCheckAfterSaveEnabled(loadPreferencesStore.getBoolean(PMD_CHECK_AFTER_SAVE_ENABLED));
     }
 
     private void loadUseCustomPriorityNames() {
         loadPreferencesStore.setDefault(PMD_USE_CUSTOM_PRIORITY_NAMES,
                 IPreferences.PMD_USE_CUSTOM_PRIORITY_NAMES_DEFAULT);
-        preferences.useCustomPriorityNames(loadPreferencesStore.getBoolean(PMD_USE_CUSTOM_PRIORITY_NAMES));
+        loadingPreferences.useCustomPriorityNames(loadPreferencesStore.getBoolean(PMD_USE_CUSTOM_PRIORITY_NAMES));
     }
 
     private void loadDetermineFiletypesAutomatically() {
         loadPreferencesStore.setDefault(DETERMINE_FILETYPES_AUTOMATICALLY, IPreferences.DETERMINE_FILETYPES_AUTOMATICALLY_DEFAULT);
-        preferences.setDetermineFiletypesAutomatically(loadPreferencesStore.getBoolean(DETERMINE_FILETYPES_AUTOMATICALLY));
+        loadingPreferences.setDetermineFiletypesAutomatically(loadPreferencesStore.getBoolean(DETERMINE_FILETYPES_AUTOMATICALLY));
     }
 
     private void loadReviewAdditionalComment() {
         loadPreferencesStore.setDefault(REVIEW_ADDITIONAL_COMMENT, IPreferences.REVIEW_ADDITIONAL_COMMENT_DEFAULT);
-        preferences.setReviewAdditionalComment(loadPreferencesStore.getString(REVIEW_ADDITIONAL_COMMENT));
+        loadingPreferences.setReviewAdditionalComment(loadPreferencesStore.getString(REVIEW_ADDITIONAL_COMMENT));
     }
 
     private void loadReviewPmdStyleEnabled() {
         loadPreferencesStore.setDefault(REVIEW_PMD_STYLE_ENABLED, IPreferences.REVIEW_PMD_STYLE_ENABLED_DEFAULT);
-        preferences.setReviewPmdStyleEnabled(loadPreferencesStore.getBoolean(REVIEW_PMD_STYLE_ENABLED));
+        loadingPreferences.setReviewPmdStyleEnabled(loadPreferencesStore.getBoolean(REVIEW_PMD_STYLE_ENABLED));
     }
 
     private void loadMinTileSize() {
         loadPreferencesStore.setDefault(MIN_TILE_SIZE, IPreferences.MIN_TILE_SIZE_DEFAULT);
-        preferences.setMinTileSize(this.loadPreferencesStore.getInt(MIN_TILE_SIZE));
+        loadingPreferences.setMinTileSize(this.loadPreferencesStore.getInt(MIN_TILE_SIZE));
+    }
+
+    private void loadCpdIncremental() {
+        loadPreferencesStore.setDefault(CPD_INCREMENTAL, IPreferences.CPD_INCREMENTAL_DEFAULT);
+        loadingPreferences.setCpdIncremental(loadPreferencesStore.getBoolean(CPD_INCREMENTAL));
+    }
+
+    private void loadCpdThreadCount() {
+        loadPreferencesStore.setDefault(CPD_THREAD_COUNT, IPreferences.CPD_THREAD_COUNT_DEFAULT);
+        loadingPreferences.setCpdThreadCount(loadPreferencesStore.getInt(CPD_THREAD_COUNT));
+    }
+
+    private void loadCpdCheckAfterSave() {
+        loadPreferencesStore.setDefault(CPD_CHECK_AFTER_SAVE, IPreferences.CPD_CHECK_AFTER_SAVE_DEFAULT);
+        loadingPreferences.setCpdCheckAfterSaveEnabled(loadPreferencesStore.getBoolean(CPD_CHECK_AFTER_SAVE));
     }
 
     private void loadLogFileName() {
         loadPreferencesStore.setDefault(LOG_FILENAME, IPreferences.LOG_FILENAME_DEFAULT);
-        preferences.setLogFileName(loadPreferencesStore.getString(LOG_FILENAME));
+        loadingPreferences.setLogFileName(loadPreferencesStore.getString(LOG_FILENAME));
     }
 
     private void loadLogLevel() {
         loadPreferencesStore.setDefault(LOG_LEVEL, IPreferences.LOG_LEVEL_DEFAULT);
-        preferences.setLogLevel(loadPreferencesStore.getString(LOG_LEVEL));
+        loadingPreferences.setLogLevel(loadPreferencesStore.getString(LOG_LEVEL));
     }
 
     private void loadGlobalRuleManagement() {
         loadPreferencesStore.setDefault(GLOBAL_RULE_MANAGEMENT, false);
-        preferences.setGlobalRuleManagement(loadPreferencesStore.getBoolean(GLOBAL_RULE_MANAGEMENT));
+        loadingPreferences.setGlobalRuleManagement(loadPreferencesStore.getBoolean(GLOBAL_RULE_MANAGEMENT));
     }
 
     private void loadActiveRules() {
-        loadPreferencesStore.setDefault(ACTIVE_RULES, preferences.getDefaultActiveRules());
-        preferences.setActiveRuleNames(asStringSet(loadPreferencesStore.getString(ACTIVE_RULES), ","));
+        if (loadPreferencesStore.contains(ACTIVE_RULES)) {
+            loadingPreferences.setActiveRuleNames(asStringSet(loadPreferencesStore.getString(ACTIVE_RULES), ","));
+        } else {
+            // computing the default active rules requires to parse all default rulesets,
+            // so it is only done, when the active rules are requested
+            loadingPreferences.useDefaultActiveRules();
+        }
     }
 
     private void loadActiveReportRenderers() {
         loadPreferencesStore.setDefault(ACTIVE_RENDERERS, IPreferences.ACTIVE_RENDERERS);
-        preferences.activeReportRenderers(asStringSet(loadPreferencesStore.getString(ACTIVE_RENDERERS), ","));
+        loadingPreferences.activeReportRenderers(asStringSet(loadPreferencesStore.getString(ACTIVE_RENDERERS), ","));
     }
 
     private void loadActiveExclusions() {
         loadPreferencesStore.setDefault(ACTIVE_EXCLUSIONS, IPreferences.ACTIVE_EXCLUSIONS);
-        preferences.activeExclusionPatterns(asStringSet(loadPreferencesStore.getString(ACTIVE_EXCLUSIONS), ","));
+        loadingPreferences.activeExclusionPatterns(asStringSet(loadPreferencesStore.getString(ACTIVE_EXCLUSIONS), ","));
     }
 
     private void loadActiveInclusions() {
         loadPreferencesStore.setDefault(ACTIVE_INCLUSIONS, IPreferences.ACTIVE_INCLUSIONS);
-        preferences.activeInclusionPatterns(asStringSet(loadPreferencesStore.getString(ACTIVE_INCLUSIONS), ","));
+        loadingPreferences.activeInclusionPatterns(asStringSet(loadPreferencesStore.getString(ACTIVE_INCLUSIONS), ","));
     }
 
     private void loadRulePriorityDescriptors() {
@@ -395,10 +531,10 @@ class PreferencesManagerImpl implements IPreferencesManager {
                 String storeKey = STORE_KEYS_BY_PRIORITY.get(entry.getKey());
                 PriorityDescriptor loadedPriorityDescriptor = PriorityDescriptor.from(loadPreferencesStore.getString(storeKey));
                 if (loadedPriorityDescriptor != null) {
-                    preferences.setPriorityDescriptor(entry.getKey(), loadedPriorityDescriptor);
+                    loadingPreferences.setPriorityDescriptor(entry.getKey(), loadedPriorityDescriptor);
                 } else {
                     loadPreferencesStore.setValue(entry.getValue(), defaultPriorityDescriptor.storeString());
-                    preferences.setPriorityDescriptor(entry.getKey(), defaultPriorityDescriptor);
+                    loadingPreferences.setPriorityDescriptor(entry.getKey(), defaultPriorityDescriptor);
                 }
             }
         }
@@ -406,7 +542,7 @@ class PreferencesManagerImpl implements IPreferencesManager {
 
     private void loadTableFraction() {
         loadPreferencesStore.setDefault(TABLE_FRACTION, IPreferences.TABLE_FRACTION_DEFAULT);
-        preferences.tableFraction(loadPreferencesStore.getInt(TABLE_FRACTION));
+        loadingPreferences.tableFraction(loadPreferencesStore.getInt(TABLE_FRACTION));
     }
 
     private static String defaultHiddenColumnIds() {
@@ -420,27 +556,27 @@ class PreferencesManagerImpl implements IPreferencesManager {
 
     private void loadHiddenColumnIds() {
         loadPreferencesStore.setDefault(TABLE_HIDDEN_COLS, defaultHiddenColumnIds());
-        preferences.setHiddenColumnIds(asStringSet(loadPreferencesStore.getString(TABLE_HIDDEN_COLS), ","));
+        loadingPreferences.setHiddenColumnIds(asStringSet(loadPreferencesStore.getString(TABLE_HIDDEN_COLS), ","));
     }
 
     private void loadSortDirectionUp() {
         loadPreferencesStore.setDefault(TABLE_COLUMN_SORT_UP, IPreferences.DEFAULT_SORT_UP);
-        preferences.setSortDirectionUp(loadPreferencesStore.getBoolean(TABLE_COLUMN_SORT_UP));
+        loadingPreferences.setSortDirectionUp(loadPreferencesStore.getBoolean(TABLE_COLUMN_SORT_UP));
     }
 
     private void loadGroupingColumn() {
         loadPreferencesStore.setDefault(GROUPING_COLUMN, IPreferences.DEFAULT_GROUPING_COLUMN);
-        preferences.setGroupingColumn(loadPreferencesStore.getString(GROUPING_COLUMN));
+        loadingPreferences.setGroupingColumn(loadPreferencesStore.getString(GROUPING_COLUMN));
     }
 
     private void loadSelectedRuleNames() {
         loadPreferencesStore.setDefault(SELECTED_RULE_NAMES, "");
-        preferences.setSelectedRuleNames(asStringSet(loadPreferencesStore.getString(SELECTED_RULE_NAMES), ","));
+        loadingPreferences.setSelectedRuleNames(asStringSet(loadPreferencesStore.getString(SELECTED_RULE_NAMES), ","));
     }
 
     private void loadSelectedPropertyTab() {
         loadPreferencesStore.setDefault(SELECTED_PROPERTY_TAB, 0);
-        preferences.setSelectedPropertyTab(loadPreferencesStore.getInt(SELECTED_PROPERTY_TAB));
+        loadingPreferences.setSelectedPropertyTab(loadPreferencesStore.getInt(SELECTED_PROPERTY_TAB));
     }
 
     private static Set<String> asStringSet(String delimitedString, String delimiter) {
@@ -476,7 +612,17 @@ class PreferencesManagerImpl implements IPreferencesManager {
     }
 
     private void storeActiveRules() {
-        storePreferencesStore.setValue(ACTIVE_RULES, asDelimitedString(preferences.getActiveRuleNames(), ","));
+        Set<String> activeRules = ((PreferencesImpl) preferences).activeRuleNamesIfKnown();
+        if (activeRules == null) {
+            // the default active rules have not been requested, they are still the default
+            storePreferencesStore.setToDefault(ACTIVE_RULES);
+        } else if (activeRules.isEmpty()) {
+            // an empty value equals the default value of the store and would be removed,
+            // so that the default active rules would be used again
+            storePreferencesStore.setValue(ACTIVE_RULES, ",");
+        } else {
+            storePreferencesStore.setValue(ACTIVE_RULES, asDelimitedString(activeRules, ","));
+        }
     }
 
     private void storeActiveReportRenderers() {
@@ -533,6 +679,18 @@ class PreferencesManagerImpl implements IPreferencesManager {
         storePreferencesStore.setValue(MIN_TILE_SIZE, preferences.getMinTileSize());
     }
 
+    private void storeCpdIncremental() {
+        storePreferencesStore.setValue(CPD_INCREMENTAL, preferences.isCpdIncremental());
+    }
+
+    private void storeCpdThreadCount() {
+        storePreferencesStore.setValue(CPD_THREAD_COUNT, preferences.getCpdThreadCount());
+    }
+
+    private void storeCpdCheckAfterSave() {
+        storePreferencesStore.setValue(CPD_CHECK_AFTER_SAVE, preferences.isCpdCheckAfterSaveEnabled());
+    }
+
     private void storeLogFileName() {
         storePreferencesStore.setValue(LOG_FILENAME, preferences.getLogFileName());
     }
@@ -24,6 +24,7 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 
@@ -57,15 +58,20 @@ import net.sourceforge.pmd.lang.rule.RuleSetLoader;
 public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
     private static final Logger LOG = LoggerFactory.getLogger(ProjectPropertiesManagerImpl.class);
 
-    private static final JAXBContext JAXB_CONTEXT = initJaxbContext();
-
     private final ConcurrentMap<IProject, ProjectPropertiesTimestampTupel> projectsProperties = new ConcurrentHashMap<>();
 
-    private static JAXBContext initJaxbContext() {
-        try {
-            return JAXBContext.newInstance(ProjectPropertiesTO.class);
-        } catch (JAXBException e) {
-            throw new RuntimeException(e);
+    /**
+     * The JAXB context is only needed as a fallback, so it is created on first use.
+     */
+    private static final class JaxbContextHolder {
+        private static final JAXBContext JAXB_CONTEXT = initJaxbContext();
+
+        private static JAXBContext initJaxbContext() {
+            try {
+                return JAXBContext.newInstance(ProjectPropertiesTO.class);
+            } catch (JAXBException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -156,7 +162,7 @@ public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
                 final RuleSetLoader loader = InternalRuleSetUtil.getDefaultRuleSetLoader();
                 List<RuleSet> allRulesets = new ArrayList<>();
                 for (final File ruleSetFile : projectProperties.getResolvedRuleSetFiles()) {
-                    RuleSet ruleSet = loader.loadFromResource(ruleSetFile.getPath());
+                    RuleSet ruleSet = ProjectRuleSetCache.getInstance().load(loader, ruleSetFile);
                     allRulesets.add(ruleSet);
                 }
                 projectProperties.setProjectRuleSetList(allRulesets);
@@ -170,10 +176,23 @@ public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
     }
 
     public ProjectPropertiesTO convertProjectPropertiesFromString(String properties) {
+        try {
+            return ProjectPropertiesStreamSerializer.read(new StringReader(properties));
+        } catch (XMLStreamException e) {
+            LOG.debug("Couldn't read project properties with StAX, falling back to JAXB: {}", e.toString());
+            return convertProjectPropertiesFromStringWithJaxb(properties);
+        }
+    }
+
+    /**
+     * Reads the project properties with JAXB. This is slower than the StAX based reader,
+     * but reports invalid files with a detailed error message.
+     */
+    ProjectPropertiesTO convertProjectPropertiesFromStringWithJaxb(String properties) {
         try {
             Source source = new StreamSource(new StringReader(properties));
-            JAXBElement<ProjectPropertiesTO> element = JAXB_CONTEXT.createUnmarshaller().unmarshal(source,
-                    ProjectPropertiesTO.class);
+            JAXBElement<ProjectPropertiesTO> element = JaxbContextHolder.JAXB_CONTEXT.createUnmarshaller()
+                    .unmarshal(source, ProjectPropertiesTO.class);
             return element.getValue();
         } catch (JAXBException e) {
             throw new DataBindingException(e);
@@ -193,8 +212,12 @@ public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
             final IFile propertiesFile = project.getFile(ProjectPropertiesTimestampTupel.PROPERTIES_FILE);
             if (propertiesFile.exists() && propertiesFile.isAccessible()) {
                 try (Reader in = new InputStreamReader(propertiesFile.getContents(), StandardCharsets.UTF_8)) {
-                    String properties = IOUtil.toString(in);
-                    projectProperties = convertProjectPropertiesFromString(properties);
+                    projectProperties = ProjectPropertiesStreamSerializer.read(in);
+                } catch (XMLStreamException e) {
+                    LOG.debug("Couldn't read project properties with StAX, falling back to JAXB: {}", e.toString());
+                    try (Reader in = new InputStreamReader(propertiesFile.getContents(), StandardCharsets.UTF_8)) {
+                        projectProperties = convertProjectPropertiesFromStringWithJaxb(IOUtil.toString(in));
+                    }
                 }
             }
 
@@ -284,7 +307,19 @@ public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
 
     public String convertProjectPropertiesToString(ProjectPropertiesTO projectProperties) {
         try {
-            Marshaller marshaller = JAXB_CONTEXT.createMarshaller();
+            return ProjectPropertiesStreamSerializer.write(projectProperties);
+        } catch (XMLStreamException e) {
+            throw new DataBindingException(e);
+        }
+    }
+
+    /**
+     * Writes the project properties with JAXB. The result is the same as with
+     * {@link #convertProjectPropertiesToString(ProjectPropertiesTO)}.
+     */
+    String convertProjectPropertiesToStringWithJaxb(ProjectPropertiesTO projectProperties) {
+        try {
+            Marshaller marshaller = JaxbContextHolder.JAXB_CONTEXT.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
             marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
             marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
@@ -0,0 +1,230 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.properties.impl;
+
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Reads and writes the project properties file (".pmd") with StAX. This avoids the costly
+ * initialization of the JAXB context for the common case. The format is the same, that is
+ * produced and accepted by the JAXB binding of {@link ProjectPropertiesTO}.
+ *
+ * <p>Unknown elements are skipped. If the file is not well-formed, an {@link XMLStreamException}
+ * is thrown and the caller can fall back to JAXB.
+ */
+final class ProjectPropertiesStreamSerializer {
+    private static final String INDENT = "    ";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private ProjectPropertiesStreamSerializer() {
+        // utility
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    static ProjectPropertiesTO read(Reader in) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            reader.nextTag();
+            if (!"pmd".equals(reader.getLocalName())) {
+                throw new XMLStreamException("Unexpected root element " + reader.getLocalName(), reader.getLocation());
+            }
+
+            ProjectPropertiesTO to = new ProjectPropertiesTO();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                case "workingSet":
+                    to.setWorkingSetName(reader.getElementText());
+                    break;
+                case "useProjectRuleSet":
+                    to.setRuleSetStoredInProject(parseBoolean(reader.getElementText()));
+                    break;
+                case "ruleSetFile":
+                    to.setRuleSetFile(reader.getElementText());
+                    break;
+                case "excludePatterns":
+                    to.setExcludePatterns(readStrings(reader, "excludePattern"));
+                    break;
+                case "includePatterns":
+                    to.setIncludePatterns(readStrings(reader, "includePattern"));
+                    break;
+                case "rules":
+                    to.setRules(readRules(reader));
+                    break;
+                case "includeDerivedFiles":
+                    to.setIncludeDerivedFiles(parseBoolean(reader.getElementText()));
+                    break;
+                case "violationsAsErrors":
+                    to.setViolationsAsErrors(parseBoolean(reader.getElementText()));
+                    break;
+                case "fullBuildEnabled":
+                    to.setFullBuildEnabled(parseBoolean(reader.getElementText()));
+                    break;
+                default:
+                    skipElement(reader);
+                    break;
+                }
+            }
+            return to;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String[] readStrings(XMLStreamReader reader, String elementName) throws XMLStreamException {
+        List<String> result = new ArrayList<>();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (elementName.equals(reader.getLocalName())) {
+                result.add(reader.getElementText());
+            } else {
+                skipElement(reader);
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    private static RuleSpecTO[] readRules(XMLStreamReader reader) throws XMLStreamException {
+        List<RuleSpecTO> result = new ArrayList<>();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("rule".equals(reader.getLocalName())) {
+                RuleSpecTO rule = new RuleSpecTO();
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    if ("name".equals(reader.getLocalName())) {
+                        rule.setName(reader.getElementText());
+                    } else if ("ruleset".equals(reader.getLocalName())) {
+                        rule.setRuleSetName(reader.getElementText());
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+                result.add(rule);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return result.toArray(new RuleSpecTO[0]);
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Same as xsd:boolean, which is used by JAXB.
+     */
+    private static boolean parseBoolean(String value) {
+        String trimmed = value.trim();
+        return "true".equals(trimmed) || "1".equals(trimmed);
+    }
+
+    static String write(ProjectPropertiesTO to) throws XMLStreamException {
+        StringWriter out = new StringWriter();
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out);
+        writer.writeStartElement("pmd");
+        writeElement(writer, 1, "workingSet", to.getWorkingSetName());
+        writeElement(writer, 1, "useProjectRuleSet", String.valueOf(to.isRuleSetStoredInProject()));
+        writeElement(writer, 1, "ruleSetFile", to.getRuleSetFile());
+        writeStrings(writer, "excludePatterns", "excludePattern", to.getExcludePatterns());
+        writeStrings(writer, "includePatterns", "includePattern", to.getIncludePatterns());
+        writeRules(writer, to.getRules());
+        writeElement(writer, 1, "includeDerivedFiles", String.valueOf(to.isIncludeDerivedFiles()));
+        writeElement(writer, 1, "violationsAsErrors", String.valueOf(to.isViolationsAsErrors()));
+        writeElement(writer, 1, "fullBuildEnabled", String.valueOf(to.isFullBuildEnabled()));
+        newLine(writer, 0);
+        writer.writeEndElement();
+        writer.flush();
+        writer.close();
+
+        out.write("\n");
+        return out.toString();
+    }
+
+    private static void writeStrings(XMLStreamWriter writer, String wrapperName, String elementName, String[] values)
+            throws XMLStreamException {
+        if (values == null) {
+            return;
+        }
+        newLine(writer, 1);
+        if (values.length == 0) {
+            writer.writeEmptyElement(wrapperName);
+            return;
+        }
+        writer.writeStartElement(wrapperName);
+        for (String value : values) {
+            writeElement(writer, 2, elementName, value);
+        }
+        newLine(writer, 1);
+        writer.writeEndElement();
+    }
+
+    private static void writeRules(XMLStreamWriter writer, RuleSpecTO[] rules) throws XMLStreamException {
+        if (rules == null) {
+            return;
+        }
+        newLine(writer, 1);
+        if (rules.length == 0) {
+            writer.writeEmptyElement("rules");
+            return;
+        }
+        writer.writeStartElement("rules");
+        for (RuleSpecTO rule : rules) {
+            newLine(writer, 2);
+            writer.writeStartElement("rule");
+            writeElement(writer, 3, "name", rule.getName());
+            writeElement(writer, 3, "ruleset", rule.getRuleSetName());
+            newLine(writer, 2);
+            writer.writeEndElement();
+        }
+        newLine(writer, 1);
+        writer.writeEndElement();
+    }
+
+    private static void writeElement(XMLStreamWriter writer, int level, String name, String value)
+            throws XMLStreamException {
+        if (value == null) {
+            return;
+        }
+        newLine(writer, level);
+        writer.writeStartElement(name);
+        writer.writeCharacters(value);
+        writer.writeEndElement();
+    }
+
+    private static void newLine(XMLStreamWriter writer, int level) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder(1 + level * INDENT.length());
+        sb.append('\n');
+        for (int i = 0; i < level; i++) {
+            sb.append(INDENT);
+        }
+        writer.writeCharacters(sb.toString());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.properties.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleSetLoader;
+
+/**
+ * Reuses the parsed rulesets of the projects, that store their ruleset in the project. The rulesets
+ * are keyed by the content hash of the ruleset file, so that projects sharing the same ruleset parse it
+ * only once, and a project parses it again only if the content changed, not if the file has only been
+ * touched (e.g. by a checkout or a refresh).
+ *
+ * <p>A cached ruleset is only reused, if the ruleset files, that it references from the file system,
+ * didn't change either. The callers get a copy of the rules, the cached rules are never handed out.
+ *
+ * <p>The cache is thread-safe.
+ */
+public final class ProjectRuleSetCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ProjectRuleSetCache.class);
+
+    private static final int MAX_ENTRIES = 16;
+    private static final Pattern REFERENCE = Pattern.compile("\\bref\\s*=\\s*[\"']([^\"']+)[\"']");
+
+    private static final ProjectRuleSetCache INSTANCE = new ProjectRuleSetCache();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private ProjectRuleSetCache() {
+        // singleton
+    }
+
+    public static ProjectRuleSetCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Loads the given ruleset file. If a ruleset with the same content has already been parsed
+     * and the files it references didn't change, a copy of it is returned.
+     *
+     * @param loader the loader to use, if the ruleset needs to be parsed
+     * @param ruleSetFile the ruleset file
+     * @return the ruleset
+     */
+    public RuleSet load(RuleSetLoader loader, File ruleSetFile) {
+        String path = ruleSetFile.getPath();
+        byte[] content = contentOf(ruleSetFile);
+        String hash = content == null ? null : hashOf(content);
+
+        Entry entry;
+        synchronized (entries) {
+            entry = hash == null ? null : entries.get(hash);
+        }
+        if (entry != null && entry.isValid()) {
+            LOG.debug("Using the already parsed ruleset for {}", path);
+            return copyOf(entry.ruleSet, path);
+        }
+
+        long start = System.currentTimeMillis();
+        RuleSet ruleSet = loader.loadFromResource(path);
+        LOG.debug("Parsed ruleset {} in {} ms", path, System.currentTimeMillis() - start);
+        if (hash != null) {
+            Map<String, String> referencedHashes = new LinkedHashMap<>();
+            collectReferencedFiles(new String(content, StandardCharsets.UTF_8), referencedHashes);
+            synchronized (entries) {
+                entries.put(hash, new Entry(referencedHashes, ruleSet));
+            }
+        }
+        return copyOf(ruleSet, path);
+    }
+
+    /**
+     * Removes all the parsed rulesets.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static RuleSet copyOf(RuleSet ruleSet, String fileName) {
+        List<Rule> rules = new ArrayList<>(ruleSet.size());
+        for (Rule rule : ruleSet.getRules()) {
+            rules.add(rule.deepCopy());
+        }
+        return RuleSet.create(ruleSet.getName(), ruleSet.getDescription(), fileName, ruleSet.getFileExclusions(),
+                ruleSet.getFileInclusions(), rules);
+    }
+
+    /**
+     * Adds the hashes of the ruleset files, that are referenced from the file system, recursively.
+     * Rulesets from the classpath are part of PMD and can't change.
+     */
+    private static void collectReferencedFiles(String ruleSetXml, Map<String, String> hashes) {
+        Matcher matcher = REFERENCE.matcher(ruleSetXml);
+        while (matcher.find()) {
+            String reference = matcher.group(1);
+            int xmlEnd = reference.indexOf(".xml");
+            String fileName = xmlEnd < 0 ? reference : reference.substring(0, xmlEnd + ".xml".length());
+            File file = new File(fileName);
+            if (hashes.containsKey(fileName) || !file.isFile()) {
+                continue;
+            }
+            byte[] content = contentOf(file);
+            hashes.put(fileName, content == null ? null : hashOf(content));
+            if (content != null) {
+                collectReferencedFiles(new String(content, StandardCharsets.UTF_8), hashes);
+            }
+        }
+    }
+
+    private static byte[] contentOf(File file) {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            LOG.debug("Couldn't read ruleset file {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    private static String hashOf(byte[] content) {
+        try {
+            return new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(content)).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+        private final Map<String, String> referencedHashes;
+        private final RuleSet ruleSet;
+
+        Entry(Map<String, String> referencedHashes, RuleSet ruleSet) {
+            this.referencedHashes = referencedHashes;
+            this.ruleSet = ruleSet;
+        }
+
+        boolean isValid() {
+            for (Map.Entry<String, String> referenced : referencedHashes.entrySet()) {
+                byte[] content = contentOf(new File(referenced.getKey()));
+                if (content == null || referenced.getValue() == null
+                        || !referenced.getValue().equals(hashOf(content))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -4,34 +4,73 @@
 
 package net.sourceforge.pmd.eclipse.ui;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.viewers.IDecoration;
 import org.eclipse.jface.viewers.ILabelProviderListener;
 import org.eclipse.jface.viewers.ILightweightLabelDecorator;
 import org.eclipse.jface.viewers.LabelProviderChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
-import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
 import net.sourceforge.pmd.eclipse.ui.priority.PriorityDescriptorCache;
 import net.sourceforge.pmd.eclipse.ui.views.PriorityFilter;
 import net.sourceforge.pmd.lang.rule.RulePriority;
 
 /**
- * 
+ * Decorates the resources with the icon of the highest priority of their violations.
+ *
+ * <p>Changes are coalesced: the changed resources are collected and processed at most once
+ * per {@link #REFRESH_DELAY} milliseconds in a background job. Only the resources, whose
+ * highest (enabled) priority differs from the one last decorated, are sent to the listeners.
+ *
  * @author Brian Remedios
  */
 public class RuleLabelDecorator implements ILightweightLabelDecorator {
+    private static final Logger LOG = LoggerFactory.getLogger(RuleLabelDecorator.class);
+
     public static final String ID = "net.sourceforge.pmd.eclipse.plugin.RuleLabelDecorator";
 
+    /** Minimum time in milliseconds between two label provider changed events. */
+    private static final long REFRESH_DELAY = 250L;
+
     private Set<ILabelProviderListener> listeners = new CopyOnWriteArraySet<>();
 
+    /** The priority, that has been used for the decoration, per resource. Resources without decoration are absent. */
+    private final Map<IResource, Integer> decoratedPriorities = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+    private Set<IResource> pendingResources = new HashSet<>();
+    private Set<IResource> pendingSubtrees = new HashSet<>();
+    private boolean refreshScheduled;
+
+    private final Job refreshJob = new Job("Updating PMD decorations") {
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            fireChanges();
+            return Status.OK_STATUS;
+        }
+    };
+
+    public RuleLabelDecorator() {
+        refreshJob.setSystem(true);
+    }
+
     @Override
     public void addListener(ILabelProviderListener listener) {
         listeners.add(listener);
@@ -39,14 +78,111 @@ public class RuleLabelDecorator implements ILightweightLabelDecorator {
 
     @Override
     public void dispose() {
-        // nothing to do
+        refreshJob.cancel();
+        decoratedPriorities.clear();
+    }
+
+    /**
+     * Notifies the decorator, that the violations of the given resources might have changed.
+     * The parents of the resources are considered, too.
+     *
+     * @param resources the resources
+     */
+    public void changed(Collection<? extends IResource> resources) {
+        synchronized (lock) {
+            pendingResources.addAll(resources);
+            scheduleRefresh();
+        }
     }
 
-    public void changed(Collection<IResource> resources) {
-        LabelProviderChangedEvent lpce = new LabelProviderChangedEvent(this, resources.toArray());
+    /**
+     * Notifies the decorator, that the violations of the given resource and all its members
+     * might have changed.
+     *
+     * @param resource the resource
+     */
+    public void changedMembersOf(IResource resource) {
+        synchronized (lock) {
+            pendingSubtrees.add(resource);
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * Updates the decorations of all resources, e.g. after the icons have been changed.
+     */
+    public void changedAll() {
+        fire(new LabelProviderChangedEvent(this));
+    }
+
+    private void scheduleRefresh() {
+        if (!refreshScheduled) {
+            refreshScheduled = true;
+            refreshJob.schedule(REFRESH_DELAY);
+        }
+    }
+
+    private void fireChanges() {
+        Set<IResource> resources;
+        Set<IResource> subtrees;
+        synchronized (lock) {
+            resources = pendingResources;
+            subtrees = pendingSubtrees;
+            pendingResources = new HashSet<>();
+            pendingSubtrees = new HashSet<>();
+            refreshScheduled = false;
+        }
+
+        Set<IResource> candidates = new HashSet<>();
+        for (IResource resource : resources) {
+            addWithParents(resource, candidates);
+        }
+        for (IResource subtree : subtrees) {
+            addWithParents(subtree, candidates);
+            // only the members, that are currently decorated, can lose their decoration
+            IPath path = subtree.getFullPath();
+            for (IResource decorated : decoratedPriorities.keySet()) {
+                if (path.isPrefixOf(decorated.getFullPath())) {
+                    candidates.add(decorated);
+                }
+            }
+        }
 
+        ViolationIndex index = ViolationIndex.getInstance();
+        int enabledPriorityMask = PriorityFilter.getInstance().getEnabledPriorityMask();
+        List<IResource> changed = new ArrayList<>();
+        for (IResource candidate : candidates) {
+            int priority = candidate.exists() ? index.highestPriorityOf(candidate, enabledPriorityMask) : 0;
+            if (remember(candidate, priority)) {
+                changed.add(candidate);
+            }
+        }
+
+        LOG.debug("Decorations changed for {} of {} resources", changed.size(), candidates.size());
+        if (!changed.isEmpty()) {
+            fire(new LabelProviderChangedEvent(this, changed.toArray()));
+        }
+    }
+
+    private static void addWithParents(IResource resource, Set<IResource> resources) {
+        IResource current = resource;
+        while (current != null && resources.add(current)) {
+            current = current.getParent();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the priority is different from the remembered one
+     */
+    private boolean remember(IResource resource, int priority) {
+        Integer previous = priority == 0 ? decoratedPriorities.remove(resource)
+                : decoratedPriorities.put(resource, priority);
+        return previous == null ? priority != 0 : previous != priority;
+    }
+
+    private void fire(LabelProviderChangedEvent event) {
         for (ILabelProviderListener listener : listeners) {
-            listener.labelProviderChanged(lpce);
+            listener.labelProviderChanged(event);
         }
     }
 
@@ -68,40 +204,15 @@ public class RuleLabelDecorator implements ILightweightLabelDecorator {
 
         IResource resource = (IResource) element;
 
-        Set<Integer> range = null;
-        try {
-            range = MarkerUtil.priorityRangeOf(resource, PMDRuntimeConstants.RULE_MARKER_TYPES, 5);
-        } catch (CoreException e1) {
-            return;
-        }
-
-        if (range.isEmpty()) {
-            return;
-        }
-
-        // consider only the priorities, that are not filtered
-        Integer highestPriority = null;
-        for (Integer priority : range) {
-            if (PriorityFilter.getInstance().isPriorityEnabled(RulePriority.valueOf(priority))) {
-                if (highestPriority == null || highestPriority > priority) {
-                    highestPriority = priority;
-                }
-            }
-        }
-
-        if (highestPriority == null) {
+        // a single lookup in the precomputed rollup, considering only the priorities, that are not filtered
+        int highestPriority = ViolationIndex.getInstance().highestPriorityOf(resource,
+                PriorityFilter.getInstance().getEnabledPriorityMask());
+        remember(resource, highestPriority);
+        if (highestPriority == 0) {
             return;
         }
 
         ImageDescriptor overlay = PriorityDescriptorCache.INSTANCE.descriptorFor(RulePriority.valueOf(highestPriority)).getAnnotationImageDescriptor();
-
-        try {
-            boolean hasMarkers = MarkerUtil.hasAnyRuleMarkers(resource);
-            if (hasMarkers) {
-                decoration.addOverlay(overlay);
-            }
-        } catch (CoreException e) {
-            PMDPlugin.getDefault().logError("Error while adding overlay icon", e);
-        }
+        decoration.addOverlay(overlay);
     }
 }
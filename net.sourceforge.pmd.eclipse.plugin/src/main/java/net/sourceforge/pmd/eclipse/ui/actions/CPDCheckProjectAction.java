@@ -81,6 +81,10 @@ public class CPDCheckProjectAction extends AbstractUIAction {
                         LOG.debug("   -> selected object : " + obj);
                     } else {
                         this.detectCutAndPaste(project, dialog);
+                        if (dialog.isWorkspaceWideSelected()) {
+                            // all the open projects are searched at once, the report is created in this project
+                            break;
+                        }
                     }
                 } else {
                     LOG.warn("The selected object is not adaptable");
@@ -111,6 +115,7 @@ public class CPDCheckProjectAction extends AbstractUIAction {
             detectCmd.setCreateReport(createReport);
             detectCmd.setLanguage(selectedLanguage);
             detectCmd.setMinTileSize(tilesize);
+            detectCmd.setWorkspaceWide(dialog.isWorkspaceWideSelected());
             detectCmd.setCPDRenderer(selectedRenderer);
             detectCmd.setReportName(fileName);
             detectCmd.setUserInitiated(true);
@@ -37,11 +37,13 @@ public class CPDCheckDialog extends Dialog {
     private int selectedFormat;
     private String selectedLanguage;
     private boolean createReport;
+    private boolean workspaceWide;
 
     private Group reportGroup = null;
     private Button createReportCheckbox = null;
     private Combo languageCombo = null;
     private Spinner minTileSizeSpinner = null;
+    private Button workspaceCheckbox = null;
     private Combo formatCombo = null;
     private int tileSize = defaultMinTileSize();
 
@@ -100,6 +102,10 @@ public class CPDCheckDialog extends Dialog {
         return tileSize;
     }
 
+    public boolean isWorkspaceWideSelected() {
+        return workspaceWide;
+    }
+
     /**
      * Initializes the container.
      * 
@@ -140,6 +146,8 @@ public class CPDCheckDialog extends Dialog {
 
         createTileSizeSpinner(container);
 
+        createWorkspaceCheckbox(container);
+
         createReportGroup(container);
     }
 
@@ -166,6 +174,29 @@ public class CPDCheckDialog extends Dialog {
         });
     }
 
+    private void createWorkspaceCheckbox(Composite container) {
+        final GridData gridData = new GridData();
+        gridData.horizontalAlignment = GridData.BEGINNING;
+        gridData.horizontalSpan = 2;
+        gridData.verticalIndent = 5;
+        gridData.horizontalIndent = 5;
+
+        workspaceCheckbox = new Button(container, SWT.CHECK);
+        workspaceCheckbox.setText(getString(StringKeys.DIALOG_CPD_WORKSPACE));
+        workspaceCheckbox.setLayoutData(gridData);
+        workspaceCheckbox.addSelectionListener(new SelectionListener() {
+            @Override
+            public void widgetDefaultSelected(SelectionEvent e) {
+                workspaceWide = workspaceCheckbox.getSelection();
+            }
+
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                workspaceWide = workspaceCheckbox.getSelection();
+            }
+        });
+    }
+
     /**
      * This method initializes reportGroup.
      * 
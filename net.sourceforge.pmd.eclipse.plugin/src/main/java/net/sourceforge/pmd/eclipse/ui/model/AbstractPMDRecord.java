@@ -11,6 +11,8 @@ import java.util.List;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
+
 /**
  * Abstract class containing the "Framework" of the PMD-Model Contains Method to
  * check for Resources and Markers and abstract Methods, that need to bee
@@ -29,6 +31,13 @@ public abstract class AbstractPMDRecord {
 
     public static final AbstractPMDRecord[] EMPTY_RECORDS = new AbstractPMDRecord[0];
 
+    /**
+     * The cached number of violations per priority, the priority {@code p} is stored at index
+     * {@code p - 1}. It is <code>null</code> as long as it has not been requested. If the counts
+     * of a record are cached, then the counts of all its children are cached, too.
+     */
+    private int[] violationCounts;
+
     /**
      * @return the Name of the Element
      */
@@ -104,6 +113,102 @@ public abstract class AbstractPMDRecord {
      */
     public abstract int getNumberOfViolationsToPriority(int prio, boolean invertMarkerAndFileRecords);
 
+    /**
+     * Gets the cached number of violations per priority. They are computed on the first call.
+     *
+     * @return the counts, the priority {@code p} is stored at index {@code p - 1}
+     */
+    protected final int[] violationCounts() {
+        if (violationCounts == null) {
+            violationCounts = computeViolationCounts();
+        }
+        return violationCounts;
+    }
+
+    /**
+     * Gets the cached number of violations of a priority.
+     *
+     * @param prio the priority
+     * @return the number of violations or 0 if the priority is not valid
+     */
+    protected final int cachedNumberOfViolations(int prio) {
+        final int[] counts = violationCounts();
+        return prio >= 1 && prio <= counts.length ? counts[prio - 1] : 0;
+    }
+
+    /**
+     * Computes the number of violations per priority. By default this is the sum of the children.
+     *
+     * @return the counts, the priority {@code p} is stored at index {@code p - 1}
+     */
+    protected int[] computeViolationCounts() {
+        final int[] counts = new int[ViolationIndex.PRIORITY_COUNT];
+        for (AbstractPMDRecord child : getChildren()) {
+            for (int p = 1; p <= counts.length; p++) {
+                counts[p - 1] += child.getNumberOfViolationsToPriority(p, false);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Computes the number of violations of this record again and applies the difference to the
+     * cached counts of the parents. This needs to be called, when the markers of the record changed.
+     */
+    protected final void refreshViolationCounts() {
+        final int[] oldCounts = violationCounts;
+        if (oldCounts == null) {
+            // no parent has cached counts, that include this record
+            return;
+        }
+        violationCounts = computeViolationCounts();
+        final int[] delta = new int[oldCounts.length];
+        for (int p = 0; p < delta.length; p++) {
+            delta[p] = violationCounts[p] - oldCounts[p];
+        }
+        final AbstractPMDRecord parent = getParent();
+        if (parent != null && parent != this) {
+            parent.adjustViolationCounts(delta, 1);
+        }
+    }
+
+    /**
+     * Adjusts the cached counts of this record and its parents, after a child has been added or removed.
+     *
+     * @param child the added or removed child
+     * @param sign 1 if the child has been added, -1 if it has been removed
+     */
+    protected final void childViolationCountsChanged(AbstractPMDRecord child, int sign) {
+        if (child.violationCounts != null || sign > 0 && hasCachedViolationCountsUpwards()) {
+            adjustViolationCounts(child.violationCounts(), sign);
+        }
+    }
+
+    private boolean hasCachedViolationCountsUpwards() {
+        AbstractPMDRecord record = this;
+        while (record != null) {
+            if (record.violationCounts != null) {
+                return true;
+            }
+            final AbstractPMDRecord parent = record.getParent();
+            record = parent == record ? null : parent;
+        }
+        return false;
+    }
+
+    private void adjustViolationCounts(int[] delta, int sign) {
+        AbstractPMDRecord record = this;
+        while (record != null) {
+            if (record.violationCounts != null) {
+                for (int p = 0; p < delta.length; p++) {
+                    record.violationCounts[p] += sign * delta[p];
+                }
+            }
+            final AbstractPMDRecord parent = record.getParent();
+            record = parent == record ? null : parent;
+        }
+    }
+
     /**
      * Gets the counted lines of code (loc). This works recursive.
      *
@@ -127,25 +232,21 @@ public abstract class AbstractPMDRecord {
     protected abstract AbstractPMDRecord[] createChildren();
 
     /**
-     * Checks, if this Element has Error-Markers in it. Calls the underlying
-     * children (Recursion) to also check for Markers. The Recursion needs to be
-     * stopped by overwriting this function in one implementing class.
+     * Checks, if this Element has Error-Markers in it. Uses the cached violation
+     * counts, which are the sum of the counts of the children. Needs to be
+     * overwritten by the records, that don't have children.
      *
      * @return true, if the element or one of its children has Markers, false
      *         otherwise
      */
     public boolean hasMarkers() {
-        final AbstractPMDRecord[] children = getChildren();
-        boolean result = false;
-
-        for (int i = 0; i < children.length && !result; i++) {
-            // recursively check children elements
-            if (children[i].hasMarkers()) {
-                result = true;
+        // the cached counts are the sum of the children
+        for (int count : violationCounts()) {
+            if (count > 0) {
+                return true;
             }
         }
-
-        return result;
+        return false;
     }
 
     /**
@@ -157,20 +258,24 @@ public abstract class AbstractPMDRecord {
      */
     public IMarker[] findMarkers() {
         final List<IMarker> markerList = new ArrayList<>();
-        final AbstractPMDRecord[] children = getChildren();
+        collectMarkers(markerList);
 
-        for (AbstractPMDRecord element : children) {
+        return markerList.isEmpty() ? null : markerList.toArray(new IMarker[0]);
+    }
+
+    /**
+     * Adds the Error-Markers of this element and recursively of its children to
+     * the given list. The Recursion needs to be stopped by overwriting this
+     * function in some implementing Class.
+     *
+     * @param markers the list, the markers are added to
+     */
+    protected void collectMarkers(List<IMarker> markers) {
+        for (AbstractPMDRecord element : getChildren()) {
             if (element.hasMarkers()) {
-                // get the children markers
-                final IMarker[] childrenMarkers = element.findMarkers();
-                if (childrenMarkers != null) {
-                    // ...and add them to the list
-                    markerList.addAll(Arrays.asList(childrenMarkers));
-                }
+                element.collectMarkers(markers);
             }
         }
-
-        return markerList.isEmpty() ? null : markerList.toArray(new IMarker[0]);
     }
 
     /**
@@ -4,30 +4,25 @@
 
 package net.sourceforge.pmd.eclipse.ui.model;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.jdt.core.ICompilationUnit;
-import org.eclipse.jdt.core.IJavaElement;
-import org.eclipse.jdt.core.IType;
-import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.JavaModelException;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.MarkerTable;
 import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
+import net.sourceforge.pmd.eclipse.ui.model.StatisticsCache.FileStatistics;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 
 /**
@@ -38,11 +33,15 @@ import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
  */
 public class FileRecord extends AbstractPMDRecord {
 
+    /** The marker records, created lazily on first access. */
     private AbstractPMDRecord[] children;
+    /** The markers of the file and their attributes, read lazily on first access. */
+    private MarkerTable markerTable;
+    private IMarker[] markers;
     private final IResource resource;
     private final AbstractPMDRecord parent;
-    private int numberOfLOC;
-    private int numberOfMethods;
+    /** The statistics of the file, taken from the {@link StatisticsCache}. */
+    private volatile FileStatistics statistics;
 
     /**
      * Constructor (not for use with the Model, no PackageRecord is provided
@@ -60,9 +59,6 @@ public class FileRecord extends AbstractPMDRecord {
 
         this.resource = javaResource;
         this.parent = null;
-        this.numberOfLOC = 0;
-        this.numberOfMethods = 0;
-        this.children = createChildren();
     }
 
     /**
@@ -80,9 +76,6 @@ public class FileRecord extends AbstractPMDRecord {
 
         this.resource = javaResource;
         this.parent = record;
-        this.numberOfLOC = 0;
-        this.numberOfMethods = 0;
-        this.children = createChildren();
     }
 
     /**
@@ -100,9 +93,6 @@ public class FileRecord extends AbstractPMDRecord {
 
         this.resource = resource;
         this.parent = record;
-        this.numberOfLOC = 0;
-        this.numberOfMethods = 0;
-        this.children = createChildren();
     }
 
     public long getTimestamp() {
@@ -122,6 +112,9 @@ public class FileRecord extends AbstractPMDRecord {
      */
     @Override
     public AbstractPMDRecord[] getChildren() {
+        if (children == null) {
+            children = createChildren();
+        }
         return children;
     }
 
@@ -134,11 +127,17 @@ public class FileRecord extends AbstractPMDRecord {
     }
 
     /**
-     * Updates all children.
+     * Updates all children and the violation counts. This needs to be called, when the markers
+     * of the file changed. The children are created again, when they are requested the next time.
      *
      */
     public void updateChildren() {
-        children = createChildren();
+        children = null;
+        markerTable = null;
+        markers = null;
+        // the file might have been changed, the statistics are looked up again
+        statistics = null;
+        refreshViolationCounts();
     }
 
     /**
@@ -146,39 +145,29 @@ public class FileRecord extends AbstractPMDRecord {
      */
     @Override
     protected final AbstractPMDRecord[] createChildren() {
-        AbstractPMDRecord[] children = EMPTY_RECORDS;
+        if (!hasMarkers()) {
+            return EMPTY_RECORDS;
+        }
 
-        try { // get all markers
-            final List<IMarker> markers = Arrays.asList(findMarkers());
-            if (markers.isEmpty()) {
-                return EMPTY_RECORDS;
-            }
+        // get all markers, the rule names and priorities have been read with them
+        final MarkerTable table = markerTable();
+        if (table.isEmpty()) {
+            return EMPTY_RECORDS;
+        }
 
-            final Iterator<IMarker> markerIterator = markers.iterator();
-
-            // put all markers in a map with key = rulename
-            final Map<String, MarkerRecord> allMarkerMap = new HashMap<>();
-            while (markerIterator.hasNext()) {
-                final IMarker marker = markerIterator.next();
-
-                MarkerRecord markerRecord = allMarkerMap.get(MarkerUtil.ruleNameFor(marker));
-                if (markerRecord == null) {
-                    String ruleName = MarkerUtil.ruleNameFor(marker);
-                    markerRecord = new MarkerRecord(this,
-                            ruleName, MarkerUtil.rulePriorityFor(marker));
-                    markerRecord.addViolation(marker);
-                    allMarkerMap.put(ruleName, markerRecord);
-                } else {
-                    markerRecord.addViolation(marker);
-                }
+        // put all markers in a map with key = rulename
+        final Map<String, MarkerRecord> allMarkerMap = new HashMap<>();
+        for (int row = 0; row < table.size(); row++) {
+            String ruleName = table.getRuleName(row);
+            MarkerRecord markerRecord = allMarkerMap.get(ruleName);
+            if (markerRecord == null) {
+                markerRecord = new MarkerRecord(this, ruleName, table.getPriority(row));
+                allMarkerMap.put(ruleName, markerRecord);
             }
-
-            children = allMarkerMap.values().toArray(new MarkerRecord[0]);
-        } catch (CoreException e) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_CORE_EXCEPTION + this.toString(), e);
+            markerRecord.addViolation(table.getMarker(row));
         }
 
-        return children; // no children so return an empty array, not null!
+        return allMarkerMap.values().toArray(new MarkerRecord[0]);
     }
 
     /**
@@ -188,8 +177,7 @@ public class FileRecord extends AbstractPMDRecord {
      */
     @Override
     public boolean hasMarkers() {
-        final IMarker[] markers = findMarkers();
-        return markers != null && markers.length > 0;
+        return resource instanceof IFile && ViolationIndex.getInstance().hasViolations(resource);
     }
 
     /**
@@ -199,18 +187,33 @@ public class FileRecord extends AbstractPMDRecord {
      */
     @Override
     public final IMarker[] findMarkers() {
+        if (markers == null) {
+            markers = markerTable().getMarkers();
+        }
+        return markers;
+    }
 
+    private MarkerTable markerTable() {
+        if (markerTable == null) {
+            markerTable = readMarkers();
+        }
+        return markerTable;
+    }
+
+    private MarkerTable readMarkers() {
         try {
-            // this is the overwritten Function from AbstractPMDRecord
-            // we simply call the IResource-function to find Markers
-            if (resource.isAccessible()) {
-                return MarkerUtil.findMarkers(resource, PMDRuntimeConstants.RULE_MARKER_TYPES);
-            }
+            // one query for all the priorities
+            return MarkerTable.of(resource, IResource.DEPTH_INFINITE);
         } catch (CoreException ce) {
             PMDPlugin.getDefault().logError(StringKeys.ERROR_FIND_MARKER + this.toString(), ce);
         }
 
-        return MarkerUtil.EMPTY_MARKERS;
+        return MarkerTable.of(MarkerUtil.EMPTY_MARKERS);
+    }
+
+    @Override
+    protected void collectMarkers(List<IMarker> markerList) {
+        markerList.addAll(Arrays.asList(findMarkers()));
     }
 
     /**
@@ -263,129 +266,81 @@ public class FileRecord extends AbstractPMDRecord {
     }
 
     /**
-     * Calculates the Number of Code-Lines this File has. The Function is
-     * adapted from the Eclipse Metrics-Plugin available at:
-     * http://www.sourceforge.net/projects/metrics
+     * Calculates the statistics (lines of code and number of methods) of this file, unless
+     * they are already in the {@link StatisticsCache}. This might take a while and should
+     * not be called in the UI thread.
      *
+     * @return <code>true</code> if the statistics are available
      */
-    public void calculateLinesOfCode() {
-        if (resource.isAccessible()) {
-
-            // the whole while has to be a String for this operation
-            // so we read the File line-wise into a String
+    public boolean calculateStatistics() {
+        if (statistics == null && resource instanceof IFile) {
+            statistics = StatisticsCache.getInstance().calculate((IFile) resource);
+        }
+        return statistics != null;
+    }
 
-            final String source = resourceToString(resource);
+    /**
+     * @return <code>true</code> if the statistics have been calculated already
+     */
+    public boolean hasStatistics() {
+        return statistics() != null;
+    }
 
-            numberOfLOC = linesOfCodeIn(source, true);
+    private FileStatistics statistics() {
+        if (statistics == null && resource instanceof IFile) {
+            statistics = StatisticsCache.getInstance().get((IFile) resource);
         }
+        return statistics;
+    }
+
+    /**
+     * Calculates the Number of Code-Lines this File has.
+     *
+     * @see #calculateStatistics()
+     */
+    public void calculateLinesOfCode() {
+        calculateStatistics();
     }
 
     // TODO migrate to utility class
     public static int linesOfCodeIn(final String source, boolean ignoreSingleBrackets) {
-
-        int loc = 0;
-        final int firstCurly = source.indexOf('{');
-        if (firstCurly != -1) {
-            final String body = source.substring(firstCurly + 1, source.length() - 1).trim();
-            final StringTokenizer lines = new StringTokenizer(body, "\n");
-            while (lines.hasMoreTokens()) {
-                String trimmed = lines.nextToken().trim();
-                if (trimmed.length() > 0 && trimmed.startsWith("/*")) {
-                    while (trimmed.indexOf("*/") == -1) {
-                        trimmed = lines.nextToken().trim();
-                    }
-                    if (lines.hasMoreTokens()) {
-                        trimmed = lines.nextToken().trim();
-                    }
-                }
-
-                if (ignoreSingleBrackets) {
-                    if ("{".equals(trimmed) || "}".equals(trimmed)) {
-                        continue;
-                    }
-                }
-
-                if (!trimmed.startsWith("//")) {
-                    loc++;
-                }
-            }
+        try {
+            return LinesOfCodeCounter.count(new StringReader(source), ignoreSingleBrackets);
+        } catch (IOException e) {
+            // can't happen with a StringReader
+            throw new IllegalStateException(e);
         }
-        return loc;
     }
 
     /**
      * Gets the Number of Code-Lines this File has.
      *
-     * @return the Lines of Code
+     * @return the Lines of Code or 0, if they have not been calculated yet
      */
     @Override
     public int getLOC() {
-        return numberOfLOC;
-    }
-
-    /**
-     * Reads a Resource's File and return the Code as String.
-     *
-     * @param resource
-     *            a resource to read ; the resource must be accessible.
-     * @return a String which is the Files Content
-     */
-    protected String resourceToString(IResource resource) {
-        final StringBuilder fileContents = new StringBuilder();
-        IFile file = (IFile) resource.getAdapter(IFile.class);
-        try (BufferedReader bReader = new BufferedReader(new InputStreamReader(file.getContents(), file.getCharset()))) {
-            // ... and read the File line by line
-            while (bReader.ready()) {
-                fileContents.append(bReader.readLine()).append('\n');
-            }
-        } catch (CoreException e) {
-            PMDPlugin.getDefault()
-                .logError(StringKeys.ERROR_FILE_NOT_FOUND + resource.toString() + " in " + this.toString(), e);
-        } catch (IOException ioe) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_IO_EXCEPTION + this.toString(), ioe);
-        }
-
-        return fileContents.toString();
+        FileStatistics current = statistics();
+        return current == null ? 0 : current.getLinesOfCode();
     }
 
     /**
      * Calculate the number of methods.
+     *
+     * @see #calculateStatistics()
      */
     public void calculateNumberOfMethods() {
-        if (resource.isAccessible()) {
-
-            // we need to change the Resource into a Java-File
-            final IJavaElement element = JavaCore.create(resource);
-            final List<Object> methods = new ArrayList<>();
-
-            if (element instanceof ICompilationUnit) {
-                try {
-                    // ITypes can be Package Declarations or other Java Stuff
-                    // too
-                    IType[] types = ((ICompilationUnit) element).getTypes();
-                    for (IType type : types) {
-                        // only if it is an IType itself, it's a Class
-                        // from which we can get its Methods
-                        methods.addAll(Arrays.asList(type.getMethods()));
-                    }
-                } catch (JavaModelException jme) {
-                    PMDPlugin.getDefault().logError(StringKeys.ERROR_JAVAMODEL_EXCEPTION + toString(), jme);
-                }
-            }
-            if (!methods.isEmpty()) {
-                numberOfMethods = methods.size();
-            }
-        }
+        calculateStatistics();
     }
 
     /**
      * Gets the Number of Methods, this class contains.
      *
-     * @return the Number of Methods
+     * @return the Number of Methods or 0, if they have not been calculated yet
      */
     @Override
     public int getNumberOfMethods() {
-        return numberOfMethods; // deactivate this method for now
+        FileStatistics current = statistics();
+        return current == null ? 0 : current.getNumberOfMethods();
     }
 
     @Override
@@ -415,11 +370,18 @@ public class FileRecord extends AbstractPMDRecord {
 
     @Override
     public int getNumberOfViolationsToPriority(int prio, boolean invertMarkerAndFileRecords) {
-        int number = 0;
+        return cachedNumberOfViolations(prio);
+    }
 
-        for (AbstractPMDRecord element : children) {
-            number += element.getNumberOfViolationsToPriority(prio, false);
+    /**
+     * Gets the number of violations from the {@link ViolationIndex}, so that the markers
+     * don't need to be read, unless the file is expanded.
+     */
+    @Override
+    protected int[] computeViolationCounts() {
+        if (!(resource instanceof IFile)) {
+            return new int[ViolationIndex.PRIORITY_COUNT];
         }
-        return number;
+        return ViolationIndex.getInstance().priorityCountsOf(resource);
     }
 }
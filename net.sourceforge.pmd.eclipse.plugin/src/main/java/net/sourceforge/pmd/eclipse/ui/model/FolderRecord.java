@@ -9,10 +9,9 @@ import java.util.List;
 
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.CoreException;
 
-import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
-import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex.FileSummary;
 
 public class FolderRecord extends AbstractPMDRecord {
     private final IFolder folder;
@@ -59,17 +58,15 @@ public class FolderRecord extends AbstractPMDRecord {
         return folder;
     }
 
+    /**
+     * Creates the records for the files of this folder, that have violations.
+     * They are taken from the {@link ViolationIndex}.
+     */
     @Override
     protected final AbstractPMDRecord[] createChildren() {
         List<FileRecord> fileList = new ArrayList<>();
-        try {
-            for (IResource member : folder.members()) {
-                if (member != null) {
-                    fileList.add(new FileRecord(member, this));
-                }
-            }
-        } catch (CoreException ce) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_CORE_EXCEPTION + this.toString(), ce);
+        for (FileSummary summary : ViolationIndex.getInstance().summariesOfMembers(folder)) {
+            fileList.add(new FileRecord(summary.getFile(), this));
         }
 
         return fileList.toArray(new AbstractPMDRecord[0]);
@@ -79,6 +76,12 @@ public class FolderRecord extends AbstractPMDRecord {
     public AbstractPMDRecord addResource(IResource resource) {
         // final ICompilationUnit unit =
         // this.packageFragment.getCompilationUnit(resource.getName());
+        AbstractPMDRecord existing = parent.findFileRecord(resource);
+        if (existing != null) {
+            // the file has been added already, when the children have been created
+            return existing;
+        }
+
         FileRecord file;
 
         // TODO This should be more question of whether PMD is interested in the
@@ -92,6 +95,7 @@ public class FolderRecord extends AbstractPMDRecord {
 
         children = new AbstractPMDRecord[files.size()];
         files.toArray(this.children);
+        childViolationCountsChanged(file, 1);
         // }
 
         return file;
@@ -114,6 +118,7 @@ public class FolderRecord extends AbstractPMDRecord {
                 files.toArray(this.children);
                 removed = true;
                 removedFile = file;
+                childViolationCountsChanged(file, -1);
             }
         }
 
@@ -142,12 +147,7 @@ public class FolderRecord extends AbstractPMDRecord {
 
     @Override
     public int getNumberOfViolationsToPriority(int prio, boolean invertMarkerAndFileRecords) {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getNumberOfViolationsToPriority(prio, false);
-        }
-
-        return number;
+        return cachedNumberOfViolations(prio);
     }
 
     @Override
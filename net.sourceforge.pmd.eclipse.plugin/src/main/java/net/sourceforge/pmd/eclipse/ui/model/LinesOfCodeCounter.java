@@ -0,0 +1,213 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Counts the lines of code of a java source in a single pass, without keeping the source
+ * in memory. Only the lines after the first opening curly bracket (the type body) are considered.
+ * Empty lines and lines, that contain only comments, are not counted. Optionally lines, that
+ * contain only a single curly bracket, are ignored, too.
+ *
+ * <p>For UTF-8 and the single byte charsets the bytes of the file are processed directly,
+ * since all the characters, that are relevant for counting, are ASCII characters.
+ */
+public final class LinesOfCodeCounter {
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int NORMAL = 0;
+    private static final int SLASH = 1;
+    private static final int LINE_COMMENT = 2;
+    private static final int BLOCK_COMMENT = 3;
+    private static final int BLOCK_COMMENT_STAR = 4;
+    private static final int STRING = 5;
+    private static final int STRING_ESCAPE = 6;
+    private static final int CHARACTER = 7;
+    private static final int CHARACTER_ESCAPE = 8;
+
+    private final boolean ignoreSingleBrackets;
+    private int state = NORMAL;
+    private boolean inBody;
+    private int codeChars;
+    private int firstCodeChar;
+    private int linesOfCode;
+
+    private LinesOfCodeCounter(boolean ignoreSingleBrackets) {
+        this.ignoreSingleBrackets = ignoreSingleBrackets;
+    }
+
+    /**
+     * Counts the lines of code of the given file. Single curly brackets are ignored.
+     *
+     * @param file the file
+     * @return the lines of code
+     */
+    public static int count(IFile file) throws CoreException, IOException {
+        String charset = file.getCharset();
+        try (InputStream in = file.getContents(true)) {
+            if (isAsciiCompatible(charset)) {
+                return count(in, true);
+            }
+            return count(new InputStreamReader(in, charset), true);
+        }
+    }
+
+    /**
+     * Counts the lines of code. The stream must use an ASCII compatible encoding.
+     * The stream is not closed.
+     */
+    public static int count(InputStream in, boolean ignoreSingleBrackets) throws IOException {
+        LinesOfCodeCounter counter = new LinesOfCodeCounter(ignoreSingleBrackets);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read = in.read(buffer);
+        while (read != -1) {
+            for (int i = 0; i < read; i++) {
+                counter.accept(buffer[i] & 0xff);
+            }
+            read = in.read(buffer);
+        }
+        return counter.finish();
+    }
+
+    /**
+     * Counts the lines of code. The reader is not closed.
+     */
+    public static int count(Reader in, boolean ignoreSingleBrackets) throws IOException {
+        LinesOfCodeCounter counter = new LinesOfCodeCounter(ignoreSingleBrackets);
+        char[] buffer = new char[BUFFER_SIZE];
+        int read = in.read(buffer);
+        while (read != -1) {
+            for (int i = 0; i < read; i++) {
+                counter.accept(buffer[i]);
+            }
+            read = in.read(buffer);
+        }
+        return counter.finish();
+    }
+
+    private static boolean isAsciiCompatible(String charset) {
+        String name = charset.toUpperCase(Locale.ROOT);
+        return StandardCharsets.UTF_8.name().equals(name) || StandardCharsets.US_ASCII.name().equals(name)
+                || name.startsWith("ISO-8859-") || name.startsWith("WINDOWS-125");
+    }
+
+    private void accept(int c) {
+        if (c == '\n') {
+            endOfLine();
+            return;
+        }
+
+        switch (state) {
+        case LINE_COMMENT:
+            break;
+        case BLOCK_COMMENT:
+            if (c == '*') {
+                state = BLOCK_COMMENT_STAR;
+            }
+            break;
+        case BLOCK_COMMENT_STAR:
+            if (c == '/') {
+                state = NORMAL;
+            } else if (c != '*') {
+                state = BLOCK_COMMENT;
+            }
+            break;
+        case STRING:
+        case CHARACTER:
+            code(c);
+            if (c == '\\') {
+                state = state == STRING ? STRING_ESCAPE : CHARACTER_ESCAPE;
+            } else if (c == (state == STRING ? '"' : '\'')) {
+                state = NORMAL;
+            }
+            break;
+        case STRING_ESCAPE:
+            code(c);
+            state = STRING;
+            break;
+        case CHARACTER_ESCAPE:
+            code(c);
+            state = CHARACTER;
+            break;
+        case SLASH:
+            if (c == '/') {
+                state = LINE_COMMENT;
+            } else if (c == '*') {
+                state = BLOCK_COMMENT;
+            } else {
+                state = NORMAL;
+                code('/');
+                acceptCode(c);
+            }
+            break;
+        default:
+            acceptCode(c);
+            break;
+        }
+    }
+
+    private void acceptCode(int c) {
+        if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+            return;
+        }
+        if (c == '/') {
+            state = SLASH;
+            return;
+        }
+        if (!inBody) {
+            // everything up to the first curly bracket is the header (package, imports, type declaration)
+            if (c == '{') {
+                inBody = true;
+                codeChars = 0;
+            }
+            return;
+        }
+        if (c == '"') {
+            state = STRING;
+        } else if (c == '\'') {
+            state = CHARACTER;
+        }
+        code(c);
+    }
+
+    private void code(int c) {
+        if (codeChars == 0) {
+            firstCodeChar = c;
+        }
+        codeChars++;
+    }
+
+    private void endOfLine() {
+        if (state == SLASH) {
+            code('/');
+        }
+        if (state == BLOCK_COMMENT_STAR) {
+            state = BLOCK_COMMENT;
+        } else if (state != BLOCK_COMMENT) {
+            // line comments, strings and character literals end at the end of the line
+            state = NORMAL;
+        }
+
+        boolean singleBracket = codeChars == 1 && (firstCodeChar == '{' || firstCodeChar == '}');
+        if (inBody && codeChars > 0 && !(ignoreSingleBrackets && singleBracket)) {
+            linesOfCode++;
+        }
+        codeChars = 0;
+    }
+
+    private int finish() {
+        endOfLine();
+        return linesOfCode;
+    }
+}
@@ -114,6 +114,11 @@ public class MarkerRecord extends AbstractPMDRecord {
         return markers.toArray(new IMarker[0]);
     }
 
+    @Override
+    protected void collectMarkers(List<IMarker> markerList) {
+        markerList.addAll(markers);
+    }
+
     @Override
     public int getNumberOfViolationsToPriority(int prio, boolean invertMarkerAndFileRecords) {
         int number = 0;
@@ -7,17 +7,18 @@ package net.sourceforge.pmd.eclipse.ui.model;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.CoreException;
-import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.JavaModelException;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex.FileSummary;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 
 /**
- * AbstractPMDRecord for a Package creates Files when instantiated
+ * AbstractPMDRecord for a Package creates Files with violations when instantiated
  *
  * @author SebastianRaffel ( 16.05.2005 ), Philippe Herlin, Sven Jacob
  *
@@ -81,19 +82,18 @@ public class PackageRecord extends AbstractPMDRecord {
         return packageFragment;
     }
 
+    /**
+     * Creates the records for the files of this package, that have violations.
+     * They are taken from the {@link ViolationIndex}.
+     */
     @Override
     protected final AbstractPMDRecord[] createChildren() {
         List<FileRecord> fileList = new ArrayList<>();
-        try {
-            ICompilationUnit[] javaUnits = packageFragment.getCompilationUnits();
-            for (ICompilationUnit javaUnit : javaUnits) {
-                IResource javaResource = javaUnit.getCorrespondingResource();
-                if (javaResource != null) {
-                    fileList.add(new FileRecord(javaResource, this));
-                }
+        IResource resource = getResource();
+        if (resource instanceof IContainer) {
+            for (FileSummary summary : ViolationIndex.getInstance().summariesOfMembers((IContainer) resource)) {
+                fileList.add(new FileRecord(summary.getFile(), this));
             }
-        } catch (CoreException ce) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_CORE_EXCEPTION + this.toString(), ce);
         }
 
         return fileList.toArray(new AbstractPMDRecord[0]);
@@ -103,6 +103,12 @@ public class PackageRecord extends AbstractPMDRecord {
     public AbstractPMDRecord addResource(IResource resource) {
         // final ICompilationUnit unit =
         // this.packageFragment.getCompilationUnit(resource.getName());
+        AbstractPMDRecord existing = parent.findFileRecord(resource);
+        if (existing != null) {
+            // the file has been added already, when the children have been created
+            return existing;
+        }
+
         FileRecord file;
 
         // TODO This should be more question of whether PMD is interested in the
@@ -116,6 +122,7 @@ public class PackageRecord extends AbstractPMDRecord {
 
         children = new AbstractPMDRecord[files.size()];
         files.toArray(this.children);
+        childViolationCountsChanged(file, 1);
         // }
 
         return file;
@@ -138,6 +145,7 @@ public class PackageRecord extends AbstractPMDRecord {
                 files.toArray(this.children);
                 removed = true;
                 removedFile = file;
+                childViolationCountsChanged(file, -1);
             }
         }
 
@@ -173,12 +181,7 @@ public class PackageRecord extends AbstractPMDRecord {
 
     @Override
     public int getNumberOfViolationsToPriority(int prio, boolean invertMarkerAndFileRecords) {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getNumberOfViolationsToPriority(prio, false);
-        }
-
-        return number;
+        return cachedNumberOfViolations(prio);
     }
 
     @Override
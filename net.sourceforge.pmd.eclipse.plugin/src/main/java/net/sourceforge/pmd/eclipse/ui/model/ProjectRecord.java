@@ -4,27 +4,30 @@
 
 package net.sourceforge.pmd.eclipse.ui.model;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IResourceVisitor;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.JavaModelException;
 
-import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
-import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex.FileSummary;
 
 /**
- * AbstractPMDRecord for Projects creates Packages when instantiated
+ * AbstractPMDRecord for Projects creates Packages with violations when instantiated
  *
  * @author SebastianRaffel ( 16.05.2005 ), Philippe Herlin, Sven Jacob
  *
@@ -35,6 +38,11 @@ public class ProjectRecord extends AbstractPMDRecord {
     private AbstractPMDRecord[] children;
     private boolean isJavaProject = false;
 
+    /** The package (or folder) records by their resource. */
+    private final Map<IResource, AbstractPMDRecord> packagesByResource = new HashMap<>();
+    /** The file records by their resource. */
+    private final Map<IResource, AbstractPMDRecord> filesByResource = new HashMap<>();
+
     /**
      * Constructor
      *
@@ -71,6 +79,10 @@ public class ProjectRecord extends AbstractPMDRecord {
             children = EMPTY_RECORDS;
         }
 
+        for (AbstractPMDRecord packageRec : children) {
+            indexPackage(packageRec);
+        }
+
     }
 
     @Override
@@ -88,113 +100,100 @@ public class ProjectRecord extends AbstractPMDRecord {
         return project;
     }
 
+    /**
+     * Creates the records for the packages (or folders), that contain files with violations.
+     * Only these are shown, so they are taken from the {@link ViolationIndex} instead of
+     * walking all the folders and package fragments of the project.
+     */
     @Override
     protected final AbstractPMDRecord[] createChildren() {
-        final Set<AbstractPMDRecord> packages = new HashSet<>();
-        try {
-            // search for Packages
-            project.accept(new IResourceVisitor() {
-                @Override
-                public boolean visit(IResource resource) throws CoreException {
-                    boolean visitChildren;
-                    switch (resource.getType()) {
-                    case IResource.FOLDER:
-                        visitChildren = ProjectRecord.this.isJavaProject ? visitAsPackages(resource)
-                                : visitAsFolders(resource);
-                        break;
-                    case IResource.PROJECT:
-                        visitChildren = true;
-                        break;
-                    default:
-                        visitChildren = false;
-                        break;
-                    }
-
-                    return visitChildren;
-                }
-
-                private Boolean visitAsPackages(IResource resource) {
-                    IJavaElement javaMember = JavaCore.create(resource);
-
-                    if (javaMember == null) {
-                        return true;
-                    } else {
-                        if (javaMember instanceof IPackageFragmentRoot) {
-                            // if the Element is the Root of all Packages
-                            // get all packages from it and add them to the
-                            // list
-                            // (e.g. for "org.eclipse.core.resources" and
-                            // "org.eclipse.core" the root is
-                            // "org.eclipse.core")
-                            packages.addAll(createPackagesFromFragmentRoot((IPackageFragmentRoot) javaMember));
-                        } else if (javaMember instanceof IPackageFragment
-                                && javaMember.getParent() instanceof IPackageFragmentRoot) {
-                            // if the Element is a Package get its Root and
-                            // do the same as above
-                            final IPackageFragment fragment = (IPackageFragment) javaMember;
-                            packages.addAll(
-                                    createPackagesFromFragmentRoot((IPackageFragmentRoot) fragment.getParent()));
-                        }
-
-                        return false;
-                    }
-                }
-
-                private Boolean visitAsFolders(IResource resource) {
-                    IFolder folder = (IFolder) resource;
-                    packages.addAll(createPackagesFromFolderRoot(folder));
-                    return false;
-                }
-            });
-        } catch (CoreException ce) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_CORE_EXCEPTION + this.toString(), ce);
+        final Set<IContainer> containers = new LinkedHashSet<>();
+        for (FileSummary summary : ViolationIndex.getInstance().summariesIn(project)) {
+            containers.add(summary.getFile().getParent());
+        }
+
+        final List<AbstractPMDRecord> packages = new ArrayList<>(containers.size());
+        for (IContainer container : containers) {
+            final AbstractPMDRecord packageRec = isJavaProject ? createPackageRecord(container)
+                    : createFolderRecord(container);
+            if (packageRec != null) {
+                packages.add(packageRec);
+            }
         }
 
-        // return the List as an Array of Packages
         return packages.toArray(new AbstractPMDRecord[0]);
     }
 
     /**
-     * Search for the Packages to a given FragmentRoot (Package-Root) and create
-     * PackageRecords for them.
+     * Creates the PackageRecord for the package, that corresponds to the given folder.
      *
-     * @param root
-     * @return
+     * @param container the folder of the package or of the package fragment root for the default package
+     * @return the record or <code>null</code> if the folder is not a package
      */
-    protected final Set<PackageRecord> createPackagesFromFragmentRoot(IPackageFragmentRoot root) {
-        final Set<PackageRecord> packages = new HashSet<>();
-        IJavaElement[] fragments = null;
-        try {
-            // search for all children
-            fragments = root.getChildren();
-            for (IJavaElement fragment : fragments) {
-                if (fragment instanceof IPackageFragment) {
-                    // create a PackageRecord for the Fragment
-                    // and add it to the list
-                    packages.add(new PackageRecord((IPackageFragment) fragment, this));
-                }
-            }
-        } catch (JavaModelException jme) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_JAVAMODEL_EXCEPTION + this.toString(), jme);
+    private PackageRecord createPackageRecord(IContainer container) {
+        IJavaElement javaMember = JavaCore.create(container);
+        if (javaMember instanceof IJavaProject) {
+            // the project itself is the source folder
+            javaMember = ((IJavaProject) javaMember).getPackageFragmentRoot(container);
+        }
+        if (javaMember instanceof IPackageFragmentRoot) {
+            javaMember = ((IPackageFragmentRoot) javaMember).getPackageFragment("");
         }
 
-        return packages;
+        return javaMember instanceof IPackageFragment ? new PackageRecord((IPackageFragment) javaMember, this) : null;
     }
 
-    protected final Set<FolderRecord> createPackagesFromFolderRoot(IFolder rootFolder) {
-        final Set<FolderRecord> folder = new HashSet<>();
+    private FolderRecord createFolderRecord(IContainer container) {
+        return container instanceof IFolder ? new FolderRecord((IFolder) container, this) : null;
+    }
 
-        try {
-            for (IResource resource : rootFolder.members()) {
-                if (resource instanceof IFolder) {
-                    folder.add(new FolderRecord((IFolder) resource, this));
-                }
-            }
-        } catch (CoreException e) {
-            e.printStackTrace();
+    private void indexPackage(AbstractPMDRecord packageRec) {
+        final IResource resource = packageRec.getResource();
+        if (resource != null) {
+            packagesByResource.put(resource, packageRec);
         }
+        for (AbstractPMDRecord fileRec : packageRec.getChildren()) {
+            filesByResource.put(fileRec.getResource(), fileRec);
+        }
+    }
 
-        return folder;
+    private void addPackage(AbstractPMDRecord packageRec) {
+        final List<AbstractPMDRecord> packages = getChildrenAsList();
+        packages.add(packageRec);
+
+        children = new AbstractPMDRecord[packages.size()];
+        packages.toArray(children);
+        indexPackage(packageRec);
+        childViolationCountsChanged(packageRec, 1);
+    }
+
+    private void removePackage(AbstractPMDRecord packageRec) {
+        final List<AbstractPMDRecord> packages = getChildrenAsList();
+        packages.remove(packageRec);
+
+        children = new AbstractPMDRecord[packages.size()];
+        packages.toArray(children);
+        packagesByResource.remove(packageRec.getResource());
+        childViolationCountsChanged(packageRec, -1);
+    }
+
+    /**
+     * Finds the package or file record with a hash lookup instead of searching the children.
+     */
+    @Override
+    public AbstractPMDRecord findResource(IResource resource) {
+        final AbstractPMDRecord packageRec = packagesByResource.get(resource);
+        return packageRec != null ? packageRec : filesByResource.get(resource);
+    }
+
+    /**
+     * Finds the record of a file, that has already been added to one of the packages.
+     *
+     * @param resource the file
+     * @return the record or <code>null</code> if the file has no record
+     */
+    AbstractPMDRecord findFileRecord(IResource resource) {
+        return filesByResource.get(resource);
     }
 
     @Override
@@ -238,78 +237,27 @@ public class ProjectRecord extends AbstractPMDRecord {
 
         // we only care about Files
         if (resource instanceof IFile) {
-            if (isJavaProject) {
-                removed = removeFromJavaProject(resource);
-            } else {
-                removed = removeFromOtherProject(resource);
-            }
+            removed = removeFromPackage(resource);
         }
 
         return removed;
     }
 
-    private AbstractPMDRecord removeFromJavaProject(IResource resource) {
-        AbstractPMDRecord removedResource = null;
-
-        IPackageFragment fragment;
-
-        final IJavaElement element = JavaCore.create(resource.getParent());
-        if (element instanceof IPackageFragment) {
-            fragment = (IPackageFragment) element;
-        } else {
-            fragment = ((IPackageFragmentRoot) element).getPackageFragment("");
-        }
-
-        PackageRecord packageRec;
-
-        // like above we compare Fragments to find the right Package
-        for (int k = 0; k < children.length && removedResource == null; k++) {
-            packageRec = (PackageRecord) children[k];
-            if (packageRec.getFragment().equals(fragment)) {
-
-                // if we found it, we remove the File
-                final AbstractPMDRecord fileRec = packageRec.removeResource(resource);
-                if (packageRec.getChildren().length == 0) {
-                    // ... and if the Package is empty too
-                    // we also remove it
-                    final List<AbstractPMDRecord> packages = getChildrenAsList();
-                    packages.remove(packageRec);
-
-                    children = new AbstractPMDRecord[packages.size()];
-                    packages.toArray(children);
-                }
-
-                removedResource = fileRec;
-            }
-        }
-
-        return removedResource;
-    }
-
-    private AbstractPMDRecord removeFromOtherProject(IResource resource) {
+    /**
+     * Removes the file from its package, which is looked up by the parent resource of
+     * the file. Empty packages are removed as well.
+     */
+    private AbstractPMDRecord removeFromPackage(IResource resource) {
         AbstractPMDRecord removedResource = null;
 
-        IFolder folder = (IFolder) resource.getParent();
-        FolderRecord folderRec;
-
-        // like above we compare Fragments to find the right Package
-        for (int k = 0; k < children.length && removedResource == null; k++) {
-            folderRec = (FolderRecord) children[k];
-            if (folderRec.getFolder().equals(folder)) {
-
-                // if we found it, we remove the File
-                final AbstractPMDRecord fileRec = folderRec.removeResource(resource);
-                if (folderRec.getChildren().length == 0) {
-                    // ... and if the Package is empty too
-                    // we also remove it
-                    final List<AbstractPMDRecord> packages = getChildrenAsList();
-                    packages.remove(folderRec);
+        final AbstractPMDRecord packageRec = packagesByResource.get(resource.getParent());
+        if (packageRec != null) {
+            removedResource = packageRec.removeResource(resource);
+            filesByResource.remove(resource);
 
-                    children = new AbstractPMDRecord[packages.size()];
-                    packages.toArray(children);
-                }
-
-                removedResource = fileRec;
+            // if the Package is empty now, we also remove it
+            if (packageRec.getChildren().length == 0) {
+                removePackage(packageRec);
             }
         }
 
@@ -317,67 +265,31 @@ public class ProjectRecord extends AbstractPMDRecord {
     }
 
     private AbstractPMDRecord addToJavaProject(IResource resource) {
-        AbstractPMDRecord addedResource = null;
-
-        IJavaElement javaMember = JavaCore.create(resource.getParent());
-        if (javaMember instanceof IPackageFragmentRoot) {
-            javaMember = ((IPackageFragmentRoot) javaMember).getPackageFragment("");
-        }
-
-        final IPackageFragment fragment = (IPackageFragment) javaMember;
-
-        // we search int the children Packages for the File's Package
-        // by comparing their Fragments
-        for (int k = 0; k < children.length && addedResource == null; k++) {
-            final PackageRecord packageRec = (PackageRecord) children[k];
-            if (packageRec.getFragment().equals(fragment)) {
-                // if the Package exists
-                // we delegate to its addResource-function
-                addedResource = packageRec.addResource(resource);
-            }
-        }
-
-        // ... else we create a new Record for the new Package
-        if (addedResource == null) {
-            final PackageRecord packageRec = new PackageRecord(fragment, this);
-            final List<AbstractPMDRecord> packages = getChildrenAsList();
-            packages.add(packageRec);
-
-            // ... and we add a new FileRecord to it
-            children = new AbstractPMDRecord[packages.size()];
-            packages.toArray(children);
-            addedResource = packageRec.addResource(resource);
-        }
-
-        return addedResource;
+        return addToPackage(resource, true);
     }
 
     private AbstractPMDRecord addToOtherProject(IResource resource) {
-        AbstractPMDRecord addedResource = null;
+        return addToPackage(resource, false);
+    }
 
-        IFolder folder = (IFolder) resource.getParent();
+    private AbstractPMDRecord addToPackage(IResource resource, boolean javaPackage) {
+        AbstractPMDRecord addedResource = null;
 
-        // we search int the children Packages for the File's Package
-        // by comparing their Fragments
-        for (int k = 0; k < children.length && addedResource == null; k++) {
-            final FolderRecord folderRec = (FolderRecord) children[k];
-            if (folderRec.getFolder().equals(folder)) {
-                // if the Package exists
-                // we delegate to its addResource-function
-                addedResource = folderRec.addResource(resource);
+        // the resource of a package (or the default package) is the folder of the File
+        AbstractPMDRecord packageRec = packagesByResource.get(resource.getParent());
+        if (packageRec == null) {
+            // ... else we create a new Record for the new Package
+            packageRec = javaPackage ? createPackageRecord(resource.getParent())
+                    : createFolderRecord(resource.getParent());
+            if (packageRec != null) {
+                addPackage(packageRec);
             }
         }
 
-        // ... else we create a new Record for the new Package
-        if (addedResource == null) {
-            final FolderRecord packageRec = new FolderRecord(folder, this);
-            final List<AbstractPMDRecord> packages = getChildrenAsList();
-            packages.add(packageRec);
-
-            // ... and we add a new FileRecord to it
-            children = new AbstractPMDRecord[packages.size()];
-            packages.toArray(children);
+        if (packageRec != null) {
+            // we delegate to its addResource-function
             addedResource = packageRec.addResource(resource);
+            filesByResource.put(resource, addedResource);
         }
 
         return addedResource;
@@ -385,12 +297,7 @@ public class ProjectRecord extends AbstractPMDRecord {
 
     @Override
     public int getNumberOfViolationsToPriority(int prio, boolean invertMarkerAndFileRecords) {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getNumberOfViolationsToPriority(prio, invertMarkerAndFileRecords);
-        }
-
-        return number;
+        return cachedNumberOfViolations(prio);
     }
 
     @Override
@@ -5,7 +5,9 @@
 package net.sourceforge.pmd.eclipse.ui.model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
@@ -21,6 +23,7 @@ import org.eclipse.core.resources.IWorkspaceRoot;
 public class RootRecord extends AbstractPMDRecord {
     private final IWorkspaceRoot workspaceRoot;
     private AbstractPMDRecord[] children;
+    private final Map<IProject, ProjectRecord> projectsByResource = new HashMap<>();
 
     /**
      * Constructor
@@ -36,6 +39,9 @@ public class RootRecord extends AbstractPMDRecord {
 
         this.workspaceRoot = root;
         this.children = createChildren();
+        for (AbstractPMDRecord projectRec : children) {
+            projectsByResource.put((IProject) projectRec.getResource(), (ProjectRecord) projectRec);
+        }
     }
 
     @Override
@@ -80,6 +86,34 @@ public class RootRecord extends AbstractPMDRecord {
         return resource instanceof IProject ? removeProject((IProject) resource) : null;
     }
 
+    /**
+     * Finds the record with a hash lookup of the project and then of the resource
+     * inside the project.
+     */
+    @Override
+    public AbstractPMDRecord findResource(IResource resource) {
+        final ProjectRecord projectRec = projectsByResource.get(resource.getProject());
+        if (projectRec == null || resource.getType() == IResource.PROJECT) {
+            return projectRec;
+        }
+        return projectRec.findResource(resource);
+    }
+
+    @Override
+    public AbstractPMDRecord findResourceByName(String name, int type) {
+        if (type != TYPE_PROJECT) {
+            return super.findResourceByName(name, type);
+        }
+
+        // projects are only direct children, there is no need to search the packages
+        for (AbstractPMDRecord projectRec : children) {
+            if (projectRec.getName().equalsIgnoreCase(name)) {
+                return projectRec;
+            }
+        }
+        return null;
+    }
+
     @Override
     public String getName() {
         return workspaceRoot.getName();
@@ -106,6 +140,8 @@ public class RootRecord extends AbstractPMDRecord {
 
             children = new AbstractPMDRecord[projects.size()];
             projects.toArray(children);
+            projectsByResource.put(project, projectRec);
+            childViolationCountsChanged(projectRec, 1);
             addedProject = projectRec;
         }
         return addedProject;
@@ -119,21 +155,15 @@ public class RootRecord extends AbstractPMDRecord {
      * @return the removed ProjectRecord
      */
     private ProjectRecord removeProject(IProject project) {
-        ProjectRecord removedProject = null;
-
-        final List<AbstractPMDRecord> projects = getChildrenAsList();
-        for (int k = 0; k < projects.size() && removedProject == null; k++) {
-            final ProjectRecord projectRec = (ProjectRecord) projects.get(k);
-            final IProject proj = (IProject) projectRec.getResource();
+        final ProjectRecord removedProject = projectsByResource.remove(project);
 
-            // get the Project-Resource from the List and compare
-            if (proj.equals(project)) {
-                projects.remove(projectRec);
+        if (removedProject != null) {
+            final List<AbstractPMDRecord> projects = getChildrenAsList();
+            projects.remove(removedProject);
 
-                children = new AbstractPMDRecord[projects.size()];
-                projects.toArray(children);
-                removedProject = projectRec;
-            }
+            children = new AbstractPMDRecord[projects.size()];
+            projects.toArray(children);
+            childViolationCountsChanged(removedProject, -1);
         }
 
         return removedProject;
@@ -141,12 +171,7 @@ public class RootRecord extends AbstractPMDRecord {
 
     @Override
     public int getNumberOfViolationsToPriority(int prio, boolean invertMarkerAndFileRecords) {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getNumberOfViolationsToPriority(prio, invertMarkerAndFileRecords);
-        }
-
-        return number;
+        return cachedNumberOfViolations(prio);
     }
 
     @Override
@@ -0,0 +1,232 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+
+/**
+ * Caches the statistics (lines of code and number of methods) per file. An entry is valid
+ * as long as the modification stamp of the file doesn't change. The cache is stored in the
+ * state location of the plugin, so that the statistics don't need to be calculated again
+ * after a restart.
+ *
+ * <p>The cache is thread-safe.
+ */
+public final class StatisticsCache {
+    private static final Logger LOG = LoggerFactory.getLogger(StatisticsCache.class);
+
+    private static final String CACHE_FILE = "statistics.cache";
+    private static final String TEMP_FILE = "statistics.cache.tmp";
+    private static final int FORMAT_VERSION = 1;
+
+    private static final StatisticsCache INSTANCE = new StatisticsCache();
+
+    private final Map<IPath, FileStatistics> statistics = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private volatile boolean dirty;
+
+    private StatisticsCache() {
+        // singleton
+    }
+
+    public static StatisticsCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The statistics of one file. Instances are immutable.
+     */
+    public static final class FileStatistics {
+        private final long modificationStamp;
+        private final int linesOfCode;
+        private final int numberOfMethods;
+
+        private FileStatistics(long modificationStamp, int linesOfCode, int numberOfMethods) {
+            this.modificationStamp = modificationStamp;
+            this.linesOfCode = linesOfCode;
+            this.numberOfMethods = numberOfMethods;
+        }
+
+        public int getLinesOfCode() {
+            return linesOfCode;
+        }
+
+        public int getNumberOfMethods() {
+            return numberOfMethods;
+        }
+    }
+
+    /**
+     * Gets the cached statistics of the file, without calculating them. This doesn't load
+     * the cache from the state location, so that it can be called in the UI thread.
+     *
+     * @param file the file
+     * @return the statistics or <code>null</code>, if they are not cached, outdated or the
+     *     cache has not been loaded yet
+     * @see #ensureLoaded()
+     */
+    public FileStatistics get(IFile file) {
+        FileStatistics cached = statistics.get(file.getFullPath());
+        if (cached != null && cached.modificationStamp == file.getModificationStamp()) {
+            return cached;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the statistics of the file. If they are not cached or outdated, they are calculated.
+     * This might take a while and should not be called in the UI thread.
+     *
+     * @param file the file
+     * @return the statistics or <code>null</code>, if the file is not accessible
+     */
+    public FileStatistics calculate(IFile file) {
+        ensureLoaded();
+        FileStatistics cached = get(file);
+        if (cached != null) {
+            return cached;
+        }
+        if (!file.isAccessible()) {
+            return null;
+        }
+
+        long modificationStamp = file.getModificationStamp();
+        try {
+            FileStatistics calculated = new FileStatistics(modificationStamp, LinesOfCodeCounter.count(file),
+                    numberOfMethodsIn(file));
+            statistics.put(file.getFullPath(), calculated);
+            dirty = true;
+            return calculated;
+        } catch (CoreException | IOException e) {
+            LOG.warn("Could not calculate the statistics of {}", file, e);
+            return null;
+        }
+    }
+
+    private static int numberOfMethodsIn(IFile file) throws CoreException {
+        final IJavaElement element = JavaCore.create(file);
+        int count = 0;
+        if (element instanceof ICompilationUnit) {
+            for (IType type : ((ICompilationUnit) element).getTypes()) {
+                count += type.getMethods().length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stores the cache in the state location of the plugin, if it has been changed.
+     * Entries of files, that don't exist anymore, are dropped. The cache is written into
+     * a temporary file first, which then replaces the cache file, so that concurrent jobs
+     * never leave a partially written cache behind.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        // reset before the entries are written, so that entries added meanwhile are saved next time
+        dirty = false;
+
+        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+        File cacheFile = cacheFile();
+        File tempFile = PMDPlugin.getDefault().getStateLocation().append(TEMP_FILE).toFile();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            for (Map.Entry<IPath, FileStatistics> entry : statistics.entrySet()) {
+                IResource resource = root.findMember(entry.getKey());
+                if (resource == null || !resource.exists()) {
+                    statistics.remove(entry.getKey());
+                    continue;
+                }
+                FileStatistics value = entry.getValue();
+                out.writeBoolean(true);
+                out.writeUTF(entry.getKey().toPortableString());
+                out.writeLong(value.modificationStamp);
+                out.writeInt(value.linesOfCode);
+                out.writeInt(value.numberOfMethods);
+            }
+            out.writeBoolean(false);
+        } catch (IOException e) {
+            LOG.warn("Could not save the statistics cache {}", tempFile, e);
+            dirty = true;
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not save the statistics cache {}", cacheFile, e);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Loads the cache from the state location of the plugin, unless it has been loaded already.
+     * This reads a file and should not be called in the UI thread.
+     */
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                load();
+                loaded = true;
+            }
+        }
+    }
+
+    private void load() {
+        File cacheFile = cacheFile();
+        if (!cacheFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            while (in.readBoolean()) {
+                IPath path = Path.fromPortableString(in.readUTF());
+                FileStatistics value = new FileStatistics(in.readLong(), in.readInt(), in.readInt());
+                statistics.putIfAbsent(path, value);
+            }
+            LOG.debug("Loaded the statistics of {} files", statistics.size());
+        } catch (IOException e) {
+            LOG.warn("Could not load the statistics cache {}", cacheFile, e);
+        }
+    }
+
+    private static File cacheFile() {
+        return PMDPlugin.getDefault().getStateLocation().append(CACHE_FILE).toFile();
+    }
+}
@@ -157,6 +157,10 @@ public final class StringKeys {
     public static final String PREF_CPD_GROUP_GENERAL = "preference.cpd.group.general";
     public static final String PREF_CPD_TITLE = "preference.cpd.title";
     public static final String PREF_CPD_TILESIZE = "preference.cpd.tilesize";
+    public static final String PREF_CPD_INCREMENTAL = "preference.cpd.incremental";
+    public static final String PREF_CPD_THREAD_COUNT = "preference.cpd.thread_count";
+    public static final String PREF_CPD_THREAD_COUNT_TOOLTIP = "preference.cpd.thread_count.tooltip";
+    public static final String PREF_CPD_CHECK_AFTER_SAVE = "preference.cpd.check_after_save";
 
     public static final String PREF_SUMMARY_LABEL_NAME = "preference.summary.label.name";
     public static final String PREF_SUMMARY_LABEL_DESCRIPTION = "preference.summary.label.description";
@@ -249,6 +253,18 @@ public final class StringKeys {
     public static final String VIEW_MENU_MARKERFILES = "view.menu.show_marker_files";
     public static final String VIEW_MENU_PACKFILES = "view.menu.show_pack_files";
     public static final String VIEW_MENU_PRESENTATION_TYPE = "view.menu.show_type";
+    public static final String VIEW_CPD_MENU_SORT = "view.cpd.menu.sort";
+    public static final String VIEW_CPD_SORT_TOKENS = "view.cpd.sort.tokens";
+    public static final String VIEW_CPD_SORT_LINES = "view.cpd.sort.lines";
+    public static final String VIEW_CPD_SORT_FILE = "view.cpd.sort.file";
+    public static final String VIEW_CPD_MENU_PROJECT = "view.cpd.menu.project";
+    public static final String VIEW_CPD_ALL_PROJECTS = "view.cpd.all_projects";
+    public static final String VIEW_CPD_FILTER_FILE = "view.cpd.filter.file";
+    public static final String VIEW_CPD_FILTER_FILE_MESSAGE = "view.cpd.filter.file.message";
+    public static final String VIEW_CPD_FILTER_LINES = "view.cpd.filter.lines";
+    public static final String VIEW_CPD_FILTER_LINES_MESSAGE = "view.cpd.filter.lines.message";
+    public static final String VIEW_CPD_MARKER_DUPLICATED_CODE = "view.cpd.marker.duplicated_code";
+    public static final String VIEW_CPD_JOB_CHECK_DUPLICATED_CODE = "view.cpd.job.check_duplicated_code";
 
     public static final String DIALOG_VIOLATION_DETAILS_TITLE = "dialog.violation_details.title";
     public static final String DIALOG_VIOLATION_DETAILS_LOCATION = "dialog.violation_details.location";
@@ -272,6 +288,7 @@ public final class StringKeys {
     public static final String DIALOG_CPD_REPORT = "dialog.cpd.report";
     public static final String DIALOG_CPD_FORMAT_LABEL = "dialog.cpd.format.label";
     public static final String DIALOG_CPD_LANGUAGE_LABEL = "dialog.cpd.language.label";
+    public static final String DIALOG_CPD_WORKSPACE = "dialog.cpd.workspace";
     public static final String DIALOG_TOOLTIP_CPD_FORMAT = "dialog.tooltip.cpd.format";
     public static final String DIALOG_TOOLTIP_CPD_MIN_TILESIZE = "dialog.tooltip.cpd.tilesize";
     public static final String DIALOG_TOOLTIP_CPD_LANGUAGE = "dialog.tooltip.cpd.language";
@@ -336,6 +353,8 @@ public final class StringKeys {
     public static final String MONITOR_CALC_STATS_TASK = "monitor.calc_stats";
     public static final String MONITOR_CALC_STATS_OF_PACKAGE = "monitor.calc_stats.package";
     public static final String MSGKEY_MONITOR_COLLECTING_MARKERS = "monitor.collect_markers";
+    public static final String MONITOR_RENDER_REPORTS = "monitor.render_reports";
+    public static final String MONITOR_WRITE_REPORT = "monitor.write_report";
 
     public static final String PRIORITY_COLUMN_NAME = "priority.column.name";
     public static final String PRIORITY_COLUMN_PMD_NAME = "priority.column.name.pmd";
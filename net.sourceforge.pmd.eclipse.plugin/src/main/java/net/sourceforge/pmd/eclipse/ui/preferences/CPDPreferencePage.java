@@ -18,6 +18,7 @@ import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Spinner;
 
 import net.sourceforge.pmd.cpd.GUI;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 import net.sourceforge.pmd.eclipse.ui.preferences.br.AbstractPMDPreferencePage;
@@ -32,6 +33,9 @@ import net.sourceforge.pmd.eclipse.ui.preferences.br.AbstractPMDPreferencePage;
 public class CPDPreferencePage extends AbstractPMDPreferencePage {
 
     private Spinner minTileSizeSpinner;
+    private Button incrementalButton;
+    private Spinner threadCountSpinner;
+    private Button checkAfterSaveButton;
 
     @Override
     protected String descriptionId() {
@@ -122,17 +126,50 @@ public class CPDPreferencePage extends AbstractPMDPreferencePage {
         data.grabExcessHorizontalSpace = true;
         minTileSizeSpinner.setLayoutData(data);
 
+        Label threadCountLabel = new Label(group, SWT.NULL);
+        threadCountLabel.setText(getMessage(StringKeys.PREF_CPD_THREAD_COUNT));
+
+        threadCountSpinner = new Spinner(group, SWT.BORDER);
+        threadCountSpinner.setValues(preferences.getCpdThreadCount(), 0, 64, 0, 1, 4);
+        threadCountSpinner.setToolTipText(getMessage(StringKeys.PREF_CPD_THREAD_COUNT_TOOLTIP));
+        data = new GridData(GridData.FILL_HORIZONTAL);
+        data.grabExcessHorizontalSpace = true;
+        threadCountSpinner.setLayoutData(data);
+
+        incrementalButton = new Button(group, SWT.CHECK);
+        incrementalButton.setText(getMessage(StringKeys.PREF_CPD_INCREMENTAL));
+        incrementalButton.setSelection(preferences.isCpdIncremental());
+        data = new GridData(GridData.FILL_HORIZONTAL);
+        data.horizontalSpan = 2;
+        incrementalButton.setLayoutData(data);
+
+        checkAfterSaveButton = new Button(group, SWT.CHECK);
+        checkAfterSaveButton.setText(getMessage(StringKeys.PREF_CPD_CHECK_AFTER_SAVE));
+        checkAfterSaveButton.setSelection(preferences.isCpdCheckAfterSaveEnabled());
+        data = new GridData(GridData.FILL_HORIZONTAL);
+        data.horizontalSpan = 2;
+        checkAfterSaveButton.setLayoutData(data);
+
         return group;
     }
 
     @Override
     protected void performDefaults() {
         minTileSizeSpinner.setMinimum(IPreferences.MIN_TILE_SIZE_DEFAULT);
+        incrementalButton.setSelection(IPreferences.CPD_INCREMENTAL_DEFAULT);
+        threadCountSpinner.setSelection(IPreferences.CPD_THREAD_COUNT_DEFAULT);
+        checkAfterSaveButton.setSelection(IPreferences.CPD_CHECK_AFTER_SAVE_DEFAULT);
     }
 
     @Override
     public boolean performOk() {
         preferences.setMinTileSize(Integer.valueOf(minTileSizeSpinner.getText()).intValue());
+        preferences.setCpdIncremental(incrementalButton.getSelection());
+        preferences.setCpdThreadCount(threadCountSpinner.getSelection());
+
+        boolean checkAfterSave = checkAfterSaveButton.getSelection();
+        preferences.setCpdCheckAfterSaveEnabled(checkAfterSave);
+        PMDPlugin.getDefault().duplicateCodeReviewerEnabled(checkAfterSave);
 
         return super.performOk();
     }
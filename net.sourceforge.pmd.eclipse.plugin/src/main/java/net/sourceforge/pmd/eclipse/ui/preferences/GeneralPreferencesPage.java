@@ -8,11 +8,8 @@ import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
-import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.jface.preference.ColorSelector;
 import org.eclipse.jface.preference.PreferenceDialog;
@@ -53,12 +50,11 @@ import org.eclipse.ui.preferences.ScopedPreferenceStore;
 import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.plugin.UISettings;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.ui.BasicTableLabelProvider;
+import net.sourceforge.pmd.eclipse.ui.RuleLabelDecorator;
 import net.sourceforge.pmd.eclipse.ui.Shape;
 import net.sourceforge.pmd.eclipse.ui.ShapePicker;
-import net.sourceforge.pmd.eclipse.ui.model.RootRecord;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 import net.sourceforge.pmd.eclipse.ui.preferences.br.BasicTableManager;
 import net.sourceforge.pmd.eclipse.ui.preferences.br.PMDPreferencePage2;
@@ -110,7 +106,7 @@ public class GeneralPreferencesPage extends PreferencePage implements IWorkbench
     @Override
     public void init(IWorkbench arg0) {
         // setDescription(getMessage(StringKeys.MSGKEY_PREF_GENERAL_TITLE));
-        preferences = PMDPlugin.getDefault().loadPreferences();
+        preferences = PMDPlugin.getDefault().loadPreferencesForUpdate();
     }
 
     /**
@@ -823,10 +819,11 @@ public class GeneralPreferencesPage extends PreferencePage implements IWorkbench
 
         PriorityDescriptorCache.INSTANCE.storeInPreferences();
 
-        // refresh the resources so that the rule label decorator is updated
-        RootRecord root = new RootRecord(ResourcesPlugin.getWorkspace().getRoot());
-        Set<IFile> files = MarkerUtil.allMarkedFiles(root);
-        PMDPlugin.getDefault().changedFiles(files);
+        // the icons changed, so all the decorations need to be updated
+        RuleLabelDecorator decorator = PMDPlugin.getDefault().ruleLabelDecorator();
+        if (decorator != null) {
+            decorator.changedAll();
+        }
 
         // Refresh the views to pick up the marker change
         PMDPlugin.getDefault().refreshView(PMDPlugin.VIOLATIONS_OVERVIEW_ID); 
@@ -61,7 +61,7 @@ public abstract class AbstractPMDPreferencePage extends PreferencePage implement
     @Override
     public void init(IWorkbench workbench) {
         // setDescription(getMessage(descriptionId()));
-        preferences = PMDPlugin.getDefault().loadPreferences();
+        preferences = PMDPlugin.getDefault().loadPreferencesForUpdate();
     }
 
     @Override
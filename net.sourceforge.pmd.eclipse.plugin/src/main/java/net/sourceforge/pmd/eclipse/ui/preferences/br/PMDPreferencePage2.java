@@ -31,7 +31,6 @@ import org.eclipse.swt.widgets.TabFolder;
 import org.eclipse.swt.widgets.TabItem;
 import org.eclipse.swt.widgets.Tree;
 
-import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.runtime.preferences.impl.PreferenceUIStore;
 import net.sourceforge.pmd.eclipse.ui.ModifyListener;
@@ -122,7 +121,7 @@ public class PMDPreferencePage2 extends AbstractPMDPreferencePage
     @Override
     protected Control createContents(Composite parent) {
 
-        tableManager = new RuleTableManager("rules", AVAILABLE_COLUMNS, PMDPlugin.getDefault().loadPreferences(), this);
+        tableManager = new RuleTableManager("rules", AVAILABLE_COLUMNS, preferences, this);
         tableManager.modifyListener(this);
         tableManager.selectionListener(this);
 
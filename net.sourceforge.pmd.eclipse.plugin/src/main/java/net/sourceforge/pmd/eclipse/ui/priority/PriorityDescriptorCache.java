@@ -43,7 +43,7 @@ public final class PriorityDescriptorCache {
 
     public void storeInPreferences() {
         IPreferencesManager mgr = preferencesManager();
-        IPreferences prefs = mgr.loadPreferences();
+        IPreferences prefs = mgr.loadPreferencesForUpdate();
 
         for (Map.Entry<RulePriority, PriorityDescriptor> entry : uiDescriptorsByPriority.entrySet()) {
             // note: the priority descriptors are cloned here, so that any changes to them
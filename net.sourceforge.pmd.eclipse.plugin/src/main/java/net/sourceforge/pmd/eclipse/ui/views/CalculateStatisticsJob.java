@@ -0,0 +1,104 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.views;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.ui.model.FileRecord;
+import net.sourceforge.pmd.eclipse.ui.model.StatisticsCache;
+
+/**
+ * Calculates the statistics of file records in the background. The files are processed in
+ * parallel. Every record is reported with {@link #calculated(FileRecord)} as soon as its statistics
+ * are available, so that the view can be updated progressively. Records, whose statistics are
+ * cached already, are not processed again.
+ */
+abstract class CalculateStatisticsJob extends Job {
+    private static final Logger LOG = LoggerFactory.getLogger(CalculateStatisticsJob.class);
+
+    private static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private final List<FileRecord> records;
+
+    CalculateStatisticsJob(String name, Collection<FileRecord> records) {
+        super(name);
+        this.records = new ArrayList<>(records);
+    }
+
+    /**
+     * Called when the statistics of the record are available. This is not called in the UI thread.
+     *
+     * @param record the record
+     */
+    protected abstract void calculated(FileRecord record);
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        // the records only look into the cache, once it has been loaded
+        StatisticsCache.getInstance().ensureLoaded();
+        List<FileRecord> missing = new ArrayList<>();
+        for (FileRecord record : records) {
+            if (!record.hasStatistics()) {
+                missing.add(record);
+            }
+        }
+        if (missing.isEmpty()) {
+            return Status.OK_STATUS;
+        }
+
+        monitor.beginTask(getName(), missing.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(THREAD_COUNT, missing.size()));
+        try {
+            CompletionService<FileRecord> completion = new ExecutorCompletionService<>(executor);
+            for (final FileRecord record : missing) {
+                completion.submit(new Callable<FileRecord>() {
+                    @Override
+                    public FileRecord call() {
+                        record.calculateStatistics();
+                        return record;
+                    }
+                });
+            }
+
+            for (int i = 0; i < missing.size(); i++) {
+                if (monitor.isCanceled()) {
+                    return Status.CANCEL_STATUS;
+                }
+                Future<FileRecord> done = completion.take();
+                try {
+                    calculated(done.get());
+                } catch (ExecutionException e) {
+                    // continue with the other records
+                    LOG.warn("Could not calculate the statistics", e.getCause());
+                }
+                monitor.worked(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Status.CANCEL_STATUS;
+        } finally {
+            executor.shutdownNow();
+            StatisticsCache.getInstance().save();
+            monitor.done();
+        }
+        return Status.OK_STATUS;
+    }
+}
@@ -17,6 +17,7 @@ import org.eclipse.jface.viewers.ViewerFilter;
 import org.eclipse.ui.preferences.ScopedPreferenceStore;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
 import net.sourceforge.pmd.eclipse.ui.PMDUiConstants;
 import net.sourceforge.pmd.eclipse.ui.model.AbstractPMDRecord;
 import net.sourceforge.pmd.eclipse.ui.model.FileRecord;
@@ -42,6 +43,11 @@ public final class PriorityFilter extends ViewerFilter {
 
     private final Set<RulePriority> enabledPriorities;
 
+    /**
+     * The enabled priorities as bit mask, bit {@code p - 1} stands for priority {@code p}.
+     */
+    private volatile int enabledPriorityMask;
+
     private Set<PriorityFilterChangeListener> listeners = new CopyOnWriteArraySet<>();
 
     private final ScopedPreferenceStore editorsPreferences = new ScopedPreferenceStore(InstanceScope.INSTANCE, "org.eclipse.ui.editors");
@@ -53,6 +59,7 @@ public final class PriorityFilter extends ViewerFilter {
      */
     private PriorityFilter() {
         enabledPriorities = Collections.synchronizedSet(EnumSet.allOf(RulePriority.class));
+        updateEnabledPriorityMask();
     }
 
     public static PriorityFilter getInstance() {
@@ -95,9 +102,28 @@ public final class PriorityFilter extends ViewerFilter {
             for (String priority : priorities.split(",")) {
                 enabledPriorities.add(RulePriority.valueOf(priority));
             }
+            updateEnabledPriorityMask();
         }
     }
 
+    private void updateEnabledPriorityMask() {
+        int mask = 0;
+        synchronized (enabledPriorities) {
+            for (RulePriority priority : enabledPriorities) {
+                mask |= 1 << priority.getPriority() - 1;
+            }
+        }
+        enabledPriorityMask = mask;
+    }
+
+    /**
+     * @return the enabled priorities as bit mask, bit {@code p - 1} stands for priority {@code p}.
+     * @see ViolationIndex#highestPriorityOf(org.eclipse.core.resources.IResource, int)
+     */
+    public int getEnabledPriorityMask() {
+        return enabledPriorityMask;
+    }
+
     private String getMarkerKeyVerticalRuler(RulePriority priority) {
         return "net.sourceforge.pmd.eclipse.plugin.annotation.prio" + priority.getPriority() + ".verticalruler";
     }
@@ -125,7 +151,8 @@ public final class PriorityFilter extends ViewerFilter {
             select = hasMarkersToShow((PackageRecord) element);
         } else if (element instanceof FileRecord) {
             // ViolationOverview
-            select = hasMarkersToShow((FileRecord) element);
+            select = ViolationIndex.getInstance().highestPriorityOf(((FileRecord) element).getResource(),
+                    enabledPriorityMask) > 0;
         } else if (element instanceof IMarker) {
             // ViolationOutline
             try {
@@ -173,6 +200,7 @@ public final class PriorityFilter extends ViewerFilter {
     public void enablePriority(RulePriority priority) {
         if (priority != null) {
             if (enabledPriorities.add(priority)) {
+                updateEnabledPriorityMask();
                 notifyPriorityEnabled(priority);
             }
         }
@@ -181,6 +209,7 @@ public final class PriorityFilter extends ViewerFilter {
     public void disablePriority(RulePriority priority) {
         if (priority != null) {
             if (enabledPriorities.remove(priority)) {
+                updateEnabledPriorityMask();
                 notifyPriorityDisabled(priority);
             }
         }
@@ -0,0 +1,142 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.views;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Collects the additions, removals and changes for a viewer and applies them in the UI thread
+ * at most once per {@link #UPDATE_INTERVAL} milliseconds. Changes, that arrive in the meantime,
+ * are merged, e.g. an element, that is added and removed again, is not given to the viewer at all.
+ *
+ * <p>The changes can be queued from any thread. The calling thread never waits for the UI thread.
+ *
+ * @param <T> the type of the elements
+ */
+abstract class ViewerUpdateQueue<T> {
+
+    /** Minimum time in milliseconds between two updates of the viewer. */
+    static final int UPDATE_INTERVAL = 100;
+
+    private final Set<T> additions = new LinkedHashSet<>();
+    private final Set<T> removals = new LinkedHashSet<>();
+    private final Set<T> changes = new LinkedHashSet<>();
+    private boolean scheduled;
+    private long lastUpdate;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @return the viewer, that is updated
+     */
+    protected abstract StructuredViewer viewer();
+
+    /**
+     * Applies the merged changes to the viewer. This is called in the UI thread.
+     *
+     * @param changes the merged changes
+     */
+    protected abstract void apply(ChangeRecord<T> changes);
+
+    public void added(Collection<T> elements) {
+        synchronized (this) {
+            for (T element : elements) {
+                // an element, that has been removed and added again, only needs to be updated
+                if (removals.remove(element)) {
+                    changes.add(element);
+                } else {
+                    additions.add(element);
+                }
+            }
+        }
+        schedule();
+    }
+
+    public void removed(Collection<T> elements) {
+        synchronized (this) {
+            for (T element : elements) {
+                changes.remove(element);
+                // an element, that has not been added yet, doesn't need to be removed
+                if (!additions.remove(element)) {
+                    removals.add(element);
+                }
+            }
+        }
+        schedule();
+    }
+
+    public void changed(Collection<T> elements) {
+        synchronized (this) {
+            for (T element : elements) {
+                if (!additions.contains(element) && !removals.contains(element)) {
+                    changes.add(element);
+                }
+            }
+        }
+        schedule();
+    }
+
+    public void queue(ChangeRecord<T> changeRecord) {
+        removed(changeRecord.removals);
+        added(changeRecord.additions);
+        changed(changeRecord.changes);
+    }
+
+    private void schedule() {
+        final long delay;
+        synchronized (this) {
+            if (scheduled || additions.isEmpty() && removals.isEmpty() && changes.isEmpty()) {
+                return;
+            }
+            scheduled = true;
+            delay = Math.max(0L, lastUpdate + UPDATE_INTERVAL - System.currentTimeMillis());
+        }
+
+        final Control control = viewer().getControl();
+        if (control == null || control.isDisposed()) {
+            return;
+        }
+        final Display display = control.getDisplay();
+        // timerExec can only be called from the UI thread
+        display.asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                if (!display.isDisposed()) {
+                    display.timerExec((int) delay, flush);
+                }
+            }
+        });
+    }
+
+    private void flush() {
+        final ChangeRecord<T> changeRecord = new ChangeRecord<>();
+        synchronized (this) {
+            changeRecord.removed(removals);
+            changeRecord.added(additions);
+            changeRecord.changed(changes);
+            removals.clear();
+            additions.clear();
+            changes.clear();
+            scheduled = false;
+            lastUpdate = System.currentTimeMillis();
+        }
+
+        final Control control = viewer().getControl();
+        if (control != null && !control.isDisposed()) {
+            apply(changeRecord);
+        }
+    }
+}
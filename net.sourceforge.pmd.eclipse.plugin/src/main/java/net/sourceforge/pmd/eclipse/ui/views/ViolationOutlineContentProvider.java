@@ -5,6 +5,7 @@
 package net.sourceforge.pmd.eclipse.ui.views;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.eclipse.core.resources.IMarker;
@@ -13,6 +14,7 @@ import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.StructuredViewer;
 import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.Viewer;
 
@@ -27,12 +29,22 @@ import net.sourceforge.pmd.eclipse.util.Util;
  */
 public class ViolationOutlineContentProvider implements IStructuredContentProvider, IResourceChangeListener {
 
-    private RefreshableTablePage tablePage;
     private TableViewer tableViewer;
     private FileRecord resource;
 
+    private final ViewerUpdateQueue<IMarker> updateQueue = new ViewerUpdateQueue<IMarker>() {
+        @Override
+        protected StructuredViewer viewer() {
+            return tableViewer;
+        }
+
+        @Override
+        protected void apply(ChangeRecord<IMarker> changes) {
+            updateViewer(changes.additions, changes.removals, changes.changes);
+        }
+    };
+
     public ViolationOutlineContentProvider(RefreshableTablePage page) {
-        tablePage = page;
         tableViewer = page.tableViewer();
     }
 
@@ -102,13 +114,10 @@ public class ViolationOutlineContentProvider implements IStructuredContentProvid
             }
         }
 
-        // updating the table MUST be in sync
-        tableViewer.getControl().getDisplay().syncExec(new Runnable() {
-            @Override
-            public void run() {
-                updateViewer(additions, removals, changes);
-            }
-        });
+        // the table is updated in batches, without blocking the notifying thread
+        updateQueue.removed(removals);
+        updateQueue.added(additions);
+        updateQueue.changed(changes);
     }
 
     /**
@@ -118,7 +127,8 @@ public class ViolationOutlineContentProvider implements IStructuredContentProvid
      * @param removals
      * @param changes
      */
-    protected void updateViewer(List<IMarker> additions, List<IMarker> removals, List<IMarker> changes) {
+    protected void updateViewer(Collection<IMarker> additions, Collection<IMarker> removals,
+            Collection<IMarker> changes) {
         // perform removals
         if (!removals.isEmpty()) {
             tableViewer.cancelEditing();
@@ -134,7 +144,5 @@ public class ViolationOutlineContentProvider implements IStructuredContentProvid
         if (!changes.isEmpty()) {
             tableViewer.update(changes.toArray(), null);
         }
-
-        tablePage.refresh();
     }
 }
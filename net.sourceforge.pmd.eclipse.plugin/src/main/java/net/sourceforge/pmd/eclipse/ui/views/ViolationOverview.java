@@ -6,11 +6,14 @@ package net.sourceforge.pmd.eclipse.ui.views;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.ISelectionProvider;
@@ -25,7 +28,6 @@ import org.eclipse.swt.events.ControlEvent;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.widgets.Composite;
-import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Tree;
 import org.eclipse.swt.widgets.TreeColumn;
 import org.eclipse.ui.IViewSite;
@@ -107,7 +109,8 @@ public class ViolationOverview extends ViewPart implements ISelectionProvider, I
 
     @Override
     public void createPartControl(Composite parent) {
-        treeViewer = new TreeViewer(parent, SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL);
+        // the tree items are only created, when they become visible
+        treeViewer = new TreeViewer(parent, SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL | SWT.VIRTUAL);
         treeViewer.setUseHashlookup(true);
         treeViewer.getTree().setHeaderVisible(true);
         treeViewer.getTree().setLinesVisible(true);
@@ -622,30 +625,44 @@ public class ViolationOverview extends ViewPart implements ISelectionProvider, I
     }
 
     /**
-     * Calculates the LOC of the expanded file record.
+     * Calculates the statistics of the files of the expanded package in the background.
      */
     @Override
     public void treeExpanded(TreeExpansionEvent event) {
         Object object = event.getElement();
         if (object instanceof PackageRecord) {
-            PackageRecord record = (PackageRecord) object;
-            AbstractPMDRecord[] children = record.getChildren();
-            for (AbstractPMDRecord element : children) {
+            List<FileRecord> fileRecords = new ArrayList<>();
+            for (AbstractPMDRecord element : ((PackageRecord) object).getChildren()) {
                 if (element instanceof FileRecord) {
-                    FileRecord fileRecord = (FileRecord) element;
-                    fileRecord.calculateLinesOfCode();
-                    fileRecord.calculateNumberOfMethods();
+                    fileRecords.add((FileRecord) element);
                 }
             }
+            calculateStatistics(fileRecords, false);
         }
+    }
 
-        // refresh the labels in the table
-        Display.getDefault().asyncExec(new Runnable() {
+    /**
+     * Calculates the statistics (lines of code and number of methods) of the given files in a
+     * background job. The labels are updated progressively, as soon as the statistics of a file
+     * are available. Files, whose statistics are cached already, are skipped.
+     *
+     * @param fileRecords the files
+     * @param user <code>true</code> if the job has been started by the user and its progress should be shown
+     */
+    public void calculateStatistics(Collection<FileRecord> fileRecords, boolean user) {
+        if (fileRecords.isEmpty()) {
+            return;
+        }
+        Job job = new CalculateStatisticsJob(getString(StringKeys.MONITOR_CALC_STATS_TASK), fileRecords) {
             @Override
-            public void run() {
-                getViewer().refresh();
+            protected void calculated(FileRecord record) {
+                contentProvider.recordsChanged(Collections.singleton(record));
             }
-        });
+        };
+        job.setUser(user);
+        job.setSystem(!user);
+        job.setPriority(user ? Job.LONG : Job.DECORATE);
+        job.schedule();
     }
 
     /**
@@ -5,17 +5,25 @@
 package net.sourceforge.pmd.eclipse.ui.views;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.jface.viewers.IStructuredContentProvider;
 import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.StructuredViewer;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.TreeItem;
+import org.eclipse.swt.widgets.Widget;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,6 +55,21 @@ public class ViolationOverviewContentProvider
     private RootRecord root;
     private ChangeEvaluator changeEvaluator;
 
+    /** The top level elements, that the viewer knows. Only used in the UI thread. */
+    private final Set<Object> topLevelElements = new HashSet<>();
+
+    private final ViewerUpdateQueue<AbstractPMDRecord> updateQueue = new ViewerUpdateQueue<AbstractPMDRecord>() {
+        @Override
+        protected StructuredViewer viewer() {
+            return treeViewer;
+        }
+
+        @Override
+        protected void apply(ChangeRecord<AbstractPMDRecord> changes) {
+            updateViewer(changes);
+        }
+    };
+
     /**
      * Constructor
      *
@@ -69,7 +92,10 @@ public class ViolationOverviewContentProvider
 
     @Override
     public Object[] getElements(Object inputElement) {
-        return getChildren(inputElement);
+        Object[] elements = getChildren(inputElement);
+        topLevelElements.clear();
+        topLevelElements.addAll(Arrays.asList(elements));
+        return elements;
     }
 
     @Override
@@ -282,39 +308,107 @@ public class ViolationOverviewContentProvider
 
     @Override
     public void resourceChanged(IResourceChangeEvent event) {
-        final ChangeRecord<AbstractPMDRecord> changes = changeEvaluator.changeRecordFor(event);
+        // the additions, removals and changes are given to the viewer so that it can update itself.
+        // They are merged and applied in batches, the notifying thread doesn't wait for the UI.
+        updateQueue.queue(changeEvaluator.changeRecordFor(event));
+    }
 
-        // the additions, removals and changes are given to the viewer so that it can update itself
-        treeViewer.getControl().getDisplay().asyncExec(new Runnable() {
-            @Override
-            public void run() {
-                updateViewer(changes);
-            }
-        });
+    /**
+     * Updates the labels of the given records and their parents, e.g. after the statistics
+     * have been calculated. This can be called from any thread.
+     *
+     * @param records the changed records
+     */
+    void recordsChanged(Collection<? extends AbstractPMDRecord> records) {
+        updateQueue.changed(new ArrayList<AbstractPMDRecord>(records));
     }
 
+    /**
+     * Applies the changes incrementally. Only the nearest shown ancestors of new elements are
+     * refreshed, the labels of the changed elements and their parents are updated.
+     */
     protected void updateViewer(ChangeRecord<AbstractPMDRecord> changes) {
 
         // perform removals
         if (changes.hasRemovals()) {
             treeViewer.cancelEditing();
             treeViewer.remove(changes.removals.toArray());
+            topLevelElements.removeAll(changes.removals);
         }
 
-        // perform additions (if any)
+        // perform additions (if any), by refreshing their nearest ancestors, that are shown
+        Set<Object> refreshParents = new LinkedHashSet<>();
+        Set<Object> newTopLevelElements = new LinkedHashSet<>();
+        boolean refreshAll = false;
         for (AbstractPMDRecord addedRec : changes.additions) {
-            if (addedRec instanceof FileRecord) {
-                treeViewer.add(addedRec.getParent(), addedRec);
-            } else {
-                treeViewer.add(root, addedRec);
+            Object element = addedRec;
+            Object parent = getParent(element);
+            Widget item = parent == null ? null : treeViewer.testFindItem(parent);
+            while (parent != null && parent != root && item == null) {
+                // e.g. a new package or a package, that has not been shown yet
+                element = parent;
+                parent = getParent(parent);
+                item = parent == null ? null : treeViewer.testFindItem(parent);
+            }
+            if (parent == null) {
+                refreshAll = true;
+            } else if (parent == root) {
+                // a known top level element is not shown yet, it is created when it becomes visible
+                if (!topLevelElements.contains(element)) {
+                    newTopLevelElements.add(element);
+                }
+            } else if (hasCreatedChildren(item)) {
+                refreshParents.add(parent);
             }
+            // otherwise the children are created, when the ancestor is expanded,
+            // only its label is updated below
         }
+        if (refreshAll) {
+            treeViewer.refresh();
+        } else {
+            if (!newTopLevelElements.isEmpty()) {
+                topLevelElements.addAll(newTopLevelElements);
+                treeViewer.add(treeViewer.getInput(), newTopLevelElements.toArray());
+            }
+            for (Object parent : refreshParents) {
+                treeViewer.refresh(parent);
+            }
+        }
+
+        // perform changes, the violation counts of the parents change as well
+        Set<Object> updates = new LinkedHashSet<>(changes.changes);
+        addParentsTo(changes.additions, updates);
+        addParentsTo(changes.removals, updates);
+        addParentsTo(changes.changes, updates);
+        if (!updates.isEmpty()) {
+            treeViewer.update(updates.toArray(), null);
+        }
+
+        violationView.refreshMenu();
+    }
 
-        // perform changes
-        if (changes.hasChanges()) {
-            treeViewer.update(changes.changes.toArray(), null);
+    /**
+     * @return <code>false</code> if the item has never been expanded, so that its children
+     *     are still to be created
+     */
+    private static boolean hasCreatedChildren(Widget item) {
+        if (!(item instanceof TreeItem)) {
+            return true;
+        }
+        TreeItem treeItem = (TreeItem) item;
+        if (treeItem.getExpanded()) {
+            return true;
         }
+        // a collapsed item, that has never been expanded, has a single dummy child without data
+        return treeItem.getItemCount() > 0 && treeItem.getItem(0).getData() != null;
+    }
 
-        violationView.refresh();
+    private void addParentsTo(Collection<AbstractPMDRecord> records, Set<Object> parents) {
+        for (AbstractPMDRecord record : records) {
+            Object parent = getParent(record);
+            while (parent != null && parent != root && parents.add(parent)) {
+                parent = getParent(parent);
+            }
+        }
     }
 }
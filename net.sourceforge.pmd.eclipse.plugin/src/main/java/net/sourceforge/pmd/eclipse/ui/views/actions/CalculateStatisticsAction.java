@@ -4,14 +4,11 @@
 
 package net.sourceforge.pmd.eclipse.ui.views.actions;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.jface.dialogs.ProgressMonitorDialog;
-import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.TreeViewer;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.TreeItem;
 
 import net.sourceforge.pmd.eclipse.ui.PMDUiConstants;
 import net.sourceforge.pmd.eclipse.ui.model.AbstractPMDRecord;
@@ -45,69 +42,28 @@ public class CalculateStatisticsAction extends AbstractPMDAction {
     }
 
     /**
-     * Executes the Action.
+     * Executes the Action. The statistics are calculated in a background job,
+     * the view is updated while the job is running.
      */
     @Override
     public void run() {
-        try {
-            final ProgressMonitorDialog dialog = new ProgressMonitorDialog(Display.getDefault().getActiveShell());
-            dialog.setCancelable(true);
-
-            dialog.run(false, false, new IRunnableWithProgress() {
-                @Override
-                public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
-                    final TreeItem[] items = getViewer().getTree().getItems();
-                    final int unitCount = calculateWorkUnits(items);
-                    monitor.beginTask(getString(StringKeys.MONITOR_CALC_STATS_TASK), unitCount);
-                    for (TreeItem item : items) {
-                        if (monitor.isCanceled()) {
-                            break;
-                        }
-                        if (item.getData() instanceof PackageRecord) {
-                            final PackageRecord record = (PackageRecord) item.getData();
-                            final AbstractPMDRecord[] children = record.getChildren();
-                            monitor.subTask(
-                                    getString(StringKeys.MONITOR_CALC_STATS_OF_PACKAGE) + ": " + record.getName());
-                            for (AbstractPMDRecord kid : children) {
-                                if (kid instanceof FileRecord) {
-                                    calculateFileRecord((FileRecord) kid);
-                                    monitor.worked(1);
-                                }
-                            }
-                        } else if (item.getData() instanceof FileRecord) {
-                            calculateFileRecord((FileRecord) item.getData());
-                            monitor.worked(1);
-                        }
+        final TreeViewer viewer = getViewer();
+        final ITreeContentProvider contentProvider = (ITreeContentProvider) viewer.getContentProvider();
+
+        // the tree is virtual, so the model is used instead of the tree items
+        final List<FileRecord> fileRecords = new ArrayList<>();
+        for (Object element : contentProvider.getElements(viewer.getInput())) {
+            if (element instanceof PackageRecord) {
+                for (AbstractPMDRecord kid : ((PackageRecord) element).getChildren()) {
+                    if (kid instanceof FileRecord) {
+                        fileRecords.add((FileRecord) kid);
                     }
-
-                    getViewer().refresh(true);
                 }
-            });
-        } catch (InvocationTargetException e) {
-            logErrorByKey(StringKeys.ERROR_INVOCATIONTARGET_EXCEPTION, e);
-        } catch (InterruptedException e) {
-            logErrorByKey(StringKeys.ERROR_INTERRUPTED_EXCEPTION, e);
-        }
-    }
-
-    private void calculateFileRecord(FileRecord fileRecord) {
-        if (fileRecord.getLOC() == 0) {
-            fileRecord.calculateLinesOfCode();
-            fileRecord.calculateNumberOfMethods();
-        }
-    }
-
-    private int calculateWorkUnits(TreeItem[] items) {
-        int count = 0;
-        for (TreeItem item : items) {
-            Object data = item.getData();
-            if (data instanceof PackageRecord) {
-                count += ((PackageRecord) data).getChildren().length;
-            } else if (data instanceof FileRecord) {
-                count++;
+            } else if (element instanceof FileRecord) {
+                fileRecords.add((FileRecord) element);
             }
         }
-        return count;
-    }
 
+        violationView.calculateStatistics(fileRecords, true);
+    }
 }
@@ -26,8 +26,6 @@ import net.sourceforge.pmd.lang.rule.Rule;
 
 public class DisableRuleAction extends AbstractViolationSelectionAction {
 
-    private final IPreferences preferences = PMDPlugin.getDefault().loadPreferences();
-
     public DisableRuleAction(TableViewer viewer) {
         super(viewer);
     }
@@ -76,7 +74,7 @@ public class DisableRuleAction extends AbstractViolationSelectionAction {
 
         List<Rule> rules = MarkerUtil.rulesFor(markers);
         for (Rule rule : rules) {
-            if (preferences.isActive(rule.getName())) {
+            if (PMDPlugin.getDefault().loadPreferences().isActive(rule.getName())) {
                 return true;
             }
         }
@@ -91,7 +89,7 @@ public class DisableRuleAction extends AbstractViolationSelectionAction {
             return;
         }
 
-        runWith(markers, preferences, true);
+        runWith(markers, PMDPlugin.getDefault().loadPreferencesForUpdate(), true);
     }
 
     public static void runWith(final IMarker[] markers, final IPreferences preferences,
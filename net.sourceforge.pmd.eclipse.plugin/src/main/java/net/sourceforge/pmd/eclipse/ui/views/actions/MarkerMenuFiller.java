@@ -4,9 +4,6 @@
 
 package net.sourceforge.pmd.eclipse.ui.views.actions;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
@@ -23,50 +20,35 @@ import org.eclipse.ui.part.FileEditorInput;
 import org.eclipse.ui.texteditor.ITextEditor;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
-import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.MarkerTable;
 import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 
 public class MarkerMenuFiller extends ContributionItem {
 
     private final ITextEditor editor;
     private final IVerticalRulerInfo rulerInfo;
-    private final List<IMarker> markers;
+    private final MarkerTable markers;
+    private final int clickedLine;
 
     public MarkerMenuFiller(ITextEditor thEditor) {
         editor = thEditor;
         rulerInfo = getRulerInfo();
         markers = getMarkers();
+        // the line, that has been clicked using the ruler's mouse listener
+        clickedLine = rulerInfo.getLineOfLastMouseButtonActivity() + 1;
     }
 
     private IVerticalRulerInfo getRulerInfo() {
         return (IVerticalRulerInfo) editor.getAdapter(IVerticalRulerInfo.class);
     }
 
-    private List<IMarker> getMarkers() {
-        List<IMarker> clickedOnMarkers = new ArrayList<>();
-        for (IMarker marker : getAllMarkers()) {
-            if (markerHasBeenClicked(marker)) {
-                clickedOnMarkers.add(marker);
-            }
-        }
-
-        return clickedOnMarkers;
-    }
-
-    // Determine whether the marker has been clicked using the ruler's mouse
-    // listener
-    private boolean markerHasBeenClicked(IMarker marker) {
-        return marker.getAttribute(IMarker.LINE_NUMBER, 0) == rulerInfo.getLineOfLastMouseButtonActivity() + 1;
-    }
-
-    // Get all My Markers for this source file
-    private IMarker[] getAllMarkers() {
+    // Get all the rule violation markers of this source file, with their attributes
+    private MarkerTable getMarkers() {
         IFile sourceFile = ((FileEditorInput) editor.getEditorInput()).getFile();
         try {
-            return sourceFile.findMarkers(null, // "defined.in.plugin.xml.mymarker",
-                    true, IResource.DEPTH_ZERO);
+            return MarkerTable.of(sourceFile, IResource.DEPTH_ZERO);
         } catch (CoreException ce) {
-            return MarkerUtil.EMPTY_MARKERS;
+            return MarkerTable.of(MarkerUtil.EMPTY_MARKERS);
         }
     }
 
@@ -75,15 +57,15 @@ public class MarkerMenuFiller extends ContributionItem {
 
         // MenuItem separator = new MenuItem(menu, SWT.SEPARATOR, index);
 
-        for (final IMarker marker : markers) {
-            String ruleName = marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, "");
-            if (StringUtils.isBlank(ruleName)) {
+        for (int row = 0; row < markers.size(); row++) {
+            String ruleName = markers.getRuleName(row);
+            if (markers.getLine(row) != clickedLine || StringUtils.isBlank(ruleName)) {
                 continue;
             }
 
             MenuItem menuItem = new MenuItem(menu, SWT.PUSH, index);
             menuItem.setText("Disable rule: " + ruleName);
-            menuItem.addSelectionListener(createDynamicSelectionListener(marker));
+            menuItem.addSelectionListener(createDynamicSelectionListener(markers.getMarker(row)));
         }
     }
 
@@ -97,6 +79,7 @@ public class MarkerMenuFiller extends ContributionItem {
     }
 
     private static void disableRules(IMarker marker, boolean removeViolations) {
-        DisableRuleAction.runWith(new IMarker[] { marker }, PMDPlugin.getDefault().loadPreferences(), removeViolations);
+        DisableRuleAction.runWith(new IMarker[] { marker }, PMDPlugin.getDefault().loadPreferencesForUpdate(),
+                removeViolations);
     }
 }
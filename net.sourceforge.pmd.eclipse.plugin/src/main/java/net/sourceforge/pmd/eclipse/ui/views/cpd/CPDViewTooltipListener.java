@@ -105,7 +105,7 @@ public class CPDViewTooltipListener implements Listener {
 
     private String createText(CpdMatchWithSourceCode match) {
         Mark firstMark = match.getMatch().getFirstMark();
-        final String text = match.getSourceCodeSlices().get(firstMark).toString().replaceAll("\t", "    ");
+        final String text = match.getSourceCodeSlice(firstMark).toString().replaceAll("\t", "    ");
         final StringBuilder outputString = new StringBuilder();
         final StringTokenizer lines = new StringTokenizer(text, "\n");
         for (int i = 0; lines.hasMoreTokens(); i++) {
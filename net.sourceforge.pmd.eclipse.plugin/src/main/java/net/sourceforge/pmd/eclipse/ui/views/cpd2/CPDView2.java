@@ -5,17 +5,21 @@
 package net.sourceforge.pmd.eclipse.ui.views.cpd2;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.StringTokenizer;
 
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.action.IMenuListener;
+import org.eclipse.jface.action.IMenuManager;
+import org.eclipse.jface.action.MenuManager;
+import org.eclipse.jface.dialogs.IInputValidator;
+import org.eclipse.jface.dialogs.InputDialog;
 import org.eclipse.jface.viewers.IStructuredSelection;
-import org.eclipse.jface.viewers.TreeNode;
-import org.eclipse.jface.viewers.TreeNodeContentProvider;
 import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.KeyAdapter;
 import org.eclipse.swt.events.KeyEvent;
@@ -49,13 +53,17 @@ import net.sourceforge.pmd.eclipse.util.internal.StringUtil;
  * table with the file matches as columns at the root level with actual code
  * snippets that span all columns beneath them. Clicking on the class names
  * brings up the relevant sections in the code editor.
+ *
+ * <p>The tree is virtual: only the visible matches are turned into tree items,
+ * see {@link CPDViewContentProvider2}. The matches can be sorted and filtered
+ * from the view menu.
  * 
  * @author Brian Remedios
  */
 public class CPDView2 extends ViewPart implements IPropertyListener {
 
     private TreeViewer treeViewer;
-    private TreeNodeContentProvider contentProvider;
+    private CPDViewContentProvider2 contentProvider;
     private CPDViewLabelProvider2 labelProvider;
     private int[] columnWidths;
 
@@ -63,28 +71,15 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
     private Listener resizeListener;
     private Color classColor;
     private Color packageColor;
-    private Map<String, int[]> nameWidthsByName;
+    private TextWidths textWidths;
+    private CpdMatchTable table;
     private TreeColumn messageColumn; // we adjust the width of this one
 
     private static final int SPAN_COLUMN_WIDTH = 50;
-    private static final int MAX_MATCHES = 100;
     private static final int X_GAP = 6;
     private static final String TAB_EQUIVALENT = "    "; // tab char == 4 spaces
     public static final int SOURCE_COLUMN_IDX = 1;
 
-    private static List<Match> asList(Iterator<Match> matchIter) {
-        List<Match> matches = new ArrayList<>(MAX_MATCHES);
-
-        for (int count = 0; matchIter.hasNext() && count < MAX_MATCHES; count++) {
-            matches.add(matchIter.next());
-        }
-
-        Collections.sort(matches, Match.MATCHES_COMPARATOR);
-        Collections.reverse(matches);
-
-        return matches;
-    }
-
     public static String[] partsOf(String fullName) {
 
         int pos = fullName.lastIndexOf('.');
@@ -95,7 +90,7 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
     public static String[] sourceLinesFrom(CpdMatchWithSourceCode match, boolean trimLeadingWhitespace) {
         Mark firstMark = match.getMatch().getFirstMark();
 
-        final String text = match.getSourceCodeSlices().get(firstMark).toString().replaceAll("\t", TAB_EQUIVALENT);
+        final String text = match.getSourceCodeSlice(firstMark).toString().replaceAll("\t", TAB_EQUIVALENT);
         final StringTokenizer lines = new StringTokenizer(text, "\n");
 
         List<String> sourceLines = new ArrayList<>();
@@ -120,7 +115,7 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
     @Override
     public void init(IViewSite site) throws PartInitException {
         super.init(site);
-        contentProvider = new TreeNodeContentProvider();
+        contentProvider = new CPDViewContentProvider2();
         labelProvider = new CPDViewLabelProvider2();
 
         measureListener = new Listener() {
@@ -139,8 +134,6 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
                 treeViewer.refresh();
             }
         };
-
-        nameWidthsByName = new HashMap<>();
     }
 
     public int widthOf(int columnIndex) {
@@ -162,7 +155,7 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
 
     @Override
     public void createPartControl(Composite parent) {
-        int treeStyle = SWT.H_SCROLL | SWT.V_SCROLL | SWT.MULTI | SWT.FULL_SELECTION;
+        int treeStyle = SWT.H_SCROLL | SWT.V_SCROLL | SWT.MULTI | SWT.FULL_SELECTION | SWT.VIRTUAL;
         treeViewer = new TreeViewer(parent, treeStyle);
         treeViewer.setUseHashlookup(true);
         Tree tree = treeViewer.getTree();
@@ -171,6 +164,7 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
         tree.setHeaderVisible(true);
         tree.setLinesVisible(true);
         addPainters(tree);
+        measureTextWidths(tree);
 
         treeViewer.setContentProvider(contentProvider);
         treeViewer.setLabelProvider(labelProvider);
@@ -186,6 +180,18 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
         Display disp = tree.getDisplay();
         classColor = disp.getSystemColor(SWT.COLOR_BLUE);
         packageColor = disp.getSystemColor(SWT.COLOR_GRAY);
+
+        createMenu();
+    }
+
+    private void measureTextWidths(Tree tree) {
+        GC gc = new GC(tree);
+        try {
+            gc.setFont(tree.getFont());
+            textWidths = new TextWidths(gc);
+        } finally {
+            gc.dispose();
+        }
     }
 
     protected void addDeleteListener(Control control) {
@@ -199,11 +205,21 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
         });
     }
 
-    // TODO fix - not deleting 'model' elements?
     private void removeSelectedItems() {
+        if (table == null) {
+            return;
+        }
         IStructuredSelection selection = (IStructuredSelection) treeViewer.getSelection();
-        Object[] items = selection.toArray();
-        treeViewer.remove(items);
+        List<Match> removed = new ArrayList<>();
+        for (Object item : selection.toArray()) {
+            if (item instanceof CpdMatchNode) {
+                removed.add(((CpdMatchNode) item).getMatch().getMatch());
+            }
+        }
+        if (!removed.isEmpty()) {
+            table.removeAll(removed);
+            treeViewer.setInput(table);
+        }
     }
 
     public int inColumn(Point point) {
@@ -223,26 +239,20 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
         return -1;
     }
 
+    /**
+     * @param name the name of a file, as painted in the source column
+     * @return the widths of the package and the class part of the name
+     */
     public int[] widthsFor(String name) {
-        return nameWidthsByName.get(name);
+        String[] parts = partsOf(name);
+        return new int[] { textWidths.widthOf(parts[0]), textWidths.widthOf(parts[1]) };
     }
 
     private void paintName(GC gc, int x, int y, String name, int rightEdge, int descent) {
         String[] parts = partsOf(name);
-        int packageWidth;
-        int classWidth;
-
-        int[] widths = nameWidthsByName.get(name);
-
-        if (widths != null) {
-            packageWidth = widths[0];
-            classWidth = widths[1];
-        } else {
-            gc.setFont(treeViewer.getTree().getFont());
-            packageWidth = gc.stringExtent(parts[0]).x;
-            classWidth = gc.stringExtent(parts[1]).x;
-            nameWidthsByName.put(name, new int[] { packageWidth, classWidth });
-        }
+        int[] widths = widthsFor(name);
+        int packageWidth = widths[0];
+        int classWidth = widths[1];
 
         int drawX = x + rightEdge - classWidth - X_GAP;
         // Rectangle clipRect = new Rectangle(x, y, cellWidth, 24);
@@ -270,11 +280,11 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
                     return;
                 }
 
-                Object item = ((TreeNode) event.item.getData()).getValue();
+                Object item = event.item.getData();
 
                 String[] names;
-                if (item instanceof Match) {
-                    names = CPDViewLabelProvider2.sourcesFor((Match) item);
+                if (item instanceof CpdMatchNode) {
+                    names = ((CpdMatchNode) item).getNames();
                 } else {
                     return;
                 }
@@ -351,29 +361,131 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
      * @param result CPD results with matches and source code from CPD
      */
     public void setData(CpdResult result) {
-        List<TreeNode> elements = new ArrayList<>();
-        for (Match match : asList(result.getMatches().iterator())) {
-            CpdMatchWithSourceCode matchWithSource = new CpdMatchWithSourceCode(result, match);
-            // create a treenode for the match and add to the list
-            TreeNode matchNode = new TreeNode(matchWithSource);
-            elements.add(matchNode);
-
-            String[] lines = sourceLinesFrom(matchWithSource, true);
-            TreeNode[] children = new TreeNode[lines.length];
-
-            for (int j = 0; j < lines.length; j++) {
-                String line = lines[j];
-                if (line == null) {
-                    System.out.println();
+        CpdMatchTable newTable = new CpdMatchTable(result);
+        if (table != null) {
+            // keep the sort order and the filters of the previous result
+            newTable.setSortOrder(table.getSortOrder());
+            newTable.setMinLines(table.getMinLines());
+            newTable.setFileFilter(table.getFileFilter());
+            newTable.setProject(table.getProject());
+            newTable.refresh();
+        }
+        table = newTable;
+        treeViewer.setInput(table);
+    }
+
+    private void updateTable() {
+        if (table != null) {
+            table.refresh();
+            treeViewer.setInput(table);
+        }
+    }
+
+    private void createMenu() {
+        IMenuManager menu = getViewSite().getActionBars().getMenuManager();
+
+        MenuManager sortMenu = new MenuManager(getString(StringKeys.VIEW_CPD_MENU_SORT));
+        sortMenu.add(new SortAction(CpdMatchTable.SortOrder.TOKENS, StringKeys.VIEW_CPD_SORT_TOKENS, true));
+        sortMenu.add(new SortAction(CpdMatchTable.SortOrder.LINES, StringKeys.VIEW_CPD_SORT_LINES, false));
+        sortMenu.add(new SortAction(CpdMatchTable.SortOrder.FILE, StringKeys.VIEW_CPD_SORT_FILE, false));
+        menu.add(sortMenu);
+
+        final MenuManager projectMenu = new MenuManager(getString(StringKeys.VIEW_CPD_MENU_PROJECT));
+        projectMenu.setRemoveAllWhenShown(true);
+        projectMenu.addMenuListener(new IMenuListener() {
+            @Override
+            public void menuAboutToShow(IMenuManager manager) {
+                manager.add(new ProjectFilterAction(null, getString(StringKeys.VIEW_CPD_ALL_PROJECTS)));
+                for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+                    if (project.isAccessible()) {
+                        manager.add(new ProjectFilterAction(project.getName(), project.getName()));
+                    }
+                }
+            }
+        });
+        // a placeholder, otherwise the empty sub menu is not shown
+        projectMenu.add(new Action("") { });
+        menu.add(projectMenu);
+
+        menu.add(new Action(getString(StringKeys.VIEW_CPD_FILTER_FILE)) {
+            @Override
+            public void run() {
+                String current = table == null ? null : table.getFileFilter();
+                InputDialog dialog = new InputDialog(treeViewer.getControl().getShell(),
+                        getString(StringKeys.VIEW_CPD_FILTER_FILE), getString(StringKeys.VIEW_CPD_FILTER_FILE_MESSAGE),
+                        current == null ? "" : current, null);
+                if (dialog.open() == Window.OK && table != null) {
+                    table.setFileFilter(dialog.getValue().trim());
+                    updateTable();
+                }
+            }
+        });
+
+        menu.add(new Action(getString(StringKeys.VIEW_CPD_FILTER_LINES)) {
+            @Override
+            public void run() {
+                int current = table == null ? 0 : table.getMinLines();
+                InputDialog dialog = new InputDialog(treeViewer.getControl().getShell(),
+                        getString(StringKeys.VIEW_CPD_FILTER_LINES), getString(StringKeys.VIEW_CPD_FILTER_LINES_MESSAGE),
+                        Integer.toString(current), new IInputValidator() {
+                            @Override
+                            public String isValid(String newText) {
+                                try {
+                                    return Integer.parseInt(newText.trim()) >= 0 ? null : newText;
+                                } catch (NumberFormatException e) {
+                                    return newText;
+                                }
+                            }
+                        });
+                if (dialog.open() == Window.OK && table != null) {
+                    table.setMinLines(Integer.parseInt(dialog.getValue().trim()));
+                    updateTable();
                 }
-                children[j] = new TreeNode(line);
-                children[j].setParent(matchNode);
             }
-            matchNode.setChildren(children);
+        });
+    }
+
+    /**
+     * Sorts the matches.
+     */
+    private class SortAction extends Action {
+        private final CpdMatchTable.SortOrder sortOrder;
+
+        SortAction(CpdMatchTable.SortOrder sortOrder, String labelKey, boolean checked) {
+            super(getString(labelKey), IAction.AS_RADIO_BUTTON);
+            this.sortOrder = sortOrder;
+            setChecked(checked);
         }
 
-        // set the children of the rootnode: the matches
-        treeViewer.setInput(elements.toArray(new TreeNode[0]));
+        @Override
+        public void run() {
+            if (isChecked() && table != null) {
+                table.setSortOrder(sortOrder);
+                updateTable();
+            }
+        }
+    }
+
+    /**
+     * Shows only the matches of one project.
+     */
+    private class ProjectFilterAction extends Action {
+        private final String project;
+
+        ProjectFilterAction(String project, String label) {
+            super(label, IAction.AS_RADIO_BUTTON);
+            this.project = project;
+            String current = table == null ? null : table.getProject();
+            setChecked(project == null ? current == null : project.equals(current));
+        }
+
+        @Override
+        public void run() {
+            if (isChecked() && table != null) {
+                table.setProject(project);
+                updateTable();
+            }
+        }
     }
 
     /**
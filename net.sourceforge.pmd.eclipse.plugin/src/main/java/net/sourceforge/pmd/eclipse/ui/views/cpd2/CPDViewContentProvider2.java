@@ -0,0 +1,93 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.views.cpd2;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.TreeNode;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+
+import net.sourceforge.pmd.eclipse.runtime.cmd.internal.CpdMatchWithSourceCode;
+
+/**
+ * Provides the virtual tree of the {@link CPDView2} with the rows of a {@link CpdMatchTable}.
+ * The match nodes are created page by page, when a row of the page becomes visible.
+ * The source lines of a match are only read, when the match is expanded.
+ */
+public class CPDViewContentProvider2 implements ILazyTreeContentProvider {
+    private static final int PAGE_SIZE = 128;
+
+    private TreeViewer treeViewer;
+    private CpdMatchTable table;
+    private final Map<Integer, CpdMatchNode[]> pages = new HashMap<>();
+
+    @Override
+    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+        treeViewer = (TreeViewer) viewer;
+        table = (CpdMatchTable) newInput;
+        pages.clear();
+    }
+
+    @Override
+    public void updateChildCount(Object element, int currentChildCount) {
+        int count;
+        if (element instanceof CpdMatchTable) {
+            count = table.size();
+        } else if (element instanceof CpdMatchNode) {
+            // called when the match is expanded, now the lines are read
+            count = ((CpdMatchNode) element).getChildren().length;
+        } else {
+            count = 0;
+        }
+        if (count != currentChildCount) {
+            treeViewer.setChildCount(element, count);
+        }
+    }
+
+    @Override
+    public void updateElement(Object parent, int index) {
+        if (parent instanceof CpdMatchTable) {
+            if (index >= table.size()) {
+                return;
+            }
+            CpdMatchNode node = nodeAt(index);
+            treeViewer.replace(parent, index, node);
+            // a placeholder child, so that the match can be expanded without reading its lines
+            treeViewer.setChildCount(node, node.isLinesLoaded() ? node.getChildren().length : 1);
+        } else if (parent instanceof CpdMatchNode) {
+            TreeNode[] lines = ((CpdMatchNode) parent).getChildren();
+            if (index < lines.length) {
+                treeViewer.replace(parent, index, lines[index]);
+                treeViewer.setChildCount(lines[index], 0);
+            }
+        }
+    }
+
+    private CpdMatchNode nodeAt(int index) {
+        Integer page = index / PAGE_SIZE;
+        CpdMatchNode[] nodes = pages.get(page);
+        if (nodes == null) {
+            int first = page * PAGE_SIZE;
+            nodes = new CpdMatchNode[Math.min(PAGE_SIZE, table.size() - first)];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = new CpdMatchNode(new CpdMatchWithSourceCode(table.getResult(), table.get(first + i)));
+            }
+            pages.put(page, nodes);
+        }
+        return nodes[index % PAGE_SIZE];
+    }
+
+    @Override
+    public Object getParent(Object element) {
+        if (element instanceof TreeNode) {
+            TreeNode parent = ((TreeNode) element).getParent();
+            return parent != null ? parent : table;
+        }
+        return null;
+    }
+}
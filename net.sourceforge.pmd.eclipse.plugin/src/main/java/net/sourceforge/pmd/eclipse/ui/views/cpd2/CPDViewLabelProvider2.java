@@ -58,10 +58,8 @@ public class CPDViewLabelProvider2 extends LabelProvider implements ITableLabelP
     }
 
     private int lineCountFor(TreeNode node) {
-        Object source = node.getValue();
-
-        if (source instanceof Match) {
-            return node.getChildren().length;
+        if (node instanceof CpdMatchNode) {
+            return ((CpdMatchNode) node).getMatch().getMatch().getLineCount();
         }
 
         return -1;
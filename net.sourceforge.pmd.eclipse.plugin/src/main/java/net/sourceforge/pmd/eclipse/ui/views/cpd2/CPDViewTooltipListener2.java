@@ -10,7 +10,6 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
-import org.eclipse.jface.viewers.TreeNode;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Cursor;
 import org.eclipse.swt.graphics.Point;
@@ -81,8 +80,8 @@ public class CPDViewTooltipListener2 implements Listener {
     }
 
     private static Match matchAt(TreeItem treeItem) {
-        Object item = ((TreeNode) treeItem.getData()).getValue();
-        return item instanceof Match ? (Match) item : null;
+        Object item = treeItem.getData();
+        return item instanceof CpdMatchNode ? ((CpdMatchNode) item).getMatch().getMatch() : null;
     }
 
     private Mark itemAt(TreeItem treeItem, Point location) {
@@ -90,11 +89,11 @@ public class CPDViewTooltipListener2 implements Listener {
             return null;
         }
 
-        Object item = ((TreeNode) treeItem.getData()).getValue();
+        Object item = treeItem.getData();
 
         String[] names;
-        if (item instanceof Match) {
-            names = CPDViewLabelProvider2.sourcesFor((Match) item);
+        if (item instanceof CpdMatchNode) {
+            names = ((CpdMatchNode) item).getNames();
         } else {
             return null;
         }
@@ -107,13 +106,10 @@ public class CPDViewTooltipListener2 implements Listener {
         for (int i = 0; i < names.length; i++) {
             int rightEdge = colWidth - (cellWidth * i);
             int[] widths = view.widthsFor(names[i]);
-            if (widths == null) {
-                continue;
-            }
             int classWidth = widths[1];
             if (location.x > rightEdge - classWidth // right of the start?
                     && location.x < rightEdge) { // left of the end?
-                return CPDViewLabelProvider2.entriesFor((Match) item)[i];
+                return CPDViewLabelProvider2.entriesFor(((CpdMatchNode) item).getMatch().getMatch())[i];
             }
         }
 
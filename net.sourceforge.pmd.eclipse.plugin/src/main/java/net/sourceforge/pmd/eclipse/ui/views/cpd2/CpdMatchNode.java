@@ -0,0 +1,61 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.views.cpd2;
+
+import org.eclipse.jface.viewers.TreeNode;
+
+import net.sourceforge.pmd.eclipse.runtime.cmd.internal.CpdMatchWithSourceCode;
+
+/**
+ * The tree node of a match. Its children, the source lines, are read from the files the first
+ * time they are requested, e.g. when the node is expanded. The names of the files are resolved
+ * once, when the node is shown.
+ */
+class CpdMatchNode extends TreeNode {
+    private boolean linesLoaded;
+    private String[] names;
+
+    CpdMatchNode(CpdMatchWithSourceCode match) {
+        super(match);
+    }
+
+    CpdMatchWithSourceCode getMatch() {
+        return (CpdMatchWithSourceCode) getValue();
+    }
+
+    boolean isLinesLoaded() {
+        return linesLoaded;
+    }
+
+    /**
+     * @return the names of the files of the match, in the order of {@link CPDViewLabelProvider2#entriesFor}
+     */
+    String[] getNames() {
+        if (names == null) {
+            names = CPDViewLabelProvider2.sourcesFor(getMatch().getMatch());
+        }
+        return names;
+    }
+
+    @Override
+    public boolean hasChildren() {
+        return true;
+    }
+
+    @Override
+    public TreeNode[] getChildren() {
+        if (!linesLoaded) {
+            linesLoaded = true;
+            String[] lines = CPDView2.sourceLinesFrom(getMatch(), true);
+            TreeNode[] children = new TreeNode[lines.length];
+            for (int j = 0; j < lines.length; j++) {
+                children[j] = new TreeNode(lines[j]);
+                children[j].setParent(this);
+            }
+            setChildren(children);
+        }
+        return super.getChildren();
+    }
+}
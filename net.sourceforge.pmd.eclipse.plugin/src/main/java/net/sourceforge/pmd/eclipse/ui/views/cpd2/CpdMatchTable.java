@@ -0,0 +1,233 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.views.cpd2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+
+import net.sourceforge.pmd.cpd.Mark;
+import net.sourceforge.pmd.cpd.Match;
+import net.sourceforge.pmd.eclipse.runtime.cmd.internal.CpdResult;
+
+/**
+ * The matches shown in the {@link CPDView2}, sorted and filtered. The tree only asks for the
+ * rows, that are visible, so the matches are never all turned into tree items. Sorting and
+ * filtering work on an array of match indexes.
+ */
+public class CpdMatchTable {
+
+    /**
+     * The sort orders of the matches.
+     */
+    public enum SortOrder {
+        /** Largest token count first. */
+        TOKENS,
+        /** Largest line count first. */
+        LINES,
+        /** By the path of the first file. */
+        FILE
+    }
+
+    private final CpdResult result;
+    private final List<Match> matches;
+    private final String[] firstPaths;
+    private final Map<String, String> projectsByPath = new HashMap<>();
+
+    private SortOrder sortOrder = SortOrder.TOKENS;
+    private int minLines;
+    private String fileFilter;
+    private String project;
+    private int[] rows;
+
+    public CpdMatchTable(CpdResult result) {
+        this.result = result;
+        this.matches = new ArrayList<>(result.getMatches());
+        this.firstPaths = new String[matches.size()];
+        refresh();
+    }
+
+    /**
+     * @return the CPD result, from which the source code of the matches is read
+     */
+    public CpdResult getResult() {
+        return result;
+    }
+
+    public SortOrder getSortOrder() {
+        return sortOrder;
+    }
+
+    public void setSortOrder(SortOrder sortOrder) {
+        this.sortOrder = sortOrder;
+    }
+
+    public int getMinLines() {
+        return minLines;
+    }
+
+    /**
+     * @param minLines only matches with at least this many lines are shown
+     */
+    public void setMinLines(int minLines) {
+        this.minLines = minLines;
+    }
+
+    public String getFileFilter() {
+        return fileFilter;
+    }
+
+    /**
+     * @param fileFilter only matches, of which a file path contains this text (ignoring the case),
+     *     are shown. <code>null</code> or empty to show all.
+     */
+    public void setFileFilter(String fileFilter) {
+        this.fileFilter = fileFilter == null || fileFilter.isEmpty() ? null : fileFilter;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    /**
+     * @param project only matches with a file in this project are shown. <code>null</code> to show all.
+     */
+    public void setProject(String project) {
+        this.project = project;
+    }
+
+    /**
+     * Sorts and filters the matches according to the current settings.
+     */
+    public final void refresh() {
+        String filter = fileFilter == null ? null : fileFilter.toLowerCase(Locale.ROOT);
+        Integer[] selected = new Integer[matches.size()];
+        int count = 0;
+        for (int i = 0; i < matches.size(); i++) {
+            if (accepts(matches.get(i), filter)) {
+                selected[count++] = i;
+            }
+        }
+        Arrays.sort(selected, 0, count, comparator());
+
+        rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = selected[i];
+        }
+    }
+
+    private boolean accepts(Match match, String filter) {
+        if (match.getLineCount() < minLines) {
+            return false;
+        }
+        if (filter == null && project == null) {
+            return true;
+        }
+        boolean fileFound = filter == null;
+        boolean projectFound = project == null;
+        for (Mark mark : match.getMarkSet()) {
+            String path = mark.getLocation().getFileId().getOriginalPath();
+            fileFound = fileFound || path.toLowerCase(Locale.ROOT).contains(filter);
+            projectFound = projectFound || project.equals(projectOf(path));
+        }
+        return fileFound && projectFound;
+    }
+
+    private String projectOf(String path) {
+        String name = projectsByPath.get(path);
+        if (name == null) {
+            IFile file = ResourcesPlugin.getWorkspace().getRoot().getFileForLocation(Path.fromOSString(path));
+            name = file == null ? "" : file.getProject().getName();
+            projectsByPath.put(path, name);
+        }
+        return name;
+    }
+
+    private String firstPathOf(int index) {
+        if (firstPaths[index] == null) {
+            firstPaths[index] = CPDViewLabelProvider2.entriesFor(matches.get(index))[0].getLocation().getFileId()
+                    .getOriginalPath();
+        }
+        return firstPaths[index];
+    }
+
+    private Comparator<Integer> comparator() {
+        switch (sortOrder) {
+        case LINES:
+            return new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    Match first = matches.get(a);
+                    Match second = matches.get(b);
+                    int result = Integer.compare(second.getLineCount(), first.getLineCount());
+                    return result != 0 ? result : Integer.compare(second.getTokenCount(), first.getTokenCount());
+                }
+            };
+        case FILE:
+            return new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int result = firstPathOf(a).compareTo(firstPathOf(b));
+                    return result != 0 ? result : Integer.compare(matches.get(b).getTokenCount(),
+                            matches.get(a).getTokenCount());
+                }
+            };
+        case TOKENS:
+        default:
+            return new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    Match first = matches.get(a);
+                    Match second = matches.get(b);
+                    int result = Integer.compare(second.getTokenCount(), first.getTokenCount());
+                    return result != 0 ? result : Integer.compare(second.getLineCount(), first.getLineCount());
+                }
+            };
+        }
+    }
+
+    /**
+     * @return the number of shown matches
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * @param row the row, 0 to {@link #size()} - 1
+     * @return the match shown in the row
+     */
+    public Match get(int row) {
+        return matches.get(rows[row]);
+    }
+
+    /**
+     * Hides the given matches, until the next CPD run.
+     */
+    public void removeAll(List<Match> removed) {
+        Set<Match> hidden = Collections.newSetFromMap(new IdentityHashMap<Match, Boolean>());
+        hidden.addAll(removed);
+        Iterator<Match> iterator = matches.iterator();
+        while (iterator.hasNext()) {
+            if (hidden.contains(iterator.next())) {
+                iterator.remove();
+            }
+        }
+        Arrays.fill(firstPaths, null);
+        refresh();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.views.cpd2;
+
+import org.eclipse.swt.graphics.GC;
+
+/**
+ * The widths of texts in the font of the tree. The advance widths of the ASCII characters are
+ * measured once, so the width of a name is computed without asking the graphics context again,
+ * neither when painting nor when hit testing. Other characters count with the average width.
+ */
+final class TextWidths {
+    private final int[] asciiWidths = new int[128];
+    private final int otherWidth;
+
+    /**
+     * @param gc the graphics context, whose font is measured
+     */
+    TextWidths(GC gc) {
+        for (char c = 0; c < asciiWidths.length; c++) {
+            asciiWidths[c] = gc.getAdvanceWidth(c);
+        }
+        otherWidth = (int) Math.ceil(gc.getFontMetrics().getAverageCharacterWidth());
+    }
+
+    int widthOf(String text) {
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            width += c < asciiWidths.length ? asciiWidths[c] : otherWidth;
+        }
+        return width;
+    }
+}